@@ -0,0 +1,200 @@
+/*
+ * Copyright (c) Vocera Communications, Inc. All Rights Reserved.
+ * This software is the confidential and proprietary information of
+ * Vocera Communications, Inc.
+ */
+
+package com.vocera.cloud.affiliateservice;
+
+import com.vocera.cloud.coremodel.constants.AffiliationStatus;
+import com.vocera.cloud.coremodel.model.Affiliation;
+import com.vocera.cloud.coremodel.model.Organization;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Affiliate service application for the benchmarks with the benchmark profile, on an in-memory H2 database
+ * seeded with a generated dataset.
+ * Every organization affiliates with the next affiliationsPerOrganization organizations, the statuses cycling
+ * through SEEDED_STATUSES, so every organization has twice as many affiliations, half of them as affiliationFrom.
+ * System properties override the profile, -Dspring.datasource.url and friends run the benchmarks against
+ * Postgres. {@link #attach} runs them against a dataset already in that database instead, such as the one written
+ * by the DatasetGenerator of the load source set.
+ *
+ * @author Rohit Phatak
+ */
+public final class BenchmarkContext implements AutoCloseable {
+
+    private static final int ORGANIZATIONS_PER_HEALTH_SYSTEM = 10;
+
+    private static final AffiliationStatus[] SEEDED_STATUSES = {AffiliationStatus.AFFILIATED,
+            AffiliationStatus.ACTIVE_REQUEST, AffiliationStatus.REJECTED, AffiliationStatus.CANCELLED,
+            AffiliationStatus.REVOKED_FROM, AffiliationStatus.REVOKED_TO, AffiliationStatus.REMOVED};
+
+    private static final int SEED_BATCH_SIZE = 1000;
+
+    private static final String INSERT_ORGANIZATION = "insert into organization (id, created_at, updated_at, " +
+            "active, domain, health_system_name, name) values (?, ?, ?, ?, ?, ?, ?)";
+
+    private static final String INSERT_AFFILIATION = "insert into affiliation (id, created_at, updated_at, " +
+            "status, actioned_by, affiliation_from, affiliation_with, requested_by, active) " +
+            "values (?, ?, ?, ?, ?, ?, ?, ?, ?)";
+
+    private final ConfigurableApplicationContext context;
+
+    private final int organizations;
+
+    private BenchmarkContext(ConfigurableApplicationContext context, int organizations) {
+        this.context = context;
+        this.organizations = organizations;
+    }
+
+    /**
+     * Start the application and seed the dataset.
+     *
+     * @param organizations
+     * @param affiliationsPerOrganization
+     * @param properties                  name=value pairs overriding the profile and the system properties.
+     * @return
+     */
+    public static BenchmarkContext start(int organizations, int affiliationsPerOrganization, String... properties) {
+        if (affiliationsPerOrganization * 2 >= organizations && organizations > 0) {
+            throw new IllegalArgumentException("affiliationsPerOrganization has to be below half the organizations");
+        }
+        BenchmarkContext benchmarkContext = new BenchmarkContext(run(properties), organizations);
+        benchmarkContext.seed(affiliationsPerOrganization);
+        return benchmarkContext;
+    }
+
+    /**
+     * Start the application on the organizations and affiliations already in the configured database. The schema
+     * is left as it is and nothing is seeded, the organization ids are expected to run from 1 without gaps.
+     *
+     * @param properties name=value pairs overriding the profile and the system properties.
+     * @return
+     */
+    public static BenchmarkContext attach(String... properties) {
+        String[] attachProperties = Arrays.copyOf(properties, properties.length + 1);
+        attachProperties[properties.length] = "spring.jpa.hibernate.ddl-auto=none";
+        ConfigurableApplicationContext context = run(attachProperties);
+        Integer organizations = context.getBean(JdbcTemplate.class)
+                .queryForObject("select count(*) from organization", Integer.class);
+        return new BenchmarkContext(context, organizations);
+    }
+
+    private static ConfigurableApplicationContext run(String... properties) {
+        return new SpringApplicationBuilder(AffiliateServiceApplication.class)
+                .profiles("benchmark")
+                .run(Arrays.stream(properties).map(property -> "--" + property).toArray(String[]::new));
+    }
+
+    public <T> T getBean(Class<T> type) {
+        return context.getBean(type);
+    }
+
+    public int getOrganizations() {
+        return organizations;
+    }
+
+    /**
+     * Id of the organization at the index, wrapping around the seeded organizations.
+     *
+     * @param index
+     * @return
+     */
+    public long organizationId(int index) {
+        return Math.floorMod(index, organizations) + 1;
+    }
+
+    /**
+     * Name of the organization at the index, the names sort in the order of the indexes.
+     *
+     * @param index
+     * @return
+     */
+    public static String organizationName(int index) {
+        return "Organization " + String.format("%07d", index);
+    }
+
+    /**
+     * Health system of the organization at the index, shared by ORGANIZATIONS_PER_HEALTH_SYSTEM organizations.
+     *
+     * @param index
+     * @return
+     */
+    public static String healthSystemName(int index) {
+        return "Health System " + index / ORGANIZATIONS_PER_HEALTH_SYSTEM;
+    }
+
+    /**
+     * Domain of the organization at the index.
+     *
+     * @param index
+     * @return
+     */
+    public static String domain(int index) {
+        return "www.organization" + index + ".com";
+    }
+
+    /**
+     * Affiliation request from one organization to another.
+     *
+     * @param affiliationFrom
+     * @param affiliationWith
+     * @return
+     */
+    public static Affiliation request(long affiliationFrom, long affiliationWith) {
+        Affiliation affiliation = new Affiliation();
+        affiliation.setAffiliationFrom(new Organization(affiliationFrom));
+        affiliation.setAffiliationWith(new Organization(affiliationWith));
+        affiliation.setStatus(AffiliationStatus.ACTIVE_REQUEST);
+        return affiliation;
+    }
+
+    @Override
+    public void close() {
+        context.close();
+    }
+
+    private void seed(int affiliationsPerOrganization) {
+        JdbcTemplate jdbcTemplate = context.getBean(JdbcTemplate.class);
+        Timestamp now = new Timestamp(System.currentTimeMillis());
+        List<Object[]> rows = new ArrayList<>(SEED_BATCH_SIZE);
+        for (int index = 0; index < organizations; index++) {
+            rows.add(new Object[]{this.organizationId(index), now, now, true, domain(index),
+                    healthSystemName(index), organizationName(index)});
+            this.flush(jdbcTemplate, INSERT_ORGANIZATION, rows, false);
+        }
+        this.flush(jdbcTemplate, INSERT_ORGANIZATION, rows, true);
+
+        long affiliationId = 0;
+        for (int index = 0; index < organizations; index++) {
+            for (int distance = 1; distance <= affiliationsPerOrganization; distance++) {
+                AffiliationStatus status = SEEDED_STATUSES[(index + distance) % SEEDED_STATUSES.length];
+                long from = this.organizationId(index);
+                long with = this.organizationId(index + distance);
+                rows.add(new Object[]{++affiliationId, now, now, status.name(),
+                        status == AffiliationStatus.ACTIVE_REQUEST ? null : with, from, with, from,
+                        status != AffiliationStatus.REMOVED});
+                this.flush(jdbcTemplate, INSERT_AFFILIATION, rows, false);
+            }
+        }
+        this.flush(jdbcTemplate, INSERT_AFFILIATION, rows, true);
+
+        jdbcTemplate.execute("alter sequence organization_sequence restart with " + (organizations + 1));
+        jdbcTemplate.execute("alter sequence affiliation_sequence restart with " + (affiliationId + 1));
+    }
+
+    private void flush(JdbcTemplate jdbcTemplate, String sql, List<Object[]> rows, boolean force) {
+        if (rows.size() >= SEED_BATCH_SIZE || (force && !rows.isEmpty())) {
+            jdbcTemplate.batchUpdate(sql, rows);
+            rows.clear();
+        }
+    }
+}
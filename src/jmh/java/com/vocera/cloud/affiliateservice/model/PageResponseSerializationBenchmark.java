@@ -0,0 +1,109 @@
+/*
+ * Copyright (c) Vocera Communications, Inc. All Rights Reserved.
+ * This software is the confidential and proprietary information of
+ * Vocera Communications, Inc.
+ */
+
+package com.vocera.cloud.affiliateservice.model;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.vocera.cloud.affiliateservice.BenchmarkContext;
+import com.vocera.cloud.affiliateservice.constant.TotalType;
+import com.vocera.cloud.coremodel.constants.AffiliationStatus;
+import com.vocera.cloud.coremodel.model.Affiliation;
+import com.vocera.cloud.coremodel.model.Organization;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks of writing the filter responses as JSON, with an ObjectMapper configured like the one of the
+ * application: the Jackson2ObjectMapperBuilder defaults with dates written as ISO strings.
+ *
+ * @author Rohit Phatak
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PageResponseSerializationBenchmark {
+
+    private static final long ORGANIZATION_ID = 1L;
+
+    @Param({"10", "100"})
+    private int offset;
+
+    private ObjectMapper objectMapper;
+
+    private FilterPageResponse<Affiliation> affiliationPage;
+
+    private FilterPageResponse<OrganizationSummary> organizationPage;
+
+    @Setup
+    public void setUp() {
+        objectMapper = Jackson2ObjectMapperBuilder.json()
+                .featuresToDisable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS)
+                .build();
+        Date now = new Date();
+        List<Affiliation> affiliations = new ArrayList<>(offset);
+        List<OrganizationSummary> organizations = new ArrayList<>(offset);
+        for (int i = 0; i < offset; i++) {
+            long otherOrganizationId = ORGANIZATION_ID + 1 + i;
+            Affiliation affiliation = BenchmarkContext.request(ORGANIZATION_ID, otherOrganizationId);
+            affiliation.setId(i + 1);
+            affiliation.setStatus(AffiliationStatus.AFFILIATED);
+            affiliation.setActive(true);
+            affiliation.setCreatedAt(now);
+            affiliation.setUpdatedAt(now);
+            affiliation.setRequestedBy(ORGANIZATION_ID);
+            affiliation.setActionedBy(otherOrganizationId);
+            this.describe(affiliation.getAffiliationFrom(), 0, now);
+            this.describe(affiliation.getAffiliationWith(), i + 1, now);
+            affiliations.add(affiliation);
+            organizations.add(new OrganizationSummary(affiliation.getId(), otherOrganizationId,
+                    BenchmarkContext.organizationName(i + 1), BenchmarkContext.healthSystemName(i + 1),
+                    BenchmarkContext.domain(i + 1), null, null));
+        }
+        affiliationPage = new FilterPageResponse<>(affiliations, 0, offset, offset * 10, TotalType.EXACT, true,
+                null);
+        organizationPage = new FilterPageResponse<>(organizations, 0, offset, offset * 10, TotalType.EXACT, true,
+                null);
+    }
+
+    @Benchmark
+    public byte[] affiliationPage() throws JsonProcessingException {
+        return objectMapper.writeValueAsBytes(affiliationPage);
+    }
+
+    @Benchmark
+    public byte[] organizationPage() throws JsonProcessingException {
+        return objectMapper.writeValueAsBytes(organizationPage);
+    }
+
+    private void describe(Organization organization, int index, Date now) {
+        organization.setName(BenchmarkContext.organizationName(index));
+        organization.setHealthSystemName(BenchmarkContext.healthSystemName(index));
+        organization.setDomain(BenchmarkContext.domain(index));
+        organization.setActive(true);
+        organization.setCreatedAt(now);
+        organization.setUpdatedAt(now);
+    }
+}
@@ -0,0 +1,95 @@
+/*
+ * Copyright (c) Vocera Communications, Inc. All Rights Reserved.
+ * This software is the confidential and proprietary information of
+ * Vocera Communications, Inc.
+ */
+
+package com.vocera.cloud.affiliateservice.service.impl;
+
+import com.vocera.cloud.affiliateservice.BenchmarkContext;
+import com.vocera.cloud.affiliateservice.constant.FilterStatuses;
+import com.vocera.cloud.coremodel.constants.FilterType;
+import com.vocera.cloud.coremodel.constants.OrderableColumn;
+import com.vocera.cloud.coremodel.model.Affiliation;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.jpa.domain.Specification;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.TypedQuery;
+import javax.persistence.criteria.CriteriaBuilder;
+import javax.persistence.criteria.CriteriaQuery;
+import javax.persistence.criteria.Root;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks of building the filter specification and compiling it to a query.
+ * compile goes through the criteria rendering and the HQL query plan cache of Hibernate, as every filter
+ * request does, without executing the query.
+ *
+ * @author Rohit Phatak
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AffiliateSpecificationsBenchmark {
+
+    private static final Long ORGANIZATION_ID = 1L;
+
+    @Param({"ALL", "AFFILIATES", "ACTIVE_REQUESTS", "UNAFFILIATED"})
+    private FilterType filterType;
+
+    @Param({"", "Health System 1"})
+    private String query;
+
+    private BenchmarkContext context;
+
+    private EntityManager entityManager;
+
+    @Setup
+    public void setUp() {
+        context = BenchmarkContext.start(0, 0);
+        entityManager = context.getBean(EntityManagerFactory.class).createEntityManager();
+    }
+
+    @TearDown
+    public void tearDown() {
+        entityManager.close();
+        context.close();
+    }
+
+    @Benchmark
+    public Specification<Affiliation> construct() {
+        return this.specification();
+    }
+
+    @Benchmark
+    public TypedQuery<Affiliation> compile() {
+        CriteriaBuilder criteriaBuilder = entityManager.getCriteriaBuilder();
+        CriteriaQuery<Affiliation> criteriaQuery = criteriaBuilder.createQuery(Affiliation.class);
+        Root<Affiliation> root = criteriaQuery.from(Affiliation.class);
+        criteriaQuery.where(this.specification().toPredicate(root, criteriaQuery, criteriaBuilder));
+        return entityManager.createQuery(criteriaQuery);
+    }
+
+    private Specification<Affiliation> specification() {
+        return AffiliateSpecifications.affiliatesSpecification(true, query, OrderableColumn.NAME,
+                Sort.Direction.ASC, ORGANIZATION_ID, FilterStatuses.from(filterType),
+                FilterStatuses.with(filterType));
+    }
+}
@@ -0,0 +1,106 @@
+/*
+ * Copyright (c) Vocera Communications, Inc. All Rights Reserved.
+ * This software is the confidential and proprietary information of
+ * Vocera Communications, Inc.
+ */
+
+package com.vocera.cloud.affiliateservice.service.impl;
+
+import com.vocera.cloud.affiliateservice.BenchmarkContext;
+import com.vocera.cloud.affiliateservice.constant.AffiliationTransition;
+import com.vocera.cloud.affiliateservice.model.BatchItemResult;
+import com.vocera.cloud.affiliateservice.model.BulkTransitionRequest;
+import com.vocera.cloud.affiliateservice.service.AffiliateService;
+import com.vocera.cloud.coremodel.model.Affiliation;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmark of the batch affiliation request on the seeded dataset of @{@link BenchmarkContext}.
+ * The first organization requests affiliations with the organizations following its seeded affiliations, the
+ * requests are cancelled and removed after every invocation.
+ *
+ * @author Rohit Phatak
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class BatchRequestBenchmark {
+
+    @Param("20000")
+    private int organizations;
+
+    @Param("50")
+    private int affiliationsPerOrganization;
+
+    @Param({"1000", "10000"})
+    private int items;
+
+    private BenchmarkContext context;
+
+    private AffiliateService affiliateService;
+
+    private Long organizationId;
+
+    private List<Long> otherOrganizationIds;
+
+    private List<Affiliation> affiliationRequests;
+
+    @Setup
+    public void setUp() {
+        if (items + affiliationsPerOrganization * 2 >= organizations) {
+            throw new IllegalArgumentException("items have to fit between the seeded affiliations");
+        }
+        context = BenchmarkContext.start(organizations, affiliationsPerOrganization);
+        affiliateService = context.getBean(AffiliateService.class);
+        organizationId = context.organizationId(0);
+        otherOrganizationIds = new ArrayList<>(items);
+        for (int i = 0; i < items; i++) {
+            otherOrganizationIds.add(context.organizationId(affiliationsPerOrganization + 1 + i));
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        context.close();
+    }
+
+    @Setup(Level.Invocation)
+    public void setUpInvocation() {
+        affiliationRequests = new ArrayList<>(items);
+        for (Long otherOrganizationId : otherOrganizationIds) {
+            affiliationRequests.add(BenchmarkContext.request(organizationId, otherOrganizationId));
+        }
+    }
+
+    @TearDown(Level.Invocation)
+    public void tearDownInvocation() {
+        BulkTransitionRequest bulkTransitionRequest = new BulkTransitionRequest();
+        bulkTransitionRequest.setOrganizationIds(otherOrganizationIds);
+        affiliateService.transitionAll(AffiliationTransition.CANCEL, organizationId, bulkTransitionRequest);
+        affiliateService.transitionAll(AffiliationTransition.REMOVE, organizationId, bulkTransitionRequest);
+    }
+
+    @Benchmark
+    public List<BatchItemResult> affiliateAll() {
+        return affiliateService.affiliateAll(affiliationRequests, organizationId);
+    }
+}
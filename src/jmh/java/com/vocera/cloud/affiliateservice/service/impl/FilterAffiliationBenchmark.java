@@ -0,0 +1,119 @@
+/*
+ * Copyright (c) Vocera Communications, Inc. All Rights Reserved.
+ * This software is the confidential and proprietary information of
+ * Vocera Communications, Inc.
+ */
+
+package com.vocera.cloud.affiliateservice.service.impl;
+
+import com.vocera.cloud.affiliateservice.BenchmarkContext;
+import com.vocera.cloud.affiliateservice.constant.TotalType;
+import com.vocera.cloud.affiliateservice.model.FilterPageResponse;
+import com.vocera.cloud.affiliateservice.model.OrganizationSummary;
+import com.vocera.cloud.affiliateservice.service.AffiliateService;
+import com.vocera.cloud.coremodel.constants.FilterType;
+import com.vocera.cloud.coremodel.constants.OrderableColumn;
+import com.vocera.cloud.coremodel.model.Affiliation;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.data.domain.Sort;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks of the filter endpoints end to end through @{@link AffiliateService}, on the seeded dataset of
+ * @{@link BenchmarkContext}. All variants read the second page of the filter of an organization, by page
+ * number, by keyset cursor and as organization projection.
+ * The 1M organization and 10M affiliation runs take -p organizations=1000000 -p affiliationsPerOrganization=10,
+ * -p nameIndex=false,true compares searching with and without the name index prefilter.
+ *
+ * @author Rohit Phatak
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FilterAffiliationBenchmark {
+
+    private static final int OFFSET = 10;
+
+    @Param("10000")
+    private int organizations;
+
+    @Param("50")
+    private int affiliationsPerOrganization;
+
+    @Param({"ALL", "AFFILIATES"})
+    private FilterType filterType;
+
+    /**
+     * Search for the organizations sharing the name prefix of the filtering organization, about half of its
+     * affiliations match.
+     */
+    @Param({"false", "true"})
+    private boolean search;
+
+    @Param({"NONE", "EXACT"})
+    private TotalType totalType;
+
+    @Param("false")
+    private boolean nameIndex;
+
+    private BenchmarkContext context;
+
+    private AffiliateService affiliateService;
+
+    private Long organizationId;
+
+    private String query;
+
+    private String after;
+
+    @Setup
+    public void setUp() {
+        context = BenchmarkContext.start(organizations, affiliationsPerOrganization,
+                "affiliate.search.ngram-index.enabled=" + nameIndex);
+        affiliateService = context.getBean(AffiliateService.class);
+        int index = organizations / 2;
+        organizationId = context.organizationId(index);
+        String name = BenchmarkContext.organizationName(index);
+        query = search ? name.substring(0, name.length() - 2) : "";
+        after = affiliateService.filterAffiliation(OFFSET, null, TotalType.NONE, query, OrderableColumn.NAME,
+                Sort.Direction.ASC, filterType, organizationId).getNextCursor();
+    }
+
+    @TearDown
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public FilterPageResponse<Affiliation> filterPage() {
+        return affiliateService.filterAffiliation(1, OFFSET, totalType, query, OrderableColumn.NAME,
+                Sort.Direction.ASC, filterType, organizationId);
+    }
+
+    @Benchmark
+    public FilterPageResponse<Affiliation> filterKeyset() {
+        return affiliateService.filterAffiliation(OFFSET, after, totalType, query, OrderableColumn.NAME,
+                Sort.Direction.ASC, filterType, organizationId);
+    }
+
+    @Benchmark
+    public FilterPageResponse<OrganizationSummary> filterOrganizations() {
+        return affiliateService.filterAffiliationOrganization(1, OFFSET, totalType, query, OrderableColumn.NAME,
+                Sort.Direction.ASC, filterType, organizationId);
+    }
+}
@@ -0,0 +1,127 @@
+/*
+ * Copyright (c) Vocera Communications, Inc. All Rights Reserved.
+ * This software is the confidential and proprietary information of
+ * Vocera Communications, Inc.
+ */
+
+package com.vocera.cloud.affiliateservice.service.impl;
+
+import com.vocera.cloud.affiliateservice.BenchmarkContext;
+import com.vocera.cloud.affiliateservice.repository.AffiliateRepository;
+import com.vocera.cloud.affiliateservice.service.AffiliateService;
+import com.vocera.cloud.coremodel.model.Affiliation;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Latency distribution of looking up the active affiliation of an organization pair, through the repository and
+ * through checkAffiliation with the check cache and the graph index turned off, so every lookup reaches the
+ * database. The pairs are drawn from the affiliations, or at random when affiliated is false, which are mostly
+ * pairs without an affiliation.
+ * With attach the pairs are looked up in the dataset already in the configured database, for the generated 10M
+ * dataset e.g. -PjmhArgs='PairLookupBenchmark -p attach=true
+ * -jvmArgs -Dspring.datasource.url=jdbc:postgresql://localhost:5432/affiliate'.
+ *
+ * @author Rohit Phatak
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PairLookupBenchmark {
+
+    private static final int PAIRS = 10000;
+
+    private static final long SEED = 42;
+
+    @Param("10000")
+    private int organizations;
+
+    @Param("50")
+    private int affiliationsPerOrganization;
+
+    @Param("false")
+    private boolean attach;
+
+    @Param({"true", "false"})
+    private boolean affiliated;
+
+    private BenchmarkContext context;
+
+    private AffiliateRepository affiliateRepository;
+
+    private AffiliateService affiliateService;
+
+    private long[][] pairs;
+
+    private int pair;
+
+    @Setup
+    public void setUp() {
+        String[] properties = {"affiliate.check-cache.enabled=false", "affiliate.graph-index.enabled=false"};
+        context = attach ? BenchmarkContext.attach(properties) :
+                BenchmarkContext.start(organizations, affiliationsPerOrganization, properties);
+        affiliateRepository = context.getBean(AffiliateRepository.class);
+        affiliateService = context.getBean(AffiliateService.class);
+
+        JdbcTemplate jdbcTemplate = context.getBean(JdbcTemplate.class);
+        long maxId = jdbcTemplate.queryForObject("select max(id) from affiliation", Long.class);
+        Random random = new Random(SEED);
+        pairs = new long[PAIRS][];
+        for (int i = 0; i < PAIRS; i++) {
+            if (!affiliated) {
+                int index = random.nextInt(context.getOrganizations());
+                int distance = 1 + random.nextInt(context.getOrganizations() - 1);
+                pairs[i] = new long[]{context.organizationId(index), context.organizationId(index + distance)};
+                continue;
+            }
+            List<long[]> rows;
+            do {
+                rows = jdbcTemplate.query("select affiliation_from, affiliation_with from affiliation where id = ?",
+                        (resultSet, rowNum) -> new long[]{resultSet.getLong(1), resultSet.getLong(2)},
+                        1 + (long) (random.nextDouble() * maxId));
+            } while (rows.isEmpty());
+            pairs[i] = rows.get(0);
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public Optional<Affiliation> findActiveByPair() {
+        long[] next = this.nextPair();
+        return affiliateRepository.checkAffiliation(next[0], next[1]);
+    }
+
+    @Benchmark
+    public Affiliation checkAffiliation() {
+        long[] next = this.nextPair();
+        return affiliateService.checkAffiliation(next[0], next[1]);
+    }
+
+    private long[] nextPair() {
+        pair = (pair + 1) % PAIRS;
+        return pairs[pair];
+    }
+}
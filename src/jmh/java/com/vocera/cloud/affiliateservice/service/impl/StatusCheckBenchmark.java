@@ -0,0 +1,65 @@
+/*
+ * Copyright (c) Vocera Communications, Inc. All Rights Reserved.
+ * This software is the confidential and proprietary information of
+ * Vocera Communications, Inc.
+ */
+
+package com.vocera.cloud.affiliateservice.service.impl;
+
+import com.vocera.cloud.affiliateservice.constant.AffiliationTransition;
+import com.vocera.cloud.affiliateservice.constant.FilterStatuses;
+import com.vocera.cloud.coremodel.constants.AffiliationStatus;
+import com.vocera.cloud.coremodel.constants.FilterType;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks of the status decisions of @{@link AffiliateServiceImpl}: the status lists of the filter types and
+ * the target status of a transition. Every invocation runs the decision for all combinations of its inputs.
+ *
+ * @author Rohit Phatak
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StatusCheckBenchmark {
+
+    private final AffiliationStatus[] statuses = AffiliationStatus.values();
+
+    private final FilterType[] filterTypes = FilterType.values();
+
+    private final AffiliationTransition[] transitions = AffiliationTransition.values();
+
+    @Benchmark
+    public void filterStatuses(Blackhole blackhole) {
+        for (FilterType filterType : filterTypes) {
+            for (AffiliationStatus status : statuses) {
+                blackhole.consume(FilterStatuses.includes(filterType, status, true));
+                blackhole.consume(FilterStatuses.includes(filterType, status, false));
+            }
+        }
+    }
+
+    @Benchmark
+    public void transitionTarget(Blackhole blackhole) {
+        for (AffiliationTransition transition : transitions) {
+            for (AffiliationStatus status : statuses) {
+                blackhole.consume(transition.target(status, true));
+                blackhole.consume(transition.target(status, false));
+            }
+        }
+    }
+}
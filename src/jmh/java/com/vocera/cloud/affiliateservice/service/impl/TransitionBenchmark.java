@@ -0,0 +1,150 @@
+/*
+ * Copyright (c) Vocera Communications, Inc. All Rights Reserved.
+ * This software is the confidential and proprietary information of
+ * Vocera Communications, Inc.
+ */
+
+package com.vocera.cloud.affiliateservice.service.impl;
+
+import com.vocera.cloud.affiliateservice.BenchmarkContext;
+import com.vocera.cloud.affiliateservice.constant.AffiliationTransition;
+import com.vocera.cloud.affiliateservice.model.BulkTransitionRequest;
+import com.vocera.cloud.affiliateservice.model.TransitionResult;
+import com.vocera.cloud.affiliateservice.service.AffiliateService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks of the state transitions on the seeded dataset of @{@link BenchmarkContext}.
+ * cycle measures the latency of a single transition, averaged over request, approve, revoke and remove of an
+ * organization pair. approveEach and approveAll approve the same inbox of requests one at a time and with the
+ * set based bulk transition. The benchmarks only use pairs farther apart than the seeded affiliations.
+ *
+ * @author Rohit Phatak
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TransitionBenchmark {
+
+    @Param("10000")
+    private int organizations;
+
+    @Param("50")
+    private int affiliationsPerOrganization;
+
+    private BenchmarkContext context;
+
+    private AffiliateService affiliateService;
+
+    private int pair;
+
+    @Setup
+    public void setUp() {
+        context = BenchmarkContext.start(organizations, affiliationsPerOrganization);
+        affiliateService = context.getBean(AffiliateService.class);
+    }
+
+    @TearDown
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(4)
+    public void cycle(Blackhole blackhole) {
+        int index = pair++ % (organizations / 2);
+        Long organizationId = context.organizationId(index);
+        Long otherOrganizationId = context.organizationId(index + organizations / 2);
+        blackhole.consume(affiliateService.affiliate(BenchmarkContext.request(organizationId, otherOrganizationId),
+                organizationId));
+        blackhole.consume(affiliateService.approveAffiliation(otherOrganizationId, organizationId));
+        blackhole.consume(affiliateService.revokeAffiliation(organizationId, otherOrganizationId));
+        blackhole.consume(affiliateService.removeAffiliation(organizationId, otherOrganizationId));
+    }
+
+    @Benchmark
+    public void approveEach(Inbox inbox, Blackhole blackhole) {
+        for (Long requestingOrganizationId : inbox.requestingOrganizationIds) {
+            blackhole.consume(affiliateService.approveAffiliation(inbox.organizationId, requestingOrganizationId));
+        }
+    }
+
+    @Benchmark
+    public List<TransitionResult> approveAll(Inbox inbox) {
+        return affiliateService.transitionAll(AffiliationTransition.APPROVE, inbox.organizationId,
+                inbox.request(inbox.requestingOrganizationIds));
+    }
+
+    /**
+     * Pending requests of the last organization, sent by organizations around the middle of the dataset before
+     * every invocation. The affiliations are revoked and removed afterwards.
+     */
+    @State(Scope.Benchmark)
+    public static class Inbox {
+
+        @Param({"10", "100"})
+        private int requests;
+
+        private Long organizationId;
+
+        private List<Long> requestingOrganizationIds;
+
+        private AffiliateService affiliateService;
+
+        @Setup(Level.Trial)
+        public void setUpTrial(TransitionBenchmark benchmark) {
+            if (requests + benchmark.affiliationsPerOrganization >= benchmark.organizations / 2) {
+                throw new IllegalArgumentException("requests have to fit between the seeded affiliations");
+            }
+            affiliateService = benchmark.affiliateService;
+            organizationId = benchmark.context.organizationId(-1);
+            requestingOrganizationIds = new ArrayList<>(requests);
+            for (int i = 0; i < requests; i++) {
+                requestingOrganizationIds.add(benchmark.context.organizationId(benchmark.organizations / 2 + i));
+            }
+        }
+
+        @Setup(Level.Invocation)
+        public void setUp() {
+            for (Long requestingOrganizationId : requestingOrganizationIds) {
+                affiliateService.affiliate(BenchmarkContext.request(requestingOrganizationId, organizationId),
+                        requestingOrganizationId);
+            }
+        }
+
+        @TearDown(Level.Invocation)
+        public void tearDown() {
+            affiliateService.transitionAll(AffiliationTransition.REVOKE, organizationId,
+                    this.request(requestingOrganizationIds));
+            affiliateService.transitionAll(AffiliationTransition.REMOVE, organizationId,
+                    this.request(requestingOrganizationIds));
+        }
+
+        private BulkTransitionRequest request(List<Long> organizationIds) {
+            BulkTransitionRequest bulkTransitionRequest = new BulkTransitionRequest();
+            bulkTransitionRequest.setOrganizationIds(organizationIds);
+            return bulkTransitionRequest;
+        }
+    }
+}
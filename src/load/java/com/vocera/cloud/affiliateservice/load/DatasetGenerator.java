@@ -0,0 +1,364 @@
+/*
+ * Copyright (c) Vocera Communications, Inc. All Rights Reserved.
+ * This software is the confidential and proprietary information of
+ * Vocera Communications, Inc.
+ */
+
+package com.vocera.cloud.affiliateservice.load;
+
+import com.vocera.cloud.coremodel.constants.AffiliationStatus;
+import org.postgresql.copy.CopyManager;
+import org.postgresql.core.BaseConnection;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Generates a large dataset of organizations and affiliations and bulk loads it, with COPY on Postgres and with
+ * JDBC batches on other databases.
+ * Health system sizes follow a Zipf distribution, the organizations of a health system have consecutive ids,
+ * starting with the largest health system. The number of affiliations requested by an organization follows a
+ * Zipf distribution by id as well, every affiliation with a distinct organization and the statuses drawn from the
+ * status mix. The spare organizations follow without affiliations.
+ * Rows are written to empty tables, the sequences are moved past the generated ids. The tables are analyzed on
+ * Postgres, the planner would not see the rows until the next autovacuum otherwise.
+ *
+ * @author Rohit Phatak
+ */
+public class DatasetGenerator {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(DatasetGenerator.class);
+
+    static final String[] NAME_WORDS = {"Saint", "Mercy", "Valley", "Regional", "Memorial", "County",
+            "University", "Community", "Lakeside", "Riverside", "Summit", "Pioneer", "Harbor", "Northern", "Southern",
+            "Eastern", "Western", "Central", "Grace", "Hope", "Providence", "Trinity", "Highland", "Meadow", "Cedar",
+            "Oak", "Pine", "Maple", "Willow", "Granite", "Liberty", "Unity", "Heritage", "Baptist", "Methodist",
+            "Lutheran", "Presbyterian", "Children's", "Veterans", "Good Samaritan"};
+
+    private static final String[] NAME_KINDS = {"Hospital", "Medical Center", "Clinic", "Health Center",
+            "Specialty Care", "Rehabilitation Center"};
+
+    private static final String ORGANIZATION_COLUMNS = "id, created_at, updated_at, active, domain, " +
+            "health_system_name, name";
+
+    private static final String AFFILIATION_COLUMNS = "id, created_at, updated_at, status, actioned_by, " +
+            "affiliation_from, affiliation_with, requested_by, active";
+
+    private static final long HISTORY_MILLIS = TimeUnit.DAYS.toMillis(365);
+
+    private final JdbcTemplate jdbcTemplate;
+
+    private final DatasetProperties properties;
+
+    /**
+     * Constructor.
+     *
+     * @param jdbcTemplate
+     * @param properties
+     */
+    public DatasetGenerator(JdbcTemplate jdbcTemplate, DatasetProperties properties) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.properties = properties;
+    }
+
+    /**
+     * Generate the dataset into the database of the service, configured like the service with the load profile.
+     *
+     * @param args
+     */
+    public static void main(String[] args) {
+        try (ConfigurableApplicationContext context = LocalService.start(args)) {
+            new DatasetGenerator(context.getBean(JdbcTemplate.class), LocalService.datasetProperties(context))
+                    .generate();
+        }
+    }
+
+    /**
+     * Generate and load the dataset.
+     *
+     * @return number of affiliations generated.
+     */
+    public long generate() {
+        if (properties.getOrganizations() < 3) {
+            throw new IllegalArgumentException("At least 3 organizations are required");
+        }
+        long start = System.currentTimeMillis();
+        long affiliations = jdbcTemplate.execute((ConnectionCallback<Long>) connection -> {
+            this.writeOrganizations(connection);
+            return this.writeAffiliations(connection);
+        });
+        jdbcTemplate.execute("alter sequence organization_sequence restart with " +
+                (properties.spareOrganizationId(properties.getSpareOrganizations())));
+        jdbcTemplate.execute("alter sequence affiliation_sequence restart with " + (affiliations + 1));
+        if (jdbcTemplate.execute((ConnectionCallback<Boolean>) this::isPostgres)) {
+            jdbcTemplate.execute("analyze organization");
+            jdbcTemplate.execute("analyze affiliation");
+        }
+        LOGGER.info("Generated {} organizations and {} affiliations in {} ms",
+                properties.getOrganizations() + properties.getSpareOrganizations(), affiliations,
+                System.currentTimeMillis() - start);
+        return affiliations;
+    }
+
+    private void writeOrganizations(Connection connection) throws SQLException {
+        Random random = new Random(properties.getSeed());
+        Timestamp now = new Timestamp(System.currentTimeMillis());
+        ZipfDistribution healthSystems = new ZipfDistribution(properties.getHealthSystems(),
+                properties.getHealthSystemSkew());
+        long[] healthSystemSizes = healthSystems.apportion(properties.getOrganizations(),
+                properties.getOrganizations());
+        try (TableWriter writer = this.writer(connection, "organization", ORGANIZATION_COLUMNS)) {
+            long id = 0;
+            for (int healthSystem = 0; healthSystem < healthSystemSizes.length; healthSystem++) {
+                String healthSystemName = NAME_WORDS[random.nextInt(NAME_WORDS.length)] + " Health " +
+                        (healthSystem + 1);
+                for (long i = 0; i < healthSystemSizes[healthSystem]; i++) {
+                    writer.write(++id, now, now, true, "www.organization" + id + ".com", healthSystemName,
+                            this.organizationName(random));
+                }
+            }
+            // Rounding can leave a few organizations without a health system of the distribution.
+            while (id < properties.getOrganizations()) {
+                writer.write(++id, now, now, true, "www.organization" + id + ".com", null,
+                        this.organizationName(random));
+            }
+            for (int i = 0; i < properties.getSpareOrganizations(); i++) {
+                id = properties.spareOrganizationId(i);
+                writer.write(id, now, now, true, "www.organization" + id + ".com", "Spare Health",
+                        this.organizationName(random));
+            }
+        }
+    }
+
+    /**
+     * Every organization requests affiliations with the organizations at distinct distances below half the number
+     * of organizations, so no pair of organizations is generated twice.
+     *
+     * @param connection
+     * @return number of affiliations written.
+     * @throws SQLException
+     */
+    private long writeAffiliations(Connection connection) throws SQLException {
+        Random random = new Random(properties.getSeed() + 1);
+        long now = System.currentTimeMillis();
+        int organizations = properties.getOrganizations();
+        int distances = (organizations - 1) / 2;
+        long[] requested = new ZipfDistribution(organizations, properties.getAffiliationSkew())
+                .apportion(properties.getAffiliations(), distances);
+        StatusMix statusMix = new StatusMix(properties.getStatusMix());
+        long id = 0;
+        try (TableWriter writer = this.writer(connection, "affiliation", AFFILIATION_COLUMNS)) {
+            for (int index = 0; index < organizations; index++) {
+                int start = random.nextInt(distances);
+                int step = this.coprimeStep(random, distances);
+                long from = index + 1;
+                for (long i = 0; i < requested[index]; i++) {
+                    long distance = 1 + (start + i * step) % distances;
+                    long with = (index + distance) % organizations + 1;
+                    AffiliationStatus status = statusMix.sample(random);
+                    Timestamp createdAt = new Timestamp(now - (long) (random.nextDouble() * HISTORY_MILLIS));
+                    writer.write(++id, createdAt, createdAt, status.name(),
+                            status == AffiliationStatus.ACTIVE_REQUEST ? null : with, from, with, from,
+                            status != AffiliationStatus.REMOVED);
+                }
+                if (index > 0 && index % 10000 == 0) {
+                    LOGGER.info("Generated the affiliations of {} organizations, {} affiliations", index, id);
+                }
+            }
+        }
+        return id;
+    }
+
+    private String organizationName(Random random) {
+        return NAME_WORDS[random.nextInt(NAME_WORDS.length)] + " " + NAME_WORDS[random.nextInt(NAME_WORDS.length)] +
+                " " + NAME_KINDS[random.nextInt(NAME_KINDS.length)];
+    }
+
+    /**
+     * Random step which visits every distance once when taken modulo distances.
+     *
+     * @param random
+     * @param distances
+     * @return
+     */
+    private int coprimeStep(Random random, int distances) {
+        while (true) {
+            int step = 1 + random.nextInt(distances);
+            if (gcd(step, distances) == 1) {
+                return step;
+            }
+        }
+    }
+
+    private static int gcd(int a, int b) {
+        return b == 0 ? a : gcd(b, a % b);
+    }
+
+    private boolean isPostgres(Connection connection) throws SQLException {
+        return connection.isWrapperFor(BaseConnection.class);
+    }
+
+    private TableWriter writer(Connection connection, String table, String columns) throws SQLException {
+        if (this.isPostgres(connection)) {
+            return new CopyWriter(new CopyManager(connection.unwrap(BaseConnection.class)), table, columns,
+                    properties.getBatchSize());
+        }
+        return new BatchWriter(connection, table, columns, properties.getBatchSize());
+    }
+
+    /**
+     * Statuses drawn in proportion to their weights in the status mix.
+     */
+    private static class StatusMix {
+
+        private final List<AffiliationStatus> statuses = new ArrayList<>();
+
+        private final List<Integer> cumulativeWeights = new ArrayList<>();
+
+        private int totalWeight;
+
+        StatusMix(Map<AffiliationStatus, Integer> weights) {
+            for (Map.Entry<AffiliationStatus, Integer> weight : weights.entrySet()) {
+                if (weight.getValue() > 0) {
+                    totalWeight += weight.getValue();
+                    statuses.add(weight.getKey());
+                    cumulativeWeights.add(totalWeight);
+                }
+            }
+            if (totalWeight == 0) {
+                throw new IllegalArgumentException("The status mix needs at least one status with a weight");
+            }
+        }
+
+        AffiliationStatus sample(Random random) {
+            int value = random.nextInt(totalWeight);
+            int index = 0;
+            while (cumulativeWeights.get(index) <= value) {
+                index++;
+            }
+            return statuses.get(index);
+        }
+    }
+
+    /**
+     * Rows of a table, written in batches.
+     */
+    private interface TableWriter extends AutoCloseable {
+
+        void write(Object... values) throws SQLException;
+
+        @Override
+        void close() throws SQLException;
+    }
+
+    /**
+     * Writes the rows with JDBC batches of inserts.
+     */
+    private static class BatchWriter implements TableWriter {
+
+        private final PreparedStatement statement;
+
+        private final int batchSize;
+
+        private int rows;
+
+        BatchWriter(Connection connection, String table, String columns, int batchSize) throws SQLException {
+            String placeholders = String.join(", ", Collections.nCopies(columns.split(",").length, "?"));
+            this.statement = connection.prepareStatement("insert into " + table + " (" + columns + ") values (" +
+                    placeholders + ")");
+            this.batchSize = batchSize;
+        }
+
+        @Override
+        public void write(Object... values) throws SQLException {
+            for (int i = 0; i < values.length; i++) {
+                statement.setObject(i + 1, values[i]);
+            }
+            statement.addBatch();
+            if (++rows % batchSize == 0) {
+                statement.executeBatch();
+            }
+        }
+
+        @Override
+        public void close() throws SQLException {
+            try {
+                statement.executeBatch();
+            } finally {
+                statement.close();
+            }
+        }
+    }
+
+    /**
+     * Writes the rows with COPY in CSV format, every batch with a COPY of its own.
+     */
+    private static class CopyWriter implements TableWriter {
+
+        private final CopyManager copyManager;
+
+        private final String sql;
+
+        private final int batchSize;
+
+        private final StringBuilder csv = new StringBuilder();
+
+        private int rows;
+
+        CopyWriter(CopyManager copyManager, String table, String columns, int batchSize) {
+            this.copyManager = copyManager;
+            this.sql = "copy " + table + " (" + columns + ") from stdin with (format csv)";
+            this.batchSize = batchSize;
+        }
+
+        @Override
+        public void write(Object... values) throws SQLException {
+            for (int i = 0; i < values.length; i++) {
+                if (i > 0) {
+                    csv.append(',');
+                }
+                if (values[i] instanceof String) {
+                    csv.append('"').append(((String) values[i]).replace("\"", "\"\"")).append('"');
+                } else if (values[i] != null) {
+                    csv.append(values[i]);
+                }
+            }
+            csv.append('\n');
+            if (++rows % batchSize == 0) {
+                this.flush();
+            }
+        }
+
+        @Override
+        public void close() throws SQLException {
+            this.flush();
+        }
+
+        private void flush() throws SQLException {
+            if (csv.length() == 0) {
+                return;
+            }
+            try {
+                copyManager.copyIn(sql, new StringReader(csv.toString()));
+            } catch (IOException e) {
+                throw new SQLException("Could not copy rows with " + sql, e);
+            }
+            csv.setLength(0);
+        }
+    }
+}
@@ -0,0 +1,159 @@
+/*
+ * Copyright (c) Vocera Communications, Inc. All Rights Reserved.
+ * This software is the confidential and proprietary information of
+ * Vocera Communications, Inc.
+ */
+
+package com.vocera.cloud.affiliateservice.load;
+
+import com.vocera.cloud.coremodel.constants.AffiliationStatus;
+
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * Shape of the generated dataset under load.dataset, see @{@link DatasetGenerator}.
+ * The organizations get ids 1 to organizations, followed by the spare organizations.
+ *
+ * @author Rohit Phatak
+ */
+public class DatasetProperties {
+
+    /**
+     * Generate the dataset before driving load at the in-process service.
+     */
+    private boolean generate = true;
+
+    private int organizations = 100000;
+
+    private long affiliations = 1000000;
+
+    private int healthSystems = 2000;
+
+    /**
+     * Zipf exponent of the health system sizes, 0 gives health systems of equal size.
+     */
+    private double healthSystemSkew = 1.1;
+
+    /**
+     * Zipf exponent of the number of affiliations requested by an organization, by organization id. The
+     * organizations of the largest health systems have the lowest ids and the most affiliations.
+     */
+    private double affiliationSkew = 0.8;
+
+    /**
+     * Organizations without affiliations, for the transitions of the load driver.
+     */
+    private int spareOrganizations = 1000;
+
+    /**
+     * Relative weight of every status among the affiliations.
+     */
+    private Map<AffiliationStatus, Integer> statusMix = defaultStatusMix();
+
+    private long seed = 42;
+
+    private int batchSize = 5000;
+
+    public boolean isGenerate() {
+        return generate;
+    }
+
+    public void setGenerate(boolean generate) {
+        this.generate = generate;
+    }
+
+    public int getOrganizations() {
+        return organizations;
+    }
+
+    public void setOrganizations(int organizations) {
+        this.organizations = organizations;
+    }
+
+    public long getAffiliations() {
+        return affiliations;
+    }
+
+    public void setAffiliations(long affiliations) {
+        this.affiliations = affiliations;
+    }
+
+    public int getHealthSystems() {
+        return healthSystems;
+    }
+
+    public void setHealthSystems(int healthSystems) {
+        this.healthSystems = healthSystems;
+    }
+
+    public double getHealthSystemSkew() {
+        return healthSystemSkew;
+    }
+
+    public void setHealthSystemSkew(double healthSystemSkew) {
+        this.healthSystemSkew = healthSystemSkew;
+    }
+
+    public double getAffiliationSkew() {
+        return affiliationSkew;
+    }
+
+    public void setAffiliationSkew(double affiliationSkew) {
+        this.affiliationSkew = affiliationSkew;
+    }
+
+    public int getSpareOrganizations() {
+        return spareOrganizations;
+    }
+
+    public void setSpareOrganizations(int spareOrganizations) {
+        this.spareOrganizations = spareOrganizations;
+    }
+
+    public Map<AffiliationStatus, Integer> getStatusMix() {
+        return statusMix;
+    }
+
+    public void setStatusMix(Map<AffiliationStatus, Integer> statusMix) {
+        this.statusMix = statusMix;
+    }
+
+    public long getSeed() {
+        return seed;
+    }
+
+    public void setSeed(long seed) {
+        this.seed = seed;
+    }
+
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    public void setBatchSize(int batchSize) {
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * Id of the spare organization at the index.
+     *
+     * @param index
+     * @return
+     */
+    public long spareOrganizationId(int index) {
+        return (long) organizations + 1 + index;
+    }
+
+    private static Map<AffiliationStatus, Integer> defaultStatusMix() {
+        Map<AffiliationStatus, Integer> statusMix = new EnumMap<>(AffiliationStatus.class);
+        statusMix.put(AffiliationStatus.AFFILIATED, 60);
+        statusMix.put(AffiliationStatus.ACTIVE_REQUEST, 15);
+        statusMix.put(AffiliationStatus.REJECTED, 5);
+        statusMix.put(AffiliationStatus.CANCELLED, 5);
+        statusMix.put(AffiliationStatus.REVOKED_FROM, 3);
+        statusMix.put(AffiliationStatus.REVOKED_TO, 3);
+        statusMix.put(AffiliationStatus.REMOVED, 9);
+        return statusMix;
+    }
+}
@@ -0,0 +1,336 @@
+/*
+ * Copyright (c) Vocera Communications, Inc. All Rights Reserved.
+ * This software is the confidential and proprietary information of
+ * Vocera Communications, Inc.
+ */
+
+package com.vocera.cloud.affiliateservice.load;
+
+import com.vocera.cloud.coremodel.constants.FilterType;
+import com.vocera.cloud.coremodel.constants.HttpHeader;
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.core.env.Environment;
+import org.springframework.core.env.SimpleCommandLinePropertySource;
+import org.springframework.core.env.StandardEnvironment;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Replays a mix of filter, check and transition calls at a fixed rate and reports the latencies of every operation.
+ * Calls are started on schedule whether or not earlier calls completed, and latencies are measured from the
+ * scheduled start, so a stalled service shows up in the percentiles instead of slowing down the load.
+ * The organizations making the calls follow a Zipf distribution, the transitions cycle pairs of the spare
+ * organizations of the dataset through request, approve, revoke and remove.
+ *
+ * @author Rohit Phatak
+ */
+public class LoadDriver {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(LoadDriver.class);
+
+    private final URI target;
+
+    private final LoadDriverProperties properties;
+
+    private final DatasetProperties dataset;
+
+    private final HttpClient client;
+
+    private final ZipfDistribution tenants;
+
+    private final List<LoadOperation> operations = new ArrayList<>();
+
+    private final List<Integer> cumulativeWeights = new ArrayList<>();
+
+    private int totalWeight;
+
+    private final Map<LoadOperation, Histogram> latencies = new EnumMap<>(LoadOperation.class);
+
+    private final Map<LoadOperation, AtomicLong> errors = new EnumMap<>(LoadOperation.class);
+
+    private final List<SparePair> sparePairs = new ArrayList<>();
+
+    private final AtomicInteger inFlight = new AtomicInteger();
+
+    private int nextSparePair;
+
+    /**
+     * Constructor.
+     *
+     * @param target
+     * @param properties
+     * @param dataset
+     */
+    public LoadDriver(URI target, LoadDriverProperties properties, DatasetProperties dataset) {
+        this.target = target;
+        this.properties = properties;
+        this.dataset = dataset;
+        this.client = HttpClient.newBuilder().connectTimeout(properties.getTimeout()).build();
+        this.tenants = new ZipfDistribution(dataset.getOrganizations(), properties.getTenantSkew());
+        for (Map.Entry<LoadOperation, Integer> weight : properties.getMix().entrySet()) {
+            if (weight.getValue() > 0) {
+                totalWeight += weight.getValue();
+                operations.add(weight.getKey());
+                cumulativeWeights.add(totalWeight);
+            }
+        }
+        if (totalWeight == 0) {
+            throw new IllegalArgumentException("The mix needs at least one operation with a weight");
+        }
+        for (LoadOperation operation : LoadOperation.values()) {
+            latencies.put(operation, new ConcurrentHistogram(3));
+            errors.put(operation, new AtomicLong());
+        }
+        for (int i = 0; i + 1 < dataset.getSpareOrganizations(); i += 2) {
+            sparePairs.add(new SparePair(dataset.spareOrganizationId(i), dataset.spareOrganizationId(i + 1)));
+        }
+    }
+
+    /**
+     * Drive load at the service of load.driver.target, or at a service started in-process with the load profile,
+     * on a dataset generated first unless load.dataset.generate is false.
+     *
+     * @param args
+     */
+    public static void main(String[] args) {
+        StandardEnvironment environment = new StandardEnvironment();
+        environment.getPropertySources().addFirst(new SimpleCommandLinePropertySource(args));
+        LoadDriverProperties properties = loadDriverProperties(environment);
+        if (properties.getTarget() != null) {
+            new LoadDriver(URI.create(properties.getTarget()), properties,
+                    LocalService.datasetProperties(environment)).run();
+            return;
+        }
+        try (ConfigurableApplicationContext context = LocalService.start(args)) {
+            DatasetProperties dataset = LocalService.datasetProperties(context);
+            if (dataset.isGenerate()) {
+                new DatasetGenerator(context.getBean(JdbcTemplate.class), dataset).generate();
+            }
+            new LoadDriver(URI.create("http://localhost:" +
+                    context.getEnvironment().getProperty("local.server.port")), properties, dataset).run();
+        }
+    }
+
+    private static LoadDriverProperties loadDriverProperties(Environment environment) {
+        return Binder.get(environment).bind("load.driver", LoadDriverProperties.class)
+                .orElseGet(LoadDriverProperties::new);
+    }
+
+    /**
+     * Start the calls on schedule until the duration has passed, wait for the calls in flight and report.
+     * Calls scheduled during the warmup are made but not recorded.
+     */
+    public void run() {
+        Random random = new Random(properties.getSeed());
+        long interval = TimeUnit.SECONDS.toNanos(1) / properties.getRps();
+        long start = System.nanoTime();
+        long recordFrom = start + properties.getWarmup().toNanos();
+        long end = recordFrom + properties.getDuration().toNanos();
+        LOGGER.info("Driving {} calls per second at {} for {} after a warmup of {}", properties.getRps(), target,
+                properties.getDuration(), properties.getWarmup());
+        for (long call = 0; ; call++) {
+            long scheduled = start + call * interval;
+            if (scheduled >= end) {
+                break;
+            }
+            long wait;
+            while ((wait = scheduled - System.nanoTime()) > 0) {
+                LockSupport.parkNanos(wait);
+            }
+            this.call(this.nextOperation(random), random, scheduled, scheduled >= recordFrom);
+        }
+        long drainUntil = System.nanoTime() + properties.getTimeout().toNanos();
+        while (inFlight.get() > 0 && System.nanoTime() < drainUntil) {
+            LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(10));
+        }
+        this.report();
+    }
+
+    private LoadOperation nextOperation(Random random) {
+        int value = random.nextInt(totalWeight);
+        int index = 0;
+        while (cumulativeWeights.get(index) <= value) {
+            index++;
+        }
+        return operations.get(index);
+    }
+
+    private void call(LoadOperation operation, Random random, long scheduled, boolean record) {
+        SparePair sparePair = null;
+        HttpRequest request;
+        if (operation == LoadOperation.TRANSITION) {
+            sparePair = this.acquireSparePair();
+            request = sparePair == null ? null : sparePair.nextRequest();
+        } else {
+            request = operation == LoadOperation.FILTER ? this.filterRequest(random) : this.checkRequest(random);
+        }
+        if (request == null || inFlight.get() >= properties.getMaxInFlight()) {
+            if (sparePair != null) {
+                sparePair.busy.set(false);
+            }
+            if (record) {
+                errors.get(operation).incrementAndGet();
+            }
+            return;
+        }
+        inFlight.incrementAndGet();
+        SparePair pair = sparePair;
+        client.sendAsync(request, HttpResponse.BodyHandlers.discarding()).whenComplete((response, exception) -> {
+            boolean succeeded = exception == null && response.statusCode() / 100 == 2;
+            if (pair != null) {
+                pair.complete(succeeded);
+            }
+            if (record) {
+                latencies.get(operation).recordValue(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - scheduled));
+                if (!succeeded) {
+                    errors.get(operation).incrementAndGet();
+                }
+            }
+            inFlight.decrementAndGet();
+        });
+    }
+
+    private HttpRequest filterRequest(Random random) {
+        FilterType filterType = FilterType.values()[random.nextInt(FilterType.values().length)];
+        String query = random.nextDouble() < properties.getSearchRatio() ?
+                DatasetGenerator.NAME_WORDS[random.nextInt(DatasetGenerator.NAME_WORDS.length)] : "";
+        return this.request("/affiliate/filter?offset=" + properties.getPageSize() + "&filterType=" + filterType +
+                "&query=" + URLEncoder.encode(query, StandardCharsets.UTF_8), this.tenant(random))
+                .GET()
+                .build();
+    }
+
+    private HttpRequest checkRequest(Random random) {
+        long otherOrganizationId = 1 + random.nextInt(dataset.getOrganizations());
+        return this.request("/affiliate/check/" + otherOrganizationId, this.tenant(random))
+                .GET()
+                .build();
+    }
+
+    private long tenant(Random random) {
+        return 1 + tenants.sample(random);
+    }
+
+    private HttpRequest.Builder request(String path, long organizationId) {
+        return HttpRequest.newBuilder(target.resolve(path))
+                .timeout(properties.getTimeout())
+                .header(HttpHeader.ORGANIZATION_ID, String.valueOf(organizationId));
+    }
+
+    /**
+     * Next spare pair without a transition in flight.
+     *
+     * @return null if all pairs are busy.
+     */
+    private SparePair acquireSparePair() {
+        for (int i = 0; i < sparePairs.size(); i++) {
+            SparePair sparePair = sparePairs.get(nextSparePair++ % sparePairs.size());
+            if (sparePair.busy.compareAndSet(false, true)) {
+                return sparePair;
+            }
+        }
+        return null;
+    }
+
+    private void report() {
+        double seconds = properties.getDuration().toNanos() / 1e9;
+        LOGGER.info(String.format("%-12s %9s %8s %9s %9s %9s %9s %9s %9s", "operation", "count", "errors",
+                "calls/s", "p50 ms", "p90 ms", "p99 ms", "p99.9 ms", "max ms"));
+        for (LoadOperation operation : LoadOperation.values()) {
+            Histogram histogram = latencies.get(operation);
+            LOGGER.info(String.format("%-12s %9d %8d %9.1f %9.2f %9.2f %9.2f %9.2f %9.2f", operation,
+                    histogram.getTotalCount(), errors.get(operation).get(), histogram.getTotalCount() / seconds,
+                    histogram.getValueAtPercentile(50) / 1000.0, histogram.getValueAtPercentile(90) / 1000.0,
+                    histogram.getValueAtPercentile(99) / 1000.0, histogram.getValueAtPercentile(99.9) / 1000.0,
+                    histogram.getMaxValue() / 1000.0));
+            if (properties.getHistogramDirectory() != null) {
+                Path file = Paths.get(properties.getHistogramDirectory(), operation.name().toLowerCase() + ".hgrm");
+                try {
+                    Files.createDirectories(file.getParent());
+                    try (PrintStream out = new PrintStream(file.toFile())) {
+                        histogram.outputPercentileDistribution(out, 1000.0);
+                    }
+                } catch (IOException e) {
+                    LOGGER.warn("Could not write the histogram of {} to {}", operation, file, e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Pair of spare organizations cycling through request, approve, revoke and remove. A step is only repeated
+     * when it failed, and only one step of a pair is in flight at a time.
+     */
+    private class SparePair {
+
+        private final long organizationId;
+
+        private final long otherOrganizationId;
+
+        private final AtomicBoolean busy = new AtomicBoolean();
+
+        private int step;
+
+        SparePair(long organizationId, long otherOrganizationId) {
+            this.organizationId = organizationId;
+            this.otherOrganizationId = otherOrganizationId;
+        }
+
+        HttpRequest nextRequest() {
+            switch (step) {
+                case 0:
+                    return request("/affiliate", organizationId)
+                            .header("Content-Type", "application/json")
+                            .POST(HttpRequest.BodyPublishers.ofString("{\"affiliationFrom\":{\"id\":" +
+                                    organizationId + "},\"affiliationWith\":{\"id\":" + otherOrganizationId +
+                                    "},\"status\":\"ACTIVE_REQUEST\"}"))
+                            .build();
+                case 1:
+                    return request("/affiliate/approve/" + organizationId, otherOrganizationId)
+                            .POST(HttpRequest.BodyPublishers.noBody())
+                            .build();
+                case 2:
+                    return request("/affiliate/revoke/" + otherOrganizationId, organizationId)
+                            .POST(HttpRequest.BodyPublishers.noBody())
+                            .build();
+                default:
+                    return request("/affiliate/remove/" + otherOrganizationId, organizationId)
+                            .POST(HttpRequest.BodyPublishers.noBody())
+                            .build();
+            }
+        }
+
+        void complete(boolean succeeded) {
+            if (succeeded) {
+                step = (step + 1) % 4;
+            }
+            busy.set(false);
+        }
+    }
+}
@@ -0,0 +1,169 @@
+/*
+ * Copyright (c) Vocera Communications, Inc. All Rights Reserved.
+ * This software is the confidential and proprietary information of
+ * Vocera Communications, Inc.
+ */
+
+package com.vocera.cloud.affiliateservice.load;
+
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * Load replayed by @{@link LoadDriver}, under load.driver.
+ *
+ * @author Rohit Phatak
+ */
+public class LoadDriverProperties {
+
+    /**
+     * Base url of a running service, e.g. http://localhost:8087. The service is started in-process when not set.
+     */
+    private String target;
+
+    /**
+     * Calls started per second, independent of the response times.
+     */
+    private int rps = 200;
+
+    private Duration warmup = Duration.ofSeconds(10);
+
+    private Duration duration = Duration.ofSeconds(60);
+
+    /**
+     * Relative weight of every operation.
+     */
+    private Map<LoadOperation, Integer> mix = defaultMix();
+
+    /**
+     * Zipf exponent of the organizations making the calls, by organization id, so the largest health systems
+     * make the most calls.
+     */
+    private double tenantSkew = 1.0;
+
+    /**
+     * Share of the filter calls with a search query.
+     */
+    private double searchRatio = 0.2;
+
+    private int pageSize = 10;
+
+    /**
+     * Calls in flight beyond which new calls are dropped and counted as errors.
+     */
+    private int maxInFlight = 2000;
+
+    private Duration timeout = Duration.ofSeconds(30);
+
+    /**
+     * Directory the latency histograms of the operations are written to as .hgrm files, not written when not set.
+     */
+    private String histogramDirectory;
+
+    private long seed = 42;
+
+    public String getTarget() {
+        return target;
+    }
+
+    public void setTarget(String target) {
+        this.target = target;
+    }
+
+    public int getRps() {
+        return rps;
+    }
+
+    public void setRps(int rps) {
+        this.rps = rps;
+    }
+
+    public Duration getWarmup() {
+        return warmup;
+    }
+
+    public void setWarmup(Duration warmup) {
+        this.warmup = warmup;
+    }
+
+    public Duration getDuration() {
+        return duration;
+    }
+
+    public void setDuration(Duration duration) {
+        this.duration = duration;
+    }
+
+    public Map<LoadOperation, Integer> getMix() {
+        return mix;
+    }
+
+    public void setMix(Map<LoadOperation, Integer> mix) {
+        this.mix = mix;
+    }
+
+    public double getTenantSkew() {
+        return tenantSkew;
+    }
+
+    public void setTenantSkew(double tenantSkew) {
+        this.tenantSkew = tenantSkew;
+    }
+
+    public double getSearchRatio() {
+        return searchRatio;
+    }
+
+    public void setSearchRatio(double searchRatio) {
+        this.searchRatio = searchRatio;
+    }
+
+    public int getPageSize() {
+        return pageSize;
+    }
+
+    public void setPageSize(int pageSize) {
+        this.pageSize = pageSize;
+    }
+
+    public int getMaxInFlight() {
+        return maxInFlight;
+    }
+
+    public void setMaxInFlight(int maxInFlight) {
+        this.maxInFlight = maxInFlight;
+    }
+
+    public Duration getTimeout() {
+        return timeout;
+    }
+
+    public void setTimeout(Duration timeout) {
+        this.timeout = timeout;
+    }
+
+    public String getHistogramDirectory() {
+        return histogramDirectory;
+    }
+
+    public void setHistogramDirectory(String histogramDirectory) {
+        this.histogramDirectory = histogramDirectory;
+    }
+
+    public long getSeed() {
+        return seed;
+    }
+
+    public void setSeed(long seed) {
+        this.seed = seed;
+    }
+
+    private static Map<LoadOperation, Integer> defaultMix() {
+        Map<LoadOperation, Integer> mix = new EnumMap<>(LoadOperation.class);
+        mix.put(LoadOperation.FILTER, 70);
+        mix.put(LoadOperation.CHECK, 20);
+        mix.put(LoadOperation.TRANSITION, 10);
+        return mix;
+    }
+}
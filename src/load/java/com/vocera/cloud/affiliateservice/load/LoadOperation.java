@@ -0,0 +1,27 @@
+/*
+ * Copyright (c) Vocera Communications, Inc. All Rights Reserved.
+ * This software is the confidential and proprietary information of
+ * Vocera Communications, Inc.
+ */
+
+package com.vocera.cloud.affiliateservice.load;
+
+/**
+ * Calls replayed by @{@link LoadDriver}.
+ *
+ * @author Rohit Phatak
+ */
+public enum LoadOperation {
+    /**
+     * GET /affiliate/filter with a random filterType, and a search query for some of the calls.
+     */
+    FILTER,
+    /**
+     * GET /affiliate/check of two random organizations.
+     */
+    CHECK,
+    /**
+     * Next step of the request, approve, revoke and remove cycle of a pair of spare organizations.
+     */
+    TRANSITION
+}
@@ -0,0 +1,57 @@
+/*
+ * Copyright (c) Vocera Communications, Inc. All Rights Reserved.
+ * This software is the confidential and proprietary information of
+ * Vocera Communications, Inc.
+ */
+
+package com.vocera.cloud.affiliateservice.load;
+
+import com.vocera.cloud.affiliateservice.AffiliateServiceApplication;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.core.env.Environment;
+
+/**
+ * Affiliate service started in-process with the load profile, on an in-memory H2 database unless the datasource
+ * is overridden by the arguments.
+ *
+ * @author Rohit Phatak
+ */
+public final class LocalService {
+
+    private LocalService() {
+    }
+
+    /**
+     * Start the service.
+     *
+     * @param args
+     * @return
+     */
+    public static ConfigurableApplicationContext start(String[] args) {
+        return new SpringApplicationBuilder(AffiliateServiceApplication.class)
+                .profiles("load")
+                .run(args);
+    }
+
+    /**
+     * Dataset properties of the arguments and the load profile.
+     *
+     * @param context
+     * @return
+     */
+    public static DatasetProperties datasetProperties(ConfigurableApplicationContext context) {
+        return datasetProperties(context.getEnvironment());
+    }
+
+    /**
+     * Dataset properties of the environment.
+     *
+     * @param environment
+     * @return
+     */
+    public static DatasetProperties datasetProperties(Environment environment) {
+        return Binder.get(environment).bind("load.dataset", DatasetProperties.class).orElseGet(DatasetProperties::new);
+    }
+}
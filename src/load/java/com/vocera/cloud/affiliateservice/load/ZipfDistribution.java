@@ -0,0 +1,87 @@
+/*
+ * Copyright (c) Vocera Communications, Inc. All Rights Reserved.
+ * This software is the confidential and proprietary information of
+ * Vocera Communications, Inc.
+ */
+
+package com.vocera.cloud.affiliateservice.load;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Zipf distribution over the ranks 0 to size - 1, the probability of a rank being proportional to
+ * 1 / (rank + 1) ^ exponent.
+ *
+ * @author Rohit Phatak
+ */
+public class ZipfDistribution {
+
+    private final double[] cumulative;
+
+    /**
+     * Constructor.
+     *
+     * @param size
+     * @param exponent
+     */
+    public ZipfDistribution(int size, double exponent) {
+        if (size <= 0) {
+            throw new IllegalArgumentException("size has to be positive");
+        }
+        cumulative = new double[size];
+        double sum = 0;
+        for (int rank = 0; rank < size; rank++) {
+            sum += 1 / Math.pow(rank + 1, exponent);
+            cumulative[rank] = sum;
+        }
+        for (int rank = 0; rank < size; rank++) {
+            cumulative[rank] /= sum;
+        }
+    }
+
+    public int size() {
+        return cumulative.length;
+    }
+
+    /**
+     * Probability of the rank.
+     *
+     * @param rank
+     * @return
+     */
+    public double probability(int rank) {
+        return rank == 0 ? cumulative[0] : cumulative[rank] - cumulative[rank - 1];
+    }
+
+    /**
+     * Random rank.
+     *
+     * @param random
+     * @return
+     */
+    public int sample(Random random) {
+        int rank = Arrays.binarySearch(cumulative, random.nextDouble());
+        return Math.min(rank >= 0 ? rank : -rank - 1, cumulative.length - 1);
+    }
+
+    /**
+     * Split the total over the ranks in proportion to their probabilities, no rank getting more than the cap.
+     * The rounding remainder and the excess over the cap are carried over to the following ranks, so the counts
+     * add up to the total unless all ranks are capped.
+     *
+     * @param total
+     * @param cap
+     * @return count of every rank.
+     */
+    public long[] apportion(long total, long cap) {
+        long[] counts = new long[cumulative.length];
+        double owed = 0;
+        for (int rank = 0; rank < counts.length; rank++) {
+            owed += total * this.probability(rank);
+            counts[rank] = Math.min(cap, (long) owed);
+            owed -= counts[rank];
+        }
+        return counts;
+    }
+}
@@ -10,6 +10,7 @@ import com.vocera.cloud.coremodel.model.Affiliation;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 import org.springframework.boot.autoconfigure.domain.EntityScan;
+import org.springframework.scheduling.annotation.EnableScheduling;
 
 /**
  * Entry Point for Affiliate Service.
@@ -18,6 +19,7 @@ import org.springframework.boot.autoconfigure.domain.EntityScan;
  */
 @SpringBootApplication
 @EntityScan(basePackageClasses = Affiliation.class)
+@EnableScheduling
 public class AffiliateServiceApplication {
 
     public static void main(String[] args) {
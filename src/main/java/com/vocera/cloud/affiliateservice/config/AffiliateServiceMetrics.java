@@ -0,0 +1,101 @@
+/*
+ * Copyright (c) Vocera Communications, Inc. All Rights Reserved.
+ * This software is the confidential and proprietary information of
+ * Vocera Communications, Inc.
+ */
+
+package com.vocera.cloud.affiliateservice.config;
+
+import com.vocera.cloud.affiliateservice.constant.AffiliationTransition;
+import com.vocera.cloud.affiliateservice.model.BulkTransitionRequest;
+import com.vocera.cloud.coremodel.constants.FilterType;
+import com.vocera.cloud.coremodel.constants.OrderableColumn;
+import com.vocera.cloud.coremodel.model.Affiliation;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+
+/**
+ * Times every call of the affiliate service as affiliate.service, tagged with the method, the filterType, sort and
+ * transition arguments, the status of a returned affiliation and the exception of a failed call. Tags without a value
+ * for the call are "none", every tag has a bounded set of values.
+ * Ordered before the transaction, so the time includes the commit. Percentiles and histogram buckets are configured
+ * under management.metrics.distribution.
+ *
+ * @author Rohit Phatak
+ */
+@Aspect
+@Component
+@Order(Ordered.HIGHEST_PRECEDENCE)
+public class AffiliateServiceMetrics {
+
+    static final String TIMER = "affiliate.service";
+
+    private static final String NONE = "none";
+
+    private final MeterRegistry meterRegistry;
+
+    /**
+     * Constructor.
+     *
+     * @param meterRegistry
+     */
+    public AffiliateServiceMetrics(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
+    /**
+     * @param joinPoint
+     * @return
+     * @throws Throwable
+     */
+    @Around("execution(* com.vocera.cloud.affiliateservice.service.AffiliateService.*(..))")
+    public Object time(ProceedingJoinPoint joinPoint) throws Throwable {
+        Timer.Sample sample = Timer.start(meterRegistry);
+        Object result = null;
+        Throwable failure = null;
+        try {
+            result = joinPoint.proceed();
+            return result;
+        } catch (Throwable e) {
+            failure = e;
+            throw e;
+        } finally {
+            sample.stop(Timer.builder(TIMER)
+                    .description("Calls of the affiliate service")
+                    .tags(this.tags(joinPoint, result, failure))
+                    .register(meterRegistry));
+        }
+    }
+
+    private Tags tags(ProceedingJoinPoint joinPoint, Object result, Throwable failure) {
+        String filterType = NONE;
+        String sort = NONE;
+        String transition = NONE;
+        for (Object argument : joinPoint.getArgs()) {
+            if (argument instanceof FilterType) {
+                filterType = ((FilterType) argument).name();
+            } else if (argument instanceof OrderableColumn) {
+                sort = ((OrderableColumn) argument).name();
+            } else if (argument instanceof AffiliationTransition) {
+                transition = ((AffiliationTransition) argument).name();
+            } else if (argument instanceof BulkTransitionRequest
+                    && ((BulkTransitionRequest) argument).getFilterType() != null) {
+                filterType = ((BulkTransitionRequest) argument).getFilterType().name();
+            }
+        }
+        String status = NONE;
+        if (result instanceof Affiliation && ((Affiliation) result).getStatus() != null) {
+            status = ((Affiliation) result).getStatus().name();
+        }
+        return Tags.of("method", joinPoint.getSignature().getName(), "filterType", filterType, "sort", sort,
+                "transition", transition, "status", status,
+                "exception", failure == null ? NONE : failure.getClass().getSimpleName());
+    }
+}
@@ -0,0 +1,53 @@
+/*
+ * Copyright (c) Vocera Communications, Inc. All Rights Reserved.
+ * This software is the confidential and proprietary information of
+ * Vocera Communications, Inc.
+ */
+
+package com.vocera.cloud.affiliateservice.config;
+
+import com.vocera.cloud.affiliateservice.service.impl.AffiliationHistory;
+import org.springframework.boot.actuate.health.AbstractHealthIndicator;
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.stereotype.Component;
+
+import java.time.YearMonth;
+
+/**
+ * Health of the affiliation history partitions, down while the month after the current one has no partition.
+ * Transitions still create the partition of their own month, the indicator flags the maintenance failing before
+ * that becomes the rule.
+ *
+ * @author Rohit Phatak
+ */
+@Component
+public class AffiliationHistoryHealthIndicator extends AbstractHealthIndicator {
+
+    private final AffiliationHistory affiliationHistory;
+
+    /**
+     * Constructor.
+     *
+     * @param affiliationHistory
+     */
+    public AffiliationHistoryHealthIndicator(AffiliationHistory affiliationHistory) {
+        super("Affiliation history health check failed");
+        this.affiliationHistory = affiliationHistory;
+    }
+
+    @Override
+    protected void doHealthCheck(Health.Builder builder) {
+        if (!affiliationHistory.isPartitioned()) {
+            builder.up();
+            return;
+        }
+        YearMonth required = YearMonth.now().plusMonths(1);
+        YearMonth last = affiliationHistory.lastPartitionMonth();
+        builder.withDetail("lastPartition", String.valueOf(last)).withDetail("required", required.toString());
+        if (last == null || last.isBefore(required)) {
+            builder.down();
+        } else {
+            builder.up();
+        }
+    }
+}
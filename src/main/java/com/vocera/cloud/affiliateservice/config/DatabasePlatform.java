@@ -0,0 +1,45 @@
+/*
+ * Copyright (c) Vocera Communications, Inc. All Rights Reserved.
+ * This software is the confidential and proprietary information of
+ * Vocera Communications, Inc.
+ */
+
+package com.vocera.cloud.affiliateservice.config;
+
+import org.springframework.boot.jdbc.DatabaseDriver;
+import org.springframework.jdbc.support.JdbcUtils;
+import org.springframework.jdbc.support.MetaDataAccessException;
+import org.springframework.stereotype.Component;
+
+import javax.sql.DataSource;
+
+/**
+ * Resolves the database the service is running against.
+ * Postgres specific statements and indexes are only used when running on Postgres, H2 gets the portable fallback.
+ *
+ * @author Rohit Phatak
+ */
+@Component
+public class DatabasePlatform {
+
+    private final DatabaseDriver databaseDriver;
+
+    /**
+     * Constructor.
+     *
+     * @param dataSource
+     * @throws MetaDataAccessException
+     */
+    public DatabasePlatform(DataSource dataSource) throws MetaDataAccessException {
+        String url = (String) JdbcUtils.extractDatabaseMetaData(dataSource, "getURL");
+        this.databaseDriver = DatabaseDriver.fromJdbcUrl(url);
+    }
+
+    public DatabaseDriver getDatabaseDriver() {
+        return databaseDriver;
+    }
+
+    public boolean isPostgres() {
+        return databaseDriver == DatabaseDriver.POSTGRESQL;
+    }
+}
@@ -0,0 +1,31 @@
+/*
+ * Copyright (c) Vocera Communications, Inc. All Rights Reserved.
+ * This software is the confidential and proprietary information of
+ * Vocera Communications, Inc.
+ */
+
+package com.vocera.cloud.affiliateservice.config;
+
+import org.springframework.boot.autoconfigure.orm.jpa.HibernatePropertiesCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Metrics of the service beyond the ones Actuator binds itself, see @{@link AffiliateServiceMetrics}.
+ *
+ * @author Rohit Phatak
+ */
+@Configuration
+public class MetricsConfig {
+
+    /**
+     * Register @{@link SessionStatementMetrics} with every Hibernate session.
+     *
+     * @return
+     */
+    @Bean
+    public HibernatePropertiesCustomizer sessionStatementMetricsCustomizer() {
+        return properties -> properties.put("hibernate.session.events.auto",
+                SessionStatementMetrics.class.getName());
+    }
+}
@@ -0,0 +1,135 @@
+/*
+ * Copyright (c) Vocera Communications, Inc. All Rights Reserved.
+ * This software is the confidential and proprietary information of
+ * Vocera Communications, Inc.
+ */
+
+package com.vocera.cloud.affiliateservice.config;
+
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Routes the connections of read-only transactions to the replicas, round robin, and everything else to the primary.
+ * Read-only transactions of a thread pinned to the primary stay on the primary.
+ * Within a request all read-only transactions use the replica picked for the first one. The replicas lag by
+ * different amounts, a response built from two of them, such as a filter page tagged with the affiliation version
+ * read before it, could otherwise be tagged with a version newer than its data.
+ * The routing decision needs the transaction to be set up already, so the connection has to be fetched lazily, see
+ * LazyConnectionDataSourceProxy.
+ *
+ * @author Rohit Phatak
+ */
+public class ReadReplicaRoutingDataSource extends AbstractRoutingDataSource implements DisposableBean {
+
+    private static final String PRIMARY = "primary";
+
+    private static final ThreadLocal<Boolean> PINNED_TO_PRIMARY = new ThreadLocal<>();
+
+    /**
+     * Replica of the current request, a single element holder set on the first read-only transaction.
+     */
+    private static final ThreadLocal<String[]> REQUEST_REPLICA = new ThreadLocal<>();
+
+    private final DataSource primary;
+
+    private final List<DataSource> replicas;
+
+    private final List<String> replicaKeys = new ArrayList<>();
+
+    private final AtomicInteger next = new AtomicInteger();
+
+    /**
+     * Constructor.
+     *
+     * @param primary
+     * @param replicas
+     */
+    public ReadReplicaRoutingDataSource(DataSource primary, List<DataSource> replicas) {
+        this.primary = primary;
+        this.replicas = replicas;
+        Map<Object, Object> targets = new HashMap<>();
+        targets.put(PRIMARY, primary);
+        for (int i = 0; i < replicas.size(); i++) {
+            replicaKeys.add("replica-" + i);
+            targets.put(replicaKeys.get(i), replicas.get(i));
+        }
+        this.setTargetDataSources(targets);
+        this.setDefaultTargetDataSource(primary);
+        this.setLenientFallback(false);
+    }
+
+    /**
+     * Read from the primary on the current thread until unpinned.
+     */
+    public static void pinToPrimary() {
+        PINNED_TO_PRIMARY.set(Boolean.TRUE);
+    }
+
+    public static void unpin() {
+        PINNED_TO_PRIMARY.remove();
+    }
+
+    public static boolean isPinnedToPrimary() {
+        return PINNED_TO_PRIMARY.get() != null;
+    }
+
+    /**
+     * Read from a single replica on the current thread until the request ends.
+     */
+    public static void beginRequest() {
+        REQUEST_REPLICA.set(new String[1]);
+    }
+
+    /**
+     * End the request on the current thread, unpinning it from its replica and from the primary.
+     */
+    public static void endRequest() {
+        REQUEST_REPLICA.remove();
+        PINNED_TO_PRIMARY.remove();
+    }
+
+    @Override
+    protected Object determineCurrentLookupKey() {
+        if (replicaKeys.isEmpty() || !TransactionSynchronizationManager.isCurrentTransactionReadOnly()
+                || isPinnedToPrimary()) {
+            return PRIMARY;
+        }
+        String[] requestReplica = REQUEST_REPLICA.get();
+        if (requestReplica == null) {
+            return this.nextReplica();
+        }
+        if (requestReplica[0] == null) {
+            requestReplica[0] = this.nextReplica();
+        }
+        return requestReplica[0];
+    }
+
+    private String nextReplica() {
+        return replicaKeys.get(Math.floorMod(next.getAndIncrement(), replicaKeys.size()));
+    }
+
+    /**
+     * Close the connection pools of the primary and the replicas.
+     *
+     * @throws Exception
+     */
+    @Override
+    public void destroy() throws Exception {
+        List<DataSource> dataSources = new ArrayList<>(replicas);
+        dataSources.add(primary);
+        for (DataSource dataSource : dataSources) {
+            if (dataSource instanceof AutoCloseable) {
+                ((AutoCloseable) dataSource).close();
+            }
+        }
+    }
+}
@@ -0,0 +1,90 @@
+/*
+ * Copyright (c) Vocera Communications, Inc. All Rights Reserved.
+ * This software is the confidential and proprietary information of
+ * Vocera Communications, Inc.
+ */
+
+package com.vocera.cloud.affiliateservice.config;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.vocera.cloud.affiliateservice.event.AffiliationChangedEvent;
+import com.vocera.cloud.coremodel.constants.HttpHeader;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.web.servlet.AsyncHandlerInterceptor;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Pins the requests of an organization to the primary for a while after one of its affiliations changed, so it
+ * reads its own changes while the replicas catch up. Only the changes made through this instance are known.
+ * Every other request reads from a single replica, see {@link ReadReplicaRoutingDataSource#beginRequest()}.
+ *
+ * @author Rohit Phatak
+ */
+public class ReadYourWrites implements AsyncHandlerInterceptor {
+
+    private final Cache<Long, Boolean> recentlyChanged;
+
+    /**
+     * Constructor.
+     *
+     * @param windowMillis
+     */
+    public ReadYourWrites(long windowMillis) {
+        this.recentlyChanged = Caffeine.newBuilder()
+                .expireAfterWrite(windowMillis, TimeUnit.MILLISECONDS)
+                .build();
+    }
+
+    /**
+     * Start the window of both organizations once the change is committed.
+     *
+     * @param event
+     */
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onAffiliationChanged(AffiliationChangedEvent event) {
+        recentlyChanged.put(event.getAffiliationFrom(), Boolean.TRUE);
+        recentlyChanged.put(event.getAffiliationWith(), Boolean.TRUE);
+    }
+
+    /**
+     * Whether the organization is within the window of one of its changes.
+     *
+     * @param organizationId
+     * @return
+     */
+    public boolean isRecentlyChanged(long organizationId) {
+        return recentlyChanged.getIfPresent(organizationId) != null;
+    }
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+        ReadReplicaRoutingDataSource.beginRequest();
+        String organizationId = request.getHeader(HttpHeader.ORGANIZATION_ID);
+        if (organizationId != null) {
+            try {
+                if (this.isRecentlyChanged(Long.parseLong(organizationId.trim()))) {
+                    ReadReplicaRoutingDataSource.pinToPrimary();
+                }
+            } catch (NumberFormatException e) {
+                // Rejected by the handler, nothing to pin.
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public void afterConcurrentHandlingStarted(HttpServletRequest request, HttpServletResponse response,
+                                               Object handler) {
+        ReadReplicaRoutingDataSource.endRequest();
+    }
+
+    @Override
+    public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler,
+                                Exception ex) {
+        ReadReplicaRoutingDataSource.endRequest();
+    }
+}
@@ -0,0 +1,135 @@
+/*
+ * Copyright (c) Vocera Communications, Inc. All Rights Reserved.
+ * This software is the confidential and proprietary information of
+ * Vocera Communications, Inc.
+ */
+
+package com.vocera.cloud.affiliateservice.config;
+
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.metrics.micrometer.MicrometerMetricsTrackerFactory;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.hibernate.resource.jdbc.spi.PhysicalConnectionHandlingMode;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernatePropertiesCustomizer;
+import org.springframework.boot.context.properties.bind.Bindable;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Sends the read-only transactions, the filter and check queries, to the read replicas under
+ * affiliate.datasource.replicas while writes and everything outside a read-only transaction use spring.datasource.
+ * Enabled once a replica is configured. Requests of an organization that changed an affiliation within
+ * affiliate.datasource.read-your-writes-millis keep reading from the primary, see @{@link ReadYourWrites}.
+ *
+ * @author Rohit Phatak
+ */
+@Configuration
+@ConditionalOnProperty(prefix = "affiliate.datasource.replicas[0]", name = "url")
+@EnableConfigurationProperties(ReplicaProperties.class)
+public class ReplicaRoutingConfig implements WebMvcConfigurer, DisposableBean {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ReplicaRoutingConfig.class);
+
+    private final ReplicaProperties replicaProperties;
+
+    private ReadReplicaRoutingDataSource routingDataSource;
+
+    /**
+     * Constructor.
+     *
+     * @param replicaProperties
+     */
+    public ReplicaRoutingConfig(ReplicaProperties replicaProperties) {
+        this.replicaProperties = replicaProperties;
+    }
+
+    /**
+     * The DataSource of JPA and the JdbcTemplate, routing between the primary pool, configured from spring.datasource
+     * as the auto-configured one would be, and the replica pools. Connections are fetched from the routing
+     * DataSource on the first statement, once the transaction is marked read-only. The pools are not beans of their
+     * own, the DataSource initialization would otherwise run against the routing DataSource while it is created,
+     * so their pool metrics are bound here.
+     *
+     * @param dataSourceProperties
+     * @param environment
+     * @param meterRegistry
+     * @return
+     */
+    @Bean
+    public DataSource dataSource(DataSourceProperties dataSourceProperties, Environment environment,
+                                 ObjectProvider<MeterRegistry> meterRegistry) {
+        HikariDataSource primary = dataSourceProperties.initializeDataSourceBuilder()
+                .type(HikariDataSource.class).build();
+        Binder.get(environment).bind("spring.datasource.hikari", Bindable.ofInstance(primary));
+        List<DataSource> replicas = new ArrayList<>();
+        for (ReplicaProperties.Replica replica : replicaProperties.getReplicas()) {
+            HikariDataSource dataSource = new HikariDataSource();
+            dataSource.setPoolName("replica-" + replicas.size());
+            dataSource.setJdbcUrl(replica.getUrl());
+            dataSource.setUsername(replica.getUsername());
+            dataSource.setPassword(replica.getPassword());
+            dataSource.setMaximumPoolSize(replica.getMaximumPoolSize());
+            dataSource.setReadOnly(true);
+            replicas.add(dataSource);
+        }
+        meterRegistry.ifAvailable(registry -> {
+            MicrometerMetricsTrackerFactory metricsTrackerFactory = new MicrometerMetricsTrackerFactory(registry);
+            primary.setMetricsTrackerFactory(metricsTrackerFactory);
+            replicas.forEach(replica -> ((HikariDataSource) replica).setMetricsTrackerFactory(metricsTrackerFactory));
+        });
+        LOGGER.info("Routing read-only transactions to {} replicas", replicas.size());
+        this.routingDataSource = new ReadReplicaRoutingDataSource(primary, replicas);
+        this.routingDataSource.afterPropertiesSet();
+        return new LazyConnectionDataSourceProxy(this.routingDataSource);
+    }
+
+    /**
+     * Release the connection after each transaction. Held for the whole request by default, the routing of the
+     * first transaction of a request would apply to all of its transactions.
+     *
+     * @return
+     */
+    @Bean
+    public HibernatePropertiesCustomizer connectionPerTransactionCustomizer() {
+        return properties -> properties.put("hibernate.connection.handling_mode",
+                PhysicalConnectionHandlingMode.DELAYED_ACQUISITION_AND_RELEASE_AFTER_TRANSACTION);
+    }
+
+    @Bean
+    public ReadYourWrites readYourWrites() {
+        return new ReadYourWrites(replicaProperties.getReadYourWritesMillis());
+    }
+
+    @Override
+    public void addInterceptors(InterceptorRegistry registry) {
+        registry.addInterceptor(this.readYourWrites());
+    }
+
+    /**
+     * Close the connection pools.
+     *
+     * @throws Exception
+     */
+    @Override
+    public void destroy() throws Exception {
+        if (routingDataSource != null) {
+            routingDataSource.destroy();
+        }
+    }
+}
@@ -0,0 +1,129 @@
+/*
+ * Copyright (c) Vocera Communications, Inc. All Rights Reserved.
+ * This software is the confidential and proprietary information of
+ * Vocera Communications, Inc.
+ */
+
+package com.vocera.cloud.affiliateservice.config;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.context.annotation.DependsOn;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Creates the tables of the service which are not mapped to an entity and the indexes Hibernate cannot generate
+ * from the entity mappings.
+ * Runs once the entityManagerFactory has applied its DDL, so the tables are already present.
+ *
+ * @author Rohit Phatak
+ */
+@Component
+@DependsOn("entityManagerFactory")
+public class SchemaInitializer implements InitializingBean {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(SchemaInitializer.class);
+
+    private static final String HISTORY_COLUMNS = "affiliation_id bigint not null, " +
+            "affiliation_from bigint not null, affiliation_with bigint not null, " +
+            "previous_status varchar(32) not null, status varchar(32) not null, actioned_by bigint not null, " +
+            "created_at timestamp not null";
+
+    /**
+     * Affiliation version of every organization, see AffiliationVersions.
+     * Outbox of the affiliation status changes and the counter its seqs are taken from, see AffiliationOutbox.
+     */
+    private static final List<String> STATEMENTS = Arrays.asList(
+            "create table if not exists affiliation_version (organization_id bigint not null primary key, " +
+                    "version bigint not null)",
+            "create table if not exists affiliation_event (seq bigint not null primary key, " +
+                    "affiliation_id bigint not null, affiliation_from bigint not null, " +
+                    "affiliation_with bigint not null, previous_status varchar(32) not null, " +
+                    "status varchar(32) not null, active boolean not null, actioned_by bigint not null, " +
+                    "created_at timestamp not null)",
+            "create index if not exists ix_affiliation_event_created_at on affiliation_event (created_at)",
+            "create table if not exists affiliation_event_counter (id int not null primary key, " +
+                    "seq bigint not null)",
+            "insert into affiliation_event_counter (id, seq) select 1, 0 " +
+                    "where not exists (select id from affiliation_event_counter where id = 1)");
+
+    /**
+     * One active affiliation per organization pair, independent of the direction of the request.
+     * Affiliation requests on Postgres are upserts with this index as conflict target, the service cannot start
+     * without it.
+     */
+    private static final String ACTIVE_PAIR_INDEX = "create unique index if not exists ux_affiliation_active_pair " +
+            "on affiliation (least(affiliation_from, affiliation_with), " +
+            "greatest(affiliation_from, affiliation_with)) where active";
+
+    /**
+     * Trigram indexes serving the LIKE '%q%' searches on organization name and healthSystemName.
+     * Affiliation history partitioned by month, the partitions and their indexes are created by AffiliationHistory.
+     */
+    private static final List<String> POSTGRES_STATEMENTS = Arrays.asList(
+            "create extension if not exists pg_trgm",
+            "create index if not exists ix_organization_name_trgm on organization using gin (name gin_trgm_ops)",
+            "create index if not exists ix_organization_health_system_name_trgm on organization " +
+                    "using gin (health_system_name gin_trgm_ops)",
+            "create table if not exists affiliation_history (id bigserial not null, " +
+                    HISTORY_COLUMNS + ") partition by range (created_at)");
+
+    /**
+     * Affiliation history as a plain table where partitioning is not available.
+     */
+    private static final List<String> FALLBACK_STATEMENTS = Arrays.asList(
+            "create table if not exists affiliation_history (id bigint auto_increment not null primary key, " +
+                    HISTORY_COLUMNS + ")",
+            "create index if not exists ix_affiliation_history_from on affiliation_history " +
+                    "(affiliation_from, created_at)",
+            "create index if not exists ix_affiliation_history_with on affiliation_history " +
+                    "(affiliation_with, created_at)");
+
+    private JdbcTemplate jdbcTemplate;
+
+    private DatabasePlatform databasePlatform;
+
+    /**
+     * Constructor.
+     *
+     * @param jdbcTemplate
+     * @param databasePlatform
+     */
+    public SchemaInitializer(JdbcTemplate jdbcTemplate, DatabasePlatform databasePlatform) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.databasePlatform = databasePlatform;
+    }
+
+    @Override
+    public void afterPropertiesSet() {
+        this.apply(STATEMENTS);
+        if (!databasePlatform.isPostgres()) {
+            LOGGER.info("Skipping Postgres indexes on {}", databasePlatform.getDatabaseDriver());
+            this.apply(FALLBACK_STATEMENTS);
+            return;
+        }
+        try {
+            jdbcTemplate.execute(ACTIVE_PAIR_INDEX);
+        } catch (DataAccessException e) {
+            throw new IllegalStateException("Could not create ux_affiliation_active_pair, an organization pair may " +
+                    "have more than one active affiliation", e);
+        }
+        this.apply(POSTGRES_STATEMENTS);
+    }
+
+    private void apply(List<String> statements) {
+        for (String statement : statements) {
+            try {
+                jdbcTemplate.execute(statement);
+            } catch (DataAccessException e) {
+                LOGGER.warn("Could not apply schema statement [{}] : {}", statement, e.getMessage());
+            }
+        }
+    }
+}
@@ -0,0 +1,72 @@
+/*
+ * Copyright (c) Vocera Communications, Inc. All Rights Reserved.
+ * This software is the confidential and proprietary information of
+ * Vocera Communications, Inc.
+ */
+
+package com.vocera.cloud.affiliateservice.config;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.Timer;
+import org.hibernate.BaseSessionEventListener;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Records the number of JDBC statements and batches a Hibernate session executed, and the time spent executing them,
+ * when the session ends. With open-in-view a request uses a single session, so these are the statements per request.
+ * Created by Hibernate for every session, so the meters are registered with the global registry, which the registry
+ * of the application is added to.
+ *
+ * @author Rohit Phatak
+ */
+public class SessionStatementMetrics extends BaseSessionEventListener {
+
+    private static final DistributionSummary STATEMENTS = DistributionSummary
+            .builder("hibernate.session.statements")
+            .description("JDBC statements and batches executed by a session")
+            .register(Metrics.globalRegistry);
+
+    private static final Timer STATEMENT_TIME = Timer
+            .builder("hibernate.session.statement.time")
+            .description("Time a session spent executing JDBC statements and batches")
+            .register(Metrics.globalRegistry);
+
+    private int statements;
+
+    private long executionStart;
+
+    private long executionNanos;
+
+    @Override
+    public void jdbcExecuteStatementStart() {
+        executionStart = System.nanoTime();
+    }
+
+    @Override
+    public void jdbcExecuteStatementEnd() {
+        this.executed();
+    }
+
+    @Override
+    public void jdbcExecuteBatchStart() {
+        executionStart = System.nanoTime();
+    }
+
+    @Override
+    public void jdbcExecuteBatchEnd() {
+        this.executed();
+    }
+
+    @Override
+    public void end() {
+        STATEMENTS.record(statements);
+        STATEMENT_TIME.record(executionNanos, TimeUnit.NANOSECONDS);
+    }
+
+    private void executed() {
+        statements++;
+        executionNanos += System.nanoTime() - executionStart;
+    }
+}
@@ -0,0 +1,25 @@
+/*
+ * Copyright (c) Vocera Communications, Inc. All Rights Reserved.
+ * This software is the confidential and proprietary information of
+ * Vocera Communications, Inc.
+ */
+
+package com.vocera.cloud.affiliateservice.config;
+
+import com.vocera.cloud.affiliateservice.constant.TotalType;
+import org.springframework.core.convert.converter.Converter;
+import org.springframework.stereotype.Component;
+
+/**
+ * Converts the includeTotal request parameter (false, exact, estimate) to @{@link TotalType}.
+ *
+ * @author Rohit Phatak
+ */
+@Component
+public class TotalTypeConverter implements Converter<String, TotalType> {
+
+    @Override
+    public TotalType convert(String source) {
+        return TotalType.fromParameter(source.trim());
+    }
+}
@@ -0,0 +1,96 @@
+/*
+ * Copyright (c) Vocera Communications, Inc. All Rights Reserved.
+ * This software is the confidential and proprietary information of
+ * Vocera Communications, Inc.
+ */
+
+package com.vocera.cloud.affiliateservice.config;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.web.embedded.tomcat.TomcatServletWebServerFactory;
+import org.springframework.boot.web.server.WebServerFactoryCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.concurrent.ConcurrentTaskExecutor;
+import org.springframework.web.servlet.config.annotation.AsyncSupportConfigurer;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Runs the Tomcat request handling, and with it the service calls, on virtual threads instead of the Tomcat worker
+ * pool. Asynchronous requests such as the export are written from virtual threads as well.
+ * Enabled with affiliate.virtual-threads.enabled, requires a Java 21 runtime. The number of requests in the
+ * database at the same time is then only bounded by the connection pool.
+ *
+ * @author Rohit Phatak
+ */
+@Configuration
+@ConditionalOnProperty(name = "affiliate.virtual-threads.enabled", havingValue = "true")
+public class VirtualThreadConfig implements WebMvcConfigurer, DisposableBean {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(VirtualThreadConfig.class);
+
+    private static final String THREAD_NAME_PREFIX = "affiliate-vt-";
+
+    private final ExecutorService executor;
+
+    /**
+     * Constructor.
+     */
+    public VirtualThreadConfig() {
+        this.executor = newVirtualThreadExecutor(THREAD_NAME_PREFIX);
+        LOGGER.info("Handling requests on virtual threads");
+    }
+
+    /**
+     * Replace the executor of the Tomcat connector with the virtual thread executor.
+     * server.tomcat.max-threads no longer applies, server.tomcat.max-connections still does.
+     *
+     * @return
+     */
+    @Bean
+    public WebServerFactoryCustomizer<TomcatServletWebServerFactory> virtualThreadTomcatCustomizer() {
+        return factory -> factory.addConnectorCustomizers(
+                connector -> connector.getProtocolHandler().setExecutor(this.executor));
+    }
+
+    @Override
+    public void configureAsyncSupport(AsyncSupportConfigurer configurer) {
+        configurer.setTaskExecutor(new ConcurrentTaskExecutor(this.executor));
+    }
+
+    /**
+     * Tomcat does not shut down an executor it did not create.
+     */
+    @Override
+    public void destroy() {
+        this.executor.shutdown();
+    }
+
+    /**
+     * Executor starting a virtual thread per task.
+     * Looked up reflectively, the classes are compiled for Java 11.
+     *
+     * @param namePrefix
+     * @return
+     */
+    static ExecutorService newVirtualThreadExecutor(String namePrefix) {
+        try {
+            Class<?> builderType = Class.forName("java.lang.Thread$Builder");
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            builder = builderType.getMethod("name", String.class, long.class).invoke(builder, namePrefix, 0L);
+            ThreadFactory threadFactory = (ThreadFactory) builderType.getMethod("factory").invoke(builder);
+            return (ExecutorService) Executors.class.getMethod("newThreadPerTaskExecutor", ThreadFactory.class)
+                    .invoke(null, threadFactory);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Virtual threads require Java 21 or later, running on Java "
+                    + System.getProperty("java.version"), e);
+        }
+    }
+}
@@ -0,0 +1,196 @@
+/*
+ * Copyright (c) Vocera Communications, Inc. All Rights Reserved.
+ * This software is the confidential and proprietary information of
+ * Vocera Communications, Inc.
+ */
+
+package com.vocera.cloud.affiliateservice.constant;
+
+import com.vocera.cloud.coremodel.constants.AffiliationStatus;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Status changes an organization can make to an existing affiliation.
+ * Each transition is allowed from the expected statuses of the acting side only, the requesting (from) and the
+ * requested (with) side have their own expected statuses and target status. A side without a target status may
+ * not make the transition.
+ * The rules are precomputed into one table indexed by transition, acting side and current status, looking up a
+ * target status allocates nothing.
+ *
+ * @author Rohit Phatak
+ */
+public enum AffiliationTransition {
+    APPROVE(EnumSet.noneOf(AffiliationStatus.class), null,
+            EnumSet.of(AffiliationStatus.ACTIVE_REQUEST), AffiliationStatus.AFFILIATED, true,
+            "Approve Request Failed", "Invalid affiliation to approve !!"),
+    REJECT(EnumSet.noneOf(AffiliationStatus.class), null,
+            EnumSet.of(AffiliationStatus.ACTIVE_REQUEST), AffiliationStatus.REJECTED, true,
+            "Reject Request Failed", "Invalid affiliation to reject !!"),
+    CANCEL(EnumSet.of(AffiliationStatus.ACTIVE_REQUEST), AffiliationStatus.CANCELLED,
+            EnumSet.noneOf(AffiliationStatus.class), null, true,
+            "Cancel Request Failed", "Invalid affiliation to cancel !!"),
+    REVOKE(EnumSet.of(AffiliationStatus.AFFILIATED), AffiliationStatus.REVOKED_FROM,
+            EnumSet.of(AffiliationStatus.AFFILIATED), AffiliationStatus.REVOKED_TO, true,
+            "Revoke Request Failed", "Invalid affiliation to revoke !!"),
+    REMOVE(EnumSet.of(AffiliationStatus.CANCELLED, AffiliationStatus.REJECTED, AffiliationStatus.REVOKED_FROM,
+            AffiliationStatus.REVOKED_TO, AffiliationStatus.UNREGISTERED_TO, AffiliationStatus.UNREGISTERED_FROM),
+            AffiliationStatus.REMOVED,
+            EnumSet.of(AffiliationStatus.CANCELLED, AffiliationStatus.REJECTED, AffiliationStatus.REVOKED_FROM,
+                    AffiliationStatus.REVOKED_TO, AffiliationStatus.UNREGISTERED_TO,
+                    AffiliationStatus.UNREGISTERED_FROM),
+            AffiliationStatus.REMOVED, false,
+            "Revoke Request Failed", "Invalid affiliation to revoke !!"),
+    /**
+     * Removal of the active affiliation of a pair by a new request of the acting organization, which may only
+     * request again once it cancelled or revoked its own request, or rejected or revoked the other's.
+     */
+    REQUEST(EnumSet.of(AffiliationStatus.CANCELLED, AffiliationStatus.REVOKED_FROM), AffiliationStatus.REMOVED,
+            EnumSet.of(AffiliationStatus.REJECTED, AffiliationStatus.REVOKED_TO), AffiliationStatus.REMOVED, false,
+            "Affiliation Request Failed", "Invalid affiliation to request again !!");
+
+    private static final int FROM_SIDE = 0;
+
+    private static final int WITH_SIDE = 1;
+
+    /**
+     * Target status by transition, acting side and current status ordinal, null where the transition is rejected.
+     */
+    private static final AffiliationStatus[][][] TARGETS;
+
+    static {
+        AffiliationStatus[] statuses = AffiliationStatus.values();
+        AffiliationTransition[] transitions = values();
+        TARGETS = new AffiliationStatus[transitions.length][2][statuses.length];
+        for (AffiliationTransition transition : transitions) {
+            for (AffiliationStatus status : statuses) {
+                if (transition.fromStatus != null && transition.fromExpected.contains(status)) {
+                    TARGETS[transition.ordinal()][FROM_SIDE][status.ordinal()] = transition.fromStatus;
+                }
+                if (transition.withStatus != null && transition.withExpected.contains(status)) {
+                    TARGETS[transition.ordinal()][WITH_SIDE][status.ordinal()] = transition.withStatus;
+                }
+            }
+        }
+    }
+
+    private final Set<AffiliationStatus> fromExpected;
+
+    private final AffiliationStatus fromStatus;
+
+    private final Set<AffiliationStatus> withExpected;
+
+    private final AffiliationStatus withStatus;
+
+    private final boolean active;
+
+    private final String failureMessage;
+
+    private final String failureDetail;
+
+    private final List<String> fromExpectedNames;
+
+    private final List<String> withExpectedNames;
+
+    AffiliationTransition(Set<AffiliationStatus> fromExpected, AffiliationStatus fromStatus,
+                          Set<AffiliationStatus> withExpected, AffiliationStatus withStatus, boolean active,
+                          String failureMessage, String failureDetail) {
+        this.fromExpected = Collections.unmodifiableSet(fromExpected);
+        this.fromStatus = fromStatus;
+        this.withExpected = Collections.unmodifiableSet(withExpected);
+        this.withStatus = withStatus;
+        this.active = active;
+        this.failureMessage = failureMessage;
+        this.failureDetail = failureDetail;
+        this.fromExpectedNames = expectedNames(fromExpected, fromStatus);
+        this.withExpectedNames = expectedNames(withExpected, withStatus);
+    }
+
+    /**
+     * @param fromSide
+     * @return statuses the acting side may make the transition from, empty if it may not act.
+     */
+    public Set<AffiliationStatus> getExpectedStatus(boolean fromSide) {
+        if (fromSide) {
+            return fromStatus == null ? Collections.emptySet() : fromExpected;
+        }
+        return withStatus == null ? Collections.emptySet() : withExpected;
+    }
+
+    /**
+     * Names of the expected statuses of the acting side, to bind to an in (...) condition. A side which may not act
+     * gets a single empty name, which matches no status.
+     *
+     * @param fromSide
+     * @return
+     */
+    public List<String> getExpectedStatusNames(boolean fromSide) {
+        return fromSide ? fromExpectedNames : withExpectedNames;
+    }
+
+    /**
+     * @return target status when the acting organization is affiliationFrom, null if it may not act.
+     */
+    public AffiliationStatus getFromStatus() {
+        return fromStatus;
+    }
+
+    /**
+     * @return target status when the acting organization is affiliationWith, null if it may not act.
+     */
+    public AffiliationStatus getWithStatus() {
+        return withStatus;
+    }
+
+    public boolean isActive() {
+        return active;
+    }
+
+    public String getFailureMessage() {
+        return failureMessage;
+    }
+
+    public String getFailureDetail() {
+        return failureDetail;
+    }
+
+    /**
+     * Target status for the acting side, null if the transition is not allowed for it or the status is unknown.
+     *
+     * @param status
+     * @param fromSide
+     * @return
+     */
+    public AffiliationStatus target(AffiliationStatus status, boolean fromSide) {
+        if (status == null) {
+            return null;
+        }
+        return TARGETS[this.ordinal()][fromSide ? FROM_SIDE : WITH_SIDE][status.ordinal()];
+    }
+
+    /**
+     * Whether the acting side may make the transition from the status.
+     *
+     * @param status
+     * @param fromSide
+     * @return
+     */
+    public boolean allows(AffiliationStatus status, boolean fromSide) {
+        return this.target(status, fromSide) != null;
+    }
+
+    private static List<String> expectedNames(Set<AffiliationStatus> expected, AffiliationStatus target) {
+        if (target == null || expected.isEmpty()) {
+            return Collections.singletonList("");
+        }
+        List<String> names = new ArrayList<>(expected.size());
+        for (AffiliationStatus status : expected) {
+            names.add(status.name());
+        }
+        return Collections.unmodifiableList(names);
+    }
+}
@@ -0,0 +1,19 @@
+/*
+ * Copyright (c) Vocera Communications, Inc. All Rights Reserved.
+ * This software is the confidential and proprietary information of
+ * Vocera Communications, Inc.
+ */
+
+package com.vocera.cloud.affiliateservice.constant;
+
+/**
+ * Outcome of a single item of a batch request.
+ *
+ * @author Rohit Phatak
+ */
+public enum BatchItemStatus {
+    CREATED,
+    EXISTING,
+    UPDATED,
+    INVALID
+}
@@ -16,7 +16,10 @@ public enum ErrorCodes {
     CONSTRAINT_VIOLATION("1001", ""),
     INVALID_AFFILIATION_WITH("1002", "Invalid Organization to affiliate with"),
     INVALID_REQUEST("1003", "Invalid Request"),
-    INVALID_AFFILIATION_REQUEST("1004", "Error Raising Affiliation Request");
+    INVALID_AFFILIATION_REQUEST("1004", "Error Raising Affiliation Request"),
+    INVALID_CURSOR("1005", "Invalid pagination cursor"),
+    EVENTS_PRUNED("1006", "Events are no longer available"),
+    INVALID_AFFILIATION_FROM("1007", "Invalid Organization to request affiliation");
 
     private final String code;
 
@@ -0,0 +1,111 @@
+/*
+ * Copyright (c) Vocera Communications, Inc. All Rights Reserved.
+ * This software is the confidential and proprietary information of
+ * Vocera Communications, Inc.
+ */
+
+package com.vocera.cloud.affiliateservice.constant;
+
+import com.vocera.cloud.coremodel.constants.AffiliationStatus;
+import com.vocera.cloud.coremodel.constants.FilterType;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Affiliation statuses included in every @{@link FilterType}, seen from the side of the filtering organization.
+ * The lists are bound to queries, membership of a status is looked up in a precomputed table.
+ *
+ * @author Rohit Phatak
+ */
+public final class FilterStatuses {
+
+    private static final List<AffiliationStatus> ALL = Collections.unmodifiableList(
+            Arrays.asList(AffiliationStatus.values()));
+    private static final List<AffiliationStatus> UNAFFILIATED_FROM = Collections.unmodifiableList(Arrays.asList(
+            AffiliationStatus.REMOVED, AffiliationStatus.REVOKED_FROM, AffiliationStatus.CANCELLED));
+    private static final List<AffiliationStatus> UNAFFILIATED_WITH = Collections.unmodifiableList(Arrays.asList(
+            AffiliationStatus.REJECTED, AffiliationStatus.REMOVED, AffiliationStatus.REVOKED_TO));
+    private static final List<AffiliationStatus> AFFILIATES_FROM = Collections.unmodifiableList(Arrays.asList(
+            AffiliationStatus.AFFILIATED));
+    private static final List<AffiliationStatus> AFFILIATES_WITH = Collections.unmodifiableList(Arrays.asList(
+            AffiliationStatus.AFFILIATED));
+    private static final List<AffiliationStatus> ACTIVE_REQUEST_FROM = Collections.unmodifiableList(Arrays.asList(
+            AffiliationStatus.ACTIVE_REQUEST, AffiliationStatus.REJECTED, AffiliationStatus.REVOKED_TO));
+    private static final List<AffiliationStatus> ACTIVE_REQUEST_WITH = Collections.unmodifiableList(Arrays.asList(
+            AffiliationStatus.ACTIVE_REQUEST, AffiliationStatus.CANCELLED, AffiliationStatus.REVOKED_FROM));
+
+    /**
+     * Inclusion by filterType, side of the filtering organization and status ordinal.
+     */
+    private static final boolean[][][] INCLUDED;
+
+    static {
+        FilterType[] filterTypes = FilterType.values();
+        INCLUDED = new boolean[filterTypes.length][2][AffiliationStatus.values().length];
+        for (FilterType filterType : filterTypes) {
+            for (AffiliationStatus status : from(filterType)) {
+                INCLUDED[filterType.ordinal()][0][status.ordinal()] = true;
+            }
+            for (AffiliationStatus status : with(filterType)) {
+                INCLUDED[filterType.ordinal()][1][status.ordinal()] = true;
+            }
+        }
+    }
+
+    private FilterStatuses() {
+    }
+
+    /**
+     * Whether the filterType includes an affiliation with the status.
+     *
+     * @param filterType
+     * @param status
+     * @param fromSide   whether the filtering organization is affiliationFrom.
+     * @return
+     */
+    public static boolean includes(FilterType filterType, AffiliationStatus status, boolean fromSide) {
+        return INCLUDED[filterType.ordinal()][fromSide ? 0 : 1][status.ordinal()];
+    }
+
+    /**
+     * Statuses of the filterType when the organization is affiliationFrom.
+     *
+     * @param filterType
+     * @return
+     */
+    public static List<AffiliationStatus> from(FilterType filterType) {
+        switch (filterType) {
+            case UNAFFILIATED:
+                return UNAFFILIATED_FROM;
+            case AFFILIATES:
+                return AFFILIATES_FROM;
+            case ACTIVE_REQUESTS:
+                return ACTIVE_REQUEST_FROM;
+            case ALL:
+            default:
+                return ALL;
+        }
+    }
+
+    /**
+     * Statuses of the filterType when the organization is affiliationWith.
+     *
+     * @param filterType
+     * @return
+     */
+    public static List<AffiliationStatus> with(FilterType filterType) {
+        switch (filterType) {
+            case UNAFFILIATED:
+                return UNAFFILIATED_WITH;
+            case AFFILIATES:
+                return AFFILIATES_WITH;
+            case ACTIVE_REQUESTS:
+                return ACTIVE_REQUEST_WITH;
+            case ALL:
+            default:
+                return ALL;
+        }
+    }
+}
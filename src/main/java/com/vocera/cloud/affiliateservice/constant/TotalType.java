@@ -0,0 +1,43 @@
+/*
+ * Copyright (c) Vocera Communications, Inc. All Rights Reserved.
+ * This software is the confidential and proprietary information of
+ * Vocera Communications, Inc.
+ */
+
+package com.vocera.cloud.affiliateservice.constant;
+
+/**
+ * Kind of total count returned with a page of results.
+ *
+ * @author Rohit Phatak
+ */
+public enum TotalType {
+    NONE("false"),
+    EXACT("exact"),
+    ESTIMATE("estimate");
+
+    private final String parameter;
+
+    TotalType(String parameter) {
+        this.parameter = parameter;
+    }
+
+    /**
+     * Resolve the includeTotal request parameter.
+     *
+     * @param parameter
+     * @return
+     */
+    public static TotalType fromParameter(String parameter) {
+        for (TotalType totalType : values()) {
+            if (totalType.parameter.equalsIgnoreCase(parameter) || totalType.name().equalsIgnoreCase(parameter)) {
+                return totalType;
+            }
+        }
+        throw new IllegalArgumentException("Invalid includeTotal " + parameter);
+    }
+
+    public String getParameter() {
+        return parameter;
+    }
+}
@@ -7,7 +7,10 @@
 package com.vocera.cloud.affiliateservice.controller;
 
 import com.vocera.cloud.affiliateservice.constant.ErrorCodes;
+import com.vocera.cloud.affiliateservice.exception.EventsPrunedException;
 import com.vocera.cloud.affiliateservice.exception.InvalidAffiliationException;
+import com.vocera.cloud.affiliateservice.exception.InvalidCursorException;
+import com.vocera.cloud.affiliateservice.exception.InvalidRequestException;
 import com.vocera.cloud.coremodel.constants.Constraints;
 import com.vocera.cloud.coremodel.model.ErrorResponse;
 import org.slf4j.Logger;
@@ -75,6 +78,54 @@ public class AdviceHandler extends ResponseEntityExceptionHandler {
         return new ResponseEntity<>(error, HttpStatus.NOT_FOUND);
     }
 
+    /**
+     * Exception Handler for @{@link EventsPrunedException}
+     *
+     * @param ex
+     * @return
+     */
+    @ExceptionHandler(EventsPrunedException.class)
+    public final ResponseEntity<ErrorResponse> eventsPruned(EventsPrunedException ex) {
+        LOGGER.info("Events pruned : {}", ex.getMessage());
+        List<String> details = new ArrayList<>();
+        details.add(ex.getMessage());
+        ErrorResponse error = new ErrorResponse(ErrorCodes.EVENTS_PRUNED.getMessage(), details,
+                ErrorCodes.EVENTS_PRUNED.getCode());
+        return new ResponseEntity<>(error, HttpStatus.GONE);
+    }
+
+    /**
+     * Exception Handler for @{@link InvalidCursorException}
+     *
+     * @param ex
+     * @return
+     */
+    @ExceptionHandler(InvalidCursorException.class)
+    public final ResponseEntity<ErrorResponse> invalidCursor(InvalidCursorException ex) {
+        LOGGER.info("Invalid pagination cursor : {}", ex.getMessage());
+        List<String> details = new ArrayList<>();
+        details.add(ex.getMessage());
+        ErrorResponse error = new ErrorResponse(ErrorCodes.INVALID_CURSOR.getMessage(), details,
+                ErrorCodes.INVALID_CURSOR.getCode());
+        return new ResponseEntity<>(error, HttpStatus.BAD_REQUEST);
+    }
+
+    /**
+     * Exception Handler for @{@link InvalidRequestException}
+     *
+     * @param ex
+     * @return
+     */
+    @ExceptionHandler(InvalidRequestException.class)
+    public final ResponseEntity<ErrorResponse> invalidRequest(InvalidRequestException ex) {
+        LOGGER.info("Invalid request : {}", ex.getMessage());
+        List<String> details = new ArrayList<>();
+        details.add(ex.getMessage());
+        ErrorResponse error = new ErrorResponse(ErrorCodes.INVALID_REQUEST.getMessage(), details,
+                ErrorCodes.INVALID_REQUEST.getCode());
+        return new ResponseEntity<>(error, HttpStatus.BAD_REQUEST);
+    }
+
     /**
      * @param ex
      * @param headers
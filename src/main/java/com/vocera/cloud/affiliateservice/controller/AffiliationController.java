@@ -6,21 +6,41 @@
 
 package com.vocera.cloud.affiliateservice.controller;
 
+import com.vocera.cloud.affiliateservice.constant.AffiliationTransition;
+import com.vocera.cloud.affiliateservice.constant.TotalType;
+import com.vocera.cloud.affiliateservice.event.AffiliationEventSubscriber;
 import com.vocera.cloud.affiliateservice.exception.InvalidAffiliationException;
+import com.vocera.cloud.affiliateservice.exception.InvalidRequestException;
+import com.vocera.cloud.affiliateservice.model.AffiliationEvent;
+import com.vocera.cloud.affiliateservice.model.AffiliationEventsResponse;
+import com.vocera.cloud.affiliateservice.model.AffiliationHistoryEntry;
+import com.vocera.cloud.affiliateservice.model.BatchItemResult;
+import com.vocera.cloud.affiliateservice.model.BulkTransitionRequest;
+import com.vocera.cloud.affiliateservice.model.CacheStatistics;
+import com.vocera.cloud.affiliateservice.model.FilterPageResponse;
+import com.vocera.cloud.affiliateservice.model.OrganizationSummary;
+import com.vocera.cloud.affiliateservice.model.TransitionResult;
 import com.vocera.cloud.affiliateservice.service.AffiliateService;
 import com.vocera.cloud.affiliateservice.validator.AffiliationValidator;
 import com.vocera.cloud.coremodel.constants.FilterType;
 import com.vocera.cloud.coremodel.constants.HttpHeader;
 import com.vocera.cloud.coremodel.constants.OrderableColumn;
 import com.vocera.cloud.coremodel.model.Affiliation;
-import com.vocera.cloud.coremodel.model.Organization;
-import com.vocera.cloud.coremodel.model.PageResponse;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.data.domain.Sort;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.CacheControl;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.validation.BeanPropertyBindingResult;
 import org.springframework.validation.BindingResult;
+import org.springframework.validation.FieldError;
+import org.springframework.validation.ObjectError;
 import org.springframework.web.bind.WebDataBinder;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.InitBinder;
@@ -31,8 +51,21 @@ import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.context.request.async.DeferredResult;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import javax.validation.Valid;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
 
 /**
  * Affiliation REST api Controller.
@@ -45,19 +78,40 @@ public class AffiliationController {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(AffiliationController.class);
 
+    private static final MediaType NDJSON = MediaType.parseMediaType("application/x-ndjson");
+
+    /**
+     * Filter responses are cached by the client and revalidated with their ETag on every use.
+     */
+    private static final CacheControl FILTER_CACHE_CONTROL = CacheControl.noCache().cachePrivate();
+
+    private static final int MAX_EVENTS_LIMIT = 1000;
+
+    /**
+     * Items per batch request, a batch runs in one transaction holding the locks of all its pairs.
+     */
+    private static final int MAX_BATCH_SIZE = 1000;
+
+    private static final long MAX_EVENTS_TIMEOUT = 60000;
+
     private AffiliateService affiliateService;
 
     private AffiliationValidator affiliationValidator;
 
+    private ObjectMapper objectMapper;
+
     /**
      * Constructor
      *
      * @param affiliateService
      * @param affiliationValidator
+     * @param objectMapper
      */
-    public AffiliationController(AffiliateService affiliateService, AffiliationValidator affiliationValidator) {
+    public AffiliationController(AffiliateService affiliateService, AffiliationValidator affiliationValidator,
+                                 ObjectMapper objectMapper) {
         this.affiliateService = affiliateService;
         this.affiliationValidator = affiliationValidator;
+        this.objectMapper = objectMapper;
     }
 
     /**
@@ -97,11 +151,87 @@ public class AffiliationController {
         return new ResponseEntity<>(affiliate, HttpStatus.OK);
     }
 
+    /**
+     * Check the affiliation of the organization with another organization.
+     *
+     * @param organizationId
+     * @param otherOrganizationId
+     * @return affiliation, with status NONE if the organizations are not affiliated.
+     */
+    @GetMapping("/check/{organizationId}")
+    public ResponseEntity<Affiliation> checkAffiliation(
+            @RequestHeader(HttpHeader.ORGANIZATION_ID) Long organizationId,
+            @PathVariable("organizationId") Long otherOrganizationId) {
+        LOGGER.info("Check affiliation called on {} by {}", otherOrganizationId, organizationId);
+        return new ResponseEntity<>(this.affiliateService.checkAffiliation(organizationId, otherOrganizationId),
+                HttpStatus.OK);
+    }
+
+    /**
+     * Hit, miss and eviction statistics of the affiliation check cache.
+     *
+     * @return
+     */
+    @GetMapping("/check-cache/stats")
+    public ResponseEntity<CacheStatistics> checkCacheStatistics() {
+        return new ResponseEntity<>(this.affiliateService.checkCacheStatistics(), HttpStatus.OK);
+    }
+
+    /**
+     * Request for Affiliations in bulk.
+     * Every item is validated with AffiliateValidator, invalid items are reported and the others are processed.
+     * A batch of more than MAX_BATCH_SIZE items is rejected as a whole.
+     *
+     * @param affiliations
+     * @param organizationId
+     * @return one result per item, in the order of the request.
+     */
+    @PostMapping("/batch")
+    public ResponseEntity<List<BatchItemResult>> affiliateBatch(
+            @RequestBody List<Affiliation> affiliations,
+            @RequestHeader(HttpHeader.ORGANIZATION_ID) Long organizationId) {
+        LOGGER.info("Batch of {} Affiliations Requested by {}", affiliations.size(), organizationId);
+        if (affiliations.size() > MAX_BATCH_SIZE) {
+            throw new InvalidRequestException("A batch holds at most " + MAX_BATCH_SIZE + " affiliations");
+        }
+
+        BatchItemResult[] results = new BatchItemResult[affiliations.size()];
+        List<Affiliation> validAffiliations = new ArrayList<>();
+        List<Integer> validIndexes = new ArrayList<>();
+        for (int i = 0; i < affiliations.size(); i++) {
+            BindingResult bindingResult = new BeanPropertyBindingResult(affiliations.get(i), "affiliation");
+            affiliationValidator.validate(affiliations.get(i), bindingResult);
+            if (bindingResult.hasErrors()) {
+                results[i] = BatchItemResult.invalid(i, bindingResult.getAllErrors().stream()
+                        .map(ObjectError::getDefaultMessage).collect(Collectors.toList()));
+            } else {
+                validAffiliations.add(affiliations.get(i));
+                validIndexes.add(i);
+            }
+        }
+
+        List<BatchItemResult> processed = affiliateService.affiliateAll(validAffiliations, organizationId);
+        for (int i = 0; i < processed.size(); i++) {
+            BatchItemResult result = processed.get(i);
+            results[validIndexes.get(i)] = new BatchItemResult(validIndexes.get(i), result.getStatus(),
+                    result.getAffiliation(), result.getErrors());
+        }
+        return new ResponseEntity<>(Arrays.asList(results), HttpStatus.OK);
+    }
+
     /**
      * Filter through affiliations.
+     * Passing the after parameter switches to keyset pagination, where page is ignored and nextCursor of the
+     * response is sent as after for the next page.
+     * includeTotal=false skips the count query, the response has totalCount=-1 and only reports hasNext.
+     * includeTotal=estimate serves a cached count.
+     * The response carries an ETag, a request with a matching If-None-Match gets 304 without a query on the
+     * affiliations.
      *
      * @param page
      * @param offset
+     * @param after
+     * @param includeTotal
      * @param query
      * @param sort
      * @param order
@@ -110,27 +240,188 @@ public class AffiliationController {
      * @return
      */
     @GetMapping("/filter")
-    public ResponseEntity<PageResponse<Affiliation>> filterAffiliation(
-            @RequestParam("page") int page,
+    public ResponseEntity<FilterPageResponse<Affiliation>> filterAffiliation(
+            @RequestParam(value = "page", required = false, defaultValue = "0") int page,
             @RequestParam("offset") int offset,
+            @RequestParam(value = "after", required = false) String after,
+            @RequestParam(value = "includeTotal", required = false, defaultValue = "exact") TotalType includeTotal,
             @RequestParam(value = "query", required = false, defaultValue = "") String query,
             @RequestParam(value = "sort", required = false, defaultValue = "NAME") OrderableColumn sort,
             @RequestParam(value = "order", required = false, defaultValue = "ASC") Sort.Direction order,
             @RequestParam(value = "filterType", required = false, defaultValue = "ALL") FilterType filterType,
+            @RequestHeader(HttpHeader.ORGANIZATION_ID) Long organizationId,
+            WebRequest webRequest) {
+        LOGGER.info("Filter affiliation called on Page:{}, Offset:{}, After:{}, includeTotal:{}, query:{}, sort:{}, " +
+                        "order:{}, filterType:{} by {}", page, offset, after, includeTotal, query, sort, order,
+                filterType, organizationId);
+
+        FilterPage.check(page, offset, after);
+        if (webRequest.checkNotModified(this.filterETag(organizationId, "filter", page, offset, after, includeTotal,
+                query, sort, order, filterType))) {
+            return null;
+        }
+        if (after != null) {
+            return ResponseEntity.ok().cacheControl(FILTER_CACHE_CONTROL).body(affiliateService.filterAffiliation(
+                    offset, after, includeTotal, query, sort, order, filterType, organizationId));
+        }
+        return ResponseEntity.ok().cacheControl(FILTER_CACHE_CONTROL).body(affiliateService.filterAffiliation(page,
+                offset, includeTotal, query, sort, order, filterType, organizationId));
+    }
+
+
+    /**
+     * Number of affiliations in every filterType, matching the query like the filter endpoints.
+     *
+     * @param query
+     * @param organizationId
+     * @return
+     */
+    @GetMapping("/counts")
+    public ResponseEntity<Map<FilterType, Long>> filterCounts(
+            @RequestParam(value = "query", required = false, defaultValue = "") String query,
             @RequestHeader(HttpHeader.ORGANIZATION_ID) Long organizationId) {
-        LOGGER.info("Filter affiliation called on Page:{}, Offset:{}, query:{}, sort:{}, order:{}, filterType:{} by " +
-                "{}", page, offset, query, sort, order, filterType, organizationId);
+        LOGGER.info("Filter counts called with query:{} by {}", query, organizationId);
+        return new ResponseEntity<>(affiliateService.filterCounts(query, organizationId), HttpStatus.OK);
+    }
 
-        return new ResponseEntity<>(affiliateService.filterAffiliation(page, offset, query, sort, order, filterType,
-                organizationId), HttpStatus.OK);
+    /**
+     * Export every affiliation matching the filter as newline delimited json, one affiliation per line.
+     * Rows are written as they are read from the database, without paging.
+     *
+     * @param query
+     * @param sort
+     * @param order
+     * @param filterType
+     * @param organizationId
+     * @return
+     */
+    @GetMapping("/export")
+    public ResponseEntity<StreamingResponseBody> exportAffiliations(
+            @RequestParam(value = "query", required = false, defaultValue = "") String query,
+            @RequestParam(value = "sort", required = false, defaultValue = "NAME") OrderableColumn sort,
+            @RequestParam(value = "order", required = false, defaultValue = "ASC") Sort.Direction order,
+            @RequestParam(value = "filterType", required = false, defaultValue = "ALL") FilterType filterType,
+            @RequestHeader(HttpHeader.ORGANIZATION_ID) Long organizationId) {
+        LOGGER.info("Export affiliation called with query:{}, sort:{}, order:{}, filterType:{} by {}", query, sort,
+                order, filterType, organizationId);
+
+        ObjectWriter writer = objectMapper.writerFor(Affiliation.class)
+                .without(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+        StreamingResponseBody body = outputStream -> {
+            long count = affiliateService.exportAffiliations(query, sort, order, filterType, organizationId,
+                    affiliation -> {
+                        try {
+                            writer.writeValue(outputStream, affiliation);
+                            outputStream.write('\n');
+                        } catch (IOException e) {
+                            throw new UncheckedIOException(e);
+                        }
+                    });
+            LOGGER.info("Exported {} affiliations of {}", count, organizationId);
+        };
+        return ResponseEntity.ok().contentType(NDJSON).body(body);
+    }
+
+    /**
+     * Export the recorded status transitions of the organization as newline delimited json, oldest first.
+     * With organizationId only the transitions of the pair are exported, from and to limit the time range.
+     *
+     * @param otherOrganizationId
+     * @param from
+     * @param to
+     * @param organizationId
+     * @return
+     */
+    @GetMapping("/history")
+    public ResponseEntity<StreamingResponseBody> exportHistory(
+            @RequestParam(value = "organizationId", required = false) Long otherOrganizationId,
+            @RequestParam(value = "from", required = false)
+            @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Date from,
+            @RequestParam(value = "to", required = false)
+            @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Date to,
+            @RequestHeader(HttpHeader.ORGANIZATION_ID) Long organizationId) {
+        LOGGER.info("Export history called with organizationId:{}, from:{}, to:{} by {}", otherOrganizationId, from,
+                to, organizationId);
+
+        ObjectWriter writer = objectMapper.writerFor(AffiliationHistoryEntry.class)
+                .without(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+        StreamingResponseBody body = outputStream -> {
+            long count = affiliateService.exportHistory(organizationId, otherOrganizationId, from, to,
+                    entry -> {
+                        try {
+                            writer.writeValue(outputStream, entry);
+                            outputStream.write('\n');
+                        } catch (IOException e) {
+                            throw new UncheckedIOException(e);
+                        }
+                    });
+            LOGGER.info("Exported {} history entries of {}", count, organizationId);
+        };
+        return ResponseEntity.ok().contentType(NDJSON).body(body);
+    }
+
+    /**
+     * Long-poll the affiliation change feed.
+     * Responds as soon as there are events after since, otherwise without events once timeout milliseconds have
+     * passed. Without since only events committed after the request are returned. lastSeq of the response is the
+     * since of the next poll.
+     *
+     * @param since
+     * @param limit
+     * @param timeout
+     * @return
+     */
+    @GetMapping("/events")
+    public DeferredResult<AffiliationEventsResponse> pollEvents(
+            @RequestParam(value = "since", required = false) Long since,
+            @RequestParam(value = "limit", required = false, defaultValue = "100") int limit,
+            @RequestParam(value = "timeout", required = false, defaultValue = "30000") long timeout) {
+        LOGGER.info("Poll events called after {}, limit:{}, timeout:{}", since, limit, timeout);
+
+        long start = since != null ? since : affiliateService.latestEventSeq();
+        DeferredResult<AffiliationEventsResponse> result = new DeferredResult<>(
+                Math.max(1, Math.min(timeout, MAX_EVENTS_TIMEOUT)),
+                new AffiliationEventsResponse(Collections.emptyList(), start));
+        LongPollSubscriber subscriber = new LongPollSubscriber(result, start,
+                Math.max(1, Math.min(limit, MAX_EVENTS_LIMIT)));
+        result.onCompletion(() -> affiliateService.unsubscribeEvents(subscriber));
+        affiliateService.subscribeEvents(subscriber);
+        return result;
     }
 
+    /**
+     * Stream the affiliation change feed as server-sent events, named affiliation with the seq as id.
+     * A reconnecting client resumes after its Last-Event-ID, otherwise the stream starts after since or with the
+     * events committed after the request.
+     *
+     * @param since
+     * @param lastEventId
+     * @return
+     */
+    @GetMapping(value = "/events", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter streamEvents(
+            @RequestParam(value = "since", required = false) Long since,
+            @RequestHeader(value = "Last-Event-ID", required = false) Long lastEventId) {
+        LOGGER.info("Stream events called after {}, Last-Event-ID:{}", since, lastEventId);
+
+        long start = lastEventId != null ? lastEventId : since != null ? since : affiliateService.latestEventSeq();
+        SseEmitter emitter = new SseEmitter();
+        SseSubscriber subscriber = new SseSubscriber(emitter, start);
+        emitter.onCompletion(() -> affiliateService.unsubscribeEvents(subscriber));
+        emitter.onTimeout(emitter::complete);
+        affiliateService.subscribeEvents(subscriber);
+        return emitter;
+    }
 
     /**
      * Filter through organizations in Affiliations.
+     * Supports keyset pagination through the after parameter and conditional requests like /filter.
+     * includeTotal=false skips the count query, the response has totalCount=-1 and only reports hasNext.
      *
      * @param page
      * @param offset
+     * @param after
+     * @param includeTotal
      * @param query
      * @param sort
      * @param order
@@ -139,19 +430,49 @@ public class AffiliationController {
      * @return
      */
     @GetMapping("/organization/filter")
-    public ResponseEntity<PageResponse<Organization>> filterAffiliationOrganization(
-            @RequestParam("page") int page,
+    public ResponseEntity<FilterPageResponse<OrganizationSummary>> filterAffiliationOrganization(
+            @RequestParam(value = "page", required = false, defaultValue = "0") int page,
             @RequestParam("offset") int offset,
+            @RequestParam(value = "after", required = false) String after,
+            @RequestParam(value = "includeTotal", required = false, defaultValue = "exact") TotalType includeTotal,
             @RequestParam(value = "query", required = false, defaultValue = "") String query,
             @RequestParam(value = "sort", required = false, defaultValue = "NAME") OrderableColumn sort,
             @RequestParam(value = "order", required = false, defaultValue = "ASC") Sort.Direction order,
             @RequestParam(value = "filterType", required = false, defaultValue = "ALL") FilterType filterType,
-            @RequestHeader(HttpHeader.ORGANIZATION_ID) Long organizationId) {
-        LOGGER.info("Filter organization called on Page:{}, Offset:{}, query:{}, sort:{}, order:{}, filterType:{} by " +
-                "{}", page, offset, query, sort, order, filterType, organizationId);
+            @RequestHeader(HttpHeader.ORGANIZATION_ID) Long organizationId,
+            WebRequest webRequest) {
+        LOGGER.info("Filter organization called on Page:{}, Offset:{}, After:{}, includeTotal:{}, query:{}, sort:{}, " +
+                        "order:{}, filterType:{} by {}", page, offset, after, includeTotal, query, sort, order,
+                filterType, organizationId);
 
-        return new ResponseEntity<>(affiliateService.filterAffiliationOrganization(page, offset, query, sort, order,
-                filterType, organizationId), HttpStatus.OK);
+        FilterPage.check(page, offset, after);
+        if (webRequest.checkNotModified(this.filterETag(organizationId, "organization/filter", page, offset, after,
+                includeTotal, query, sort, order, filterType))) {
+            return null;
+        }
+        if (after != null) {
+            return ResponseEntity.ok().cacheControl(FILTER_CACHE_CONTROL).body(
+                    affiliateService.filterAffiliationOrganization(offset, after, includeTotal, query, sort, order,
+                            filterType, organizationId));
+        }
+        return ResponseEntity.ok().cacheControl(FILTER_CACHE_CONTROL).body(
+                affiliateService.filterAffiliationOrganization(page, offset, includeTotal, query, sort, order,
+                        filterType, organizationId));
+    }
+
+    /**
+     * Weak ETag of a filter response, from the affiliation version of the organization and the request parameters.
+     * The version is read before the page, so a response is never tagged with a newer version than its data.
+     * Changes to the counterpart organizations themselves, such as a new name, do not change the version.
+     *
+     * @param organizationId
+     * @param endpoint
+     * @param parameters
+     * @return
+     */
+    private String filterETag(Long organizationId, String endpoint, Object... parameters) {
+        return FilterETag.of(affiliateService.affiliationVersion(organizationId), organizationId, endpoint,
+                parameters);
     }
 
     /**
@@ -233,4 +554,159 @@ public class AffiliationController {
         return new ResponseEntity<>(this.affiliateService.removeAffiliation(organizationId, affiliateWith),
                 HttpStatus.OK);
     }
+
+    /**
+     * Approve affiliation requests of many organizations.
+     *
+     * @param organizationId
+     * @param bulkTransitionRequest
+     * @return
+     */
+    @PostMapping("/approve")
+    public ResponseEntity<List<TransitionResult>> approveAffiliations(
+            @RequestHeader(HttpHeader.ORGANIZATION_ID) Long organizationId,
+            @RequestBody BulkTransitionRequest bulkTransitionRequest) {
+        return this.transitionAll(AffiliationTransition.APPROVE, organizationId, bulkTransitionRequest);
+    }
+
+    /**
+     * Reject affiliation requests of many organizations.
+     *
+     * @param organizationId
+     * @param bulkTransitionRequest
+     * @return
+     */
+    @PostMapping("/reject")
+    public ResponseEntity<List<TransitionResult>> rejectAffiliations(
+            @RequestHeader(HttpHeader.ORGANIZATION_ID) Long organizationId,
+            @RequestBody BulkTransitionRequest bulkTransitionRequest) {
+        return this.transitionAll(AffiliationTransition.REJECT, organizationId, bulkTransitionRequest);
+    }
+
+    /**
+     * Revoke affiliations of many organizations.
+     *
+     * @param organizationId
+     * @param bulkTransitionRequest
+     * @return
+     */
+    @PostMapping("/revoke")
+    public ResponseEntity<List<TransitionResult>> revokeAffiliations(
+            @RequestHeader(HttpHeader.ORGANIZATION_ID) Long organizationId,
+            @RequestBody BulkTransitionRequest bulkTransitionRequest) {
+        return this.transitionAll(AffiliationTransition.REVOKE, organizationId, bulkTransitionRequest);
+    }
+
+    /**
+     * Remove affiliations of many organizations.
+     *
+     * @param organizationId
+     * @param bulkTransitionRequest
+     * @return
+     */
+    @PostMapping("/remove")
+    public ResponseEntity<List<TransitionResult>> removeAffiliations(
+            @RequestHeader(HttpHeader.ORGANIZATION_ID) Long organizationId,
+            @RequestBody BulkTransitionRequest bulkTransitionRequest) {
+        return this.transitionAll(AffiliationTransition.REMOVE, organizationId, bulkTransitionRequest);
+    }
+
+    /**
+     * Either the organization ids or the filterType select the organizations of a bulk status change.
+     *
+     * @param transition
+     * @param organizationId
+     * @param bulkTransitionRequest
+     * @return
+     */
+    private ResponseEntity<List<TransitionResult>> transitionAll(AffiliationTransition transition,
+                                                                 Long organizationId,
+                                                                 BulkTransitionRequest bulkTransitionRequest) {
+        LOGGER.info("Bulk {} called on {} by {}", transition, bulkTransitionRequest.getFilterType() != null ?
+                bulkTransitionRequest.getFilterType() : bulkTransitionRequest.getOrganizationIds(), organizationId);
+        if ((bulkTransitionRequest.getOrganizationIds() == null) == (bulkTransitionRequest.getFilterType() == null)) {
+            LOGGER.info("Invalid Request for Bulk {}", transition);
+            throw new InvalidAffiliationException(transition.getFailureMessage(), Arrays.asList(
+                    new FieldError("bulkTransitionRequest", "organizationIds",
+                            "Either organizationIds or filterType is required")));
+        }
+        return new ResponseEntity<>(this.affiliateService.transitionAll(transition, organizationId,
+                bulkTransitionRequest), HttpStatus.OK);
+    }
+
+    /**
+     * Completes a long-poll with the first events delivered.
+     */
+    private static final class LongPollSubscriber implements AffiliationEventSubscriber {
+
+        private final DeferredResult<AffiliationEventsResponse> result;
+
+        private final long since;
+
+        private final int limit;
+
+        private LongPollSubscriber(DeferredResult<AffiliationEventsResponse> result, long since, int limit) {
+            this.result = result;
+            this.since = since;
+            this.limit = limit;
+        }
+
+        @Override
+        public long getSince() {
+            return since;
+        }
+
+        @Override
+        public boolean deliver(List<AffiliationEvent> events) {
+            List<AffiliationEvent> page = events.size() > limit ? new ArrayList<>(events.subList(0, limit)) : events;
+            result.setResult(new AffiliationEventsResponse(page, page.get(page.size() - 1).getSeq()));
+            return false;
+        }
+    }
+
+    /**
+     * Sends every event delivered to the event stream, until the stream is closed.
+     */
+    private static final class SseSubscriber implements AffiliationEventSubscriber {
+
+        private final SseEmitter emitter;
+
+        private volatile long since;
+
+        private SseSubscriber(SseEmitter emitter, long since) {
+            this.emitter = emitter;
+            this.since = since;
+        }
+
+        @Override
+        public long getSince() {
+            return since;
+        }
+
+        @Override
+        public boolean deliver(List<AffiliationEvent> events) {
+            try {
+                for (AffiliationEvent event : events) {
+                    emitter.send(SseEmitter.event().id(String.valueOf(event.getSeq())).name("affiliation")
+                            .data(event, MediaType.APPLICATION_JSON));
+                    since = event.getSeq();
+                }
+                return true;
+            } catch (IOException e) {
+                LOGGER.info("Event stream closed : {}", e.getMessage());
+                emitter.completeWithError(e);
+                return false;
+            } catch (IllegalStateException e) {
+                return false;
+            }
+        }
+
+        /**
+         * Close the stream, the client reconnects with the seq of the last event it received as Last-Event-ID.
+         */
+        @Override
+        public void close() {
+            emitter.complete();
+        }
+    }
 }
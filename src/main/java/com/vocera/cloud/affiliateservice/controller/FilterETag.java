@@ -0,0 +1,38 @@
+/*
+ * Copyright (c) Vocera Communications, Inc. All Rights Reserved.
+ * This software is the confidential and proprietary information of
+ * Vocera Communications, Inc.
+ */
+
+package com.vocera.cloud.affiliateservice.controller;
+
+import org.springframework.util.DigestUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Weak ETag of a filter response, from the affiliation version of the organization and the request parameters.
+ * Shared by the servlet and the reactive controllers, so a response revalidates on either of them.
+ *
+ * @author Rohit Phatak
+ */
+public final class FilterETag {
+
+    private FilterETag() {
+    }
+
+    /**
+     * Build the ETag.
+     *
+     * @param version        affiliation version of the organization, read before the page.
+     * @param organizationId
+     * @param endpoint
+     * @param parameters
+     * @return
+     */
+    public static String of(long version, Long organizationId, String endpoint, Object... parameters) {
+        String request = endpoint + ":" + organizationId + ":" + Arrays.toString(parameters);
+        return "W/\"" + version + "-" + DigestUtils.md5DigestAsHex(request.getBytes(StandardCharsets.UTF_8)) + "\"";
+    }
+}
@@ -0,0 +1,44 @@
+/*
+ * Copyright (c) Vocera Communications, Inc. All Rights Reserved.
+ * This software is the confidential and proprietary information of
+ * Vocera Communications, Inc.
+ */
+
+package com.vocera.cloud.affiliateservice.controller;
+
+import com.vocera.cloud.affiliateservice.exception.InvalidRequestException;
+
+/**
+ * Checks of the page and offset parameters of a filter request.
+ * Shared by the servlet and the reactive controllers, so both reject the same requests.
+ *
+ * @author Rohit Phatak
+ */
+public final class FilterPage {
+
+    private FilterPage() {
+    }
+
+    /**
+     * Check the page size, and the page unless the request seeks past a cursor.
+     * The rows skipped and fetched for the page have to fit the int window of a query.
+     *
+     * @param page
+     * @param offset page size.
+     * @param after  cursor of a keyset request, null in page mode.
+     */
+    public static void check(int page, int offset, String after) {
+        if (offset < 1) {
+            throw new InvalidRequestException("offset has to be at least 1");
+        }
+        if (after != null) {
+            return;
+        }
+        if (page < 0) {
+            throw new InvalidRequestException("page cannot be negative");
+        }
+        if ((long) page * offset + offset >= Integer.MAX_VALUE) {
+            throw new InvalidRequestException("page " + page + " of " + offset + " rows is out of range");
+        }
+    }
+}
@@ -0,0 +1,83 @@
+/*
+ * Copyright (c) Vocera Communications, Inc. All Rights Reserved.
+ * This software is the confidential and proprietary information of
+ * Vocera Communications, Inc.
+ */
+
+package com.vocera.cloud.affiliateservice.event;
+
+import com.vocera.cloud.coremodel.constants.AffiliationStatus;
+
+/**
+ * Published by the affiliation service whenever the status of an affiliation changes.
+ * Listeners which keep derived state should use the after commit phase, so a rolled back transition is never seen.
+ *
+ * @author Rohit Phatak
+ */
+public class AffiliationChangedEvent {
+
+    private final long affiliationId;
+
+    private final long affiliationFrom;
+
+    private final long affiliationWith;
+
+    private final AffiliationStatus previousStatus;
+
+    private final AffiliationStatus status;
+
+    private final boolean active;
+
+    private final long actionedBy;
+
+    /**
+     * Constructor.
+     *
+     * @param affiliationId
+     * @param affiliationFrom
+     * @param affiliationWith
+     * @param previousStatus
+     * @param status
+     * @param active
+     * @param actionedBy
+     */
+    public AffiliationChangedEvent(long affiliationId, long affiliationFrom, long affiliationWith,
+                                   AffiliationStatus previousStatus, AffiliationStatus status, boolean active,
+                                   long actionedBy) {
+        this.affiliationId = affiliationId;
+        this.affiliationFrom = affiliationFrom;
+        this.affiliationWith = affiliationWith;
+        this.previousStatus = previousStatus;
+        this.status = status;
+        this.active = active;
+        this.actionedBy = actionedBy;
+    }
+
+    public long getAffiliationId() {
+        return affiliationId;
+    }
+
+    public long getAffiliationFrom() {
+        return affiliationFrom;
+    }
+
+    public long getAffiliationWith() {
+        return affiliationWith;
+    }
+
+    public AffiliationStatus getPreviousStatus() {
+        return previousStatus;
+    }
+
+    public AffiliationStatus getStatus() {
+        return status;
+    }
+
+    public boolean isActive() {
+        return active;
+    }
+
+    public long getActionedBy() {
+        return actionedBy;
+    }
+}
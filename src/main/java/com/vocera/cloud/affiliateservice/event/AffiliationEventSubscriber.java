@@ -0,0 +1,42 @@
+/*
+ * Copyright (c) Vocera Communications, Inc. All Rights Reserved.
+ * This software is the confidential and proprietary information of
+ * Vocera Communications, Inc.
+ */
+
+package com.vocera.cloud.affiliateservice.event;
+
+import com.vocera.cloud.affiliateservice.model.AffiliationEvent;
+
+import java.util.List;
+
+/**
+ * Consumer of the affiliation change feed.
+ * Events are delivered in seq order, starting after the seq the subscriber reports.
+ *
+ * @author Rohit Phatak
+ */
+public interface AffiliationEventSubscriber {
+
+    /**
+     * Seq of the last event the subscriber has received.
+     *
+     * @return
+     */
+    long getSince();
+
+    /**
+     * Deliver the next events, in seq order and all after getSince.
+     * A subscriber staying subscribed has to report the seq of the last event as getSince afterwards.
+     *
+     * @param events
+     * @return false once the subscriber does not want any further events.
+     */
+    boolean deliver(List<AffiliationEvent> events);
+
+    /**
+     * Called when the feed drops the subscriber for falling behind, no further events are delivered.
+     */
+    default void close() {
+    }
+}
@@ -0,0 +1,24 @@
+/*
+ * Copyright (c) Vocera Communications, Inc. All Rights Reserved.
+ * This software is the confidential and proprietary information of
+ * Vocera Communications, Inc.
+ */
+
+package com.vocera.cloud.affiliateservice.exception;
+
+/**
+ * Raised when the change feed is read from a seq whose following events were already pruned.
+ *
+ * @author Rohit Phatak
+ */
+public class EventsPrunedException extends RuntimeException {
+
+    /**
+     * Constructor.
+     *
+     * @param message
+     */
+    public EventsPrunedException(String message) {
+        super(message);
+    }
+}
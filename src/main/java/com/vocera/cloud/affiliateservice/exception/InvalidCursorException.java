@@ -0,0 +1,25 @@
+/*
+ * Copyright (c) Vocera Communications, Inc. All Rights Reserved.
+ * This software is the confidential and proprietary information of
+ * Vocera Communications, Inc.
+ */
+
+package com.vocera.cloud.affiliateservice.exception;
+
+/**
+ * Raised when a pagination cursor cannot be decoded.
+ *
+ * @author Rohit Phatak
+ */
+public class InvalidCursorException extends RuntimeException {
+
+    /**
+     * Constructor.
+     *
+     * @param message
+     * @param cause
+     */
+    public InvalidCursorException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
@@ -0,0 +1,24 @@
+/*
+ * Copyright (c) Vocera Communications, Inc. All Rights Reserved.
+ * This software is the confidential and proprietary information of
+ * Vocera Communications, Inc.
+ */
+
+package com.vocera.cloud.affiliateservice.exception;
+
+/**
+ * Raised when a request parameter is out of its allowed range.
+ *
+ * @author Rohit Phatak
+ */
+public class InvalidRequestException extends RuntimeException {
+
+    /**
+     * Constructor.
+     *
+     * @param message
+     */
+    public InvalidRequestException(String message) {
+        super(message);
+    }
+}
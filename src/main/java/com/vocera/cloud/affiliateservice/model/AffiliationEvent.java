@@ -0,0 +1,101 @@
+/*
+ * Copyright (c) Vocera Communications, Inc. All Rights Reserved.
+ * This software is the confidential and proprietary information of
+ * Vocera Communications, Inc.
+ */
+
+package com.vocera.cloud.affiliateservice.model;
+
+import com.vocera.cloud.coremodel.constants.AffiliationStatus;
+
+import java.util.Date;
+
+/**
+ * Status change of an affiliation as recorded in the outbox and served by the change feed.
+ * seq orders the events in the order their transactions committed.
+ *
+ * @author Rohit Phatak
+ */
+public class AffiliationEvent {
+
+    private long seq;
+
+    private long affiliationId;
+
+    private long affiliationFrom;
+
+    private long affiliationWith;
+
+    private AffiliationStatus previousStatus;
+
+    private AffiliationStatus status;
+
+    private boolean active;
+
+    private long actionedBy;
+
+    private Date createdAt;
+
+    /**
+     * Constructor.
+     *
+     * @param seq
+     * @param affiliationId
+     * @param affiliationFrom
+     * @param affiliationWith
+     * @param previousStatus
+     * @param status
+     * @param active
+     * @param actionedBy
+     * @param createdAt
+     */
+    public AffiliationEvent(long seq, long affiliationId, long affiliationFrom, long affiliationWith,
+                            AffiliationStatus previousStatus, AffiliationStatus status, boolean active,
+                            long actionedBy, Date createdAt) {
+        this.seq = seq;
+        this.affiliationId = affiliationId;
+        this.affiliationFrom = affiliationFrom;
+        this.affiliationWith = affiliationWith;
+        this.previousStatus = previousStatus;
+        this.status = status;
+        this.active = active;
+        this.actionedBy = actionedBy;
+        this.createdAt = createdAt;
+    }
+
+    public long getSeq() {
+        return seq;
+    }
+
+    public long getAffiliationId() {
+        return affiliationId;
+    }
+
+    public long getAffiliationFrom() {
+        return affiliationFrom;
+    }
+
+    public long getAffiliationWith() {
+        return affiliationWith;
+    }
+
+    public AffiliationStatus getPreviousStatus() {
+        return previousStatus;
+    }
+
+    public AffiliationStatus getStatus() {
+        return status;
+    }
+
+    public boolean isActive() {
+        return active;
+    }
+
+    public long getActionedBy() {
+        return actionedBy;
+    }
+
+    public Date getCreatedAt() {
+        return createdAt;
+    }
+}
@@ -0,0 +1,41 @@
+/*
+ * Copyright (c) Vocera Communications, Inc. All Rights Reserved.
+ * This software is the confidential and proprietary information of
+ * Vocera Communications, Inc.
+ */
+
+package com.vocera.cloud.affiliateservice.model;
+
+import java.util.List;
+
+/**
+ * Response of a long-poll on the affiliation change feed.
+ * lastSeq is the seq to poll after next, the seq of the last event or the requested seq when there are none.
+ *
+ * @author Rohit Phatak
+ */
+public class AffiliationEventsResponse {
+
+    private List<AffiliationEvent> events;
+
+    private long lastSeq;
+
+    /**
+     * Constructor.
+     *
+     * @param events
+     * @param lastSeq
+     */
+    public AffiliationEventsResponse(List<AffiliationEvent> events, long lastSeq) {
+        this.events = events;
+        this.lastSeq = lastSeq;
+    }
+
+    public List<AffiliationEvent> getEvents() {
+        return events;
+    }
+
+    public long getLastSeq() {
+        return lastSeq;
+    }
+}
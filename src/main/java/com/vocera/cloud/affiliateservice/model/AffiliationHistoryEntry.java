@@ -0,0 +1,84 @@
+/*
+ * Copyright (c) Vocera Communications, Inc. All Rights Reserved.
+ * This software is the confidential and proprietary information of
+ * Vocera Communications, Inc.
+ */
+
+package com.vocera.cloud.affiliateservice.model;
+
+import com.vocera.cloud.coremodel.constants.AffiliationStatus;
+
+import java.util.Date;
+
+/**
+ * Status transition of an affiliation as recorded in the affiliation history.
+ *
+ * @author Rohit Phatak
+ */
+public class AffiliationHistoryEntry {
+
+    private long affiliationId;
+
+    private long affiliationFrom;
+
+    private long affiliationWith;
+
+    private AffiliationStatus previousStatus;
+
+    private AffiliationStatus status;
+
+    private long actionedBy;
+
+    private Date createdAt;
+
+    /**
+     * Constructor.
+     *
+     * @param affiliationId
+     * @param affiliationFrom
+     * @param affiliationWith
+     * @param previousStatus
+     * @param status
+     * @param actionedBy
+     * @param createdAt
+     */
+    public AffiliationHistoryEntry(long affiliationId, long affiliationFrom, long affiliationWith,
+                                   AffiliationStatus previousStatus, AffiliationStatus status, long actionedBy,
+                                   Date createdAt) {
+        this.affiliationId = affiliationId;
+        this.affiliationFrom = affiliationFrom;
+        this.affiliationWith = affiliationWith;
+        this.previousStatus = previousStatus;
+        this.status = status;
+        this.actionedBy = actionedBy;
+        this.createdAt = createdAt;
+    }
+
+    public long getAffiliationId() {
+        return affiliationId;
+    }
+
+    public long getAffiliationFrom() {
+        return affiliationFrom;
+    }
+
+    public long getAffiliationWith() {
+        return affiliationWith;
+    }
+
+    public AffiliationStatus getPreviousStatus() {
+        return previousStatus;
+    }
+
+    public AffiliationStatus getStatus() {
+        return status;
+    }
+
+    public long getActionedBy() {
+        return actionedBy;
+    }
+
+    public Date getCreatedAt() {
+        return createdAt;
+    }
+}
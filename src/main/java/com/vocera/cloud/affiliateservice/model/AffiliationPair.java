@@ -0,0 +1,69 @@
+/*
+ * Copyright (c) Vocera Communications, Inc. All Rights Reserved.
+ * This software is the confidential and proprietary information of
+ * Vocera Communications, Inc.
+ */
+
+package com.vocera.cloud.affiliateservice.model;
+
+import java.util.Objects;
+
+/**
+ * Order independent key for a pair of organizations.
+ * An affiliation between A and B has the same key as an affiliation between B and A.
+ *
+ * @author Rohit Phatak
+ */
+public final class AffiliationPair {
+
+    private final long low;
+
+    private final long high;
+
+    private AffiliationPair(long low, long high) {
+        this.low = low;
+        this.high = high;
+    }
+
+    /**
+     * Create the canonical key for two organizations.
+     *
+     * @param organization1
+     * @param organization2
+     * @return
+     */
+    public static AffiliationPair of(long organization1, long organization2) {
+        return organization1 <= organization2 ? new AffiliationPair(organization1, organization2) :
+                new AffiliationPair(organization2, organization1);
+    }
+
+    public long getLow() {
+        return low;
+    }
+
+    public long getHigh() {
+        return high;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof AffiliationPair)) {
+            return false;
+        }
+        AffiliationPair that = (AffiliationPair) o;
+        return low == that.low && high == that.high;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(low, high);
+    }
+
+    @Override
+    public String toString() {
+        return low + ":" + high;
+    }
+}
@@ -0,0 +1,48 @@
+/*
+ * Copyright (c) Vocera Communications, Inc. All Rights Reserved.
+ * This software is the confidential and proprietary information of
+ * Vocera Communications, Inc.
+ */
+
+package com.vocera.cloud.affiliateservice.model;
+
+import com.vocera.cloud.coremodel.model.Affiliation;
+
+/**
+ * Outcome of an affiliation request for an organization pair.
+ *
+ * @author Rohit Phatak
+ */
+public class AffiliationRequestResult {
+
+    private final Affiliation affiliation;
+
+    private final boolean created;
+
+    private final StatusChange removed;
+
+    /**
+     * Constructor.
+     *
+     * @param affiliation active affiliation of the pair after the request.
+     * @param created     true if the request created the affiliation, false if an existing one was kept.
+     * @param removed     affiliation removed to make way for the request, null if there was none.
+     */
+    public AffiliationRequestResult(Affiliation affiliation, boolean created, StatusChange removed) {
+        this.affiliation = affiliation;
+        this.created = created;
+        this.removed = removed;
+    }
+
+    public Affiliation getAffiliation() {
+        return affiliation;
+    }
+
+    public boolean isCreated() {
+        return created;
+    }
+
+    public StatusChange getRemoved() {
+        return removed;
+    }
+}
@@ -0,0 +1,83 @@
+/*
+ * Copyright (c) Vocera Communications, Inc. All Rights Reserved.
+ * This software is the confidential and proprietary information of
+ * Vocera Communications, Inc.
+ */
+
+package com.vocera.cloud.affiliateservice.model;
+
+import com.vocera.cloud.affiliateservice.constant.BatchItemStatus;
+import com.vocera.cloud.coremodel.model.Affiliation;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Result of one item of a batch request, index is the position of the item in the request.
+ *
+ * @author Rohit Phatak
+ */
+public class BatchItemResult {
+
+    private final int index;
+
+    private final BatchItemStatus status;
+
+    private final Affiliation affiliation;
+
+    private final List<String> errors;
+
+    /**
+     * Constructor.
+     *
+     * @param index
+     * @param status
+     * @param affiliation
+     * @param errors
+     */
+    public BatchItemResult(int index, BatchItemStatus status, Affiliation affiliation, List<String> errors) {
+        this.index = index;
+        this.status = status;
+        this.affiliation = affiliation;
+        this.errors = errors;
+    }
+
+    /**
+     * Result for an item which was not processed.
+     *
+     * @param index
+     * @param errors
+     * @return
+     */
+    public static BatchItemResult invalid(int index, List<String> errors) {
+        return new BatchItemResult(index, BatchItemStatus.INVALID, null, errors);
+    }
+
+    /**
+     * Result for an item which was processed.
+     *
+     * @param index
+     * @param result
+     * @return
+     */
+    public static BatchItemResult of(int index, AffiliationRequestResult result) {
+        return new BatchItemResult(index, result.isCreated() ? BatchItemStatus.CREATED : BatchItemStatus.EXISTING,
+                result.getAffiliation(), Collections.emptyList());
+    }
+
+    public int getIndex() {
+        return index;
+    }
+
+    public BatchItemStatus getStatus() {
+        return status;
+    }
+
+    public Affiliation getAffiliation() {
+        return affiliation;
+    }
+
+    public List<String> getErrors() {
+        return errors;
+    }
+}
@@ -0,0 +1,39 @@
+/*
+ * Copyright (c) Vocera Communications, Inc. All Rights Reserved.
+ * This software is the confidential and proprietary information of
+ * Vocera Communications, Inc.
+ */
+
+package com.vocera.cloud.affiliateservice.model;
+
+import com.vocera.cloud.coremodel.constants.FilterType;
+
+import java.util.List;
+
+/**
+ * Counterpart organizations a bulk status change applies to, either listed by id or all those matching filterType.
+ *
+ * @author Rohit Phatak
+ */
+public class BulkTransitionRequest {
+
+    private List<Long> organizationIds;
+
+    private FilterType filterType;
+
+    public List<Long> getOrganizationIds() {
+        return organizationIds;
+    }
+
+    public void setOrganizationIds(List<Long> organizationIds) {
+        this.organizationIds = organizationIds;
+    }
+
+    public FilterType getFilterType() {
+        return filterType;
+    }
+
+    public void setFilterType(FilterType filterType) {
+        this.filterType = filterType;
+    }
+}
@@ -0,0 +1,62 @@
+/*
+ * Copyright (c) Vocera Communications, Inc. All Rights Reserved.
+ * This software is the confidential and proprietary information of
+ * Vocera Communications, Inc.
+ */
+
+package com.vocera.cloud.affiliateservice.model;
+
+/**
+ * Usage statistics of a cache.
+ *
+ * @author Rohit Phatak
+ */
+public class CacheStatistics {
+
+    private final long size;
+
+    private final long hitCount;
+
+    private final long missCount;
+
+    private final double hitRate;
+
+    private final long evictionCount;
+
+    /**
+     * Constructor.
+     *
+     * @param size
+     * @param hitCount
+     * @param missCount
+     * @param hitRate
+     * @param evictionCount
+     */
+    public CacheStatistics(long size, long hitCount, long missCount, double hitRate, long evictionCount) {
+        this.size = size;
+        this.hitCount = hitCount;
+        this.missCount = missCount;
+        this.hitRate = hitRate;
+        this.evictionCount = evictionCount;
+    }
+
+    public long getSize() {
+        return size;
+    }
+
+    public long getHitCount() {
+        return hitCount;
+    }
+
+    public long getMissCount() {
+        return missCount;
+    }
+
+    public double getHitRate() {
+        return hitRate;
+    }
+
+    public long getEvictionCount() {
+        return evictionCount;
+    }
+}
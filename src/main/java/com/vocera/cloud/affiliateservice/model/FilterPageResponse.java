@@ -0,0 +1,72 @@
+/*
+ * Copyright (c) Vocera Communications, Inc. All Rights Reserved.
+ * This software is the confidential and proprietary information of
+ * Vocera Communications, Inc.
+ */
+
+package com.vocera.cloud.affiliateservice.model;
+
+import com.vocera.cloud.affiliateservice.constant.TotalType;
+import com.vocera.cloud.coremodel.model.PageResponse;
+
+import java.util.List;
+
+/**
+ * Page of results returned by the filter endpoints.
+ * Adds the kind of total held in totalCount, whether there is a next page and the cursor for fetching the next
+ * page in keyset pagination mode. totalCount is -1 when no total was requested.
+ *
+ * @param <T>
+ * @author Rohit Phatak
+ */
+public class FilterPageResponse<T> extends PageResponse<T> {
+
+    private TotalType totalType;
+
+    private boolean hasNext;
+
+    private String nextCursor;
+
+    /**
+     * Constructor.
+     *
+     * @param data
+     * @param page
+     * @param offset
+     * @param totalCount
+     * @param totalType
+     * @param hasNext
+     * @param nextCursor
+     */
+    public FilterPageResponse(List<T> data, int page, int offset, long totalCount, TotalType totalType,
+                              boolean hasNext, String nextCursor) {
+        super(data, page, offset, totalCount);
+        this.totalType = totalType;
+        this.hasNext = hasNext;
+        this.nextCursor = nextCursor;
+    }
+
+    public TotalType getTotalType() {
+        return totalType;
+    }
+
+    public void setTotalType(TotalType totalType) {
+        this.totalType = totalType;
+    }
+
+    public boolean isHasNext() {
+        return hasNext;
+    }
+
+    public void setHasNext(boolean hasNext) {
+        this.hasNext = hasNext;
+    }
+
+    public String getNextCursor() {
+        return nextCursor;
+    }
+
+    public void setNextCursor(String nextCursor) {
+        this.nextCursor = nextCursor;
+    }
+}
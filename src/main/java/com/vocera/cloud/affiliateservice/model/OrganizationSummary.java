@@ -0,0 +1,83 @@
+/*
+ * Copyright (c) Vocera Communications, Inc. All Rights Reserved.
+ * This software is the confidential and proprietary information of
+ * Vocera Communications, Inc.
+ */
+
+package com.vocera.cloud.affiliateservice.model;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+
+/**
+ * Counterpart organization of an affiliation, as listed in the organization directory.
+ * Built directly from a constructor expression, so no managed entities are loaded for it.
+ *
+ * @author Rohit Phatak
+ */
+public class OrganizationSummary {
+
+    @JsonIgnore
+    private Long affiliationId;
+
+    private Long id;
+
+    private String name;
+
+    private String healthSystemName;
+
+    private String domain;
+
+    private String city;
+
+    private String state;
+
+    /**
+     * Constructor used by the projection query.
+     *
+     * @param affiliationId
+     * @param id
+     * @param name
+     * @param healthSystemName
+     * @param domain
+     * @param city
+     * @param state
+     */
+    public OrganizationSummary(Long affiliationId, Long id, String name, String healthSystemName, String domain,
+                               String city, String state) {
+        this.affiliationId = affiliationId;
+        this.id = id;
+        this.name = name;
+        this.healthSystemName = healthSystemName;
+        this.domain = domain;
+        this.city = city;
+        this.state = state;
+    }
+
+    public Long getAffiliationId() {
+        return affiliationId;
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getHealthSystemName() {
+        return healthSystemName;
+    }
+
+    public String getDomain() {
+        return domain;
+    }
+
+    public String getCity() {
+        return city;
+    }
+
+    public String getState() {
+        return state;
+    }
+}
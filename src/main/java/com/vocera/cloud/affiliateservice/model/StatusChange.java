@@ -0,0 +1,41 @@
+/*
+ * Copyright (c) Vocera Communications, Inc. All Rights Reserved.
+ * This software is the confidential and proprietary information of
+ * Vocera Communications, Inc.
+ */
+
+package com.vocera.cloud.affiliateservice.model;
+
+import com.vocera.cloud.coremodel.constants.AffiliationStatus;
+import com.vocera.cloud.coremodel.model.Affiliation;
+
+/**
+ * Affiliation after a status change together with its status before the change.
+ *
+ * @author Rohit Phatak
+ */
+public class StatusChange {
+
+    private final AffiliationStatus previousStatus;
+
+    private final Affiliation affiliation;
+
+    /**
+     * Constructor.
+     *
+     * @param previousStatus
+     * @param affiliation
+     */
+    public StatusChange(AffiliationStatus previousStatus, Affiliation affiliation) {
+        this.previousStatus = previousStatus;
+        this.affiliation = affiliation;
+    }
+
+    public AffiliationStatus getPreviousStatus() {
+        return previousStatus;
+    }
+
+    public Affiliation getAffiliation() {
+        return affiliation;
+    }
+}
@@ -0,0 +1,83 @@
+/*
+ * Copyright (c) Vocera Communications, Inc. All Rights Reserved.
+ * This software is the confidential and proprietary information of
+ * Vocera Communications, Inc.
+ */
+
+package com.vocera.cloud.affiliateservice.model;
+
+import com.vocera.cloud.affiliateservice.constant.BatchItemStatus;
+import com.vocera.cloud.coremodel.model.Affiliation;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Outcome of a bulk status change for one counterpart organization.
+ *
+ * @author Rohit Phatak
+ */
+public class TransitionResult {
+
+    private final Long organizationId;
+
+    private final BatchItemStatus status;
+
+    private final Affiliation affiliation;
+
+    private final List<String> errors;
+
+    /**
+     * Constructor.
+     *
+     * @param organizationId
+     * @param status
+     * @param affiliation
+     * @param errors
+     */
+    public TransitionResult(Long organizationId, BatchItemStatus status, Affiliation affiliation,
+                            List<String> errors) {
+        this.organizationId = organizationId;
+        this.status = status;
+        this.affiliation = affiliation;
+        this.errors = errors;
+    }
+
+    /**
+     * Result for an organization whose affiliation was changed.
+     *
+     * @param organizationId
+     * @param affiliation
+     * @return
+     */
+    public static TransitionResult updated(Long organizationId, Affiliation affiliation) {
+        return new TransitionResult(organizationId, BatchItemStatus.UPDATED, affiliation, Collections.emptyList());
+    }
+
+    /**
+     * Result for an organization without an affiliation the change applies to.
+     *
+     * @param organizationId
+     * @param errors
+     * @return
+     */
+    public static TransitionResult invalid(Long organizationId, List<String> errors) {
+        return new TransitionResult(organizationId, BatchItemStatus.INVALID, null, errors);
+    }
+
+    public Long getOrganizationId() {
+        return organizationId;
+    }
+
+    public BatchItemStatus getStatus() {
+        return status;
+    }
+
+    public Affiliation getAffiliation() {
+        return affiliation;
+    }
+
+    public List<String> getErrors() {
+        return errors;
+    }
+}
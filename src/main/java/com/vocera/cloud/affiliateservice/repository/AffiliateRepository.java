@@ -6,13 +6,17 @@
 
 package com.vocera.cloud.affiliateservice.repository;
 
+import com.vocera.cloud.affiliateservice.model.AffiliationPair;
 import com.vocera.cloud.coremodel.constants.AffiliationStatus;
 import com.vocera.cloud.coremodel.model.Affiliation;
+import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.JpaSpecificationExecutor;
 import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
 
 /**
@@ -20,7 +24,8 @@ import java.util.Optional;
  *
  * @author Rohit Phatak
  */
-public interface AffiliateRepository extends JpaRepository<Affiliation, Long>, JpaSpecificationExecutor<Affiliation> {
+public interface AffiliateRepository extends JpaRepository<Affiliation, Long>, JpaSpecificationExecutor<Affiliation>,
+        AffiliateRepositoryCustom {
 
     /**
      * Check if two organizations are Affiliated.
@@ -30,11 +35,27 @@ public interface AffiliateRepository extends JpaRepository<Affiliation, Long>, J
      * @param organization2
      * @return
      */
+    default Optional<Affiliation> checkAffiliation(Long organization1, Long organization2) {
+        AffiliationPair pair = AffiliationPair.of(organization1, organization2);
+        return findActiveByPair(pair.getLow(), pair.getHigh());
+    }
+
+    /**
+     * Find the active affiliation for a canonical organization pair.
+     * The least/greatest expressions match the partial unique index ux_affiliation_active_pair, so the lookup is a
+     * single index probe instead of an OR over both directions. Both organizations are fetched in the same statement.
+     *
+     * @param lowOrganizationId
+     * @param highOrganizationId
+     * @return
+     */
+    @EntityGraph(attributePaths = {"affiliationFrom", "affiliationFrom.admin", "affiliationWith",
+            "affiliationWith.admin"})
     @Query("select a from Affiliation a where " +
-            "((a.affiliationFrom.id=?1 and a.affiliationWith.id=?2) or " +
-            "(a.affiliationFrom.id=?2 and a.affiliationWith.id=?1)) and " +
+            "function('least', a.affiliationFrom.id, a.affiliationWith.id)=?1 and " +
+            "function('greatest', a.affiliationFrom.id, a.affiliationWith.id)=?2 and " +
             "a.active=true")
-    Optional<Affiliation> checkAffiliation(Long organization1, Long organization2);
+    Optional<Affiliation> findActiveByPair(Long lowOrganizationId, Long highOrganizationId);
 
     /**
      * Update affiliation status and active.
@@ -46,4 +67,13 @@ public interface AffiliateRepository extends JpaRepository<Affiliation, Long>, J
     @Modifying(flushAutomatically = true, clearAutomatically = true)
     @Query("update Affiliation a set a.status=?2, a.active=?3 where a.id=?1")
     int updateStatus(Long affiliationId, AffiliationStatus affiliationStatus, boolean active);
+
+    /**
+     * Ids of the given organizations which exist.
+     *
+     * @param organizationIds
+     * @return
+     */
+    @Query("select o.id from Organization o where o.id in ?1")
+    List<Long> findOrganizationIds(Collection<Long> organizationIds);
 }
@@ -0,0 +1,118 @@
+/*
+ * Copyright (c) Vocera Communications, Inc. All Rights Reserved.
+ * This software is the confidential and proprietary information of
+ * Vocera Communications, Inc.
+ */
+
+package com.vocera.cloud.affiliateservice.repository;
+
+import com.vocera.cloud.affiliateservice.constant.AffiliationTransition;
+import com.vocera.cloud.affiliateservice.model.AffiliationRequestResult;
+import com.vocera.cloud.affiliateservice.model.OrganizationSummary;
+import com.vocera.cloud.affiliateservice.model.StatusChange;
+import com.vocera.cloud.coremodel.model.Affiliation;
+import org.springframework.data.jpa.domain.Specification;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Stream;
+
+/**
+ * Queries on Affiliation which cannot be expressed as derived or annotated queries.
+ *
+ * @author Rohit Phatak
+ */
+public interface AffiliateRepositoryCustom {
+
+    /**
+     * Fetch a window of affiliations matching the specification, without issuing a count query.
+     *
+     * @param specification
+     * @param firstResult
+     * @param maxResults
+     * @return
+     */
+    List<Affiliation> findSlice(Specification<Affiliation> specification, long firstResult, int maxResults);
+
+    /**
+     * Stream the affiliations matching the specification through a database cursor.
+     * Rows are read-only and detached once read, the stream has to be consumed and closed inside a transaction.
+     *
+     * @param specification
+     * @param fetchSize     number of rows fetched from the cursor at a time.
+     * @return
+     */
+    Stream<Affiliation> streamAll(Specification<Affiliation> specification, int fetchSize);
+
+    /**
+     * Fetch a window of the counterpart organizations of organizationId in the affiliations matching the
+     * specification. Only the columns of @{@link OrganizationSummary} are selected.
+     *
+     * @param specification
+     * @param organizationId
+     * @param firstResult
+     * @param maxResults
+     * @return
+     */
+    List<OrganizationSummary> findCounterpartSlice(Specification<Affiliation> specification, Long organizationId,
+                                                   long firstResult, int maxResults);
+
+    /**
+     * Count the affiliations matching the specification per status, ignoring its order. Each row holds the status,
+     * the count where the organization is affiliationFrom and the count where it is affiliationWith.
+     *
+     * @param specification
+     * @param organizationId
+     * @return
+     */
+    List<Object[]> countByStatus(Specification<Affiliation> specification, Long organizationId);
+
+    /**
+     * Apply the transition made by organizationId to its active affiliation with otherOrganizationId.
+     * The expected status and the acting side are part of the update condition, so a concurrent change of the
+     * affiliation makes the transition fail instead of overwriting it.
+     *
+     * @param organizationId
+     * @param otherOrganizationId
+     * @param transition
+     * @return the changed affiliation, empty if there is no affiliation the transition applies to.
+     */
+    Optional<StatusChange> transition(Long organizationId, Long otherOrganizationId,
+                                      AffiliationTransition transition);
+
+    /**
+     * Apply the transition made by organizationId to its active affiliations with the other organizations, with
+     * the same rules as {@link #transition}.
+     *
+     * @param organizationId
+     * @param otherOrganizationIds
+     * @param transition
+     * @return the changed affiliations, affiliations the transition does not apply to are left out.
+     */
+    List<StatusChange> transitionAll(Long organizationId, Collection<Long> otherOrganizationIds,
+                                     AffiliationTransition transition);
+
+    /**
+     * Request an affiliation for the pair of the request, made by organizationId.
+     * The request is inserted when the pair has no active affiliation. An active affiliation which
+     * @{@link AffiliationTransition#REQUEST} allows for the side of organizationId is removed and replaced by the
+     * request, any other active affiliation is kept. Concurrent requests for the same pair never create more than
+     * one active affiliation.
+     *
+     * @param request
+     * @param organizationId
+     * @return
+     */
+    AffiliationRequestResult request(Affiliation request, Long organizationId);
+
+    /**
+     * Request affiliations in bulk, with the same rules as {@link #request} applied to every item in order.
+     * Changes are written with JDBC batching.
+     *
+     * @param requests
+     * @param organizationId
+     * @return one result per request, in the order of the requests.
+     */
+    List<AffiliationRequestResult> requestAll(List<Affiliation> requests, Long organizationId);
+}
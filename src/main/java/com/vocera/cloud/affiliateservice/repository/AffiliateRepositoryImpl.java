@@ -0,0 +1,849 @@
+/*
+ * Copyright (c) Vocera Communications, Inc. All Rights Reserved.
+ * This software is the confidential and proprietary information of
+ * Vocera Communications, Inc.
+ */
+
+package com.vocera.cloud.affiliateservice.repository;
+
+import com.vocera.cloud.affiliateservice.constant.AffiliationTransition;
+import com.vocera.cloud.affiliateservice.model.AffiliationPair;
+import com.vocera.cloud.affiliateservice.model.AffiliationRequestResult;
+import com.vocera.cloud.affiliateservice.model.OrganizationSummary;
+import com.vocera.cloud.affiliateservice.model.StatusChange;
+import com.vocera.cloud.affiliateservice.service.impl.AffiliateSpecifications;
+import com.vocera.cloud.coremodel.constants.AffiliationStatus;
+import com.vocera.cloud.coremodel.model.Affiliation;
+import com.vocera.cloud.coremodel.model.Organization;
+import org.hibernate.CacheMode;
+import org.hibernate.LockMode;
+import org.hibernate.Session;
+import org.hibernate.dialect.PostgreSQL81Dialect;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.engine.spi.SessionImplementor;
+import org.hibernate.id.IdentifierGenerator;
+import org.hibernate.id.enhanced.HiLoOptimizer;
+import org.hibernate.id.enhanced.LegacyHiLoAlgorithmOptimizer;
+import org.hibernate.id.enhanced.SequenceStructure;
+import org.hibernate.id.enhanced.SequenceStyleGenerator;
+import org.hibernate.jpa.QueryHints;
+import org.hibernate.query.NativeQuery;
+import org.hibernate.query.Query;
+import org.hibernate.type.LongType;
+import org.hibernate.type.StringType;
+import org.hibernate.type.TimestampType;
+import org.springframework.data.jpa.domain.Specification;
+
+import javax.persistence.EntityManager;
+import javax.persistence.LockModeType;
+import javax.persistence.PersistenceContext;
+import javax.persistence.criteria.CriteriaBuilder;
+import javax.persistence.criteria.CriteriaQuery;
+import javax.persistence.criteria.Expression;
+import javax.persistence.criteria.Join;
+import javax.persistence.criteria.JoinType;
+import javax.persistence.criteria.Path;
+import javax.persistence.criteria.Predicate;
+import javax.persistence.criteria.Root;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+/**
+ * Implementation for @{@link AffiliateRepositoryCustom}.
+ *
+ * @author Rohit Phatak
+ */
+public class AffiliateRepositoryImpl implements AffiliateRepositoryCustom {
+
+    /**
+     * Guard and returned columns shared by the transition statements.
+     */
+    private static final String POSTGRES_TRANSITION_GUARD =
+            "organization f left join admin fa on fa.id = f.admin_id, " +
+            "organization w left join admin wa on wa.id = w.admin_id " +
+            "where a.id = previous.id and f.id = a.affiliation_from and w.id = a.affiliation_with " +
+            "and ((a.affiliation_from = :organizationId and previous.status in (:fromExpected)) " +
+            "or (a.affiliation_with = :organizationId and previous.status in (:withExpected))) " +
+            "returning {a.*}, {f.*}, {fa.*}, {w.*}, {wa.*}, previous.status as previous_status";
+
+    /**
+     * Locks the active affiliation of the pair, changes it when the expected status and acting side match, and
+     * returns it with both organizations, their admins and the previous status.
+     */
+    private static final String POSTGRES_TRANSITION = "update affiliation a set " +
+            "status = case when a.affiliation_from = :organizationId then :fromStatus else :withStatus end, " +
+            "active = :active " +
+            "from (select id, status from affiliation " +
+            "where least(affiliation_from, affiliation_with) = :low " +
+            "and greatest(affiliation_from, affiliation_with) = :high and active for update) previous, " +
+            POSTGRES_TRANSITION_GUARD;
+
+    /**
+     * Same as POSTGRES_TRANSITION for the active affiliations of organizationId with any of otherOrganizationIds.
+     */
+    private static final String POSTGRES_TRANSITION_ALL = "update affiliation a set " +
+            "status = case when a.affiliation_from = :organizationId then :fromStatus else :withStatus end, " +
+            "active = :active " +
+            "from (select id, status from affiliation where active " +
+            "and ((affiliation_from = :organizationId and affiliation_with in (:otherOrganizationIds)) " +
+            "or (affiliation_with = :organizationId and affiliation_from in (:otherOrganizationIds))) " +
+            "for update) previous, " +
+            POSTGRES_TRANSITION_GUARD;
+
+    /**
+     * Removes the active affiliation of the pair if organizationId may request again, then inserts the request
+     * unless the pair still has an active affiliation. Reading the count of removed rows makes the insert run after
+     * the removal, the partial unique index ux_affiliation_active_pair arbitrates concurrent inserts.
+     * The id sequence is filled in from the mapping of Affiliation, see postgresRequest.
+     */
+    private static final String POSTGRES_REQUEST = "with removed as (" +
+            "update affiliation set status = 'REMOVED', active = false " +
+            "where least(affiliation_from, affiliation_with) = :low " +
+            "and greatest(affiliation_from, affiliation_with) = :high and active " +
+            "and ((affiliation_from = :organizationId and status in (:fromExpected)) " +
+            "or (affiliation_with = :organizationId and status in (:withExpected))) " +
+            "returning id, status, affiliation_from, affiliation_with), " +
+            "inserted as (" +
+            "insert into affiliation (id, created_at, updated_at, status, actioned_by, requested_by, " +
+            "affiliation_from, affiliation_with, active) " +
+            "select nextval('%s'), now(), now(), :status, :actionedBy, :requestedBy, " +
+            ":affiliationFrom, :affiliationWith, true from (select count(*) from removed) removed_count " +
+            "on conflict ((least(affiliation_from, affiliation_with)), " +
+            "(greatest(affiliation_from, affiliation_with))) where active do nothing " +
+            "returning *) " +
+            "select {a.*}, {f.*}, {fa.*}, {w.*}, {wa.*}, r.id as removed_id, r.status as removed_status, " +
+            "r.affiliation_from as removed_from, r.affiliation_with as removed_with " +
+            "from inserted a join organization f on f.id = a.affiliation_from " +
+            "left join admin fa on fa.id = f.admin_id " +
+            "join organization w on w.id = a.affiliation_with " +
+            "left join admin wa on wa.id = w.admin_id " +
+            "left join removed r on true";
+
+    private static final String ACTIVE_PAIR = "select a from Affiliation a " +
+            "join fetch a.affiliationFrom f left join fetch f.admin " +
+            "join fetch a.affiliationWith w left join fetch w.admin " +
+            "where function('least', f.id, w.id) = :low and function('greatest', f.id, w.id) = :high " +
+            "and a.active = true";
+
+    /**
+     * Number of pairs per lookup of the active affiliations of a batch.
+     */
+    private static final int LOOKUP_CHUNK = 100;
+
+    /**
+     * Active affiliations of LOOKUP_CHUNK pairs, each pair matched on the columns of ux_affiliation_active_pair.
+     */
+    private static final String ACTIVE_OF_PAIRS = "select a from Affiliation a " +
+            "join fetch a.affiliationFrom f left join fetch f.admin " +
+            "join fetch a.affiliationWith w left join fetch w.admin " +
+            "where a.active = true and (" + IntStream.range(0, LOOKUP_CHUNK)
+            .mapToObj(i -> "(function('least', f.id, w.id) = :low" + i +
+                    " and function('greatest', f.id, w.id) = :high" + i + ")")
+            .collect(Collectors.joining(" or ")) + ")";
+
+    /**
+     * Inserts the new affiliations of a batch, skipping the pairs a concurrent request gave an active affiliation in
+     * the meantime. The id sequence and the rows are filled in by insertAll.
+     */
+    private static final String POSTGRES_INSERT_ALL = "insert into affiliation (id, created_at, updated_at, status, " +
+            "actioned_by, requested_by, affiliation_from, affiliation_with, active) " +
+            "select nextval('%s'), now(), now(), r.status, r.actioned_by, r.requested_by, r.affiliation_from, " +
+            "r.affiliation_with, true " +
+            "from (values %s) r(status, actioned_by, requested_by, affiliation_from, affiliation_with) " +
+            "on conflict ((least(affiliation_from, affiliation_with)), " +
+            "(greatest(affiliation_from, affiliation_with))) where active do nothing " +
+            "returning id, affiliation_from, affiliation_with, created_at, updated_at";
+
+    private static final String POSTGRES_INSERT_ROW = "(cast(:status%1$d as varchar), " +
+            "cast(:actionedBy%1$d as bigint), cast(:requestedBy%1$d as bigint), " +
+            "cast(:affiliationFrom%1$d as bigint), cast(:affiliationWith%1$d as bigint))";
+
+    private static final String ACTIVE_WITH = "select a from Affiliation a " +
+            "join fetch a.affiliationFrom f left join fetch f.admin " +
+            "join fetch a.affiliationWith w left join fetch w.admin " +
+            "where a.active = true and ((f.id = :organizationId and w.id in :otherOrganizationIds) " +
+            "or (w.id = :organizationId and f.id in :otherOrganizationIds))";
+
+    /**
+     * Number of new affiliations per insert of a batch on Postgres.
+     */
+    private static final int INSERT_CHUNK = 500;
+
+    /**
+     * Number of new affiliations after which the persistence context of a batch is flushed and cleared.
+     */
+    private static final int FLUSH_INTERVAL = 1000;
+
+    private final PairLocks pairLocks = new PairLocks(64);
+
+    private Boolean postgres;
+
+    private String postgresRequest;
+
+    private String affiliationSequence;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    /**
+     * Both organizations and their admins are fetched in the same statement as the affiliations.
+     * The organization fetches are created before the specification is applied so that its predicates and
+     * ordering join through them instead of adding joins of their own.
+     *
+     * @param specification
+     * @param firstResult
+     * @param maxResults
+     * @return
+     */
+    @Override
+    public List<Affiliation> findSlice(Specification<Affiliation> specification, long firstResult, int maxResults) {
+        CriteriaBuilder criteriaBuilder = entityManager.getCriteriaBuilder();
+        CriteriaQuery<Affiliation> query = criteriaBuilder.createQuery(Affiliation.class);
+        Root<Affiliation> root = query.from(Affiliation.class);
+        root.fetch(AffiliateSpecifications.AFFILIATION_FROM).fetch("admin", JoinType.LEFT);
+        root.fetch(AffiliateSpecifications.AFFILIATION_WITH).fetch("admin", JoinType.LEFT);
+        Predicate predicate = specification.toPredicate(root, query, criteriaBuilder);
+        if (predicate != null) {
+            query.where(predicate);
+        }
+        query.select(root);
+        return entityManager.createQuery(query)
+                .setFirstResult(Math.toIntExact(firstResult))
+                .setMaxResults(maxResults)
+                .getResultList();
+    }
+
+    @Override
+    public List<Object[]> countByStatus(Specification<Affiliation> specification, Long organizationId) {
+        CriteriaBuilder criteriaBuilder = entityManager.getCriteriaBuilder();
+        CriteriaQuery<Object[]> query = criteriaBuilder.createQuery(Object[].class);
+        Root<Affiliation> root = query.from(Affiliation.class);
+        Predicate predicate = specification.toPredicate(root, query, criteriaBuilder);
+        if (predicate != null) {
+            query.where(predicate);
+        }
+        query.orderBy(Collections.emptyList());
+        Join<Affiliation, Organization> organizationFromJoin = AffiliateSpecifications.organizationJoin(root,
+                AffiliateSpecifications.AFFILIATION_FROM);
+        Join<Affiliation, Organization> organizationWithJoin = AffiliateSpecifications.organizationJoin(root,
+                AffiliateSpecifications.AFFILIATION_WITH);
+        query.multiselect(root.get("status"),
+                countWhere(criteriaBuilder, criteriaBuilder.equal(organizationFromJoin.get("id"), organizationId)),
+                countWhere(criteriaBuilder, criteriaBuilder.equal(organizationWithJoin.get("id"), organizationId)))
+                .groupBy(root.get("status"));
+        return entityManager.createQuery(query).getResultList();
+    }
+
+    /**
+     * Same statement as {@link #findSlice} without the window. The organizations and admins of every row are
+     * detached along with the affiliation, so the persistence context does not grow with the number of rows.
+     *
+     * @param specification
+     * @param fetchSize
+     * @return
+     */
+    @Override
+    public Stream<Affiliation> streamAll(Specification<Affiliation> specification, int fetchSize) {
+        CriteriaBuilder criteriaBuilder = entityManager.getCriteriaBuilder();
+        CriteriaQuery<Affiliation> query = criteriaBuilder.createQuery(Affiliation.class);
+        Root<Affiliation> root = query.from(Affiliation.class);
+        root.fetch(AffiliateSpecifications.AFFILIATION_FROM).fetch("admin", JoinType.LEFT);
+        root.fetch(AffiliateSpecifications.AFFILIATION_WITH).fetch("admin", JoinType.LEFT);
+        Predicate predicate = specification.toPredicate(root, query, criteriaBuilder);
+        if (predicate != null) {
+            query.where(predicate);
+        }
+        query.select(root);
+        Stream<Affiliation> affiliations = entityManager.createQuery(query)
+                .setHint(QueryHints.HINT_FETCH_SIZE, fetchSize)
+                .setHint(QueryHints.HINT_READONLY, true)
+                .setHint(QueryHints.HINT_CACHE_MODE, CacheMode.IGNORE)
+                .getResultStream();
+        return affiliations.peek(this::detach);
+    }
+
+    private void detach(Affiliation affiliation) {
+        entityManager.detach(affiliation);
+        for (Organization organization : Arrays.asList(affiliation.getAffiliationFrom(),
+                affiliation.getAffiliationWith())) {
+            if (organization.getAdmin() != null) {
+                entityManager.detach(organization.getAdmin());
+            }
+            entityManager.detach(organization);
+        }
+    }
+
+    /**
+     * Each selected column picks the side of the affiliation which is not organizationId.
+     *
+     * @param specification
+     * @param organizationId
+     * @param firstResult
+     * @param maxResults
+     * @return
+     */
+    @Override
+    public List<OrganizationSummary> findCounterpartSlice(Specification<Affiliation> specification,
+                                                          Long organizationId, long firstResult, int maxResults) {
+        CriteriaBuilder criteriaBuilder = entityManager.getCriteriaBuilder();
+        CriteriaQuery<OrganizationSummary> query = criteriaBuilder.createQuery(OrganizationSummary.class);
+        Root<Affiliation> root = query.from(Affiliation.class);
+        Predicate predicate = specification.toPredicate(root, query, criteriaBuilder);
+        if (predicate != null) {
+            query.where(predicate);
+        }
+        Join<Affiliation, Organization> organizationFromJoin = AffiliateSpecifications.organizationJoin(root,
+                AffiliateSpecifications.AFFILIATION_FROM);
+        Join<Affiliation, Organization> organizationWithJoin = AffiliateSpecifications.organizationJoin(root,
+                AffiliateSpecifications.AFFILIATION_WITH);
+        Predicate fromOrganization = criteriaBuilder.equal(organizationFromJoin.get("id"), organizationId);
+        query.select(criteriaBuilder.construct(OrganizationSummary.class,
+                root.get("id"),
+                counterpart(criteriaBuilder, fromOrganization, organizationFromJoin.get("id"),
+                        organizationWithJoin.get("id")),
+                counterpart(criteriaBuilder, fromOrganization, organizationFromJoin.get("name"),
+                        organizationWithJoin.get("name")),
+                counterpart(criteriaBuilder, fromOrganization, organizationFromJoin.get("healthSystemName"),
+                        organizationWithJoin.get("healthSystemName")),
+                counterpart(criteriaBuilder, fromOrganization, organizationFromJoin.get("domain"),
+                        organizationWithJoin.get("domain")),
+                counterpart(criteriaBuilder, fromOrganization, organizationFromJoin.get("address").get("city"),
+                        organizationWithJoin.get("address").get("city")),
+                counterpart(criteriaBuilder, fromOrganization, organizationFromJoin.get("address").get("state"),
+                        organizationWithJoin.get("address").get("state"))));
+        return entityManager.createQuery(query)
+                .setFirstResult(Math.toIntExact(firstResult))
+                .setMaxResults(maxResults)
+                .getResultList();
+    }
+
+    /**
+     * On Postgres the transition is a single UPDATE ... RETURNING statement. Other databases lock the active
+     * affiliation of the pair, check the transition in memory and flush the change.
+     *
+     * @param organizationId
+     * @param otherOrganizationId
+     * @param transition
+     * @return
+     */
+    @Override
+    public Optional<StatusChange> transition(Long organizationId, Long otherOrganizationId,
+                                             AffiliationTransition transition) {
+        AffiliationPair pair = AffiliationPair.of(organizationId, otherOrganizationId);
+        if (this.isPostgres()) {
+            return this.transitionReturning(pair, organizationId, transition);
+        }
+        List<Affiliation> affiliations = this.findActive(pair, LockModeType.PESSIMISTIC_WRITE);
+        if (affiliations.isEmpty()) {
+            return Optional.empty();
+        }
+        Affiliation affiliation = affiliations.get(0);
+        AffiliationStatus previousStatus = affiliation.getStatus();
+        AffiliationStatus target = transition.target(previousStatus,
+                organizationId.equals(affiliation.getAffiliationFrom().getId()));
+        if (target == null) {
+            return Optional.empty();
+        }
+        affiliation.setStatus(target);
+        affiliation.setActive(transition.isActive());
+        // Written now so that a new request for the same pair is inserted after the old one is deactivated.
+        entityManager.flush();
+        return Optional.of(new StatusChange(previousStatus, affiliation));
+    }
+
+    private Optional<StatusChange> transitionReturning(AffiliationPair pair, Long organizationId,
+                                                       AffiliationTransition transition) {
+        long otherOrganizationId = pair.getLow() == organizationId ? pair.getHigh() : pair.getLow();
+        List<StatusChange> changes = this.statusChanges(this.transitionQuery(POSTGRES_TRANSITION, organizationId,
+                Collections.singleton(otherOrganizationId), transition)
+                .setParameter("low", pair.getLow())
+                .setParameter("high", pair.getHigh())
+                .getResultList());
+        return changes.isEmpty() ? Optional.empty() : Optional.of(changes.get(0));
+    }
+
+    /**
+     * On Postgres every chunk of organizations is changed by a single UPDATE ... RETURNING statement. Other
+     * databases lock the active affiliations of a chunk, check the transition in memory and flush the changes as
+     * one JDBC batch.
+     *
+     * @param organizationId
+     * @param otherOrganizationIds
+     * @param transition
+     * @return
+     */
+    @Override
+    public List<StatusChange> transitionAll(Long organizationId, Collection<Long> otherOrganizationIds,
+                                            AffiliationTransition transition) {
+        List<Long> others = new ArrayList<>(new TreeSet<>(otherOrganizationIds));
+        others.remove(organizationId);
+        List<StatusChange> changes = new ArrayList<>();
+        for (int from = 0; from < others.size(); from += LOOKUP_CHUNK) {
+            List<Long> chunk = others.subList(from, Math.min(others.size(), from + LOOKUP_CHUNK));
+            if (this.isPostgres()) {
+                changes.addAll(this.statusChanges(this.transitionQuery(POSTGRES_TRANSITION_ALL, organizationId,
+                        chunk, transition)
+                        .setParameterList("otherOrganizationIds", chunk)
+                        .getResultList()));
+                continue;
+            }
+            List<Affiliation> affiliations = entityManager.unwrap(Session.class)
+                    .createQuery(ACTIVE_WITH, Affiliation.class)
+                    .setParameter("organizationId", organizationId)
+                    .setParameterList("otherOrganizationIds", chunk)
+                    .setLockMode("a", LockMode.PESSIMISTIC_WRITE)
+                    .getResultList();
+            for (Affiliation affiliation : affiliations) {
+                AffiliationStatus previousStatus = affiliation.getStatus();
+                AffiliationStatus target = transition.target(previousStatus,
+                        organizationId.equals(affiliation.getAffiliationFrom().getId()));
+                if (target != null) {
+                    affiliation.setStatus(target);
+                    affiliation.setActive(transition.isActive());
+                    changes.add(new StatusChange(previousStatus, affiliation));
+                }
+            }
+            entityManager.flush();
+        }
+        return changes;
+    }
+
+    /**
+     * Transition statement with the affiliation, both organizations and their admins mapped, and the parameters
+     * of the transition bound.
+     *
+     * @param sql
+     * @param organizationId
+     * @param otherOrganizationIds organizations whose affiliation with organizationId the statement may change.
+     * @param transition
+     * @return
+     */
+    @SuppressWarnings("unchecked")
+    private NativeQuery<Object[]> transitionQuery(String sql, Long organizationId,
+                                                  Collection<Long> otherOrganizationIds,
+                                                  AffiliationTransition transition) {
+        NativeQuery<Object[]> query = this.evictAffiliations(organizationId, otherOrganizationIds)
+                .createNativeQuery(sql)
+                .addEntity("a", Affiliation.class)
+                .addJoin("f", "a.affiliationFrom")
+                .addJoin("fa", "f.admin")
+                .addJoin("w", "a.affiliationWith")
+                .addJoin("wa", "w.admin")
+                .addScalar("previous_status", StringType.INSTANCE)
+                .addSynchronizedEntityClass(Affiliation.class);
+        return query
+                .setParameter("organizationId", organizationId)
+                .setParameter("fromStatus", statusName(transition.getFromStatus()))
+                .setParameter("withStatus", statusName(transition.getWithStatus()))
+                .setParameter("active", transition.isActive())
+                .setParameterList("fromExpected", transition.getExpectedStatusNames(true))
+                .setParameterList("withExpected", transition.getExpectedStatusNames(false));
+    }
+
+    private List<StatusChange> statusChanges(List<Object[]> rows) {
+        List<StatusChange> changes = new ArrayList<>(rows.size());
+        for (Object[] row : rows) {
+            changes.add(new StatusChange(AffiliationStatus.valueOf((String) row[1]), (Affiliation) row[0]));
+        }
+        return changes;
+    }
+
+    /**
+     * On Postgres the request is a single statement, other databases serialize requests for the pair with an
+     * in-process lock held until the transaction completes.
+     *
+     * @param request
+     * @param organizationId
+     * @return
+     */
+    @Override
+    public AffiliationRequestResult request(Affiliation request, Long organizationId) {
+        AffiliationPair pair = AffiliationPair.of(request.getAffiliationFrom().getId(),
+                request.getAffiliationWith().getId());
+        if (this.isPostgres()) {
+            while (true) {
+                Optional<AffiliationRequestResult> result = this.requestReturning(pair, request, organizationId);
+                if (result.isPresent()) {
+                    return result.get();
+                }
+                List<Affiliation> affiliations = this.findActive(pair, LockModeType.NONE);
+                if (!affiliations.isEmpty()) {
+                    return new AffiliationRequestResult(affiliations.get(0), false, null);
+                }
+                // The affiliation which blocked the insert was removed in the meantime, request again.
+            }
+        }
+        ReentrantLock lock = pairLocks.lock(pair);
+        try {
+            return this.requestLocked(pair, request, organizationId);
+        } finally {
+            if (lock != null) {
+                lock.unlock();
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private Optional<AffiliationRequestResult> requestReturning(AffiliationPair pair, Affiliation request,
+                                                                Long organizationId) {
+        NativeQuery<Object[]> query = this.evictAffiliations(pair.getLow(), Collections.singleton(pair.getHigh()))
+                .createNativeQuery(this.postgresRequest())
+                .addEntity("a", Affiliation.class)
+                .addJoin("f", "a.affiliationFrom")
+                .addJoin("fa", "f.admin")
+                .addJoin("w", "a.affiliationWith")
+                .addJoin("wa", "w.admin")
+                .addScalar("removed_id", LongType.INSTANCE)
+                .addScalar("removed_status", StringType.INSTANCE)
+                .addScalar("removed_from", LongType.INSTANCE)
+                .addScalar("removed_with", LongType.INSTANCE)
+                .addSynchronizedEntityClass(Affiliation.class);
+        List<Object[]> rows = query
+                .setParameter("organizationId", organizationId)
+                .setParameter("low", pair.getLow())
+                .setParameter("high", pair.getHigh())
+                .setParameterList("fromExpected", AffiliationTransition.REQUEST.getExpectedStatusNames(true))
+                .setParameterList("withExpected", AffiliationTransition.REQUEST.getExpectedStatusNames(false))
+                .setParameter("status", request.getStatus().name())
+                .setParameter("actionedBy", request.getActionedBy(), LongType.INSTANCE)
+                .setParameter("requestedBy", request.getRequestedBy(), LongType.INSTANCE)
+                .setParameter("affiliationFrom", request.getAffiliationFrom().getId())
+                .setParameter("affiliationWith", request.getAffiliationWith().getId())
+                .getResultList();
+        if (rows.isEmpty()) {
+            return Optional.empty();
+        }
+        // The fetched organizations and admins are not part of the row, only the affiliation and the scalars.
+        Object[] row = rows.get(0);
+        StatusChange removed = null;
+        if (row[1] != null) {
+            Affiliation removedAffiliation = new Affiliation();
+            removedAffiliation.setId((Long) row[1]);
+            removedAffiliation.setAffiliationFrom(new Organization((Long) row[3]));
+            removedAffiliation.setAffiliationWith(new Organization((Long) row[4]));
+            removedAffiliation.setStatus(AffiliationStatus.REMOVED);
+            removedAffiliation.setActive(false);
+            removed = new StatusChange(AffiliationStatus.valueOf((String) row[2]), removedAffiliation);
+        }
+        return Optional.of(new AffiliationRequestResult((Affiliation) row[0], true, removed));
+    }
+
+    private AffiliationRequestResult requestLocked(AffiliationPair pair, Affiliation request, Long organizationId) {
+        List<Affiliation> affiliations = this.findActive(pair, LockModeType.PESSIMISTIC_WRITE);
+        StatusChange removed = null;
+        if (!affiliations.isEmpty()) {
+            Affiliation affiliation = affiliations.get(0);
+            AffiliationStatus status = affiliation.getStatus();
+            if (!this.mayRequestAgain(affiliation, organizationId)) {
+                return new AffiliationRequestResult(affiliation, false, null);
+            }
+            affiliation.setStatus(AffiliationStatus.REMOVED);
+            affiliation.setActive(false);
+            entityManager.flush();
+            removed = new StatusChange(status, affiliation);
+        }
+        request.setActive(true);
+        entityManager.persist(request);
+        entityManager.flush();
+        return new AffiliationRequestResult(request, true, removed);
+    }
+
+    /**
+     * Removals are flushed before the inserts because Hibernate orders inserts first, which would briefly give the
+     * pair two active affiliations. On Postgres the inserts skip the pairs a concurrent request inserted first, those
+     * are answered with the affiliation of that request.
+     *
+     * @param requests
+     * @param organizationId
+     * @return
+     */
+    @Override
+    public List<AffiliationRequestResult> requestAll(List<Affiliation> requests, Long organizationId) {
+        List<AffiliationPair> pairs = new ArrayList<>(requests.size());
+        for (Affiliation request : requests) {
+            pairs.add(AffiliationPair.of(request.getAffiliationFrom().getId(),
+                    request.getAffiliationWith().getId()));
+        }
+        List<ReentrantLock> locks = this.isPostgres() ? Collections.emptyList() : pairLocks.lockAll(pairs);
+        try {
+            Map<AffiliationPair, Affiliation> active = this.findActive(pairs);
+            Map<AffiliationPair, Integer> firstRequest = new HashMap<>();
+            AffiliationRequestResult[] results = new AffiliationRequestResult[requests.size()];
+            List<Integer> created = new ArrayList<>();
+            StatusChange[] removed = new StatusChange[requests.size()];
+            for (int i = 0; i < requests.size(); i++) {
+                AffiliationPair pair = pairs.get(i);
+                if (firstRequest.putIfAbsent(pair, i) != null) {
+                    continue;
+                }
+                Affiliation affiliation = active.get(pair);
+                if (affiliation == null) {
+                    created.add(i);
+                    continue;
+                }
+                AffiliationStatus status = affiliation.getStatus();
+                if (this.mayRequestAgain(affiliation, organizationId)) {
+                    affiliation.setStatus(AffiliationStatus.REMOVED);
+                    affiliation.setActive(false);
+                    removed[i] = new StatusChange(status, affiliation);
+                    created.add(i);
+                } else {
+                    results[i] = new AffiliationRequestResult(affiliation, false, null);
+                }
+            }
+            entityManager.flush();
+
+            if (this.isPostgres()) {
+                this.insertAll(requests, pairs, created, removed, results, organizationId);
+            } else {
+                this.persistAll(requests, created, removed, results);
+            }
+            for (int i = 0; i < requests.size(); i++) {
+                if (results[i] == null) {
+                    // Repeated pair, answered by the first request for it.
+                    results[i] = new AffiliationRequestResult(
+                            results[firstRequest.get(pairs.get(i))].getAffiliation(), false, null);
+                }
+            }
+            return Arrays.asList(results);
+        } finally {
+            locks.forEach(ReentrantLock::unlock);
+        }
+    }
+
+    private void persistAll(List<Affiliation> requests, List<Integer> created, StatusChange[] removed,
+                            AffiliationRequestResult[] results) {
+        int createdCount = 0;
+        for (int i : created) {
+            Affiliation request = requests.get(i);
+            request.setActive(true);
+            entityManager.persist(request);
+            results[i] = new AffiliationRequestResult(request, true, removed[i]);
+            if (++createdCount % FLUSH_INTERVAL == 0) {
+                entityManager.flush();
+                entityManager.clear();
+            }
+        }
+        entityManager.flush();
+    }
+
+    /**
+     * Insert the new affiliations of a batch with POSTGRES_INSERT_ALL, in the order of their pairs so that two
+     * batches wait on each other's pairs in the same order. A pair skipped because of a concurrent request is
+     * answered with the affiliation of that request, or requested again if that one is no longer active.
+     *
+     * @param requests
+     * @param pairs
+     * @param created
+     * @param removed
+     * @param results
+     * @param organizationId
+     */
+    @SuppressWarnings("unchecked")
+    private void insertAll(List<Affiliation> requests, List<AffiliationPair> pairs, List<Integer> created,
+                           StatusChange[] removed, AffiliationRequestResult[] results, Long organizationId) {
+        List<Integer> ordered = new ArrayList<>(created);
+        ordered.sort(Comparator.<Integer>comparingLong(i -> pairs.get(i).getLow())
+                .thenComparingLong(i -> pairs.get(i).getHigh()));
+        Session session = entityManager.unwrap(Session.class);
+        for (int from = 0; from < ordered.size(); from += INSERT_CHUNK) {
+            List<Integer> chunk = ordered.subList(from, Math.min(ordered.size(), from + INSERT_CHUNK));
+            String rows = IntStream.range(0, chunk.size())
+                    .mapToObj(row -> String.format(POSTGRES_INSERT_ROW, row))
+                    .collect(Collectors.joining(", "));
+            NativeQuery<Object[]> query = session
+                    .createNativeQuery(String.format(POSTGRES_INSERT_ALL, this.affiliationSequence(), rows))
+                    .addScalar("id", LongType.INSTANCE)
+                    .addScalar("affiliation_from", LongType.INSTANCE)
+                    .addScalar("affiliation_with", LongType.INSTANCE)
+                    .addScalar("created_at", TimestampType.INSTANCE)
+                    .addScalar("updated_at", TimestampType.INSTANCE)
+                    .addSynchronizedEntityClass(Affiliation.class);
+            Map<AffiliationPair, Integer> chunkIndexes = new HashMap<>();
+            for (int row = 0; row < chunk.size(); row++) {
+                Affiliation request = requests.get(chunk.get(row));
+                chunkIndexes.put(pairs.get(chunk.get(row)), chunk.get(row));
+                query.setParameter("status" + row, request.getStatus().name())
+                        .setParameter("actionedBy" + row, request.getActionedBy(), LongType.INSTANCE)
+                        .setParameter("requestedBy" + row, request.getRequestedBy(), LongType.INSTANCE)
+                        .setParameter("affiliationFrom" + row, request.getAffiliationFrom().getId())
+                        .setParameter("affiliationWith" + row, request.getAffiliationWith().getId());
+            }
+            for (Object[] row : query.getResultList()) {
+                int i = chunkIndexes.remove(AffiliationPair.of((Long) row[1], (Long) row[2]));
+                Affiliation request = requests.get(i);
+                request.setId((Long) row[0]);
+                request.setCreatedAt((Date) row[3]);
+                request.setUpdatedAt((Date) row[4]);
+                request.setActive(true);
+                results[i] = new AffiliationRequestResult(request, true, removed[i]);
+            }
+            for (int i : chunkIndexes.values()) {
+                List<Affiliation> affiliations = this.findActive(pairs.get(i), LockModeType.NONE);
+                if (!affiliations.isEmpty()) {
+                    results[i] = new AffiliationRequestResult(affiliations.get(0), false, removed[i]);
+                } else {
+                    // The affiliation which blocked the insert was removed in the meantime, request again.
+                    AffiliationRequestResult result = this.request(requests.get(i), organizationId);
+                    results[i] = new AffiliationRequestResult(result.getAffiliation(), result.isCreated(),
+                            removed[i] != null ? removed[i] : result.getRemoved());
+                }
+            }
+        }
+    }
+
+    /**
+     * Active affiliations of the given pairs, locked for the rest of the transaction.
+     * Pairs are looked up in chunks of LOOKUP_CHUNK, the last chunk repeats its last pair so that every lookup is
+     * the same statement.
+     *
+     * @param pairs
+     * @return
+     */
+    private Map<AffiliationPair, Affiliation> findActive(List<AffiliationPair> pairs) {
+        List<AffiliationPair> wanted = new ArrayList<>(new LinkedHashSet<>(pairs));
+        Map<AffiliationPair, Affiliation> active = new HashMap<>();
+        for (int from = 0; from < wanted.size(); from += LOOKUP_CHUNK) {
+            List<AffiliationPair> chunk = wanted.subList(from, Math.min(wanted.size(), from + LOOKUP_CHUNK));
+            // Only the affiliation rows are locked, Postgres refuses to lock the outer joined admins.
+            Query<Affiliation> query = entityManager.unwrap(Session.class)
+                    .createQuery(ACTIVE_OF_PAIRS, Affiliation.class)
+                    .setLockMode("a", LockMode.PESSIMISTIC_WRITE);
+            for (int i = 0; i < LOOKUP_CHUNK; i++) {
+                AffiliationPair pair = chunk.get(Math.min(i, chunk.size() - 1));
+                query.setParameter("low" + i, pair.getLow()).setParameter("high" + i, pair.getHigh());
+            }
+            for (Affiliation affiliation : query.getResultList()) {
+                active.put(AffiliationPair.of(affiliation.getAffiliationFrom().getId(),
+                        affiliation.getAffiliationWith().getId()), affiliation);
+            }
+        }
+        return active;
+    }
+
+    private List<Affiliation> findActive(AffiliationPair pair, LockModeType lockMode) {
+        return entityManager.createQuery(ACTIVE_PAIR, Affiliation.class)
+                .setParameter("low", pair.getLow())
+                .setParameter("high", pair.getHigh())
+                .setLockMode(lockMode)
+                .getResultList();
+    }
+
+    /**
+     * Session to run a returning statement on. Affiliations of the persistence context the statement may change
+     * would shadow the returned rows, so those are flushed and evicted first. The rest of the context stays
+     * managed.
+     *
+     * @param organizationId
+     * @param otherOrganizationIds
+     * @return
+     */
+    private Session evictAffiliations(Long organizationId, Collection<Long> otherOrganizationIds) {
+        SessionImplementor session = entityManager.unwrap(SessionImplementor.class);
+        List<Affiliation> affected = new ArrayList<>();
+        for (Object entity : session.getPersistenceContext().getEntitiesByKey().values()) {
+            if (entity instanceof Affiliation && this.isBetween((Affiliation) entity, organizationId,
+                    otherOrganizationIds)) {
+                affected.add((Affiliation) entity);
+            }
+        }
+        if (!affected.isEmpty()) {
+            session.flush();
+            affected.forEach(session::evict);
+        }
+        return session;
+    }
+
+    private boolean isBetween(Affiliation affiliation, Long organizationId, Collection<Long> otherOrganizationIds) {
+        Long fromId = affiliation.getAffiliationFrom().getId();
+        Long withId = affiliation.getAffiliationWith().getId();
+        return (organizationId.equals(fromId) && otherOrganizationIds.contains(withId)) ||
+                (organizationId.equals(withId) && otherOrganizationIds.contains(fromId));
+    }
+
+    /**
+     * Whether organizationId may replace the active affiliation of the pair with a new request.
+     *
+     * @param affiliation
+     * @param organizationId
+     * @return
+     */
+    private boolean mayRequestAgain(Affiliation affiliation, Long organizationId) {
+        return (organizationId.equals(affiliation.getAffiliationFrom().getId()) &&
+                AffiliationTransition.REQUEST.allows(affiliation.getStatus(), true)) ||
+                (organizationId.equals(affiliation.getAffiliationWith().getId()) &&
+                        AffiliationTransition.REQUEST.allows(affiliation.getStatus(), false));
+    }
+
+    private static String statusName(AffiliationStatus status) {
+        return status == null ? "" : status.name();
+    }
+
+    private boolean isPostgres() {
+        if (postgres == null) {
+            postgres = entityManager.getEntityManagerFactory().unwrap(SessionFactoryImplementor.class)
+                    .getJdbcServices().getDialect() instanceof PostgreSQL81Dialect;
+        }
+        return postgres;
+    }
+
+    /**
+     * POSTGRES_REQUEST taking the id from the sequence Affiliation ids are mapped to.
+     *
+     * @return
+     */
+    private String postgresRequest() {
+        if (postgresRequest == null) {
+            postgresRequest = String.format(POSTGRES_REQUEST, this.affiliationSequence());
+        }
+        return postgresRequest;
+    }
+
+    /**
+     * Name of the sequence Affiliation ids are mapped to. A value taken in a statement is never handed out by
+     * Hibernate as long as the optimizer allocates each value, or the block starting or ending at it, to whoever took
+     * it, which rules out the hilo optimizers.
+     *
+     * @return
+     */
+    private String affiliationSequence() {
+        if (affiliationSequence == null) {
+            IdentifierGenerator generator = entityManager.getEntityManagerFactory()
+                    .unwrap(SessionFactoryImplementor.class).getMetamodel().entityPersister(Affiliation.class)
+                    .getIdentifierGenerator();
+            if (!(generator instanceof SequenceStyleGenerator)
+                    || !(((SequenceStyleGenerator) generator).getDatabaseStructure() instanceof SequenceStructure)
+                    || ((SequenceStyleGenerator) generator).getOptimizer() instanceof HiLoOptimizer
+                    || ((SequenceStyleGenerator) generator).getOptimizer() instanceof LegacyHiLoAlgorithmOptimizer) {
+                throw new IllegalStateException("Affiliation ids have to be generated from a sequence without a " +
+                        "hilo optimizer to request affiliations on Postgres");
+            }
+            affiliationSequence = ((SequenceStyleGenerator) generator).getDatabaseStructure().getName();
+        }
+        return affiliationSequence;
+    }
+
+    private static Expression<Integer> countWhere(CriteriaBuilder criteriaBuilder, Predicate predicate) {
+        return criteriaBuilder.sum(criteriaBuilder.<Integer>selectCase().when(predicate, 1).otherwise(0));
+    }
+
+    private static <T> Expression<T> counterpart(CriteriaBuilder criteriaBuilder, Predicate fromOrganization,
+                                                 Path<T> fromColumn, Path<T> withColumn) {
+        return criteriaBuilder.<T>selectCase().when(fromOrganization, withColumn).otherwise(fromColumn);
+    }
+}
@@ -0,0 +1,99 @@
+/*
+ * Copyright (c) Vocera Communications, Inc. All Rights Reserved.
+ * This software is the confidential and proprietary information of
+ * Vocera Communications, Inc.
+ */
+
+package com.vocera.cloud.affiliateservice.repository;
+
+import com.vocera.cloud.affiliateservice.model.AffiliationPair;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.SortedSet;
+import java.util.TreeSet;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Striped in-process locks on organization pairs, for databases without an atomic upsert on the pair.
+ * A lock taken inside a transaction is held until the transaction completes, so the next caller sees the
+ * committed row.
+ *
+ * @author Rohit Phatak
+ */
+class PairLocks {
+
+    private final ReentrantLock[] stripes;
+
+    /**
+     * Constructor.
+     *
+     * @param stripeCount
+     */
+    PairLocks(int stripeCount) {
+        this.stripes = new ReentrantLock[stripeCount];
+        for (int i = 0; i < stripeCount; i++) {
+            this.stripes[i] = new ReentrantLock();
+        }
+    }
+
+    /**
+     * Lock the pair until the current transaction completes.
+     * Outside of a transaction the lock is returned locked and the caller has to unlock it.
+     *
+     * @param pair
+     * @return lock to unlock when there is no transaction, null otherwise.
+     */
+    ReentrantLock lock(AffiliationPair pair) {
+        ReentrantLock lock = stripes[this.stripe(pair)];
+        lock.lock();
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            return lock;
+        }
+        this.unlockAfterCompletion(Collections.singletonList(lock));
+        return null;
+    }
+
+    /**
+     * Lock all pairs until the current transaction completes. Stripes are always taken in the same order so that
+     * two batches cannot deadlock.
+     * Outside of a transaction the locks are returned locked and the caller has to unlock them.
+     *
+     * @param pairs
+     * @return locks to unlock when there is no transaction, empty otherwise.
+     */
+    List<ReentrantLock> lockAll(Collection<AffiliationPair> pairs) {
+        SortedSet<Integer> stripeIndexes = new TreeSet<>();
+        for (AffiliationPair pair : pairs) {
+            stripeIndexes.add(this.stripe(pair));
+        }
+        List<ReentrantLock> locks = new ArrayList<>(stripeIndexes.size());
+        for (int stripeIndex : stripeIndexes) {
+            ReentrantLock lock = stripes[stripeIndex];
+            lock.lock();
+            locks.add(lock);
+        }
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            return locks;
+        }
+        this.unlockAfterCompletion(locks);
+        return Collections.emptyList();
+    }
+
+    private int stripe(AffiliationPair pair) {
+        return Math.floorMod(pair.hashCode(), stripes.length);
+    }
+
+    private void unlockAfterCompletion(List<ReentrantLock> locks) {
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+            @Override
+            public void afterCompletion(int status) {
+                locks.forEach(ReentrantLock::unlock);
+            }
+        });
+    }
+}
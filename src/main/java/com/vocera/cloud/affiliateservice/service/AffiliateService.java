@@ -6,13 +6,26 @@
 
 package com.vocera.cloud.affiliateservice.service;
 
+import com.vocera.cloud.affiliateservice.constant.AffiliationTransition;
+import com.vocera.cloud.affiliateservice.constant.TotalType;
+import com.vocera.cloud.affiliateservice.event.AffiliationEventSubscriber;
+import com.vocera.cloud.affiliateservice.model.AffiliationHistoryEntry;
+import com.vocera.cloud.affiliateservice.model.BatchItemResult;
+import com.vocera.cloud.affiliateservice.model.BulkTransitionRequest;
+import com.vocera.cloud.affiliateservice.model.CacheStatistics;
+import com.vocera.cloud.affiliateservice.model.FilterPageResponse;
+import com.vocera.cloud.affiliateservice.model.OrganizationSummary;
+import com.vocera.cloud.affiliateservice.model.TransitionResult;
 import com.vocera.cloud.coremodel.constants.FilterType;
 import com.vocera.cloud.coremodel.constants.OrderableColumn;
 import com.vocera.cloud.coremodel.model.Affiliation;
-import com.vocera.cloud.coremodel.model.Organization;
-import com.vocera.cloud.coremodel.model.PageResponse;
 import org.springframework.data.domain.Sort;
 
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
 /**
  * Affiliation Service.
  *
@@ -28,11 +41,21 @@ public interface AffiliateService {
      */
     Affiliation affiliate(Affiliation affiliation, Long organizationId);
 
+    /**
+     * Request for Affiliations in bulk.
+     *
+     * @param affiliations
+     * @param organizationId
+     * @return one result per request, in the order of the requests.
+     */
+    List<BatchItemResult> affiliateAll(List<Affiliation> affiliations, Long organizationId);
+
     /**
      * Filter through affiliates.
      *
      * @param page
      * @param offset
+     * @param totalType
      * @param query
      * @param sort
      * @param order
@@ -40,8 +63,26 @@ public interface AffiliateService {
      * @param organizationId
      * @return
      */
-    PageResponse<Affiliation> filterAffiliation(
-            int page, int offset, String query, OrderableColumn sort, Sort.Direction order,
+    FilterPageResponse<Affiliation> filterAffiliation(
+            int page, int offset, TotalType totalType, String query, OrderableColumn sort, Sort.Direction order,
+            FilterType filterType, Long organizationId);
+
+    /**
+     * Filter through affiliates using keyset pagination.
+     * The page starts after the row encoded in the after cursor, an empty cursor returns the first page.
+     *
+     * @param offset
+     * @param after
+     * @param totalType
+     * @param query
+     * @param sort
+     * @param order
+     * @param filterType
+     * @param organizationId
+     * @return
+     */
+    FilterPageResponse<Affiliation> filterAffiliation(
+            int offset, String after, TotalType totalType, String query, OrderableColumn sort, Sort.Direction order,
             FilterType filterType, Long organizationId);
 
     /**
@@ -49,6 +90,7 @@ public interface AffiliateService {
      *
      * @param page
      * @param offset
+     * @param totalType
      * @param query
      * @param sort
      * @param order
@@ -56,10 +98,65 @@ public interface AffiliateService {
      * @param organizationId
      * @return
      */
-    PageResponse<Organization> filterAffiliationOrganization(
-            int page, int offset, String query, OrderableColumn sort, Sort.Direction order,
+    FilterPageResponse<OrganizationSummary> filterAffiliationOrganization(
+            int page, int offset, TotalType totalType, String query, OrderableColumn sort, Sort.Direction order,
             FilterType filterType, Long organizationId);
 
+    /**
+     * Filter through organizations in affiliation using keyset pagination.
+     *
+     * @param offset
+     * @param after
+     * @param totalType
+     * @param query
+     * @param sort
+     * @param order
+     * @param filterType
+     * @param organizationId
+     * @return
+     */
+    FilterPageResponse<OrganizationSummary> filterAffiliationOrganization(
+            int offset, String after, TotalType totalType, String query, OrderableColumn sort, Sort.Direction order,
+            FilterType filterType, Long organizationId);
+
+    /**
+     * Pass every affiliation matching the filter to the consumer, in the order of the filter endpoints.
+     * Affiliations are read through a cursor instead of being loaded as a list.
+     *
+     * @param query
+     * @param sort
+     * @param order
+     * @param filterType
+     * @param organizationId
+     * @param consumer
+     * @return number of affiliations exported.
+     */
+    long exportAffiliations(String query, OrderableColumn sort, Sort.Direction order, FilterType filterType,
+                            Long organizationId, Consumer<Affiliation> consumer);
+
+    /**
+     * Pass the recorded status transitions of the organization to the consumer, in the order they happened.
+     * Only the transitions with otherOrganizationId are passed when it is set.
+     *
+     * @param organizationId
+     * @param otherOrganizationId
+     * @param from
+     * @param to
+     * @param consumer
+     * @return number of transitions exported.
+     */
+    long exportHistory(Long organizationId, Long otherOrganizationId, Date from, Date to,
+                       Consumer<AffiliationHistoryEntry> consumer);
+
+    /**
+     * Number of affiliations of the organization in every filterType.
+     *
+     * @param query
+     * @param organizationId
+     * @return
+     */
+    Map<FilterType, Long> filterCounts(String query, Long organizationId);
+
     /**
      * Check if two organizations are affiliated.
      *
@@ -69,6 +166,42 @@ public interface AffiliateService {
      */
     Affiliation checkAffiliation(Long org1, Long org2);
 
+    /**
+     * Hit, miss and eviction statistics of the affiliation check cache.
+     *
+     * @return
+     */
+    CacheStatistics checkCacheStatistics();
+
+    /**
+     * Affiliation version of the organization, increased by every committed change to one of its affiliations.
+     *
+     * @param organizationId
+     * @return
+     */
+    long affiliationVersion(Long organizationId);
+
+    /**
+     * Seq of the last committed affiliation event.
+     *
+     * @return
+     */
+    long latestEventSeq();
+
+    /**
+     * Subscribe to the affiliation events after the seq of the subscriber.
+     *
+     * @param subscriber
+     */
+    void subscribeEvents(AffiliationEventSubscriber subscriber);
+
+    /**
+     * Stop delivering affiliation events to the subscriber.
+     *
+     * @param subscriber
+     */
+    void unsubscribeEvents(AffiliationEventSubscriber subscriber);
+
     /**
      * Approve an affiliation request.
      *
@@ -114,4 +247,15 @@ public interface AffiliateService {
      * @return
      */
     Affiliation removeAffiliation(Long organizationId, Long affiliatedOrganizationId);
+
+    /**
+     * Apply a status change to the affiliations of organizationId with many organizations.
+     *
+     * @param transition
+     * @param organizationId
+     * @param bulkTransitionRequest
+     * @return
+     */
+    List<TransitionResult> transitionAll(AffiliationTransition transition, Long organizationId,
+                                         BulkTransitionRequest bulkTransitionRequest);
 }
@@ -6,7 +6,22 @@
 
 package com.vocera.cloud.affiliateservice.service.impl;
 
+import com.vocera.cloud.affiliateservice.constant.AffiliationTransition;
+import com.vocera.cloud.affiliateservice.constant.ErrorCodes;
+import com.vocera.cloud.affiliateservice.constant.FilterStatuses;
+import com.vocera.cloud.affiliateservice.constant.TotalType;
+import com.vocera.cloud.affiliateservice.event.AffiliationChangedEvent;
+import com.vocera.cloud.affiliateservice.event.AffiliationEventSubscriber;
 import com.vocera.cloud.affiliateservice.exception.InvalidAffiliationException;
+import com.vocera.cloud.affiliateservice.model.AffiliationHistoryEntry;
+import com.vocera.cloud.affiliateservice.model.AffiliationRequestResult;
+import com.vocera.cloud.affiliateservice.model.BatchItemResult;
+import com.vocera.cloud.affiliateservice.model.BulkTransitionRequest;
+import com.vocera.cloud.affiliateservice.model.CacheStatistics;
+import com.vocera.cloud.affiliateservice.model.FilterPageResponse;
+import com.vocera.cloud.affiliateservice.model.OrganizationSummary;
+import com.vocera.cloud.affiliateservice.model.StatusChange;
+import com.vocera.cloud.affiliateservice.model.TransitionResult;
 import com.vocera.cloud.affiliateservice.repository.AffiliateRepository;
 import com.vocera.cloud.affiliateservice.service.AffiliateService;
 import com.vocera.cloud.coremodel.constants.AffiliationStatus;
@@ -14,19 +29,31 @@ import com.vocera.cloud.coremodel.constants.FilterType;
 import com.vocera.cloud.coremodel.constants.OrderableColumn;
 import com.vocera.cloud.coremodel.model.Affiliation;
 import com.vocera.cloud.coremodel.model.Organization;
-import com.vocera.cloud.coremodel.model.PageResponse;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.springframework.data.domain.Page;
-import org.springframework.data.domain.PageRequest;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.data.domain.Sort;
+import org.springframework.data.jpa.domain.Specification;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
-import javax.transaction.Transactional;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.Date;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 /**
  * Implementation for @{@link AffiliateService}.
@@ -38,33 +65,66 @@ public class AffiliateServiceImpl implements AffiliateService {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(AffiliateServiceImpl.class);
 
-    private final List<AffiliationStatus> UNAFFILIATED_FROM = Arrays.asList(AffiliationStatus.REMOVED,
-            AffiliationStatus.REVOKED_FROM, AffiliationStatus.CANCELLED);
-    private final List<AffiliationStatus> UNAFFILIATED_WITH = Arrays.asList(
-            AffiliationStatus.REJECTED, AffiliationStatus.REMOVED, AffiliationStatus.REVOKED_TO);
-    private final List<AffiliationStatus> AFFILIATES_FROM = Arrays.asList(AffiliationStatus.AFFILIATED);
-    private final List<AffiliationStatus> AFFILIATES_WITH = Arrays.asList(AffiliationStatus.AFFILIATED);
-    private final List<AffiliationStatus> ACTIVE_REQUEST_FROM = Arrays.asList(AffiliationStatus.ACTIVE_REQUEST,
-            AffiliationStatus.REJECTED, AffiliationStatus.REVOKED_TO);
-    private final List<AffiliationStatus> ACTIVE_REQUEST_WITH = Arrays.asList(AffiliationStatus.ACTIVE_REQUEST,
-            AffiliationStatus.CANCELLED, AffiliationStatus.REVOKED_FROM);
-    private final List<AffiliationStatus> ELEGIBLE_FOR_REMOVE = Arrays.asList(AffiliationStatus.CANCELLED,
-            AffiliationStatus.REJECTED, AffiliationStatus.REVOKED_FROM, AffiliationStatus.REVOKED_TO,
-            AffiliationStatus.UNREGISTERED_TO, AffiliationStatus.UNREGISTERED_FROM);
-
-    private final List<AffiliationStatus> AFFILIATION_REQUEST_CHECK_FROM = Arrays.asList(AffiliationStatus.CANCELLED,
-            AffiliationStatus.REVOKED_FROM);
-    private final List<AffiliationStatus> AFFILIATION_REQUEST_CHECK_WITH = Arrays.asList(AffiliationStatus.REJECTED,
-            AffiliationStatus.REVOKED_TO);
+    /**
+     * Number of organizations per existence check of a batch.
+     */
+    private static final int ORGANIZATION_LOOKUP_CHUNK = 1000;
+
+    private static final int EXPORT_FETCH_SIZE = 500;
 
     private AffiliateRepository affiliateRepository;
 
-    public AffiliateServiceImpl(AffiliateRepository affiliateRepository) {
+    private ApplicationEventPublisher eventPublisher;
+
+    private FilterCountCache filterCountCache;
+
+    private OrganizationNameIndex organizationNameIndex;
+
+    private AffiliationGraphIndex affiliationGraphIndex;
+
+    private AffiliationCheckCache affiliationCheckCache;
+
+    private AffiliationVersions affiliationVersions;
+
+    private AffiliationEventFeed affiliationEventFeed;
+
+    private AffiliationHistory affiliationHistory;
+
+    /**
+     * Constructor.
+     *
+     * @param affiliateRepository
+     * @param eventPublisher
+     * @param filterCountCache
+     * @param organizationNameIndex
+     * @param affiliationGraphIndex
+     * @param affiliationCheckCache
+     * @param affiliationVersions
+     * @param affiliationEventFeed
+     * @param affiliationHistory
+     */
+    public AffiliateServiceImpl(AffiliateRepository affiliateRepository, ApplicationEventPublisher eventPublisher,
+                                FilterCountCache filterCountCache, OrganizationNameIndex organizationNameIndex,
+                                AffiliationGraphIndex affiliationGraphIndex,
+                                AffiliationCheckCache affiliationCheckCache,
+                                AffiliationVersions affiliationVersions,
+                                AffiliationEventFeed affiliationEventFeed,
+                                AffiliationHistory affiliationHistory) {
         this.affiliateRepository = affiliateRepository;
+        this.eventPublisher = eventPublisher;
+        this.filterCountCache = filterCountCache;
+        this.organizationNameIndex = organizationNameIndex;
+        this.affiliationGraphIndex = affiliationGraphIndex;
+        this.affiliationCheckCache = affiliationCheckCache;
+        this.affiliationVersions = affiliationVersions;
+        this.affiliationEventFeed = affiliationEventFeed;
+        this.affiliationHistory = affiliationHistory;
     }
 
     /**
      * Request an affiliation.
+     * An existing affiliation the organization may request again from, as decided by
+     * @{@link AffiliationTransition#REQUEST}, is removed and replaced in the same step.
      *
      * @param affiliationRequest
      * @return
@@ -72,32 +132,84 @@ public class AffiliateServiceImpl implements AffiliateService {
     @Override
     @Transactional
     public Affiliation affiliate(Affiliation affiliationRequest, Long organizationId) {
-        Affiliation affiliationState = this.checkAffiliation(
-                affiliationRequest.getAffiliationFrom().getId(),
-                affiliationRequest.getAffiliationWith().getId());
-        if (affiliationState.getStatus() != AffiliationStatus.NONE &&
-                !(organizationId == affiliationState.getAffiliationWith().getId() &&
-                        AFFILIATION_REQUEST_CHECK_WITH.contains(affiliationState.getStatus())) &&
-                !(organizationId == affiliationState.getAffiliationFrom().getId() &&
-                        AFFILIATION_REQUEST_CHECK_FROM.contains(affiliationState.getStatus()))) {
-            return affiliationState;
-        } else {
-            if ((AFFILIATION_REQUEST_CHECK_WITH.contains(affiliationState.getStatus()) &&
-                    organizationId == affiliationState.getAffiliationWith().getId()) ||
-                    (AFFILIATION_REQUEST_CHECK_FROM.contains(affiliationState.getStatus()) &&
-                            organizationId == affiliationState.getAffiliationFrom().getId())) {
-                this.removeAffiliation(affiliationRequest.getAffiliationFrom().getId(),
-                        affiliationRequest.getAffiliationWith().getId());
+        return this.publishRequest(this.affiliateRepository.request(affiliationRequest, organizationId),
+                organizationId);
+    }
+
+    /**
+     * Request affiliations in bulk.
+     * Requests naming an organization which does not exist are reported as invalid, the others follow the rules
+     * of {@link #affiliate} and are written in JDBC batches.
+     *
+     * @param affiliationRequests
+     * @param organizationId
+     * @return one result per request, in the order of the requests.
+     */
+    @Override
+    @Transactional
+    public List<BatchItemResult> affiliateAll(List<Affiliation> affiliationRequests, Long organizationId) {
+        Set<Long> organizationIds = new TreeSet<>();
+        for (Affiliation affiliationRequest : affiliationRequests) {
+            organizationIds.add(affiliationRequest.getAffiliationFrom().getId());
+            organizationIds.add(affiliationRequest.getAffiliationWith().getId());
+        }
+        Set<Long> existingIds = new HashSet<>();
+        List<Long> ids = new ArrayList<>(organizationIds);
+        for (int from = 0; from < ids.size(); from += ORGANIZATION_LOOKUP_CHUNK) {
+            existingIds.addAll(affiliateRepository.findOrganizationIds(
+                    ids.subList(from, Math.min(ids.size(), from + ORGANIZATION_LOOKUP_CHUNK))));
+        }
+
+        BatchItemResult[] results = new BatchItemResult[affiliationRequests.size()];
+        List<Affiliation> validRequests = new ArrayList<>();
+        List<Integer> validIndexes = new ArrayList<>();
+        for (int i = 0; i < affiliationRequests.size(); i++) {
+            Affiliation affiliationRequest = affiliationRequests.get(i);
+            if (!existingIds.contains(affiliationRequest.getAffiliationFrom().getId())) {
+                results[i] = BatchItemResult.invalid(i,
+                        Arrays.asList(ErrorCodes.INVALID_AFFILIATION_FROM.getMessage()));
+            } else if (!existingIds.contains(affiliationRequest.getAffiliationWith().getId())) {
+                results[i] = BatchItemResult.invalid(i,
+                        Arrays.asList(ErrorCodes.INVALID_AFFILIATION_WITH.getMessage()));
+            } else {
+                validRequests.add(affiliationRequest);
+                validIndexes.add(i);
             }
-            affiliationRequest.setActive(true);
-            return this.affiliateRepository.saveAndFlush(affiliationRequest);
         }
+        List<AffiliationRequestResult> requestResults = affiliateRepository.requestAll(validRequests,
+                organizationId);
+        for (int i = 0; i < requestResults.size(); i++) {
+            AffiliationRequestResult requestResult = requestResults.get(i);
+            this.publishRequest(requestResult, organizationId);
+            results[validIndexes.get(i)] = BatchItemResult.of(validIndexes.get(i), requestResult);
+        }
+        return Arrays.asList(results);
+    }
 
+    /**
+     * Publish the changes made by an affiliation request.
+     *
+     * @param result
+     * @param organizationId
+     * @return active affiliation of the pair.
+     */
+    private Affiliation publishRequest(AffiliationRequestResult result, Long organizationId) {
+        if (result.getRemoved() != null) {
+            this.publishChange(result.getRemoved().getPreviousStatus(), result.getRemoved().getAffiliation(),
+                    organizationId);
+        }
+        if (!result.isCreated()) {
+            return result.getAffiliation();
+        }
+        return this.publishChange(AffiliationStatus.NONE, result.getAffiliation(), organizationId);
     }
 
     /**
+     * Fetch one extra row to find out if there is a next page, the total is only counted when requested.
+     *
      * @param page
      * @param offset
+     * @param totalType
      * @param query
      * @param sort
      * @param order
@@ -106,41 +218,69 @@ public class AffiliateServiceImpl implements AffiliateService {
      * @return
      */
     @Override
-    public PageResponse<Affiliation> filterAffiliation(
-            int page, int offset, String query, OrderableColumn sort, Sort.Direction order,
+    @Transactional(readOnly = true)
+    public FilterPageResponse<Affiliation> filterAffiliation(
+            int page, int offset, TotalType totalType, String query, OrderableColumn sort, Sort.Direction order,
             FilterType filterType, Long organizationId) {
-        Page<Affiliation> affiliationPage;
-        switch (filterType) {
-            case UNAFFILIATED:
-                affiliationPage = affiliateRepository.findAll(AffiliateSpecifications.affiliatesSpecification(
-                        true, query, sort, order, organizationId, UNAFFILIATED_FROM, UNAFFILIATED_WITH),
-                        new PageRequest(page, offset));
-                break;
-            case AFFILIATES:
-                affiliationPage = affiliateRepository.findAll(AffiliateSpecifications.affiliatesSpecification(
-                        true, query, sort, order, organizationId, AFFILIATES_FROM, AFFILIATES_WITH),
-                        new PageRequest(page, offset));
-                break;
-            case ACTIVE_REQUESTS:
-                affiliationPage = affiliateRepository.findAll(AffiliateSpecifications.affiliatesSpecification(
-                        true, query, sort, order, organizationId, ACTIVE_REQUEST_FROM, ACTIVE_REQUEST_WITH),
-                        new PageRequest(page, offset));
-                break;
-            case ALL:
-            default:
-                affiliationPage = affiliateRepository.findAll(AffiliateSpecifications.affiliatesSpecification(
-                        true, query, sort, order, organizationId,
-                        Arrays.asList(AffiliationStatus.values()),
-                        Arrays.asList(AffiliationStatus.values())),
-                        new PageRequest(page, offset));
+        Specification<Affiliation> specification = this.affiliatesSpecification(query, sort, order, filterType,
+                organizationId);
+        List<Affiliation> affiliations = affiliateRepository.findSlice(specification, (long) page * offset,
+                offset + 1);
+        boolean hasNext = affiliations.size() > offset;
+        if (hasNext) {
+            affiliations = new ArrayList<>(affiliations.subList(0, offset));
+        }
+        return new FilterPageResponse<Affiliation>(affiliations, page, offset,
+                this.pageTotalCount(page, offset, affiliations.size(), hasNext, totalType, specification, query,
+                        filterType, organizationId), totalType, hasNext, null);
+    }
+
+    /**
+     * Seek past the row encoded in the cursor instead of skipping page * offset rows.
+     * One extra row is fetched to find out if there is a next page.
+     *
+     * @param offset
+     * @param after
+     * @param totalType
+     * @param query
+     * @param sort
+     * @param order
+     * @param filterType
+     * @param organizationId
+     * @return
+     */
+    @Override
+    @Transactional(readOnly = true)
+    public FilterPageResponse<Affiliation> filterAffiliation(
+            int offset, String after, TotalType totalType, String query, OrderableColumn sort, Sort.Direction order,
+            FilterType filterType, Long organizationId) {
+        Specification<Affiliation> specification = this.affiliatesSpecification(query, sort, order, filterType,
+                organizationId);
+        Specification<Affiliation> pageSpecification = specification;
+        KeysetCursor cursor = KeysetCursor.decode(after);
+        if (cursor != null) {
+            pageSpecification = specification.and(AffiliateSpecifications.keysetAfter(cursor.getValue(),
+                    cursor.getId(), sort, organizationId, order));
+        }
+        pageSpecification = AffiliateSpecifications.keysetOrder(pageSpecification, sort, organizationId, order);
+        List<Affiliation> affiliations = affiliateRepository.findSlice(pageSpecification, 0, offset + 1);
+        boolean hasNext = affiliations.size() > offset;
+        String nextCursor = null;
+        if (hasNext) {
+            affiliations = new ArrayList<>(affiliations.subList(0, offset));
+            nextCursor = KeysetCursor.of(affiliations.get(offset - 1), sort, organizationId).encode();
         }
-        return new PageResponse<Affiliation>(affiliationPage.getContent(), page, offset,
-                affiliationPage.getTotalElements());
+        return new FilterPageResponse<Affiliation>(affiliations, 0, offset,
+                this.totalCount(totalType, specification, query, filterType, organizationId), totalType, hasNext,
+                nextCursor);
     }
 
     /**
+     * Select only the columns of the counterpart organizations instead of loading the affiliation entities.
+     *
      * @param page
      * @param offset
+     * @param totalType
      * @param query
      * @param sort
      * @param order
@@ -149,19 +289,214 @@ public class AffiliateServiceImpl implements AffiliateService {
      * @return
      */
     @Override
-    public PageResponse<Organization> filterAffiliationOrganization(
-            int page, int offset, String query, OrderableColumn sort, Sort.Direction order, FilterType filterType,
-            Long organizationId) {
-        PageResponse<Affiliation> pageResponse = this.filterAffiliation(page, offset, query, sort, order, filterType,
+    @Transactional(readOnly = true)
+    public FilterPageResponse<OrganizationSummary> filterAffiliationOrganization(
+            int page, int offset, TotalType totalType, String query, OrderableColumn sort, Sort.Direction order,
+            FilterType filterType, Long organizationId) {
+        Specification<Affiliation> specification = this.affiliatesSpecification(query, sort, order, filterType,
                 organizationId);
-        return new PageResponse<Organization>(pageResponse.getData().stream()
-                .map(affiliation -> affiliation.getAffiliationWith()).collect(Collectors.toList()),
-                page, offset, pageResponse.getTotalCount());
+        List<OrganizationSummary> organizations = affiliateRepository.findCounterpartSlice(specification,
+                organizationId, (long) page * offset, offset + 1);
+        boolean hasNext = organizations.size() > offset;
+        if (hasNext) {
+            organizations = new ArrayList<>(organizations.subList(0, offset));
+        }
+        return new FilterPageResponse<OrganizationSummary>(organizations, page, offset,
+                this.pageTotalCount(page, offset, organizations.size(), hasNext, totalType, specification, query,
+                        filterType, organizationId), totalType, hasNext, null);
+    }
+
+    /**
+     * Keyset variant of the organization directory.
+     *
+     * @param offset
+     * @param after
+     * @param totalType
+     * @param query
+     * @param sort
+     * @param order
+     * @param filterType
+     * @param organizationId
+     * @return
+     */
+    @Override
+    @Transactional(readOnly = true)
+    public FilterPageResponse<OrganizationSummary> filterAffiliationOrganization(
+            int offset, String after, TotalType totalType, String query, OrderableColumn sort, Sort.Direction order,
+            FilterType filterType, Long organizationId) {
+        Specification<Affiliation> specification = this.affiliatesSpecification(query, sort, order, filterType,
+                organizationId);
+        Specification<Affiliation> pageSpecification = specification;
+        KeysetCursor cursor = KeysetCursor.decode(after);
+        if (cursor != null) {
+            pageSpecification = specification.and(AffiliateSpecifications.keysetAfter(cursor.getValue(),
+                    cursor.getId(), sort, organizationId, order));
+        }
+        pageSpecification = AffiliateSpecifications.keysetOrder(pageSpecification, sort, organizationId, order);
+        List<OrganizationSummary> organizations = affiliateRepository.findCounterpartSlice(pageSpecification,
+                organizationId, 0, offset + 1);
+        boolean hasNext = organizations.size() > offset;
+        String nextCursor = null;
+        if (hasNext) {
+            organizations = new ArrayList<>(organizations.subList(0, offset));
+            nextCursor = KeysetCursor.of(organizations.get(offset - 1), sort).encode();
+        }
+        return new FilterPageResponse<OrganizationSummary>(organizations, 0, offset,
+                this.totalCount(totalType, specification, query, filterType, organizationId), totalType, hasNext,
+                nextCursor);
+    }
+
+    /**
+     * Total for page mode. On the last page the total is known without counting.
+     *
+     * @param page
+     * @param offset
+     * @param size
+     * @param hasNext
+     * @param totalType
+     * @param specification
+     * @param query
+     * @param filterType
+     * @param organizationId
+     * @return
+     */
+    private long pageTotalCount(int page, int offset, int size, boolean hasNext, TotalType totalType,
+                                Specification<Affiliation> specification, String query, FilterType filterType,
+                                Long organizationId) {
+        if (totalType != TotalType.NONE && !hasNext && (page == 0 || size > 0)) {
+            return (long) page * offset + size;
+        }
+        return this.totalCount(totalType, specification, query, filterType, organizationId);
+    }
 
+    /**
+     * Total number of affiliations matching the filter, -1 if no total was requested.
+     *
+     * @param totalType
+     * @param specification
+     * @param query
+     * @param filterType
+     * @param organizationId
+     * @return
+     */
+    private long totalCount(TotalType totalType, Specification<Affiliation> specification, String query,
+                            FilterType filterType, Long organizationId) {
+        switch (totalType) {
+            case NONE:
+                return -1;
+            case ESTIMATE:
+                return filterCountCache.get(organizationId, filterType, query,
+                        () -> affiliateRepository.count(specification));
+            case EXACT:
+            default:
+                return affiliateRepository.count(specification);
+        }
+    }
+
+    /**
+     * Build the filter specification with the status lists of the filterType.
+     * The name index prefilter is added when it can narrow down the query.
+     *
+     * @param query
+     * @param sort
+     * @param order
+     * @param filterType
+     * @param organizationId
+     * @return
+     */
+    private Specification<Affiliation> affiliatesSpecification(
+            String query, OrderableColumn sort, Sort.Direction order, FilterType filterType, Long organizationId) {
+        Specification<Affiliation> specification = AffiliateSpecifications.affiliatesSpecification(
+                true, query, sort, order, organizationId, FilterStatuses.from(filterType),
+                FilterStatuses.with(filterType));
+        Specification<Affiliation> prefilter = organizationNameIndex.prefilter(query, organizationId);
+        return prefilter == null ? specification : specification.and(prefilter);
+    }
+
+    /**
+     * The transaction keeps the cursor open while the consumer runs, only the rows of the current fetch are held.
+     *
+     * @param query
+     * @param sort
+     * @param order
+     * @param filterType
+     * @param organizationId
+     * @param consumer
+     * @return
+     */
+    @Override
+    @Transactional
+    public long exportAffiliations(String query, OrderableColumn sort, Sort.Direction order, FilterType filterType,
+                                   Long organizationId, Consumer<Affiliation> consumer) {
+        long count = 0;
+        try (Stream<Affiliation> affiliations = affiliateRepository.streamAll(
+                this.affiliatesSpecification(query, sort, order, filterType, organizationId), EXPORT_FETCH_SIZE)) {
+            Iterator<Affiliation> iterator = affiliations.iterator();
+            while (iterator.hasNext()) {
+                consumer.accept(iterator.next());
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * The transaction keeps the cursor open while the consumer runs.
+     *
+     * @param organizationId
+     * @param otherOrganizationId
+     * @param from
+     * @param to
+     * @param consumer
+     * @return
+     */
+    @Override
+    @Transactional
+    public long exportHistory(Long organizationId, Long otherOrganizationId, Date from, Date to,
+                              Consumer<AffiliationHistoryEntry> consumer) {
+        return affiliationHistory.stream(organizationId, otherOrganizationId, from, to, consumer);
+    }
+
+    /**
+     * Count the affiliations of every filterType with one query grouped by status, counting the affiliations
+     * where the organization is affiliationFrom and affiliationWith separately. The query is built from the
+     * specification of the filter with all statuses, so the counts match the filter totals.
+     *
+     * @param query
+     * @param organizationId
+     * @return
+     */
+    @Override
+    @Transactional(readOnly = true)
+    public Map<FilterType, Long> filterCounts(String query, Long organizationId) {
+        Map<AffiliationStatus, Long> fromCounts = new EnumMap<>(AffiliationStatus.class);
+        Map<AffiliationStatus, Long> withCounts = new EnumMap<>(AffiliationStatus.class);
+        for (Object[] row : affiliateRepository.countByStatus(this.affiliatesSpecification(query,
+                OrderableColumn.NAME, Sort.Direction.ASC, FilterType.ALL, organizationId), organizationId)) {
+            fromCounts.put((AffiliationStatus) row[0], ((Number) row[1]).longValue());
+            withCounts.put((AffiliationStatus) row[0], ((Number) row[2]).longValue());
+        }
+        Map<FilterType, Long> counts = new EnumMap<>(FilterType.class);
+        for (FilterType filterType : FilterType.values()) {
+            long count = 0;
+            for (AffiliationStatus status : FilterStatuses.from(filterType)) {
+                count += fromCounts.getOrDefault(status, 0L);
+            }
+            for (AffiliationStatus status : FilterStatuses.with(filterType)) {
+                count += withCounts.getOrDefault(status, 0L);
+            }
+            counts.put(filterType, count);
+        }
+        return counts;
     }
 
     /**
      * Check if two organizations are affiliated.
+     * A pair without an active affiliation in @{@link AffiliationGraphIndex} is answered from the index, which
+     * follows the changes of all instances through the change feed and never answers behind a change of this
+     * instance. Every other lookup goes through @{@link AffiliationCheckCache} so the full affiliation is returned
+     * whether the index is enabled or not. Its query runs in the read-only transaction of the repository unless
+     * called within a transition.
      *
      * @param affiliationFrom
      * @param affiliationWith
@@ -169,8 +504,12 @@ public class AffiliateServiceImpl implements AffiliateService {
      */
     @Override
     public Affiliation checkAffiliation(Long affiliationFrom, Long affiliationWith) {
-        Optional<Affiliation> affiliationResponse = affiliateRepository.checkAffiliation(affiliationFrom,
-                affiliationWith);
+        Affiliation indexed = affiliationGraphIndex.find(affiliationFrom, affiliationWith);
+        if (indexed != null && indexed.getStatus() == AffiliationStatus.NONE) {
+            return indexed;
+        }
+        Optional<Affiliation> affiliationResponse = affiliationCheckCache.get(affiliationFrom, affiliationWith,
+                pair -> affiliateRepository.checkAffiliation(affiliationFrom, affiliationWith));
         if (affiliationResponse.isPresent()) {
             return affiliationResponse.get();
         } else {
@@ -182,6 +521,55 @@ public class AffiliateServiceImpl implements AffiliateService {
         }
     }
 
+    /**
+     * Statistics of the affiliation check cache.
+     *
+     * @return
+     */
+    @Override
+    public CacheStatistics checkCacheStatistics() {
+        return affiliationCheckCache.statistics();
+    }
+
+    /**
+     * Read from the affiliation_version table, the affiliation tables are not queried.
+     * Read-only like the filters, so with read replicas the version never runs ahead of the filter results it tags.
+     *
+     * @param organizationId
+     * @return
+     */
+    @Override
+    @Transactional(readOnly = true)
+    public long affiliationVersion(Long organizationId) {
+        return affiliationVersions.get(organizationId);
+    }
+
+    /**
+     * @return
+     */
+    @Override
+    public long latestEventSeq() {
+        return affiliationEventFeed.latestSeq();
+    }
+
+    /**
+     * Events are delivered on the dispatcher thread of @{@link AffiliationEventFeed}.
+     *
+     * @param subscriber
+     */
+    @Override
+    public void subscribeEvents(AffiliationEventSubscriber subscriber) {
+        affiliationEventFeed.subscribe(subscriber);
+    }
+
+    /**
+     * @param subscriber
+     */
+    @Override
+    public void unsubscribeEvents(AffiliationEventSubscriber subscriber) {
+        affiliationEventFeed.unsubscribe(subscriber);
+    }
+
     /**
      * Check if there is an affiliation request in ACTIVE_REQUEST state.
      * Check if AffiliatedWith organization is the same organization requesting for an approval.
@@ -195,17 +583,7 @@ public class AffiliateServiceImpl implements AffiliateService {
     @Override
     @Transactional
     public Affiliation approveAffiliation(Long organizationId, Long requestingOrganizationId) {
-        Affiliation affiliation = this.checkAffiliation(organizationId, requestingOrganizationId);
-
-        if (affiliation.getStatus().equals(AffiliationStatus.ACTIVE_REQUEST) &&
-                affiliation.getAffiliationWith().getId() == organizationId) {
-            int result = affiliateRepository.updateStatus(affiliation.getId(), AffiliationStatus.AFFILIATED, true);
-            if (result > 0) {
-                return affiliateRepository.findById(affiliation.getId()).get();
-            }
-        }
-        throw new InvalidAffiliationException("Approve Request Failed",
-                Arrays.asList("Invalid affiliation to approve !!"));
+        return this.transition(AffiliationTransition.APPROVE, organizationId, requestingOrganizationId);
     }
 
     /**
@@ -221,17 +599,7 @@ public class AffiliateServiceImpl implements AffiliateService {
     @Override
     @Transactional
     public Affiliation rejectAffiliation(Long organizationId, Long requestingOrganizationId) {
-        Affiliation affiliation = this.checkAffiliation(organizationId, requestingOrganizationId);
-
-        if (affiliation.getStatus().equals(AffiliationStatus.ACTIVE_REQUEST) &&
-                affiliation.getAffiliationWith().getId() == organizationId) {
-            int result = affiliateRepository.updateStatus(affiliation.getId(), AffiliationStatus.REJECTED, true);
-            if (result > 0) {
-                return affiliateRepository.findById(affiliation.getId()).get();
-            }
-        }
-        throw new InvalidAffiliationException("Reject Request Failed",
-                Arrays.asList("Invalid affiliation to reject !!"));
+        return this.transition(AffiliationTransition.REJECT, organizationId, requestingOrganizationId);
     }
 
     /**
@@ -247,17 +615,7 @@ public class AffiliateServiceImpl implements AffiliateService {
     @Override
     @Transactional
     public Affiliation cancelAffiliation(Long organizationId, Long affiliatedOrganizationId) {
-        Affiliation affiliation = this.checkAffiliation(organizationId, affiliatedOrganizationId);
-
-        if (affiliation.getStatus().equals(AffiliationStatus.ACTIVE_REQUEST) &&
-                affiliation.getAffiliationFrom().getId() == organizationId) {
-            int result = affiliateRepository.updateStatus(affiliation.getId(), AffiliationStatus.CANCELLED, true);
-            if (result > 0) {
-                return affiliateRepository.findById(affiliation.getId()).get();
-            }
-        }
-        throw new InvalidAffiliationException("Cancel Request Failed",
-                Arrays.asList("Invalid affiliation to cancel !!"));
+        return this.transition(AffiliationTransition.CANCEL, organizationId, affiliatedOrganizationId);
     }
 
     /**
@@ -273,18 +631,7 @@ public class AffiliateServiceImpl implements AffiliateService {
     @Override
     @Transactional
     public Affiliation revokeAffiliation(Long organizationId, Long affiliatedOrganizationId) {
-        Affiliation affiliation = this.checkAffiliation(organizationId, affiliatedOrganizationId);
-
-        if (affiliation.getStatus().equals(AffiliationStatus.AFFILIATED)) {
-            int result = affiliateRepository.updateStatus(affiliation.getId(),
-                    (affiliation.getAffiliationFrom().getId() == organizationId) ? AffiliationStatus.REVOKED_FROM :
-                            AffiliationStatus.REVOKED_TO, true);
-            if (result > 0) {
-                return affiliateRepository.findById(affiliation.getId()).get();
-            }
-        }
-        throw new InvalidAffiliationException("Revoke Request Failed",
-                Arrays.asList("Invalid affiliation to revoke !!"));
+        return this.transition(AffiliationTransition.REVOKE, organizationId, affiliatedOrganizationId);
     }
 
     /**
@@ -297,15 +644,78 @@ public class AffiliateServiceImpl implements AffiliateService {
     @Override
     @Transactional
     public Affiliation removeAffiliation(Long organizationId, Long affiliatedOrganizationId) {
-        Affiliation affiliation = this.checkAffiliation(organizationId, affiliatedOrganizationId);
+        return this.transition(AffiliationTransition.REMOVE, organizationId, affiliatedOrganizationId);
+    }
 
-        if (ELEGIBLE_FOR_REMOVE.contains(affiliation.getStatus())) {
-            int result = affiliateRepository.updateStatus(affiliation.getId(), AffiliationStatus.REMOVED, false);
-            if (result > 0) {
-                return affiliateRepository.findById(affiliation.getId()).get();
-            }
+    /**
+     * Apply the transition to the affiliations of organizationId with the listed organizations, or with all the
+     * organizations matching the filterType of the request, using set based updates.
+     * Each organization is reported with the changed affiliation, or with the failure of the transition.
+     *
+     * @param transition
+     * @param organizationId
+     * @param bulkTransitionRequest
+     * @return one result per organization.
+     */
+    @Override
+    @Transactional
+    public List<TransitionResult> transitionAll(AffiliationTransition transition, Long organizationId,
+                                                BulkTransitionRequest bulkTransitionRequest) {
+        Collection<Long> otherOrganizationIds;
+        if (bulkTransitionRequest.getOrganizationIds() != null) {
+            otherOrganizationIds = new LinkedHashSet<>(bulkTransitionRequest.getOrganizationIds());
+        } else {
+            otherOrganizationIds = affiliateRepository.findCounterpartSlice(this.affiliatesSpecification("",
+                    OrderableColumn.NAME, Sort.Direction.ASC, bulkTransitionRequest.getFilterType(),
+                    organizationId), organizationId, 0, Integer.MAX_VALUE).stream()
+                    .map(OrganizationSummary::getId)
+                    .collect(Collectors.toCollection(LinkedHashSet::new));
+        }
+
+        Map<Long, Affiliation> changed = new HashMap<>();
+        for (StatusChange change : affiliateRepository.transitionAll(organizationId, otherOrganizationIds,
+                transition)) {
+            Affiliation affiliation = this.publishChange(change.getPreviousStatus(), change.getAffiliation(),
+                    organizationId);
+            changed.put(organizationId.equals(affiliation.getAffiliationFrom().getId()) ?
+                    affiliation.getAffiliationWith().getId() : affiliation.getAffiliationFrom().getId(), affiliation);
+        }
+        List<TransitionResult> results = new ArrayList<>(otherOrganizationIds.size());
+        for (Long otherOrganizationId : otherOrganizationIds) {
+            Affiliation affiliation = changed.get(otherOrganizationId);
+            results.add(affiliation != null ? TransitionResult.updated(otherOrganizationId, affiliation) :
+                    TransitionResult.invalid(otherOrganizationId, Arrays.asList(transition.getFailureDetail())));
         }
-        throw new InvalidAffiliationException("Revoke Request Failed",
-                Arrays.asList("Invalid affiliation to revoke !!"));
+        return results;
+    }
+
+    /**
+     * Apply the transition through a single guarded update of the affiliation.
+     *
+     * @param transition
+     * @param organizationId
+     * @param otherOrganizationId
+     * @return
+     */
+    private Affiliation transition(AffiliationTransition transition, Long organizationId, Long otherOrganizationId) {
+        StatusChange change = affiliateRepository.transition(organizationId, otherOrganizationId, transition)
+                .orElseThrow(() -> new InvalidAffiliationException(transition.getFailureMessage(),
+                        Arrays.asList(transition.getFailureDetail())));
+        return this.publishChange(change.getPreviousStatus(), change.getAffiliation(), organizationId);
+    }
+
+    /**
+     * Publish @{@link AffiliationChangedEvent} for an affiliation whose status was changed by organizationId.
+     *
+     * @param previousStatus
+     * @param affiliation
+     * @param organizationId
+     * @return affiliation
+     */
+    private Affiliation publishChange(AffiliationStatus previousStatus, Affiliation affiliation, Long organizationId) {
+        eventPublisher.publishEvent(new AffiliationChangedEvent(affiliation.getId(),
+                affiliation.getAffiliationFrom().getId(), affiliation.getAffiliationWith().getId(), previousStatus,
+                affiliation.getStatus(), affiliation.isActive(), organizationId));
+        return affiliation;
     }
 }
@@ -14,18 +14,54 @@ import org.hibernate.query.criteria.internal.OrderImpl;
 import org.springframework.data.domain.Sort;
 import org.springframework.data.jpa.domain.Specification;
 
+import javax.persistence.criteria.CriteriaBuilder;
 import javax.persistence.criteria.Expression;
+import javax.persistence.criteria.Fetch;
+import javax.persistence.criteria.From;
 import javax.persistence.criteria.Join;
+import javax.persistence.criteria.JoinType;
+import javax.persistence.criteria.Path;
 import javax.persistence.criteria.Predicate;
+import java.util.Collection;
 import java.util.List;
 
 /**
  * Create Specifications for filtering Affiliations.
+ * All specifications share the affiliationFrom and affiliationWith joins of the query through
+ * {@link #organizationJoin}, so a combined specification joins each organization only once.
  *
  * @author Rohit Phatak
  */
 public class AffiliateSpecifications {
 
+    public static final String AFFILIATION_FROM = "affiliationFrom";
+
+    public static final String AFFILIATION_WITH = "affiliationWith";
+
+    /**
+     * Inner join of root to the organization attribute, reusing the join or fetch already made by another
+     * specification or by the query itself.
+     *
+     * @param root
+     * @param attribute
+     * @return
+     */
+    @SuppressWarnings("unchecked")
+    public static Join<Affiliation, Organization> organizationJoin(From<?, Affiliation> root, String attribute) {
+        for (Fetch<Affiliation, ?> fetch : root.getFetches()) {
+            if (fetch instanceof Join && fetch.getJoinType() == JoinType.INNER &&
+                    fetch.getAttribute().getName().equals(attribute)) {
+                return (Join<Affiliation, Organization>) fetch;
+            }
+        }
+        for (Join<Affiliation, ?> join : root.getJoins()) {
+            if (join.getJoinType() == JoinType.INNER && join.getAttribute().getName().equals(attribute)) {
+                return (Join<Affiliation, Organization>) join;
+            }
+        }
+        return root.join(attribute);
+    }
+
     /**
      * Specification for filtering through affiliates.
      *
@@ -44,11 +80,11 @@ public class AffiliateSpecifications {
             List<AffiliationStatus> affiliationWith) {
         return Specification.where(filterActiveAndOrder(active, sort, organizationId, order))
                 .and(organizationFrom(organizationId).and(statusIn(affiliationFrom).and(
-                        nameLike(queryString, "affiliationWith")
-                                .or(healthSystemNameLike(queryString, "affiliationWith"))))
+                        nameLike(queryString, AFFILIATION_WITH)
+                                .or(healthSystemNameLike(queryString, AFFILIATION_WITH))))
                         .or(organizationWith(organizationId).and(statusIn(affiliationWith)).and(
-                                nameLike(queryString, "affiliationFrom")
-                                        .or(healthSystemNameLike(queryString, "affiliationFrom")))));
+                                nameLike(queryString, AFFILIATION_FROM)
+                                        .or(healthSystemNameLike(queryString, AFFILIATION_FROM)))));
     }
 
     /**
@@ -63,18 +99,97 @@ public class AffiliateSpecifications {
     public static Specification<Affiliation> filterActiveAndOrder(
             boolean active, OrderableColumn sortColumn, Long orgId, Sort.Direction order) {
         return (root, query, criteriaBuilder) -> {
-            Join<Affiliation, Organization> organizationFromJoin = root.join("affiliationFrom");
-            Join<Affiliation, Organization> organizationWithJoin = root.join("affiliationWith");
             Predicate activePredicate = criteriaBuilder.equal(root.get("active"), active);
-            Expression organizationIdExpr = criteriaBuilder.equal(organizationFromJoin.get("id"), orgId);
-            query.orderBy(new OrderImpl(criteriaBuilder.selectCase().when(organizationIdExpr,
-                    organizationWithJoin.get(sortColumn.getName())
-            ).otherwise(organizationFromJoin.get(sortColumn.getName())),
-                    order.equals(Sort.Direction.ASC)));
+            query.orderBy(new OrderImpl(counterpartColumn(root, criteriaBuilder, sortColumn, orgId),
+                    order.equals(Sort.Direction.ASC)),
+                    new OrderImpl(root.get("id"), order.equals(Sort.Direction.ASC)));
             return activePredicate;
         };
     }
 
+    /**
+     * Specification ordering the rows of the given specification for keyset pagination, in place of the order of
+     * {@link #filterActiveAndOrder}. A missing sort value is ordered as the empty string the cursor holds for it,
+     * so the seek of {@link #keysetAfter} does not skip it on any database.
+     *
+     * @param specification
+     * @param sortColumn
+     * @param orgId
+     * @param order
+     * @return
+     */
+    public static Specification<Affiliation> keysetOrder(Specification<Affiliation> specification,
+                                                         OrderableColumn sortColumn, Long orgId,
+                                                         Sort.Direction order) {
+        return (root, query, criteriaBuilder) -> {
+            Predicate predicate = specification.toPredicate(root, query, criteriaBuilder);
+            query.orderBy(new OrderImpl(keysetColumn(root, criteriaBuilder, sortColumn, orgId),
+                    order.equals(Sort.Direction.ASC)),
+                    new OrderImpl(root.get("id"), order.equals(Sort.Direction.ASC)));
+            return predicate;
+        };
+    }
+
+    /**
+     * Specification for seeking past the last row of the previous page in keyset pagination.
+     * Uses the same counterpart column as {@link #keysetOrder} with the affiliation id as tie breaker.
+     *
+     * @param lastValue
+     * @param lastId
+     * @param sortColumn
+     * @param orgId
+     * @param order
+     * @return
+     */
+    public static Specification<Affiliation> keysetAfter(
+            String lastValue, long lastId, OrderableColumn sortColumn, Long orgId, Sort.Direction order) {
+        return (root, query, criteriaBuilder) -> {
+            Expression<String> counterpartColumn = keysetColumn(root, criteriaBuilder, sortColumn, orgId);
+            Expression<Long> id = root.get("id");
+            if (order.equals(Sort.Direction.ASC)) {
+                return criteriaBuilder.or(criteriaBuilder.greaterThan(counterpartColumn, lastValue),
+                        criteriaBuilder.and(criteriaBuilder.equal(counterpartColumn, lastValue),
+                                criteriaBuilder.greaterThan(id, lastId)));
+            }
+            return criteriaBuilder.or(criteriaBuilder.lessThan(counterpartColumn, lastValue),
+                    criteriaBuilder.and(criteriaBuilder.equal(counterpartColumn, lastValue),
+                            criteriaBuilder.lessThan(id, lastId)));
+        };
+    }
+
+    /**
+     * Sort column of the counterpart of orgId.
+     *
+     * @param root
+     * @param criteriaBuilder
+     * @param sortColumn
+     * @param orgId
+     * @return
+     */
+    private static Expression<String> counterpartColumn(From<?, Affiliation> root, CriteriaBuilder criteriaBuilder,
+                                                        OrderableColumn sortColumn, Long orgId) {
+        Join<Affiliation, Organization> organizationFromJoin = organizationJoin(root, AFFILIATION_FROM);
+        Join<Affiliation, Organization> organizationWithJoin = organizationJoin(root, AFFILIATION_WITH);
+        return criteriaBuilder.<String>selectCase()
+                .when(criteriaBuilder.equal(organizationFromJoin.get("id"), orgId),
+                        organizationWithJoin.<String>get(sortColumn.getName()))
+                .otherwise(organizationFromJoin.<String>get(sortColumn.getName()));
+    }
+
+    /**
+     * Counterpart sort column of keyset pagination, with a missing value as the empty string.
+     *
+     * @param root
+     * @param criteriaBuilder
+     * @param sortColumn
+     * @param orgId
+     * @return
+     */
+    private static Expression<String> keysetColumn(From<?, Affiliation> root, CriteriaBuilder criteriaBuilder,
+                                                   OrderableColumn sortColumn, Long orgId) {
+        return criteriaBuilder.coalesce(counterpartColumn(root, criteriaBuilder, sortColumn, orgId), "");
+    }
+
     /**
      * Specification for filtering organizationFrom based on organizationId.
      *
@@ -83,7 +198,7 @@ public class AffiliateSpecifications {
      */
     public static Specification<Affiliation> organizationFrom(Long id) {
         return (root, query, criteriaBuilder) -> {
-            Join<Affiliation, Organization> organizationFromJoin = root.join("affiliationFrom");
+            Join<Affiliation, Organization> organizationFromJoin = organizationJoin(root, AFFILIATION_FROM);
             return criteriaBuilder.and(criteriaBuilder.equal(organizationFromJoin.get("id"), id));
         };
     }
@@ -96,12 +211,39 @@ public class AffiliateSpecifications {
      */
     public static Specification<Affiliation> organizationWith(Long id) {
         return (root, query, criteriaBuilder) -> {
-            Join<Affiliation, Organization> organizationWithJoin = root.join("affiliationWith");
+            Join<Affiliation, Organization> organizationWithJoin = organizationJoin(root, AFFILIATION_WITH);
             Predicate predicate = criteriaBuilder.and(criteriaBuilder.equal(organizationWithJoin.get("id"), id));
             return predicate;
         };
     }
 
+    /**
+     * Specification for restricting the counterpart of orgId to the given organizations.
+     * Organizations with ids above maxIndexedId were not known when the ids were collected and always match.
+     *
+     * @param ids
+     * @param maxIndexedId
+     * @param orgId
+     * @return
+     */
+    public static Specification<Affiliation> counterpartIn(Collection<Long> ids, long maxIndexedId, Long orgId) {
+        return (root, query, criteriaBuilder) -> {
+            Path<Long> fromId = root.get(AFFILIATION_FROM).get("id");
+            Path<Long> withId = root.get(AFFILIATION_WITH).get("id");
+            return criteriaBuilder.or(
+                    criteriaBuilder.and(criteriaBuilder.equal(fromId, orgId),
+                            idIn(criteriaBuilder, withId, ids, maxIndexedId)),
+                    criteriaBuilder.and(criteriaBuilder.equal(withId, orgId),
+                            idIn(criteriaBuilder, fromId, ids, maxIndexedId)));
+        };
+    }
+
+    private static Predicate idIn(CriteriaBuilder criteriaBuilder, Path<Long> id, Collection<Long> ids,
+                                  long maxIndexedId) {
+        Predicate unindexed = criteriaBuilder.greaterThan(id, maxIndexedId);
+        return ids.isEmpty() ? unindexed : criteriaBuilder.or(id.in(ids), unindexed);
+    }
+
     /**
      * Specification for filtering through AffiliationStatus.
      *
@@ -121,7 +263,7 @@ public class AffiliateSpecifications {
      */
     public static Specification<Affiliation> nameLike(String q, String joinAttribute) {
         return (root, query, criteriaBuilder) -> {
-            Join<Affiliation, Organization> organizationJoin = root.join(joinAttribute);
+            Join<Affiliation, Organization> organizationJoin = organizationJoin(root, joinAttribute);
             return criteriaBuilder.like(organizationJoin.get("name"), "%" + q + "%");
         };
     }
@@ -135,7 +277,7 @@ public class AffiliateSpecifications {
      */
     public static Specification<Affiliation> healthSystemNameLike(String q, String joinAttribute) {
         return (root, query, criteriaBuilder) -> {
-            Join<Affiliation, Organization> organizationJoin = root.join(joinAttribute);
+            Join<Affiliation, Organization> organizationJoin = organizationJoin(root, joinAttribute);
             return criteriaBuilder.or(criteriaBuilder.like(organizationJoin.get("healthSystemName"),
                     "%" + q + "%"));
         };
@@ -0,0 +1,112 @@
+/*
+ * Copyright (c) Vocera Communications, Inc. All Rights Reserved.
+ * This software is the confidential and proprietary information of
+ * Vocera Communications, Inc.
+ */
+
+package com.vocera.cloud.affiliateservice.service.impl;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import com.vocera.cloud.affiliateservice.event.AffiliationChangedEvent;
+import com.vocera.cloud.affiliateservice.model.AffiliationPair;
+import com.vocera.cloud.affiliateservice.model.CacheStatistics;
+import com.vocera.cloud.coremodel.model.Affiliation;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * Read-through cache of the active affiliation of an organization pair, absent affiliations included.
+ * Entries are dropped once a change of the pair commits, otherwise they are evicted by size or expire after the
+ * configured time, which also bounds how long changes made by other instances go unseen.
+ * Lookups inside a transaction bypass the cache, as they may see changes which are later rolled back.
+ * Misses are loaded outside of the cache, a load waiting for a connection must not block the invalidations of
+ * transactions which hold one until they complete.
+ *
+ * @author Rohit Phatak
+ */
+@Component
+public class AffiliationCheckCache {
+
+    private final boolean enabled;
+
+    private final Cache<AffiliationPair, Optional<Affiliation>> affiliations;
+
+    private final AtomicLong invalidations = new AtomicLong();
+
+    /**
+     * Constructor.
+     *
+     * @param enabled
+     * @param maximumSize
+     * @param expireAfterWriteSeconds
+     */
+    public AffiliationCheckCache(
+            @Value("${affiliate.check-cache.enabled:true}") boolean enabled,
+            @Value("${affiliate.check-cache.maximum-size:100000}") long maximumSize,
+            @Value("${affiliate.check-cache.expire-after-write-seconds:30}") long expireAfterWriteSeconds) {
+        this.enabled = enabled;
+        this.affiliations = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(expireAfterWriteSeconds, TimeUnit.SECONDS)
+                .recordStats()
+                .build();
+    }
+
+    /**
+     * Get the cached affiliation of the pair, loading it with loader on a miss.
+     * A load overlapping the commit of any change is not kept, it may have read the pair before the change.
+     * Concurrent misses of a pair each load it.
+     *
+     * @param organization1
+     * @param organization2
+     * @param loader
+     * @return
+     */
+    public Optional<Affiliation> get(Long organization1, Long organization2,
+                                     Function<AffiliationPair, Optional<Affiliation>> loader) {
+        AffiliationPair pair = AffiliationPair.of(organization1, organization2);
+        if (!enabled || TransactionSynchronizationManager.isActualTransactionActive()) {
+            return loader.apply(pair);
+        }
+        Optional<Affiliation> affiliation = affiliations.getIfPresent(pair);
+        if (affiliation != null) {
+            return affiliation;
+        }
+        long invalidation = invalidations.get();
+        affiliation = loader.apply(pair);
+        affiliations.put(pair, affiliation);
+        if (invalidations.get() != invalidation) {
+            affiliations.invalidate(pair);
+        }
+        return affiliation;
+    }
+
+    /**
+     * Drop the pair of a committed change.
+     *
+     * @param event
+     */
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onAffiliationChanged(AffiliationChangedEvent event) {
+        invalidations.incrementAndGet();
+        affiliations.invalidate(AffiliationPair.of(event.getAffiliationFrom(), event.getAffiliationWith()));
+    }
+
+    /**
+     * @return hit, miss and eviction counts since startup.
+     */
+    public CacheStatistics statistics() {
+        CacheStats stats = affiliations.stats();
+        return new CacheStatistics(affiliations.estimatedSize(), stats.hitCount(), stats.missCount(),
+                stats.hitRate(), stats.evictionCount());
+    }
+}
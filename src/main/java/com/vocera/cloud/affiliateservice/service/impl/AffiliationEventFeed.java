@@ -0,0 +1,321 @@
+/*
+ * Copyright (c) Vocera Communications, Inc. All Rights Reserved.
+ * This software is the confidential and proprietary information of
+ * Vocera Communications, Inc.
+ */
+
+package com.vocera.cloud.affiliateservice.service.impl;
+
+import com.vocera.cloud.affiliateservice.event.AffiliationChangedEvent;
+import com.vocera.cloud.affiliateservice.event.AffiliationEventSubscriber;
+import com.vocera.cloud.affiliateservice.exception.EventsPrunedException;
+import com.vocera.cloud.affiliateservice.model.AffiliationEvent;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Change feed over @{@link AffiliationOutbox}, delivering the events to the subscribers in seq order.
+ * Events are read on a single dispatcher thread, started when a change of this instance commits and by a periodic
+ * poll which picks up the changes of other instances. Subscribers waiting at the same seq share one query.
+ * The dispatcher only queues the events for each subscriber, they are sent from a sender thread of the subscriber,
+ * so a slow client does not hold up the others. A subscriber with subscriber-queue batches waiting is skipped until
+ * its sender takes the next batch, however far behind it is. A subscriber is only dropped when a send fails, or
+ * closed when a single send takes longer than send-timeout-millis, it resumes after the last event it received with
+ * a new subscription.
+ * Events older than the retention are pruned periodically.
+ *
+ * @author Rohit Phatak
+ */
+@Component
+public class AffiliationEventFeed implements DisposableBean {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(AffiliationEventFeed.class);
+
+    /**
+     * Maximum number of events read per subscriber and delivery.
+     */
+    private static final int DISPATCH_LIMIT = 500;
+
+    private static final int PRUNE_BATCH_SIZE = 5000;
+
+    private final AffiliationOutbox outbox;
+
+    private final long retentionMillis;
+
+    private final int subscriberQueue;
+
+    private final long sendTimeoutMillis;
+
+    private final Map<AffiliationEventSubscriber, Subscription> subscriptions = new ConcurrentHashMap<>();
+
+    private final AtomicBoolean dispatchPending = new AtomicBoolean();
+
+    private final ExecutorService dispatcher = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "affiliation-event-feed");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * Runs at most one send per subscriber, a thread per subscriber which is being sent to.
+     */
+    private final ExecutorService senders = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "affiliation-event-sender");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * Constructor.
+     *
+     * @param outbox
+     * @param retentionHours
+     * @param subscriberQueue
+     * @param sendTimeoutMillis
+     */
+    public AffiliationEventFeed(AffiliationOutbox outbox,
+                                @Value("${affiliate.events.retention-hours:168}") long retentionHours,
+                                @Value("${affiliate.events.subscriber-queue:16}") int subscriberQueue,
+                                @Value("${affiliate.events.send-timeout-millis:60000}") long sendTimeoutMillis) {
+        this.outbox = outbox;
+        this.retentionMillis = TimeUnit.HOURS.toMillis(retentionHours);
+        this.subscriberQueue = subscriberQueue;
+        this.sendTimeoutMillis = sendTimeoutMillis;
+    }
+
+    /**
+     * Seq of the last committed event.
+     *
+     * @return
+     */
+    public long latestSeq() {
+        return outbox.latestSeq();
+    }
+
+    /**
+     * Deliver the events after the seq of the subscriber, and all later events until it unsubscribes.
+     *
+     * @param subscriber
+     * @throws EventsPrunedException if events following the seq of the subscriber were pruned.
+     */
+    public void subscribe(AffiliationEventSubscriber subscriber) {
+        long oldestSeq = outbox.oldestSeq();
+        if (subscriber.getSince() < oldestSeq - 1) {
+            throw new EventsPrunedException("Events before " + oldestSeq + " were pruned, requested events after " +
+                    subscriber.getSince());
+        }
+        subscriptions.put(subscriber, new Subscription(subscriber));
+        this.requestDispatch();
+    }
+
+    /**
+     * Stop delivering events to the subscriber.
+     *
+     * @param subscriber
+     */
+    public void unsubscribe(AffiliationEventSubscriber subscriber) {
+        Subscription subscription = subscriptions.remove(subscriber);
+        if (subscription != null) {
+            subscription.closed = true;
+        }
+    }
+
+    /**
+     * Deliver the events of a committed change of this instance.
+     *
+     * @param event
+     */
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onAffiliationChanged(AffiliationChangedEvent event) {
+        if (!subscriptions.isEmpty()) {
+            this.requestDispatch();
+        }
+    }
+
+    /**
+     * Deliver the events committed by other instances.
+     */
+    @Scheduled(fixedDelayString = "${affiliate.events.poll-millis:1000}")
+    public void poll() {
+        if (!subscriptions.isEmpty()) {
+            this.requestDispatch();
+        }
+    }
+
+    /**
+     * Delete the events older than the retention.
+     */
+    @Scheduled(fixedDelayString = "${affiliate.events.prune-millis:3600000}")
+    public void prune() {
+        int pruned = outbox.prune(new Date(System.currentTimeMillis() - retentionMillis), PRUNE_BATCH_SIZE);
+        LOGGER.info("Pruned {} affiliation events", pruned);
+    }
+
+    @Override
+    public void destroy() {
+        dispatcher.shutdownNow();
+        senders.shutdownNow();
+    }
+
+    /**
+     * Queue a dispatch unless one is queued already. A dispatch requested while another is running is queued, so no
+     * committed event is left undelivered.
+     */
+    private void requestDispatch() {
+        if (dispatchPending.compareAndSet(false, true)) {
+            dispatcher.execute(() -> {
+                dispatchPending.set(false);
+                try {
+                    this.dispatch();
+                } catch (RuntimeException e) {
+                    LOGGER.error("Affiliation event dispatch failed", e);
+                }
+            });
+        }
+    }
+
+    /**
+     * Queue events until every subscriber has been queued all events committed before the dispatch started, or has
+     * a full queue. The sender of a full queue requests the next dispatch once it takes a batch.
+     */
+    private void dispatch() {
+        long latestSeq = outbox.latestSeq();
+        boolean delivered = true;
+        while (delivered) {
+            delivered = false;
+            Map<Long, List<AffiliationEvent>> eventsAfter = new HashMap<>();
+            for (Subscription subscription : subscriptions.values()) {
+                long since = subscription.queuedSeq;
+                if (subscription.closed || since >= latestSeq || subscription.isFull()) {
+                    continue;
+                }
+                List<AffiliationEvent> events = eventsAfter.computeIfAbsent(since,
+                        key -> outbox.findAfter(key, DISPATCH_LIMIT));
+                if (events.isEmpty()) {
+                    continue;
+                }
+                delivered = true;
+                subscription.queue(events);
+            }
+        }
+    }
+
+    /**
+     * Events queued for a subscriber, sent in order by at most one sender at a time.
+     */
+    private final class Subscription implements Runnable {
+
+        private final AffiliationEventSubscriber subscriber;
+
+        private final BlockingQueue<List<AffiliationEvent>> pending = new ArrayBlockingQueue<>(subscriberQueue);
+
+        private final AtomicBoolean sending = new AtomicBoolean();
+
+        /**
+         * Set when the dispatcher skipped the subscriber because its queue was full.
+         */
+        private final AtomicBoolean skipped = new AtomicBoolean();
+
+        /**
+         * Start of the send in progress, 0 between sends.
+         */
+        private volatile long sendStarted;
+
+        /**
+         * Seq of the last event queued, the dispatcher reads the events after it.
+         */
+        private volatile long queuedSeq;
+
+        private volatile boolean closed;
+
+        private Subscription(AffiliationEventSubscriber subscriber) {
+            this.subscriber = subscriber;
+            this.queuedSeq = subscriber.getSince();
+        }
+
+        /**
+         * Whether the queue is full, in which case the subscriber is skipped until its sender takes a batch.
+         * Closes the subscriber if its current send has timed out.
+         *
+         * @return
+         */
+        private boolean isFull() {
+            if (pending.remainingCapacity() > 0) {
+                return false;
+            }
+            skipped.set(true);
+            // The sender may have taken a batch before it could see the flag.
+            if (pending.remainingCapacity() > 0) {
+                return false;
+            }
+            long started = sendStarted;
+            if (started != 0 && System.currentTimeMillis() - started > sendTimeoutMillis) {
+                LOGGER.info("Affiliation event send timed out, subscriber closed after {}", subscriber.getSince());
+                unsubscribe(subscriber);
+                subscriber.close();
+            }
+            return true;
+        }
+
+        /**
+         * Queue the events and start a sender unless one is running. Only called by the dispatcher, after
+         * {@link #isFull} returned false.
+         *
+         * @param events
+         */
+        private void queue(List<AffiliationEvent> events) {
+            pending.add(events);
+            queuedSeq = events.get(events.size() - 1).getSeq();
+            this.send();
+        }
+
+        private void send() {
+            if (sending.compareAndSet(false, true)) {
+                senders.execute(this);
+            }
+        }
+
+        @Override
+        public void run() {
+            try {
+                List<AffiliationEvent> events;
+                while (!closed && (events = pending.poll()) != null) {
+                    if (skipped.compareAndSet(true, false)) {
+                        requestDispatch();
+                    }
+                    sendStarted = System.currentTimeMillis();
+                    if (!subscriber.deliver(events)) {
+                        unsubscribe(subscriber);
+                    }
+                }
+            } catch (RuntimeException e) {
+                LOGGER.error("Affiliation event delivery failed", e);
+                unsubscribe(subscriber);
+            } finally {
+                sendStarted = 0;
+                sending.set(false);
+            }
+            // Events queued after the last poll and before sending was reset.
+            if (!closed && !pending.isEmpty()) {
+                this.send();
+            }
+        }
+    }
+}
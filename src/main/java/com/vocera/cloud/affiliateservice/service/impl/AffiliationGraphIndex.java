@@ -0,0 +1,271 @@
+/*
+ * Copyright (c) Vocera Communications, Inc. All Rights Reserved.
+ * This software is the confidential and proprietary information of
+ * Vocera Communications, Inc.
+ */
+
+package com.vocera.cloud.affiliateservice.service.impl;
+
+import com.vocera.cloud.affiliateservice.event.AffiliationEventSubscriber;
+import com.vocera.cloud.affiliateservice.exception.EventsPrunedException;
+import com.vocera.cloud.affiliateservice.model.AffiliationEvent;
+import com.vocera.cloud.coremodel.constants.AffiliationStatus;
+import com.vocera.cloud.coremodel.model.Affiliation;
+import com.vocera.cloud.coremodel.model.Organization;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * In-process index of the active affiliations, answering the status of an organization pair without a query.
+ * Every pair is stored once, under the lower organization id, as a byte packing the status ordinal and whether the
+ * lower organization is affiliationFrom. The index is loaded from the affiliation table together with the seq of
+ * the outbox at that point, and follows the changes of every instance from there on as a subscriber of
+ * @{@link AffiliationEventFeed}, which delivers them in commit order within affiliate.events.poll-millis.
+ * While the index has not applied a change this instance committed it answers nothing, so a caller never reads
+ * past its own change. The periodic reload only resynchronizes the index, for example after its subscription
+ * was closed.
+ *
+ * @author Rohit Phatak
+ */
+@Component
+public class AffiliationGraphIndex {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(AffiliationGraphIndex.class);
+
+    private static final byte MISSING = -1;
+
+    private static final int LOW_IS_FROM = 0x40;
+
+    private static final int STATUS_MASK = 0x3F;
+
+    private static final AffiliationStatus[] STATUSES = AffiliationStatus.values();
+
+    private final JdbcTemplate jdbcTemplate;
+
+    private final AffiliationOutbox outbox;
+
+    private final AffiliationEventFeed feed;
+
+    private final boolean enabled;
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private GraphSubscriber current;
+
+    /**
+     * Constructor.
+     *
+     * @param jdbcTemplate
+     * @param outbox
+     * @param feed
+     * @param enabled
+     */
+    public AffiliationGraphIndex(JdbcTemplate jdbcTemplate, AffiliationOutbox outbox, AffiliationEventFeed feed,
+                                 @Value("${affiliate.graph-index.enabled:false}") boolean enabled) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.outbox = outbox;
+        this.feed = feed;
+        this.enabled = enabled;
+    }
+
+    /**
+     * Active affiliation of the pair as known to the index.
+     * The returned affiliation only carries the status and the ids of both organizations.
+     *
+     * @param organization1
+     * @param organization2
+     * @return affiliation with status NONE if the pair has none, null if the index is disabled, not loaded yet or
+     * behind a change committed by this instance.
+     */
+    public Affiliation find(long organization1, long organization2) {
+        long low = Math.min(organization1, organization2);
+        long high = Math.max(organization1, organization2);
+        byte packed;
+        lock.readLock().lock();
+        try {
+            if (current == null || current.since < outbox.committedSeq()) {
+                return null;
+            }
+            LongByteMap counterparts = current.graph.get(low);
+            packed = counterparts == null ? MISSING : counterparts.get(high, MISSING);
+        } finally {
+            lock.readLock().unlock();
+        }
+        Affiliation affiliation = new Affiliation();
+        if (packed == MISSING) {
+            affiliation.setStatus(AffiliationStatus.NONE);
+            affiliation.setAffiliationFrom(new Organization(organization1));
+            affiliation.setAffiliationWith(new Organization(organization2));
+            return affiliation;
+        }
+        boolean lowIsFrom = (packed & LOW_IS_FROM) != 0;
+        affiliation.setStatus(STATUSES[packed & STATUS_MASK]);
+        affiliation.setActive(true);
+        affiliation.setAffiliationFrom(new Organization(lowIsFrom ? low : high));
+        affiliation.setAffiliationWith(new Organization(lowIsFrom ? high : low));
+        return affiliation;
+    }
+
+    /**
+     * Rebuild the index from the affiliation table and follow the feed from the seq read before the table.
+     * Events the table already reflects are applied again on top of it, which ends in the same state since they
+     * are applied in commit order.
+     */
+    @Scheduled(fixedDelayString = "${affiliate.graph-index.refresh-millis:3600000}")
+    public void refresh() {
+        if (!enabled) {
+            return;
+        }
+        GraphSubscriber loaded;
+        try {
+            long seq = outbox.latestSeq();
+            loaded = new GraphSubscriber(this.load(), seq);
+        } catch (DataAccessException e) {
+            LOGGER.warn("Could not refresh affiliation graph index : {}", e.getMessage());
+            return;
+        }
+        GraphSubscriber previous;
+        lock.writeLock().lock();
+        try {
+            previous = current;
+            current = loaded;
+        } finally {
+            lock.writeLock().unlock();
+        }
+        if (previous != null) {
+            feed.unsubscribe(previous);
+        }
+        try {
+            feed.subscribe(loaded);
+        } catch (EventsPrunedException e) {
+            LOGGER.warn("Could not follow the change feed from the affiliation graph index : {}", e.getMessage());
+            loaded.close();
+        }
+    }
+
+    /**
+     * @return approximate heap used by the index, in bytes.
+     */
+    public long memoryBytes() {
+        lock.readLock().lock();
+        try {
+            return current == null ? 0 : memoryBytes(current.graph);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private LongObjectMap<LongByteMap> load() {
+        long start = System.currentTimeMillis();
+        LongObjectMap<LongByteMap> loaded = new LongObjectMap<>(1024);
+        Map<String, AffiliationStatus> statuses = new HashMap<>();
+        for (AffiliationStatus status : STATUSES) {
+            statuses.put(status.name(), status);
+        }
+        long[] counts = {0, 0};
+        jdbcTemplate.query("select affiliation_from, affiliation_with, status from affiliation where active",
+                resultSet -> {
+                    AffiliationStatus status = statuses.get(resultSet.getString(3));
+                    if (status == null) {
+                        counts[1]++;
+                        return;
+                    }
+                    apply(loaded, resultSet.getLong(1), resultSet.getLong(2), status, true);
+                    counts[0]++;
+                });
+        if (counts[1] > 0) {
+            LOGGER.warn("Skipped {} affiliations with an unknown status", counts[1]);
+        }
+        LOGGER.info("Indexed {} affiliations of {} organizations in {} ms, {} KB", counts[0], loaded.size(),
+                System.currentTimeMillis() - start, memoryBytes(loaded) / 1024);
+        return loaded;
+    }
+
+    private static long memoryBytes(LongObjectMap<LongByteMap> graph) {
+        long[] bytes = {graph.memoryBytes()};
+        graph.forEachValue(counterparts -> bytes[0] += counterparts.memoryBytes());
+        return bytes[0];
+    }
+
+    private static void apply(LongObjectMap<LongByteMap> graph, long affiliationFrom, long affiliationWith,
+                              AffiliationStatus status, boolean active) {
+        long low = Math.min(affiliationFrom, affiliationWith);
+        long high = Math.max(affiliationFrom, affiliationWith);
+        LongByteMap counterparts = graph.get(low);
+        if (!active) {
+            if (counterparts != null && counterparts.remove(high) && counterparts.size() == 0) {
+                graph.remove(low);
+            }
+            return;
+        }
+        if (counterparts == null) {
+            counterparts = new LongByteMap(1);
+            graph.put(low, counterparts);
+        }
+        counterparts.put(high, (byte) (status.ordinal() | (low == affiliationFrom ? LOW_IS_FROM : 0)));
+    }
+
+    /**
+     * Graph loaded at a seq of the outbox together with the events applied to it since.
+     */
+    private final class GraphSubscriber implements AffiliationEventSubscriber {
+
+        private final LongObjectMap<LongByteMap> graph;
+
+        private volatile long since;
+
+        private GraphSubscriber(LongObjectMap<LongByteMap> graph, long since) {
+            this.graph = graph;
+            this.since = since;
+        }
+
+        @Override
+        public long getSince() {
+            return since;
+        }
+
+        @Override
+        public boolean deliver(List<AffiliationEvent> events) {
+            lock.writeLock().lock();
+            try {
+                if (current != this) {
+                    return false;
+                }
+                for (AffiliationEvent event : events) {
+                    apply(graph, event.getAffiliationFrom(), event.getAffiliationWith(), event.getStatus(),
+                            event.isActive());
+                    since = event.getSeq();
+                }
+                return true;
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+
+        @Override
+        public void close() {
+            lock.writeLock().lock();
+            try {
+                if (current == this) {
+                    LOGGER.warn("Affiliation graph index stopped following the change feed, answering again after "
+                            + "the next refresh");
+                    current = null;
+                }
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+    }
+}
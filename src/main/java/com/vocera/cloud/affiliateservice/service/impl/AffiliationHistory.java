@@ -0,0 +1,348 @@
+/*
+ * Copyright (c) Vocera Communications, Inc. All Rights Reserved.
+ * This software is the confidential and proprietary information of
+ * Vocera Communications, Inc.
+ */
+
+package com.vocera.cloud.affiliateservice.service.impl;
+
+import com.vocera.cloud.affiliateservice.config.DatabasePlatform;
+import com.vocera.cloud.affiliateservice.event.AffiliationChangedEvent;
+import com.vocera.cloud.affiliateservice.model.AffiliationHistoryEntry;
+import com.vocera.cloud.coremodel.constants.AffiliationStatus;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.DependsOn;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.ArgumentPreparedStatementSetter;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.sql.PreparedStatement;
+import java.sql.Timestamp;
+import java.time.YearMonth;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Append-only history of the affiliation status transitions.
+ * The transitions of a transaction are inserted into affiliation_history as one batch right before it commits.
+ * On Postgres the table is partitioned by month of created_at: partitions are created ahead of time and, with a
+ * retention configured, whole months are pruned by dropping their partition. A transition of a month this instance
+ * has not created a partition for creates it within its own transaction, so missed maintenance does not fail the
+ * transitions. AffiliationHistoryHealthIndicator reports down while the next month has no partition.
+ * Other databases get a plain table pruned with a delete.
+ *
+ * @author Rohit Phatak
+ */
+@Component
+@DependsOn("schemaInitializer")
+public class AffiliationHistory implements InitializingBean {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(AffiliationHistory.class);
+
+    private static final String INSERT = "insert into affiliation_history (affiliation_id, affiliation_from, " +
+            "affiliation_with, previous_status, status, actioned_by, created_at) values (?, ?, ?, ?, ?, ?, ?)";
+
+    private static final String SELECT = "select affiliation_id, affiliation_from, affiliation_with, " +
+            "previous_status, status, actioned_by, created_at from affiliation_history where ";
+
+    private static final String OF_ORGANIZATION = "(affiliation_from = ? or affiliation_with = ?)";
+
+    private static final String OF_PAIR = "((affiliation_from = ? and affiliation_with = ?) or " +
+            "(affiliation_from = ? and affiliation_with = ?))";
+
+    private static final String SELECT_PARTITIONS = "select c.relname from pg_inherits i " +
+            "join pg_class c on c.oid = i.inhrelid join pg_class p on p.oid = i.inhparent " +
+            "where p.relname = 'affiliation_history'";
+
+    private static final String CREATE_PARTITION = "create table if not exists %s partition of affiliation_history " +
+            "for values from ('%s') to ('%s')";
+
+    private static final String CREATE_PARTITION_INDEX = "create index if not exists ix_%s_%s on %s (%s, created_at)";
+
+    private static final String PRUNE = "delete from affiliation_history where created_at < ?";
+
+    private static final String PARTITION_PREFIX = "affiliation_history_p";
+
+    private static final Pattern PARTITION_NAME = Pattern.compile(PARTITION_PREFIX + "(\\d{6})");
+
+    private static final DateTimeFormatter PARTITION_MONTH = DateTimeFormatter.ofPattern("uuuuMM");
+
+    private static final int FETCH_SIZE = 500;
+
+    private static final RowMapper<AffiliationHistoryEntry> ENTRY_MAPPER = (resultSet, rowNum) ->
+            new AffiliationHistoryEntry(resultSet.getLong("affiliation_id"), resultSet.getLong("affiliation_from"),
+                    resultSet.getLong("affiliation_with"),
+                    AffiliationStatus.valueOf(resultSet.getString("previous_status")),
+                    AffiliationStatus.valueOf(resultSet.getString("status")), resultSet.getLong("actioned_by"),
+                    new Date(resultSet.getTimestamp("created_at").getTime()));
+
+    private final JdbcTemplate jdbcTemplate;
+
+    private final boolean partitioned;
+
+    private final int partitionsAhead;
+
+    private final int retentionMonths;
+
+    /**
+     * Last month this instance created a partition for, null before the first maintenance.
+     */
+    private volatile YearMonth createdUntil;
+
+    /**
+     * Constructor.
+     *
+     * @param jdbcTemplate
+     * @param databasePlatform
+     * @param partitionsAhead  number of months after the current one to create partitions for.
+     * @param retentionMonths  number of months before the current one to keep, 0 to keep the whole history.
+     */
+    public AffiliationHistory(JdbcTemplate jdbcTemplate, DatabasePlatform databasePlatform,
+                              @Value("${affiliate.history.partitions-ahead:3}") int partitionsAhead,
+                              @Value("${affiliate.history.retention-months:0}") int retentionMonths) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.partitioned = databasePlatform.isPostgres();
+        this.partitionsAhead = partitionsAhead;
+        this.retentionMonths = retentionMonths;
+    }
+
+    @Override
+    public void afterPropertiesSet() {
+        this.maintain();
+    }
+
+    /**
+     * Record the transition when the transaction commits.
+     * Outside of a transaction it is recorded right away.
+     *
+     * @param event
+     */
+    @EventListener
+    public void onAffiliationChanged(AffiliationChangedEvent event) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            YearMonth partitionCreated = this.insert(Collections.singletonList(event));
+            if (partitionCreated != null) {
+                this.created(partitionCreated);
+            }
+            return;
+        }
+        @SuppressWarnings("unchecked")
+        List<AffiliationChangedEvent> changes = (List<AffiliationChangedEvent>)
+                TransactionSynchronizationManager.getResource(this);
+        if (changes == null) {
+            changes = this.insertBeforeCommit();
+        }
+        changes.add(event);
+    }
+
+    /**
+     * Pass the transitions of the organization, or of the pair when otherOrganizationId is set, to the consumer in
+     * the order they were recorded. Rows are fetched in batches rather than loaded as a list, on Postgres this needs
+     * a transaction.
+     *
+     * @param organizationId
+     * @param otherOrganizationId
+     * @param from                inclusive, unbounded if null.
+     * @param to                  exclusive, unbounded if null.
+     * @param consumer
+     * @return number of transitions passed to the consumer.
+     */
+    public long stream(long organizationId, Long otherOrganizationId, Date from, Date to,
+                       Consumer<AffiliationHistoryEntry> consumer) {
+        StringBuilder sql = new StringBuilder(SELECT);
+        List<Object> arguments = new ArrayList<>();
+        if (otherOrganizationId == null) {
+            sql.append(OF_ORGANIZATION);
+            arguments.add(organizationId);
+            arguments.add(organizationId);
+        } else {
+            sql.append(OF_PAIR);
+            arguments.add(organizationId);
+            arguments.add(otherOrganizationId);
+            arguments.add(otherOrganizationId);
+            arguments.add(organizationId);
+        }
+        if (from != null) {
+            sql.append(" and created_at >= ?");
+            arguments.add(new Timestamp(from.getTime()));
+        }
+        if (to != null) {
+            sql.append(" and created_at < ?");
+            arguments.add(new Timestamp(to.getTime()));
+        }
+        sql.append(" order by created_at, id");
+
+        AtomicLong count = new AtomicLong();
+        jdbcTemplate.query(connection -> {
+            PreparedStatement statement = connection.prepareStatement(sql.toString());
+            statement.setFetchSize(FETCH_SIZE);
+            new ArgumentPreparedStatementSetter(arguments.toArray()).setValues(statement);
+            return statement;
+        }, (RowCallbackHandler) resultSet -> {
+            consumer.accept(ENTRY_MAPPER.mapRow(resultSet, 0));
+            count.incrementAndGet();
+        });
+        return count.get();
+    }
+
+    /**
+     * Whether the history is partitioned by month.
+     *
+     * @return
+     */
+    public boolean isPartitioned() {
+        return partitioned;
+    }
+
+    /**
+     * Latest month with a partition.
+     *
+     * @return month, or null if the history is not partitioned or has no partition.
+     */
+    public YearMonth lastPartitionMonth() {
+        if (!partitioned) {
+            return null;
+        }
+        YearMonth last = null;
+        for (String partition : jdbcTemplate.queryForList(SELECT_PARTITIONS, String.class)) {
+            Matcher matcher = PARTITION_NAME.matcher(partition);
+            if (matcher.matches()) {
+                YearMonth month = YearMonth.parse(matcher.group(1), PARTITION_MONTH);
+                if (last == null || month.isAfter(last)) {
+                    last = month;
+                }
+            }
+        }
+        return last;
+    }
+
+    /**
+     * Create the partitions of the current and the next months, then prune the months past the retention.
+     * A transition can only be recorded once the partition of its month exists.
+     */
+    @Scheduled(fixedDelayString = "${affiliate.history.maintenance-millis:86400000}",
+            initialDelayString = "${affiliate.history.maintenance-millis:86400000}")
+    public void maintain() {
+        YearMonth current = YearMonth.now();
+        try {
+            if (partitioned) {
+                for (int month = 0; month <= partitionsAhead; month++) {
+                    this.createPartition(current.plusMonths(month));
+                }
+                this.created(current.plusMonths(partitionsAhead));
+            }
+            if (retentionMonths > 0) {
+                this.prune(current.minusMonths(retentionMonths));
+            }
+        } catch (DataAccessException e) {
+            LOGGER.error("Affiliation history maintenance failed", e);
+        }
+    }
+
+    private void created(YearMonth month) {
+        YearMonth until = createdUntil;
+        if (until == null || month.isAfter(until)) {
+            createdUntil = month;
+        }
+    }
+
+    private void createPartition(YearMonth month) {
+        String partition = PARTITION_PREFIX + month.format(PARTITION_MONTH);
+        jdbcTemplate.execute(String.format(CREATE_PARTITION, partition, month.atDay(1),
+                month.plusMonths(1).atDay(1)));
+        jdbcTemplate.execute(String.format(CREATE_PARTITION_INDEX, partition, "from", partition,
+                "affiliation_from"));
+        jdbcTemplate.execute(String.format(CREATE_PARTITION_INDEX, partition, "with", partition,
+                "affiliation_with"));
+    }
+
+    /**
+     * Delete the history before the given month, by dropping the partitions of the earlier months.
+     *
+     * @param oldestKept
+     */
+    private void prune(YearMonth oldestKept) {
+        if (!partitioned) {
+            int deleted = jdbcTemplate.update(PRUNE, Timestamp.valueOf(oldestKept.atDay(1).atStartOfDay()));
+            LOGGER.info("Pruned {} affiliation history entries", deleted);
+            return;
+        }
+        for (String partition : jdbcTemplate.queryForList(SELECT_PARTITIONS, String.class)) {
+            Matcher matcher = PARTITION_NAME.matcher(partition);
+            if (matcher.matches() && YearMonth.parse(matcher.group(1), PARTITION_MONTH).isBefore(oldestKept)) {
+                jdbcTemplate.execute("drop table " + partition);
+                LOGGER.info("Dropped affiliation history partition {}", partition);
+            }
+        }
+    }
+
+    private List<AffiliationChangedEvent> insertBeforeCommit() {
+        List<AffiliationChangedEvent> changes = new ArrayList<>();
+        TransactionSynchronizationManager.bindResource(this, changes);
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+            private YearMonth partitionCreated;
+
+            @Override
+            public void beforeCommit(boolean readOnly) {
+                partitionCreated = insert(changes);
+            }
+
+            @Override
+            public void afterCommit() {
+                if (partitionCreated != null) {
+                    created(partitionCreated);
+                }
+            }
+
+            @Override
+            public void afterCompletion(int status) {
+                TransactionSynchronizationManager.unbindResourceIfPossible(AffiliationHistory.this);
+            }
+        });
+        return changes;
+    }
+
+    /**
+     * Insert the transitions, creating the partition of their month first if this instance has not created it.
+     *
+     * @param changes
+     * @return month of the partition created, null if none was.
+     */
+    private YearMonth insert(List<AffiliationChangedEvent> changes) {
+        Timestamp createdAt = new Timestamp(System.currentTimeMillis());
+        YearMonth partitionCreated = null;
+        YearMonth month = YearMonth.from(createdAt.toLocalDateTime());
+        YearMonth until = createdUntil;
+        if (partitioned && (until == null || month.isAfter(until))) {
+            LOGGER.warn("Creating affiliation history partition of {} on insert, maintenance has not created it",
+                    month);
+            this.createPartition(month);
+            partitionCreated = month;
+        }
+        List<Object[]> rows = new ArrayList<>(changes.size());
+        for (AffiliationChangedEvent change : changes) {
+            rows.add(new Object[]{change.getAffiliationId(), change.getAffiliationFrom(),
+                    change.getAffiliationWith(), change.getPreviousStatus().name(), change.getStatus().name(),
+                    change.getActionedBy(), createdAt});
+        }
+        jdbcTemplate.batchUpdate(INSERT, rows);
+        return partitionCreated;
+    }
+}
@@ -0,0 +1,203 @@
+/*
+ * Copyright (c) Vocera Communications, Inc. All Rights Reserved.
+ * This software is the confidential and proprietary information of
+ * Vocera Communications, Inc.
+ */
+
+package com.vocera.cloud.affiliateservice.service.impl;
+
+import com.vocera.cloud.affiliateservice.event.AffiliationChangedEvent;
+import com.vocera.cloud.affiliateservice.model.AffiliationEvent;
+import com.vocera.cloud.coremodel.constants.AffiliationStatus;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Transactional outbox of the affiliation status changes.
+ * The changes of a transaction are appended to the affiliation_event table right before it commits, so an event is
+ * recorded if and only if its change is committed. Seqs are taken from the single row of affiliation_event_counter,
+ * whose lock is held until the commit: seqs are gapless and a transaction can only see an event once all events
+ * with a lower seq are committed, so a consumer reading after its last seq never skips an event.
+ * The price is that every change commits one at a time on that row, which suits the rate affiliations change at.
+ *
+ * @author Rohit Phatak
+ */
+@Component
+public class AffiliationOutbox {
+
+    private static final String INCREMENT_COUNTER = "update affiliation_event_counter set seq = seq + ? where id = 1";
+
+    private static final String SELECT_COUNTER = "select seq from affiliation_event_counter where id = 1";
+
+    private static final String INSERT_EVENT = "insert into affiliation_event (seq, affiliation_id, " +
+            "affiliation_from, affiliation_with, previous_status, status, active, actioned_by, created_at) " +
+            "values (?, ?, ?, ?, ?, ?, ?, ?, ?)";
+
+    private static final String SELECT_EVENTS = "select seq, affiliation_id, affiliation_from, affiliation_with, " +
+            "previous_status, status, active, actioned_by, created_at from affiliation_event where seq > ? " +
+            "order by seq limit ?";
+
+    private static final String SELECT_OLDEST = "select min(seq) from affiliation_event";
+
+    private static final String PRUNE = "delete from affiliation_event where seq in " +
+            "(select seq from affiliation_event where created_at < ? order by seq limit ?)";
+
+    private static final RowMapper<AffiliationEvent> EVENT_MAPPER = (resultSet, rowNum) -> new AffiliationEvent(
+            resultSet.getLong("seq"), resultSet.getLong("affiliation_id"), resultSet.getLong("affiliation_from"),
+            resultSet.getLong("affiliation_with"), AffiliationStatus.valueOf(resultSet.getString("previous_status")),
+            AffiliationStatus.valueOf(resultSet.getString("status")), resultSet.getBoolean("active"),
+            resultSet.getLong("actioned_by"), new Date(resultSet.getTimestamp("created_at").getTime()));
+
+    private final JdbcTemplate jdbcTemplate;
+
+    private final TransactionTemplate transactionTemplate;
+
+    private final AtomicLong committedSeq = new AtomicLong();
+
+    /**
+     * Constructor.
+     *
+     * @param jdbcTemplate
+     * @param transactionManager
+     */
+    public AffiliationOutbox(JdbcTemplate jdbcTemplate, PlatformTransactionManager transactionManager) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    /**
+     * Record the change when the transaction commits.
+     * Outside of a transaction it is recorded right away, in a transaction of its own.
+     *
+     * @param event
+     */
+    @EventListener
+    public void onAffiliationChanged(AffiliationChangedEvent event) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            long seq = transactionTemplate.execute(status -> this.append(Collections.singletonList(event)));
+            committedSeq.accumulateAndGet(seq, Math::max);
+            return;
+        }
+        @SuppressWarnings("unchecked")
+        List<AffiliationChangedEvent> changes = (List<AffiliationChangedEvent>)
+                TransactionSynchronizationManager.getResource(this);
+        if (changes == null) {
+            changes = this.appendBeforeCommit();
+        }
+        changes.add(event);
+    }
+
+    /**
+     * Seq of the last committed event, 0 if there is none.
+     *
+     * @return
+     */
+    public long latestSeq() {
+        return jdbcTemplate.queryForObject(SELECT_COUNTER, Long.class);
+    }
+
+    /**
+     * Seq of the last event committed by this instance, 0 if there is none.
+     *
+     * @return
+     */
+    public long committedSeq() {
+        return committedSeq.get();
+    }
+
+    /**
+     * Seq of the oldest event which has not been pruned, latestSeq + 1 when all events are pruned.
+     *
+     * @return
+     */
+    public long oldestSeq() {
+        Long oldest = jdbcTemplate.queryForObject(SELECT_OLDEST, Long.class);
+        return oldest != null ? oldest : this.latestSeq() + 1;
+    }
+
+    /**
+     * Events after the seq, in seq order.
+     *
+     * @param since
+     * @param limit
+     * @return
+     */
+    public List<AffiliationEvent> findAfter(long since, int limit) {
+        return jdbcTemplate.query(SELECT_EVENTS, EVENT_MAPPER, since, limit);
+    }
+
+    /**
+     * Delete the events created before the given time, in batches.
+     *
+     * @param before
+     * @param batchSize
+     * @return number of events deleted.
+     */
+    public int prune(Date before, int batchSize) {
+        Timestamp createdBefore = new Timestamp(before.getTime());
+        int pruned = 0;
+        int deleted;
+        do {
+            deleted = jdbcTemplate.update(PRUNE, createdBefore, batchSize);
+            pruned += deleted;
+        } while (deleted == batchSize);
+        return pruned;
+    }
+
+    private List<AffiliationChangedEvent> appendBeforeCommit() {
+        List<AffiliationChangedEvent> changes = new ArrayList<>();
+        TransactionSynchronizationManager.bindResource(this, changes);
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+            private long seq;
+
+            @Override
+            public void beforeCommit(boolean readOnly) {
+                seq = append(changes);
+            }
+
+            @Override
+            public void afterCommit() {
+                committedSeq.accumulateAndGet(seq, Math::max);
+            }
+
+            @Override
+            public void afterCompletion(int status) {
+                TransactionSynchronizationManager.unbindResourceIfPossible(AffiliationOutbox.this);
+            }
+        });
+        return changes;
+    }
+
+    /**
+     * Take the next seqs from the counter and insert the events. The counter row stays locked until the commit.
+     *
+     * @param changes
+     * @return seq of the last event.
+     */
+    private long append(List<AffiliationChangedEvent> changes) {
+        jdbcTemplate.update(INCREMENT_COUNTER, changes.size());
+        long seq = jdbcTemplate.queryForObject(SELECT_COUNTER, Long.class) - changes.size();
+        Timestamp createdAt = new Timestamp(System.currentTimeMillis());
+        List<Object[]> rows = new ArrayList<>(changes.size());
+        for (AffiliationChangedEvent change : changes) {
+            rows.add(new Object[]{++seq, change.getAffiliationId(), change.getAffiliationFrom(),
+                    change.getAffiliationWith(), change.getPreviousStatus().name(), change.getStatus().name(),
+                    change.isActive(), change.getActionedBy(), createdAt});
+        }
+        jdbcTemplate.batchUpdate(INSERT_EVENT, rows);
+        return seq;
+    }
+}
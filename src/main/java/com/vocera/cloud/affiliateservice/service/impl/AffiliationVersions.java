@@ -0,0 +1,116 @@
+/*
+ * Copyright (c) Vocera Communications, Inc. All Rights Reserved.
+ * This software is the confidential and proprietary information of
+ * Vocera Communications, Inc.
+ */
+
+package com.vocera.cloud.affiliateservice.service.impl;
+
+import com.vocera.cloud.affiliateservice.config.DatabasePlatform;
+import com.vocera.cloud.affiliateservice.event.AffiliationChangedEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.SortedSet;
+import java.util.TreeSet;
+
+/**
+ * Affiliation version of every organization, increased by every transaction changing one of its affiliations.
+ * Versions are kept in the affiliation_version table so all instances agree on them, an organization without a row
+ * is at version 0. The organizations changed by a transaction are collected and each one is increased once, right
+ * before the commit and in id order so that concurrent transactions lock the rows in the same order.
+ *
+ * @author Rohit Phatak
+ */
+@Component
+public class AffiliationVersions {
+
+    private static final String SELECT_VERSION = "select version from affiliation_version where organization_id = ?";
+
+    private static final String POSTGRES_INCREMENT = "insert into affiliation_version (organization_id, version) " +
+            "values (?, 1) on conflict (organization_id) do update set version = affiliation_version.version + 1";
+
+    private static final String INCREMENT = "merge into affiliation_version v " +
+            "using (select cast(? as bigint) as organization_id) c on v.organization_id = c.organization_id " +
+            "when matched then update set version = v.version + 1 " +
+            "when not matched then insert (organization_id, version) values (c.organization_id, 1)";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    private final String increment;
+
+    /**
+     * Constructor.
+     *
+     * @param jdbcTemplate
+     * @param databasePlatform
+     */
+    public AffiliationVersions(JdbcTemplate jdbcTemplate, DatabasePlatform databasePlatform) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.increment = databasePlatform.isPostgres() ? POSTGRES_INCREMENT : INCREMENT;
+    }
+
+    /**
+     * Current affiliation version of the organization.
+     *
+     * @param organizationId
+     * @return
+     */
+    public long get(long organizationId) {
+        List<Long> versions = jdbcTemplate.queryForList(SELECT_VERSION, Long.class, organizationId);
+        return versions.isEmpty() ? 0 : versions.get(0);
+    }
+
+    /**
+     * Increase the versions of both organizations of the change when the transaction commits.
+     * Outside of a transaction they are increased right away.
+     *
+     * @param event
+     */
+    @EventListener
+    public void onAffiliationChanged(AffiliationChangedEvent event) {
+        List<Long> organizationIds = Arrays.asList(event.getAffiliationFrom(), event.getAffiliationWith());
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            this.increment(new TreeSet<>(organizationIds));
+            return;
+        }
+        @SuppressWarnings("unchecked")
+        SortedSet<Long> changed = (SortedSet<Long>) TransactionSynchronizationManager.getResource(this);
+        if (changed == null) {
+            changed = this.incrementBeforeCommit();
+        }
+        changed.addAll(organizationIds);
+    }
+
+    private SortedSet<Long> incrementBeforeCommit() {
+        SortedSet<Long> changed = new TreeSet<>();
+        TransactionSynchronizationManager.bindResource(this, changed);
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+            @Override
+            public void beforeCommit(boolean readOnly) {
+                increment(changed);
+            }
+
+            @Override
+            public void afterCompletion(int status) {
+                TransactionSynchronizationManager.unbindResourceIfPossible(AffiliationVersions.this);
+            }
+        });
+        return changed;
+    }
+
+    private void increment(Collection<Long> organizationIds) {
+        List<Object[]> arguments = new ArrayList<>(organizationIds.size());
+        for (Long organizationId : organizationIds) {
+            arguments.add(new Object[]{organizationId});
+        }
+        jdbcTemplate.batchUpdate(increment, arguments);
+    }
+}
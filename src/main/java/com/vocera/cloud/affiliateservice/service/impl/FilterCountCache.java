@@ -0,0 +1,154 @@
+/*
+ * Copyright (c) Vocera Communications, Inc. All Rights Reserved.
+ * This software is the confidential and proprietary information of
+ * Vocera Communications, Inc.
+ */
+
+package com.vocera.cloud.affiliateservice.service.impl;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.vocera.cloud.affiliateservice.event.AffiliationChangedEvent;
+import com.vocera.cloud.coremodel.constants.FilterType;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * Cache of filter counts per organization, filterType and query.
+ * Backs the estimated totals of the filter endpoints. Counts are keyed by the generation of the organization, which
+ * is moved to a new value once a transition involving it commits, so the counts it had are no longer read and are
+ * evicted like any other entry. Generations expire together with the counts written before them, an organization
+ * without a generation is at generation 0.
+ *
+ * @author Rohit Phatak
+ */
+@Component
+public class FilterCountCache {
+
+    private final Cache<CountKey, Long> counts;
+
+    private final Cache<Long, Long> generations;
+
+    /**
+     * Source of new generations, never handing out a generation twice so counts of an expired generation are not
+     * read again.
+     */
+    private final AtomicLong lastGeneration = new AtomicLong();
+
+    /**
+     * Constructor.
+     *
+     * @param maximumSize
+     * @param expireAfterWriteSeconds
+     */
+    public FilterCountCache(
+            @Value("${affiliate.filter.count-cache.maximum-size:10000}") long maximumSize,
+            @Value("${affiliate.filter.count-cache.expire-after-write-seconds:60}") long expireAfterWriteSeconds) {
+        this.counts = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(expireAfterWriteSeconds, TimeUnit.SECONDS)
+                .build();
+        this.generations = Caffeine.newBuilder()
+                .expireAfterWrite(expireAfterWriteSeconds, TimeUnit.SECONDS)
+                .build();
+    }
+
+    /**
+     * Get the cached count, computing it with counter on a miss.
+     *
+     * @param organizationId
+     * @param filterType
+     * @param query
+     * @param counter
+     * @return
+     */
+    public long get(Long organizationId, FilterType filterType, String query, LongSupplier counter) {
+        return counts.get(this.key(organizationId, filterType, query), key -> counter.getAsLong());
+    }
+
+    /**
+     * Get the cached count without computing it, for callers which count asynchronously and {@link #put} the count.
+     *
+     * @param organizationId
+     * @param filterType
+     * @param query
+     * @return count, or null on a miss.
+     */
+    public Long getIfPresent(Long organizationId, FilterType filterType, String query) {
+        return counts.getIfPresent(this.key(organizationId, filterType, query));
+    }
+
+    /**
+     * Cache a count.
+     *
+     * @param organizationId
+     * @param filterType
+     * @param query
+     * @param count
+     */
+    public void put(Long organizationId, FilterType filterType, String query, long count) {
+        counts.put(this.key(organizationId, filterType, query), count);
+    }
+
+    /**
+     * Move both organizations of a committed transition to a new generation.
+     *
+     * @param event
+     */
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onAffiliationChanged(AffiliationChangedEvent event) {
+        generations.put(event.getAffiliationFrom(), lastGeneration.incrementAndGet());
+        generations.put(event.getAffiliationWith(), lastGeneration.incrementAndGet());
+    }
+
+    private CountKey key(Long organizationId, FilterType filterType, String query) {
+        Long generation = generations.getIfPresent(organizationId);
+        return new CountKey(organizationId, generation == null ? 0 : generation, filterType, query);
+    }
+
+    /**
+     * Cache key.
+     */
+    private static final class CountKey {
+
+        private final long organizationId;
+
+        private final long generation;
+
+        private final FilterType filterType;
+
+        private final String query;
+
+        private CountKey(long organizationId, long generation, FilterType filterType, String query) {
+            this.organizationId = organizationId;
+            this.generation = generation;
+            this.filterType = filterType;
+            this.query = query;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof CountKey)) {
+                return false;
+            }
+            CountKey countKey = (CountKey) o;
+            return organizationId == countKey.organizationId && generation == countKey.generation &&
+                    filterType == countKey.filterType &&
+                    Objects.equals(query, countKey.query);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(organizationId, generation, filterType, query);
+        }
+    }
+}
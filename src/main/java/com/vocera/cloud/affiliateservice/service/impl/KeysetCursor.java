@@ -0,0 +1,104 @@
+/*
+ * Copyright (c) Vocera Communications, Inc. All Rights Reserved.
+ * This software is the confidential and proprietary information of
+ * Vocera Communications, Inc.
+ */
+
+package com.vocera.cloud.affiliateservice.service.impl;
+
+import com.vocera.cloud.affiliateservice.exception.InvalidCursorException;
+import com.vocera.cloud.affiliateservice.model.OrganizationSummary;
+import com.vocera.cloud.coremodel.constants.OrderableColumn;
+import com.vocera.cloud.coremodel.model.Affiliation;
+import com.vocera.cloud.coremodel.model.Organization;
+import org.springframework.beans.BeanWrapperImpl;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+/**
+ * Position of the last row of a page in keyset pagination.
+ * Holds the sort column value of the counterpart organization and the affiliation id used as tie breaker.
+ * A missing sort column value is held as the empty string, which is what keyset pagination sorts it as.
+ * Clients only ever see the opaque encoded token.
+ *
+ * @author Rohit Phatak
+ */
+public final class KeysetCursor {
+
+    private static final char SEPARATOR = ':';
+
+    private final long id;
+
+    private final String value;
+
+    private KeysetCursor(long id, String value) {
+        this.id = id;
+        this.value = value;
+    }
+
+    /**
+     * Build the cursor pointing at the given affiliation, as seen by organizationId.
+     *
+     * @param affiliation
+     * @param sort
+     * @param organizationId
+     * @return
+     */
+    public static KeysetCursor of(Affiliation affiliation, OrderableColumn sort, Long organizationId) {
+        Organization counterpart = organizationId.equals(affiliation.getAffiliationFrom().getId()) ?
+                affiliation.getAffiliationWith() : affiliation.getAffiliationFrom();
+        Object value = new BeanWrapperImpl(counterpart).getPropertyValue(sort.getName());
+        return new KeysetCursor(affiliation.getId(), value == null ? "" : value.toString());
+    }
+
+    /**
+     * Build the cursor pointing at the affiliation of the given counterpart organization.
+     *
+     * @param organization
+     * @param sort
+     * @return
+     */
+    public static KeysetCursor of(OrganizationSummary organization, OrderableColumn sort) {
+        Object value = new BeanWrapperImpl(organization).getPropertyValue(sort.getName());
+        return new KeysetCursor(organization.getAffiliationId(), value == null ? "" : value.toString());
+    }
+
+    /**
+     * Decode a token received from a client.
+     *
+     * @param token
+     * @return cursor, or null for an empty token which denotes the first page.
+     */
+    public static KeysetCursor decode(String token) {
+        if (token == null || token.isEmpty()) {
+            return null;
+        }
+        try {
+            String decoded = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8);
+            int separator = decoded.indexOf(SEPARATOR);
+            return new KeysetCursor(Long.parseLong(decoded.substring(0, separator)),
+                    decoded.substring(separator + 1));
+        } catch (IllegalArgumentException | IndexOutOfBoundsException e) {
+            throw new InvalidCursorException("Cannot decode cursor " + token, e);
+        }
+    }
+
+    /**
+     * Encode the cursor as an opaque url safe token.
+     *
+     * @return
+     */
+    public String encode() {
+        return Base64.getUrlEncoder().withoutPadding()
+                .encodeToString((id + String.valueOf(SEPARATOR) + value).getBytes(StandardCharsets.UTF_8));
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    public String getValue() {
+        return value;
+    }
+}
@@ -0,0 +1,139 @@
+/*
+ * Copyright (c) Vocera Communications, Inc. All Rights Reserved.
+ * This software is the confidential and proprietary information of
+ * Vocera Communications, Inc.
+ */
+
+package com.vocera.cloud.affiliateservice.service.impl;
+
+/**
+ * Open addressing hash map from long to byte, without boxing.
+ * Keys are kept in a long array probed linearly, 0 marks a free slot and cannot be used as a key.
+ * Not thread safe.
+ *
+ * @author Rohit Phatak
+ */
+public final class LongByteMap {
+
+    private static final int MIN_CAPACITY = 4;
+
+    private long[] keys;
+
+    private byte[] values;
+
+    private int size;
+
+    /**
+     * Constructor.
+     *
+     * @param expectedSize
+     */
+    public LongByteMap(int expectedSize) {
+        int capacity = capacityFor(expectedSize);
+        this.keys = new long[capacity];
+        this.values = new byte[capacity];
+    }
+
+    /**
+     * @param key
+     * @param missing value returned when the key is absent.
+     * @return
+     */
+    public byte get(long key, byte missing) {
+        int slot = this.slot(key);
+        return keys[slot] == key ? values[slot] : missing;
+    }
+
+    /**
+     * @param key   non zero key.
+     * @param value
+     */
+    public void put(long key, byte value) {
+        if (key == 0) {
+            throw new IllegalArgumentException("0 cannot be used as a key");
+        }
+        int slot = this.slot(key);
+        if (keys[slot] != key) {
+            if ((size + 1) * 4 > keys.length * 3) {
+                this.resize(keys.length * 2);
+                slot = this.slot(key);
+            }
+            keys[slot] = key;
+            size++;
+        }
+        values[slot] = value;
+    }
+
+    /**
+     * Remove the key, later entries of its probe sequence are shifted back into the freed slot.
+     *
+     * @param key
+     * @return true if the key was present.
+     */
+    public boolean remove(long key) {
+        int slot = this.slot(key);
+        if (key == 0 || keys[slot] != key) {
+            return false;
+        }
+        int mask = keys.length - 1;
+        int free = slot;
+        for (int next = (free + 1) & mask; keys[next] != 0; next = (next + 1) & mask) {
+            int home = hash(keys[next]) & mask;
+            if (((next - home) & mask) >= ((next - free) & mask)) {
+                keys[free] = keys[next];
+                values[free] = values[next];
+                free = next;
+            }
+        }
+        keys[free] = 0;
+        size--;
+        return true;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return approximate heap used by the map, in bytes.
+     */
+    public long memoryBytes() {
+        return 16 + 8 + 8 + 4 + (16 + 8L * keys.length) + (16 + (long) values.length);
+    }
+
+    private int slot(long key) {
+        int mask = keys.length - 1;
+        int slot = hash(key) & mask;
+        while (keys[slot] != 0 && keys[slot] != key) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private void resize(int capacity) {
+        long[] oldKeys = keys;
+        byte[] oldValues = values;
+        keys = new long[capacity];
+        values = new byte[capacity];
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != 0) {
+                int slot = this.slot(oldKeys[i]);
+                keys[slot] = oldKeys[i];
+                values[slot] = oldValues[i];
+            }
+        }
+    }
+
+    static int capacityFor(int expectedSize) {
+        int capacity = MIN_CAPACITY;
+        while (capacity * 3 < expectedSize * 4) {
+            capacity *= 2;
+        }
+        return capacity;
+    }
+
+    static int hash(long key) {
+        long mixed = key * 0x9E3779B97F4A7C15L;
+        return (int) (mixed ^ (mixed >>> 32));
+    }
+}
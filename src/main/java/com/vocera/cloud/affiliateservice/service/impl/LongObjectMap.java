@@ -0,0 +1,138 @@
+/*
+ * Copyright (c) Vocera Communications, Inc. All Rights Reserved.
+ * This software is the confidential and proprietary information of
+ * Vocera Communications, Inc.
+ */
+
+package com.vocera.cloud.affiliateservice.service.impl;
+
+import java.util.function.Consumer;
+
+/**
+ * Open addressing hash map from long to object, without boxing the keys.
+ * Probing and removal work as in @{@link LongByteMap}, 0 cannot be used as a key.
+ * Not thread safe.
+ *
+ * @param <V>
+ * @author Rohit Phatak
+ */
+public final class LongObjectMap<V> {
+
+    private long[] keys;
+
+    private Object[] values;
+
+    private int size;
+
+    /**
+     * Constructor.
+     *
+     * @param expectedSize
+     */
+    public LongObjectMap(int expectedSize) {
+        int capacity = LongByteMap.capacityFor(expectedSize);
+        this.keys = new long[capacity];
+        this.values = new Object[capacity];
+    }
+
+    /**
+     * @param key
+     * @return value, or null if the key is absent.
+     */
+    @SuppressWarnings("unchecked")
+    public V get(long key) {
+        int slot = this.slot(key);
+        return keys[slot] == key ? (V) values[slot] : null;
+    }
+
+    /**
+     * @param key   non zero key.
+     * @param value
+     */
+    public void put(long key, V value) {
+        if (key == 0) {
+            throw new IllegalArgumentException("0 cannot be used as a key");
+        }
+        int slot = this.slot(key);
+        if (keys[slot] != key) {
+            if ((size + 1) * 4 > keys.length * 3) {
+                this.resize(keys.length * 2);
+                slot = this.slot(key);
+            }
+            keys[slot] = key;
+            size++;
+        }
+        values[slot] = value;
+    }
+
+    /**
+     * @param key
+     * @return true if the key was present.
+     */
+    public boolean remove(long key) {
+        int slot = this.slot(key);
+        if (key == 0 || keys[slot] != key) {
+            return false;
+        }
+        int mask = keys.length - 1;
+        int free = slot;
+        for (int next = (free + 1) & mask; keys[next] != 0; next = (next + 1) & mask) {
+            int home = LongByteMap.hash(keys[next]) & mask;
+            if (((next - home) & mask) >= ((next - free) & mask)) {
+                keys[free] = keys[next];
+                values[free] = values[next];
+                free = next;
+            }
+        }
+        keys[free] = 0;
+        values[free] = null;
+        size--;
+        return true;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @param action called for every value.
+     */
+    @SuppressWarnings("unchecked")
+    public void forEachValue(Consumer<V> action) {
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] != 0) {
+                action.accept((V) values[i]);
+            }
+        }
+    }
+
+    /**
+     * @return approximate heap used by the map itself, without the values, in bytes.
+     */
+    public long memoryBytes() {
+        return 16 + 8 + 8 + 4 + (16 + 8L * keys.length) + (16 + 4L * values.length);
+    }
+
+    private int slot(long key) {
+        int mask = keys.length - 1;
+        int slot = LongByteMap.hash(key) & mask;
+        while (keys[slot] != 0 && keys[slot] != key) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private void resize(int capacity) {
+        long[] oldKeys = keys;
+        Object[] oldValues = values;
+        keys = new long[capacity];
+        values = new Object[capacity];
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != 0) {
+                int slot = this.slot(oldKeys[i]);
+                keys[slot] = oldKeys[i];
+                values[slot] = oldValues[i];
+            }
+        }
+    }
+}
@@ -0,0 +1,119 @@
+/*
+ * Copyright (c) Vocera Communications, Inc. All Rights Reserved.
+ * This software is the confidential and proprietary information of
+ * Vocera Communications, Inc.
+ */
+
+package com.vocera.cloud.affiliateservice.service.impl;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Immutable trigram index from text to ids.
+ * Every trigram maps to the sorted ids of the texts containing it. A substring of at least three characters can
+ * only occur in texts containing all of its trigrams, so intersecting the posting lists gives a superset of the
+ * ids matching LIKE '%q%'.
+ *
+ * @author Rohit Phatak
+ */
+public final class NgramIndex {
+
+    public static final int GRAM = 3;
+
+    private static final long[] EMPTY = new long[0];
+
+    private final Map<String, long[]> postings;
+
+    private NgramIndex(Map<String, long[]> postings) {
+        this.postings = postings;
+    }
+
+    /**
+     * Build the index.
+     *
+     * @param ids   ids in ascending order.
+     * @param texts text for every id, null texts are skipped.
+     * @return
+     */
+    public static NgramIndex build(long[] ids, String[] texts) {
+        Map<String, Posting> building = new HashMap<>();
+        for (int i = 0; i < ids.length; i++) {
+            String text = texts[i];
+            if (text == null) {
+                continue;
+            }
+            for (int start = 0; start + GRAM <= text.length(); start++) {
+                building.computeIfAbsent(text.substring(start, start + GRAM), gram -> new Posting()).add(ids[i]);
+            }
+        }
+        Map<String, long[]> postings = new HashMap<>(building.size() * 2);
+        building.forEach((gram, posting) -> postings.put(gram, Arrays.copyOf(posting.ids, posting.size)));
+        return new NgramIndex(postings);
+    }
+
+    /**
+     * Ids of the texts which may contain the query.
+     *
+     * @param query
+     * @return sorted ids, or null if the query is too short to be served from the index.
+     */
+    public long[] candidates(String query) {
+        if (query == null || query.length() < GRAM) {
+            return null;
+        }
+        long[] result = null;
+        for (int start = 0; start + GRAM <= query.length(); start++) {
+            long[] posting = postings.get(query.substring(start, start + GRAM));
+            if (posting == null) {
+                return EMPTY;
+            }
+            result = result == null ? posting : intersect(result, posting);
+            if (result.length == 0) {
+                return EMPTY;
+            }
+        }
+        return result;
+    }
+
+    private static long[] intersect(long[] left, long[] right) {
+        long[] result = new long[Math.min(left.length, right.length)];
+        int i = 0;
+        int j = 0;
+        int size = 0;
+        while (i < left.length && j < right.length) {
+            if (left[i] < right[j]) {
+                i++;
+            } else if (left[i] > right[j]) {
+                j++;
+            } else {
+                result[size++] = left[i];
+                i++;
+                j++;
+            }
+        }
+        return Arrays.copyOf(result, size);
+    }
+
+    /**
+     * Posting list under construction.
+     */
+    private static final class Posting {
+
+        private long[] ids = new long[4];
+
+        private int size;
+
+        private void add(long id) {
+            if (size > 0 && ids[size - 1] == id) {
+                // Trigram repeated within the same text.
+                return;
+            }
+            if (size == ids.length) {
+                ids = Arrays.copyOf(ids, size * 2);
+            }
+            ids[size++] = id;
+        }
+    }
+}
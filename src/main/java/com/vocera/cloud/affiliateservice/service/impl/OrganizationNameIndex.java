@@ -0,0 +1,247 @@
+/*
+ * Copyright (c) Vocera Communications, Inc. All Rights Reserved.
+ * This software is the confidential and proprietary information of
+ * Vocera Communications, Inc.
+ */
+
+package com.vocera.cloud.affiliateservice.service.impl;
+
+import com.vocera.cloud.affiliateservice.event.AffiliationChangedEvent;
+import com.vocera.cloud.coremodel.model.Affiliation;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.jpa.domain.Specification;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * In-process trigram index over organization name and healthSystemName.
+ * Stands in for the pg_trgm GIN indexes on databases without trigram support (H2). It only narrows down the
+ * counterpart organizations, the LIKE predicates of @{@link AffiliateSpecifications} still decide the match.
+ * Organizations created after the last refresh have ids above the highest indexed id and are always let through, so
+ * are the organizations changed since. Those are found by polling for organizations updated since the refresh every
+ * changes-millis, and the organizations of an affiliation changed through this instance are let through right away.
+ * A query with LIKE wildcards is not served from the index, its trigrams are not literal text.
+ *
+ * @author Rohit Phatak
+ */
+@Component
+public class OrganizationNameIndex {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(OrganizationNameIndex.class);
+
+    /**
+     * Wildcards and the default escape character of LIKE.
+     */
+    private static final String LIKE_WILDCARDS = "%_\\";
+
+    /**
+     * Organizations updated this long before the last change seen are read again, an update can commit after a
+     * later one.
+     */
+    private static final long CHANGE_SLACK_MILLIS = 60000;
+
+    private final JdbcTemplate jdbcTemplate;
+
+    private final boolean enabled;
+
+    private final int maxCandidates;
+
+    private volatile Snapshot snapshot;
+
+    /**
+     * Constructor.
+     *
+     * @param jdbcTemplate
+     * @param enabled
+     * @param maxCandidates
+     */
+    public OrganizationNameIndex(
+            JdbcTemplate jdbcTemplate,
+            @Value("${affiliate.search.ngram-index.enabled:false}") boolean enabled,
+            @Value("${affiliate.search.ngram-index.max-candidates:1000}") int maxCandidates) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.enabled = enabled;
+        this.maxCandidates = maxCandidates;
+    }
+
+    /**
+     * Specification restricting the counterpart organization to the candidates for query.
+     *
+     * @param query
+     * @param organizationId
+     * @return specification, or null if the index cannot narrow down the query.
+     */
+    public Specification<Affiliation> prefilter(String query, Long organizationId) {
+        if (!enabled || query == null || query.length() < NgramIndex.GRAM || hasWildcard(query)) {
+            return null;
+        }
+        Snapshot current = this.snapshot();
+        long[] candidates = union(union(current.names.candidates(query), current.healthSystemNames.candidates(query)),
+                current.changedIds());
+        if (candidates.length > maxCandidates) {
+            return null;
+        }
+        List<Long> ids = new ArrayList<>(candidates.length);
+        for (long id : candidates) {
+            ids.add(id);
+        }
+        return AffiliateSpecifications.counterpartIn(ids, current.maxId, organizationId);
+    }
+
+    /**
+     * Rebuild the index from the organization table.
+     */
+    @Scheduled(fixedDelayString = "${affiliate.search.ngram-index.refresh-millis:300000}")
+    public void refresh() {
+        if (!enabled) {
+            return;
+        }
+        try {
+            this.snapshot = this.load();
+        } catch (DataAccessException e) {
+            LOGGER.warn("Could not refresh organization name index : {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Let through the organizations updated since the last refresh.
+     */
+    @Scheduled(fixedDelayString = "${affiliate.search.ngram-index.changes-millis:5000}")
+    public void refreshChanges() {
+        Snapshot current = snapshot;
+        if (!enabled || current == null) {
+            return;
+        }
+        try {
+            jdbcTemplate.query("select id, updated_at from organization where updated_at > ?", resultSet -> {
+                current.changed.add(resultSet.getLong(1));
+                Timestamp updatedAt = resultSet.getTimestamp(2);
+                if (updatedAt.after(current.changedSince)) {
+                    current.changedSince = updatedAt;
+                }
+            }, new Timestamp(current.changedSince.getTime() - CHANGE_SLACK_MILLIS));
+        } catch (DataAccessException e) {
+            LOGGER.warn("Could not read organization changes : {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Let through the organizations of a saved or changed affiliation.
+     *
+     * @param event
+     */
+    @EventListener
+    public void onAffiliationChanged(AffiliationChangedEvent event) {
+        Snapshot current = snapshot;
+        if (current != null) {
+            current.changed.add(event.getAffiliationFrom());
+            current.changed.add(event.getAffiliationWith());
+        }
+    }
+
+    private Snapshot snapshot() {
+        Snapshot current = snapshot;
+        if (current == null) {
+            synchronized (this) {
+                if (snapshot == null) {
+                    snapshot = this.load();
+                }
+                current = snapshot;
+            }
+        }
+        return current;
+    }
+
+    private Snapshot load() {
+        long start = System.currentTimeMillis();
+        Timestamp changedSince = jdbcTemplate.queryForObject("select max(updated_at) from organization",
+                Timestamp.class);
+        List<Long> ids = new ArrayList<>();
+        List<String> names = new ArrayList<>();
+        List<String> healthSystemNames = new ArrayList<>();
+        jdbcTemplate.query("select id, name, health_system_name from organization order by id", resultSet -> {
+            ids.add(resultSet.getLong(1));
+            names.add(resultSet.getString(2));
+            healthSystemNames.add(resultSet.getString(3));
+        });
+        long[] idArray = ids.stream().mapToLong(Long::longValue).toArray();
+        Snapshot loaded = new Snapshot(NgramIndex.build(idArray, names.toArray(new String[0])),
+                NgramIndex.build(idArray, healthSystemNames.toArray(new String[0])),
+                idArray.length == 0 ? 0 : idArray[idArray.length - 1],
+                changedSince != null ? changedSince : new Timestamp(0));
+        LOGGER.info("Indexed {} organization names in {} ms", idArray.length, System.currentTimeMillis() - start);
+        return loaded;
+    }
+
+    private static boolean hasWildcard(String query) {
+        for (int i = 0; i < query.length(); i++) {
+            if (LIKE_WILDCARDS.indexOf(query.charAt(i)) >= 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static long[] union(long[] left, long[] right) {
+        if (left == null || right == null) {
+            return left == null ? right : left;
+        }
+        long[] result = new long[left.length + right.length];
+        int i = 0;
+        int j = 0;
+        int size = 0;
+        while (i < left.length || j < right.length) {
+            if (j == right.length || (i < left.length && left[i] < right[j])) {
+                result[size++] = left[i++];
+            } else if (i == left.length || right[j] < left[i]) {
+                result[size++] = right[j++];
+            } else {
+                result[size++] = left[i++];
+                j++;
+            }
+        }
+        return Arrays.copyOf(result, size);
+    }
+
+    /**
+     * Index built from one read of the organization table, with the organizations changed since.
+     */
+    private static final class Snapshot {
+
+        private final NgramIndex names;
+
+        private final NgramIndex healthSystemNames;
+
+        private final long maxId;
+
+        private final Set<Long> changed = ConcurrentHashMap.newKeySet();
+
+        /**
+         * Latest updated_at seen, only written by the change poll.
+         */
+        private volatile Timestamp changedSince;
+
+        private Snapshot(NgramIndex names, NgramIndex healthSystemNames, long maxId, Timestamp changedSince) {
+            this.names = names;
+            this.healthSystemNames = healthSystemNames;
+            this.maxId = maxId;
+            this.changedSince = changedSince;
+        }
+
+        private long[] changedIds() {
+            return changed.stream().mapToLong(Long::longValue).sorted().toArray();
+        }
+    }
+}
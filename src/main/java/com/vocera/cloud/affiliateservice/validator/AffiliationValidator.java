@@ -6,6 +6,7 @@
 
 package com.vocera.cloud.affiliateservice.validator;
 
+import com.vocera.cloud.affiliateservice.constant.ErrorCodes;
 import com.vocera.cloud.affiliateservice.service.AffiliateService;
 import com.vocera.cloud.coremodel.model.Affiliation;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -43,8 +44,8 @@ public class AffiliationValidator implements Validator {
             Affiliation affiliation = (Affiliation) target;
 
             if (affiliation.getAffiliationFrom() == null || affiliation.getAffiliationFrom().getId() <= 0) {
-                errors.rejectValue("affiliationFrom", "Invalid Organization to request affiliation", "Invalid " +
-                        "Organization to request affiliation");
+                errors.rejectValue("affiliationFrom", ErrorCodes.INVALID_AFFILIATION_FROM.getMessage(),
+                        ErrorCodes.INVALID_AFFILIATION_FROM.getMessage());
             }
             if (affiliation.getAffiliationWith() == null || affiliation.getAffiliationWith().getId() <= 0) {
                 errors.rejectValue("affiliationWith", "Invalid Organization to Affiliate With", "Invalid Organization" +
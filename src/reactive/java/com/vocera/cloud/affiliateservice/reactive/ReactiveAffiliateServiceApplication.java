@@ -0,0 +1,29 @@
+/*
+ * Copyright (c) Vocera Communications, Inc. All Rights Reserved.
+ * This software is the confidential and proprietary information of
+ * Vocera Communications, Inc.
+ */
+
+package com.vocera.cloud.affiliateservice.reactive;
+
+import com.vocera.cloud.affiliateservice.config.TotalTypeConverter;
+import com.vocera.cloud.affiliateservice.service.impl.FilterCountCache;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.context.annotation.Import;
+
+/**
+ * Entry Point for the reactive read path of Affiliate Service.
+ * Serves the check and filter endpoints on WebFlux with R2DBC, next to the servlet application.
+ *
+ * @author Rohit Phatak
+ */
+@SpringBootApplication
+@Import({TotalTypeConverter.class, FilterCountCache.class})
+public class ReactiveAffiliateServiceApplication {
+
+    public static void main(String[] args) {
+        SpringApplication.run(ReactiveAffiliateServiceApplication.class, args);
+    }
+
+}
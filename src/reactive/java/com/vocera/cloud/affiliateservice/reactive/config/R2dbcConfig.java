@@ -0,0 +1,46 @@
+/*
+ * Copyright (c) Vocera Communications, Inc. All Rights Reserved.
+ * This software is the confidential and proprietary information of
+ * Vocera Communications, Inc.
+ */
+
+package com.vocera.cloud.affiliateservice.reactive.config;
+
+import io.r2dbc.spi.ConnectionFactories;
+import io.r2dbc.spi.ConnectionFactory;
+import io.r2dbc.spi.ConnectionFactoryOptions;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * R2DBC connection factory of the reactive read path.
+ * A r2dbc:pool: url puts the driver connections behind r2dbc-pool.
+ *
+ * @author Rohit Phatak
+ */
+@Configuration
+public class R2dbcConfig {
+
+    /**
+     * Connection factory for the configured url, with the credentials set apart from the url.
+     *
+     * @param url
+     * @param username
+     * @param password
+     * @return
+     */
+    @Bean
+    public ConnectionFactory connectionFactory(@Value("${affiliate.reactive.r2dbc.url}") String url,
+                                               @Value("${affiliate.reactive.r2dbc.username:}") String username,
+                                               @Value("${affiliate.reactive.r2dbc.password:}") String password) {
+        ConnectionFactoryOptions.Builder options = ConnectionFactoryOptions.parse(url).mutate();
+        if (!username.isEmpty()) {
+            options.option(ConnectionFactoryOptions.USER, username);
+        }
+        if (!password.isEmpty()) {
+            options.option(ConnectionFactoryOptions.PASSWORD, password);
+        }
+        return ConnectionFactories.get(options.build());
+    }
+}
@@ -0,0 +1,95 @@
+/*
+ * Copyright (c) Vocera Communications, Inc. All Rights Reserved.
+ * This software is the confidential and proprietary information of
+ * Vocera Communications, Inc.
+ */
+
+package com.vocera.cloud.affiliateservice.reactive.controller;
+
+import com.vocera.cloud.affiliateservice.constant.ErrorCodes;
+import com.vocera.cloud.affiliateservice.exception.InvalidCursorException;
+import com.vocera.cloud.affiliateservice.exception.InvalidRequestException;
+import com.vocera.cloud.coremodel.model.ErrorResponse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.ControllerAdvice;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Advice Handler for exceptions raised on the reactive read path, with the error responses of AdviceHandler.
+ *
+ * @author Rohit Phatak
+ */
+@ControllerAdvice
+public class ReactiveAdviceHandler {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ReactiveAdviceHandler.class);
+
+    /**
+     * Global exception handler.
+     *
+     * @param ex
+     * @return
+     */
+    @ExceptionHandler(Exception.class)
+    public final ResponseEntity<ErrorResponse> handleAllExceptions(Exception ex) {
+        LOGGER.error("Reactive request failed", ex);
+        List<String> details = new ArrayList<>();
+        details.add(ex.getLocalizedMessage());
+        ErrorResponse error = new ErrorResponse("Server Error", details, ErrorCodes.UNKNOWN_EXECEPTION.getCode());
+        return new ResponseEntity<>(error, HttpStatus.INTERNAL_SERVER_ERROR);
+    }
+
+    /**
+     * Exception Handler for @{@link InvalidCursorException}
+     *
+     * @param ex
+     * @return
+     */
+    @ExceptionHandler(InvalidCursorException.class)
+    public final ResponseEntity<ErrorResponse> invalidCursor(InvalidCursorException ex) {
+        LOGGER.info("Invalid pagination cursor : {}", ex.getMessage());
+        List<String> details = new ArrayList<>();
+        details.add(ex.getMessage());
+        ErrorResponse error = new ErrorResponse(ErrorCodes.INVALID_CURSOR.getMessage(), details,
+                ErrorCodes.INVALID_CURSOR.getCode());
+        return new ResponseEntity<>(error, HttpStatus.BAD_REQUEST);
+    }
+
+    /**
+     * Exception Handler for @{@link InvalidRequestException}
+     *
+     * @param ex
+     * @return
+     */
+    @ExceptionHandler(InvalidRequestException.class)
+    public final ResponseEntity<ErrorResponse> invalidRequest(InvalidRequestException ex) {
+        LOGGER.info("Invalid request : {}", ex.getMessage());
+        List<String> details = new ArrayList<>();
+        details.add(ex.getMessage());
+        ErrorResponse error = new ErrorResponse(ErrorCodes.INVALID_REQUEST.getMessage(), details,
+                ErrorCodes.INVALID_REQUEST.getCode());
+        return new ResponseEntity<>(error, HttpStatus.BAD_REQUEST);
+    }
+
+    /**
+     * Handler for request binding failures such as a missing header or an invalid parameter.
+     *
+     * @param ex
+     * @return
+     */
+    @ExceptionHandler(ResponseStatusException.class)
+    public final ResponseEntity<ErrorResponse> responseStatus(ResponseStatusException ex) {
+        LOGGER.info("Invalid request : {}", ex.getMessage());
+        List<String> details = new ArrayList<>();
+        details.add(ex.getReason());
+        ErrorResponse error = new ErrorResponse("Validation Failed", details, ErrorCodes.INVALID_REQUEST.getCode());
+        return new ResponseEntity<>(error, ex.getStatus());
+    }
+}
@@ -0,0 +1,186 @@
+/*
+ * Copyright (c) Vocera Communications, Inc. All Rights Reserved.
+ * This software is the confidential and proprietary information of
+ * Vocera Communications, Inc.
+ */
+
+package com.vocera.cloud.affiliateservice.reactive.controller;
+
+import com.vocera.cloud.affiliateservice.constant.TotalType;
+import com.vocera.cloud.affiliateservice.controller.FilterETag;
+import com.vocera.cloud.affiliateservice.controller.FilterPage;
+import com.vocera.cloud.affiliateservice.model.FilterPageResponse;
+import com.vocera.cloud.affiliateservice.model.OrganizationSummary;
+import com.vocera.cloud.affiliateservice.reactive.service.ReactiveAffiliateService;
+import com.vocera.cloud.coremodel.constants.FilterType;
+import com.vocera.cloud.coremodel.constants.HttpHeader;
+import com.vocera.cloud.coremodel.constants.OrderableColumn;
+import com.vocera.cloud.coremodel.model.Affiliation;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.domain.Sort;
+import org.springframework.http.CacheControl;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Mono;
+
+import java.util.function.Supplier;
+
+/**
+ * Reactive Affiliation REST api Controller.
+ * Serves the read endpoints of AffiliationController with the same paths, parameters and responses.
+ *
+ * @author Rohit Phatak
+ */
+@RestController
+@RequestMapping("/affiliate")
+public class ReactiveAffiliationController {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ReactiveAffiliationController.class);
+
+    /**
+     * Filter responses are cached by the client and revalidated with their ETag on every use.
+     */
+    private static final CacheControl FILTER_CACHE_CONTROL = CacheControl.noCache().cachePrivate();
+
+    private ReactiveAffiliateService affiliateService;
+
+    /**
+     * Constructor
+     *
+     * @param affiliateService
+     */
+    public ReactiveAffiliationController(ReactiveAffiliateService affiliateService) {
+        this.affiliateService = affiliateService;
+    }
+
+    /**
+     * Check the affiliation of the organization with another organization.
+     *
+     * @param organizationId
+     * @param otherOrganizationId
+     * @return affiliation, with status NONE if the organizations are not affiliated.
+     */
+    @GetMapping("/check/{organizationId}")
+    public Mono<ResponseEntity<Affiliation>> checkAffiliation(
+            @RequestHeader(HttpHeader.ORGANIZATION_ID) Long organizationId,
+            @PathVariable("organizationId") Long otherOrganizationId) {
+        LOGGER.info("Check affiliation called on {} by {}", otherOrganizationId, organizationId);
+        return this.affiliateService.checkAffiliation(organizationId, otherOrganizationId).map(ResponseEntity::ok);
+    }
+
+    /**
+     * Filter through affiliations.
+     * The response carries the ETag of AffiliationController, a request with a matching If-None-Match gets 304
+     * without a query on the affiliations. includeTotal=false skips the count query, the response has
+     * totalCount=-1 and only reports hasNext.
+     *
+     * @param page
+     * @param offset
+     * @param after
+     * @param includeTotal
+     * @param query
+     * @param sort
+     * @param order
+     * @param filterType
+     * @param organizationId
+     * @param exchange
+     * @return
+     */
+    @GetMapping("/filter")
+    public Mono<ResponseEntity<FilterPageResponse<Affiliation>>> filterAffiliation(
+            @RequestParam(value = "page", required = false, defaultValue = "0") int page,
+            @RequestParam("offset") int offset,
+            @RequestParam(value = "after", required = false) String after,
+            @RequestParam(value = "includeTotal", required = false, defaultValue = "exact") TotalType includeTotal,
+            @RequestParam(value = "query", required = false, defaultValue = "") String query,
+            @RequestParam(value = "sort", required = false, defaultValue = "NAME") OrderableColumn sort,
+            @RequestParam(value = "order", required = false, defaultValue = "ASC") Sort.Direction order,
+            @RequestParam(value = "filterType", required = false, defaultValue = "ALL") FilterType filterType,
+            @RequestHeader(HttpHeader.ORGANIZATION_ID) Long organizationId,
+            ServerWebExchange exchange) {
+        LOGGER.info("Filter affiliation called on Page:{}, Offset:{}, After:{}, includeTotal:{}, query:{}, sort:{}, " +
+                        "order:{}, filterType:{} by {}", page, offset, after, includeTotal, query, sort, order,
+                filterType, organizationId);
+
+        FilterPage.check(page, offset, after);
+        return this.filterResponse(exchange, organizationId, "filter", () -> after != null ?
+                        affiliateService.filterAffiliation(offset, after, includeTotal, query, sort, order,
+                                filterType, organizationId) :
+                        affiliateService.filterAffiliation(page, offset, includeTotal, query, sort, order,
+                                filterType, organizationId),
+                page, offset, after, includeTotal, query, sort, order, filterType);
+    }
+
+    /**
+     * Filter through organizations in Affiliations.
+     * The response carries an ETag like the affiliation filter. includeTotal=false skips the count query, the
+     * response has totalCount=-1 and only reports hasNext.
+     *
+     * @param page
+     * @param offset
+     * @param after
+     * @param includeTotal
+     * @param query
+     * @param sort
+     * @param order
+     * @param filterType
+     * @param organizationId
+     * @param exchange
+     * @return
+     */
+    @GetMapping("/organization/filter")
+    public Mono<ResponseEntity<FilterPageResponse<OrganizationSummary>>> filterAffiliationOrganization(
+            @RequestParam(value = "page", required = false, defaultValue = "0") int page,
+            @RequestParam("offset") int offset,
+            @RequestParam(value = "after", required = false) String after,
+            @RequestParam(value = "includeTotal", required = false, defaultValue = "exact") TotalType includeTotal,
+            @RequestParam(value = "query", required = false, defaultValue = "") String query,
+            @RequestParam(value = "sort", required = false, defaultValue = "NAME") OrderableColumn sort,
+            @RequestParam(value = "order", required = false, defaultValue = "ASC") Sort.Direction order,
+            @RequestParam(value = "filterType", required = false, defaultValue = "ALL") FilterType filterType,
+            @RequestHeader(HttpHeader.ORGANIZATION_ID) Long organizationId,
+            ServerWebExchange exchange) {
+        LOGGER.info("Filter organization called on Page:{}, Offset:{}, After:{}, includeTotal:{}, query:{}, sort:{}, " +
+                        "order:{}, filterType:{} by {}", page, offset, after, includeTotal, query, sort, order,
+                filterType, organizationId);
+
+        FilterPage.check(page, offset, after);
+        return this.filterResponse(exchange, organizationId, "organization/filter", () -> after != null ?
+                        affiliateService.filterAffiliationOrganization(offset, after, includeTotal, query, sort,
+                                order, filterType, organizationId) :
+                        affiliateService.filterAffiliationOrganization(page, offset, includeTotal, query, sort,
+                                order, filterType, organizationId),
+                page, offset, after, includeTotal, query, sort, order, filterType);
+    }
+
+    /**
+     * Filter response tagged with the @{@link FilterETag} of the request, empty with status 304 when it matches
+     * If-None-Match. The version is read before the page, so a response is never tagged with a newer version than
+     * its data.
+     *
+     * @param exchange
+     * @param organizationId
+     * @param endpoint
+     * @param response
+     * @param parameters
+     * @param <T>
+     * @return
+     */
+    private <T> Mono<ResponseEntity<T>> filterResponse(ServerWebExchange exchange, Long organizationId,
+                                                       String endpoint, Supplier<Mono<T>> response,
+                                                       Object... parameters) {
+        return affiliateService.affiliationVersion(organizationId).flatMap(version -> {
+            if (exchange.checkNotModified(FilterETag.of(version, organizationId, endpoint, parameters))) {
+                return Mono.empty();
+            }
+            return response.get().map(body -> ResponseEntity.ok().cacheControl(FILTER_CACHE_CONTROL).body(body));
+        });
+    }
+}
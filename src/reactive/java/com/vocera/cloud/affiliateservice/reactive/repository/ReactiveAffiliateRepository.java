@@ -0,0 +1,294 @@
+/*
+ * Copyright (c) Vocera Communications, Inc. All Rights Reserved.
+ * This software is the confidential and proprietary information of
+ * Vocera Communications, Inc.
+ */
+
+package com.vocera.cloud.affiliateservice.reactive.repository;
+
+import com.vocera.cloud.affiliateservice.model.OrganizationSummary;
+import com.vocera.cloud.affiliateservice.service.impl.KeysetCursor;
+import com.vocera.cloud.coremodel.constants.AffiliationStatus;
+import com.vocera.cloud.coremodel.constants.OrderableColumn;
+import com.vocera.cloud.coremodel.model.Address;
+import com.vocera.cloud.coremodel.model.Admin;
+import com.vocera.cloud.coremodel.model.Affiliation;
+import com.vocera.cloud.coremodel.model.Organization;
+import io.r2dbc.spi.Connection;
+import io.r2dbc.spi.ConnectionFactory;
+import io.r2dbc.spi.Row;
+import io.r2dbc.spi.RowMetadata;
+import io.r2dbc.spi.Statement;
+import org.springframework.data.domain.Sort;
+import org.springframework.stereotype.Repository;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.function.BiFunction;
+import java.util.stream.Collectors;
+
+/**
+ * Read queries of the reactive path, written in SQL against the tables mapped by the core model entities.
+ * The filter statements follow @{@link com.vocera.cloud.affiliateservice.service.impl.AffiliateSpecifications}:
+ * same predicates, same ordering on the counterpart column and the affiliation id.
+ * Bind markers are $1, $2 ... which both the Postgres and the H2 drivers accept.
+ *
+ * @author Rohit Phatak
+ */
+@Repository
+public class ReactiveAffiliateRepository {
+
+    private static final String ORGANIZATION_COLUMNS = "%1$s.id as %1$s_id, %1$s.created_at as %1$s_created_at, " +
+            "%1$s.updated_at as %1$s_updated_at, %1$s.active as %1$s_active, %1$s.domain as %1$s_domain, " +
+            "%1$s.health_system_name as %1$s_health_system_name, %1$s.name as %1$s_name, " +
+            "%1$s.address_line1 as %1$s_address_line1, %1$s.address_line2 as %1$s_address_line2, " +
+            "%1$s.city as %1$s_city, %1$s.state as %1$s_state, " +
+            "%2$s.id as %2$s_id, %2$s.created_at as %2$s_created_at, %2$s.updated_at as %2$s_updated_at, " +
+            "%2$s.name as %2$s_name, %2$s.email as %2$s_email, %2$s.phone as %2$s_phone, %2$s.title as %2$s_title";
+
+    private static final String AFFILIATION_SELECT = "select a.id, a.created_at, a.updated_at, a.status, " +
+            "a.actioned_by, a.requested_by, a.active, " +
+            String.format(ORGANIZATION_COLUMNS, "f", "fa") + ", " + String.format(ORGANIZATION_COLUMNS, "w", "wa") +
+            " from affiliation a " +
+            "join organization f on f.id = a.affiliation_from left join admin fa on fa.id = f.admin_id " +
+            "join organization w on w.id = a.affiliation_with left join admin wa on wa.id = w.admin_id ";
+
+    private static final String COUNTERPART_SELECT = "select a.id, " +
+            "case when a.affiliation_from = $1 then w.id else f.id end as counterpart_id, " +
+            "case when a.affiliation_from = $1 then w.name else f.name end as name, " +
+            "case when a.affiliation_from = $1 then w.health_system_name else f.health_system_name end " +
+            "as health_system_name, " +
+            "case when a.affiliation_from = $1 then w.domain else f.domain end as domain, " +
+            "case when a.affiliation_from = $1 then w.city else f.city end as city, " +
+            "case when a.affiliation_from = $1 then w.state else f.state end as state " +
+            "from affiliation a " +
+            "join organization f on f.id = a.affiliation_from " +
+            "join organization w on w.id = a.affiliation_with ";
+
+    private static final String COUNT_SELECT = "select count(*) from affiliation a " +
+            "join organization f on f.id = a.affiliation_from " +
+            "join organization w on w.id = a.affiliation_with ";
+
+    private static final String ACTIVE_PAIR = AFFILIATION_SELECT +
+            "where least(a.affiliation_from, a.affiliation_with) = $1 " +
+            "and greatest(a.affiliation_from, a.affiliation_with) = $2 and a.active = true";
+
+    private static final String SELECT_VERSION = "select version from affiliation_version where organization_id = $1";
+
+    /**
+     * Filter condition with $1 bound to the organization id and $2 to the like pattern.
+     */
+    private static final String FILTER = "where a.active = true and (" +
+            "(a.affiliation_from = $1 and a.status in (%s) and (w.name like $2 or w.health_system_name like $2)) " +
+            "or (a.affiliation_with = $1 and a.status in (%s) and (f.name like $2 or f.health_system_name like $2)))";
+
+    private final ConnectionFactory connectionFactory;
+
+    /**
+     * Constructor.
+     *
+     * @param connectionFactory
+     */
+    public ReactiveAffiliateRepository(ConnectionFactory connectionFactory) {
+        this.connectionFactory = connectionFactory;
+    }
+
+    /**
+     * Find the active affiliation between two organizations, in either direction.
+     *
+     * @param organization1
+     * @param organization2
+     * @return empty if the organizations have no active affiliation.
+     */
+    public Mono<Affiliation> findActiveByPair(long organization1, long organization2) {
+        return this.query(ACTIVE_PAIR, Arrays.asList(Math.min(organization1, organization2),
+                Math.max(organization1, organization2)), ReactiveAffiliateRepository::affiliation).next();
+    }
+
+    /**
+     * Current affiliation version of the organization, see AffiliationVersions.
+     *
+     * @param organizationId
+     * @return 0 if the affiliations of the organization never changed.
+     */
+    public Mono<Long> findVersion(Long organizationId) {
+        return this.query(SELECT_VERSION, Collections.singletonList(organizationId),
+                (row, metadata) -> ((Number) row.get(0)).longValue()).next().defaultIfEmpty(0L);
+    }
+
+    /**
+     * Fetch a window of the affiliations matching the filter.
+     *
+     * @param filter
+     * @param firstResult
+     * @param maxResults
+     * @return
+     */
+    public Flux<Affiliation> findSlice(Filter filter, long firstResult, int maxResults) {
+        return this.query(AFFILIATION_SELECT + filter.sql + " limit " + maxResults + " offset " + firstResult,
+                filter.parameters, ReactiveAffiliateRepository::affiliation);
+    }
+
+    /**
+     * Fetch a window of the counterpart organizations in the affiliations matching the filter.
+     *
+     * @param filter
+     * @param firstResult
+     * @param maxResults
+     * @return
+     */
+    public Flux<OrganizationSummary> findCounterpartSlice(Filter filter, long firstResult, int maxResults) {
+        return this.query(COUNTERPART_SELECT + filter.sql + " limit " + maxResults + " offset " + firstResult,
+                filter.parameters, (row, metadata) -> new OrganizationSummary(row.get("id", Long.class),
+                        row.get("counterpart_id", Long.class), row.get("name", String.class),
+                        row.get("health_system_name", String.class), row.get("domain", String.class),
+                        row.get("city", String.class), row.get("state", String.class)));
+    }
+
+    /**
+     * Count the affiliations matching the filter, keyset and ordering are left out.
+     *
+     * @param filter
+     * @return
+     */
+    public Mono<Long> count(Filter filter) {
+        return this.query(COUNT_SELECT + filter.countSql, filter.countParameters,
+                (row, metadata) -> ((Number) row.get(0)).longValue()).next();
+    }
+
+    private <T> Flux<T> query(String sql, List<Object> parameters, BiFunction<Row, RowMetadata, T> mapper) {
+        return Flux.usingWhen(connectionFactory.create(), connection -> {
+            Statement statement = connection.createStatement(sql);
+            for (int i = 0; i < parameters.size(); i++) {
+                statement.bind(i, parameters.get(i));
+            }
+            return Flux.from(statement.execute()).flatMap(result -> result.map(mapper));
+        }, Connection::close);
+    }
+
+    private static Affiliation affiliation(Row row, RowMetadata metadata) {
+        Affiliation affiliation = new Affiliation();
+        affiliation.setId(row.get("id", Long.class));
+        affiliation.setCreatedAt(date(row.get("created_at", LocalDateTime.class)));
+        affiliation.setUpdatedAt(date(row.get("updated_at", LocalDateTime.class)));
+        affiliation.setStatus(AffiliationStatus.valueOf(row.get("status", String.class)));
+        affiliation.setActionedBy(row.get("actioned_by", Long.class));
+        affiliation.setRequestedBy(row.get("requested_by", Long.class));
+        affiliation.setActive(row.get("active", Boolean.class));
+        affiliation.setAffiliationFrom(organization(row, "f", "fa"));
+        affiliation.setAffiliationWith(organization(row, "w", "wa"));
+        return affiliation;
+    }
+
+    private static Organization organization(Row row, String alias, String adminAlias) {
+        Organization organization = new Organization(row.get(alias + "_id", Long.class));
+        organization.setCreatedAt(date(row.get(alias + "_created_at", LocalDateTime.class)));
+        organization.setUpdatedAt(date(row.get(alias + "_updated_at", LocalDateTime.class)));
+        organization.setActive(row.get(alias + "_active", Boolean.class));
+        organization.setDomain(row.get(alias + "_domain", String.class));
+        organization.setHealthSystemName(row.get(alias + "_health_system_name", String.class));
+        organization.setName(row.get(alias + "_name", String.class));
+        String addressLine1 = row.get(alias + "_address_line1", String.class);
+        String addressLine2 = row.get(alias + "_address_line2", String.class);
+        String city = row.get(alias + "_city", String.class);
+        String state = row.get(alias + "_state", String.class);
+        if (addressLine1 != null || addressLine2 != null || city != null || state != null) {
+            Address address = new Address();
+            address.setAddressLine1(addressLine1);
+            address.setAddressLine2(addressLine2);
+            address.setCity(city);
+            address.setState(state);
+            organization.setAddress(address);
+        }
+        Long adminId = row.get(adminAlias + "_id", Long.class);
+        if (adminId != null) {
+            Admin admin = new Admin();
+            admin.setId(adminId);
+            admin.setCreatedAt(date(row.get(adminAlias + "_created_at", LocalDateTime.class)));
+            admin.setUpdatedAt(date(row.get(adminAlias + "_updated_at", LocalDateTime.class)));
+            admin.setName(row.get(adminAlias + "_name", String.class));
+            admin.setEmail(row.get(adminAlias + "_email", String.class));
+            admin.setPhone(row.get(adminAlias + "_phone", String.class));
+            admin.setTitle(row.get(adminAlias + "_title", String.class));
+            organization.setAdmin(admin);
+        }
+        return organization;
+    }
+
+    private static Date date(LocalDateTime dateTime) {
+        return dateTime == null ? null : Timestamp.valueOf(dateTime);
+    }
+
+    /**
+     * Filter statement for an organization, built once per request and shared by the page and count queries.
+     */
+    public static final class Filter {
+
+        private final String sql;
+
+        private final List<Object> parameters;
+
+        private final String countSql;
+
+        private final List<Object> countParameters;
+
+        private Filter(String sql, List<Object> parameters, String countSql, List<Object> countParameters) {
+            this.sql = sql;
+            this.parameters = parameters;
+            this.countSql = countSql;
+            this.countParameters = countParameters;
+        }
+
+        /**
+         * Build the filter. Statuses and the sort column come from enums and are written into the statement,
+         * the organization id, the query and the cursor are bound. The cursor value is bound as a string like in
+         * {@link com.vocera.cloud.affiliateservice.service.impl.AffiliateSpecifications#keysetAfter} and cast to
+         * varchar, the type of the counterpart column, so it compares the same on every driver.
+         *
+         * @param organizationId
+         * @param query
+         * @param fromStatuses   statuses matched when the organization is affiliationFrom.
+         * @param withStatuses   statuses matched when the organization is affiliationWith.
+         * @param sort
+         * @param order
+         * @param keyset         whether the rows are ordered for keyset pagination, where a missing sort value is
+         *                       ordered as the empty string the cursor holds for it.
+         * @param cursor         row to seek past, null for the first page.
+         * @return
+         */
+        public static Filter of(Long organizationId, String query, List<AffiliationStatus> fromStatuses,
+                                List<AffiliationStatus> withStatuses, OrderableColumn sort, Sort.Direction order,
+                                boolean keyset, KeysetCursor cursor) {
+            String where = String.format(FILTER, statusList(fromStatuses), statusList(withStatuses));
+            List<Object> parameters = new ArrayList<>(Arrays.asList(organizationId, "%" + query + "%"));
+            String column = sort.getName().replaceAll("([A-Z])", "_$1").toLowerCase();
+            String counterpart = "case when a.affiliation_from = $1 then w." + column + " else f." + column + " end";
+            if (keyset) {
+                counterpart = "coalesce(" + counterpart + ", '')";
+            }
+            String direction = order.equals(Sort.Direction.ASC) ? "asc" : "desc";
+            String sql = where;
+            if (cursor != null) {
+                String comparison = order.equals(Sort.Direction.ASC) ? ">" : "<";
+                String value = "cast($3 as varchar)";
+                sql += " and (" + counterpart + " " + comparison + " " + value + " or (" + counterpart + " = " +
+                        value + " and a.id " + comparison + " $4))";
+                parameters.add(cursor.getValue());
+                parameters.add(cursor.getId());
+            }
+            sql += " order by " + counterpart + " " + direction + ", a.id " + direction;
+            return new Filter(sql, parameters, where, parameters.subList(0, 2));
+        }
+
+        private static String statusList(List<AffiliationStatus> statuses) {
+            return statuses.stream().map(status -> "'" + status.name() + "'").collect(Collectors.joining(", "));
+        }
+    }
+}
@@ -0,0 +1,110 @@
+/*
+ * Copyright (c) Vocera Communications, Inc. All Rights Reserved.
+ * This software is the confidential and proprietary information of
+ * Vocera Communications, Inc.
+ */
+
+package com.vocera.cloud.affiliateservice.reactive.service;
+
+import com.vocera.cloud.affiliateservice.constant.TotalType;
+import com.vocera.cloud.affiliateservice.model.FilterPageResponse;
+import com.vocera.cloud.affiliateservice.model.OrganizationSummary;
+import com.vocera.cloud.coremodel.constants.FilterType;
+import com.vocera.cloud.coremodel.constants.OrderableColumn;
+import com.vocera.cloud.coremodel.model.Affiliation;
+import org.springframework.data.domain.Sort;
+import reactor.core.publisher.Mono;
+
+/**
+ * Non blocking counterpart of the read operations of
+ * @{@link com.vocera.cloud.affiliateservice.service.AffiliateService}, with the same results.
+ *
+ * @author Rohit Phatak
+ */
+public interface ReactiveAffiliateService {
+
+    /**
+     * Check if two organizations are affiliated.
+     *
+     * @param org1
+     * @param org2
+     * @return affiliation, with status NONE if the organizations are not affiliated.
+     */
+    Mono<Affiliation> checkAffiliation(Long org1, Long org2);
+
+    /**
+     * Filter through affiliations, page mode.
+     *
+     * @param page
+     * @param offset
+     * @param totalType
+     * @param query
+     * @param sort
+     * @param order
+     * @param filterType
+     * @param organizationId
+     * @return
+     */
+    Mono<FilterPageResponse<Affiliation>> filterAffiliation(
+            int page, int offset, TotalType totalType, String query, OrderableColumn sort, Sort.Direction order,
+            FilterType filterType, Long organizationId);
+
+    /**
+     * Filter through affiliations, keyset mode.
+     *
+     * @param offset
+     * @param after
+     * @param totalType
+     * @param query
+     * @param sort
+     * @param order
+     * @param filterType
+     * @param organizationId
+     * @return
+     */
+    Mono<FilterPageResponse<Affiliation>> filterAffiliation(
+            int offset, String after, TotalType totalType, String query, OrderableColumn sort, Sort.Direction order,
+            FilterType filterType, Long organizationId);
+
+    /**
+     * Filter through organizations in affiliations, page mode.
+     *
+     * @param page
+     * @param offset
+     * @param totalType
+     * @param query
+     * @param sort
+     * @param order
+     * @param filterType
+     * @param organizationId
+     * @return
+     */
+    Mono<FilterPageResponse<OrganizationSummary>> filterAffiliationOrganization(
+            int page, int offset, TotalType totalType, String query, OrderableColumn sort, Sort.Direction order,
+            FilterType filterType, Long organizationId);
+
+    /**
+     * Filter through organizations in affiliations, keyset mode.
+     *
+     * @param offset
+     * @param after
+     * @param totalType
+     * @param query
+     * @param sort
+     * @param order
+     * @param filterType
+     * @param organizationId
+     * @return
+     */
+    Mono<FilterPageResponse<OrganizationSummary>> filterAffiliationOrganization(
+            int offset, String after, TotalType totalType, String query, OrderableColumn sort, Sort.Direction order,
+            FilterType filterType, Long organizationId);
+
+    /**
+     * Affiliation version of the organization, increased by every committed change to one of its affiliations.
+     *
+     * @param organizationId
+     * @return
+     */
+    Mono<Long> affiliationVersion(Long organizationId);
+}
@@ -0,0 +1,255 @@
+/*
+ * Copyright (c) Vocera Communications, Inc. All Rights Reserved.
+ * This software is the confidential and proprietary information of
+ * Vocera Communications, Inc.
+ */
+
+package com.vocera.cloud.affiliateservice.reactive.service.impl;
+
+import com.vocera.cloud.affiliateservice.constant.FilterStatuses;
+import com.vocera.cloud.affiliateservice.constant.TotalType;
+import com.vocera.cloud.affiliateservice.model.FilterPageResponse;
+import com.vocera.cloud.affiliateservice.model.OrganizationSummary;
+import com.vocera.cloud.affiliateservice.reactive.repository.ReactiveAffiliateRepository;
+import com.vocera.cloud.affiliateservice.reactive.repository.ReactiveAffiliateRepository.Filter;
+import com.vocera.cloud.affiliateservice.reactive.service.ReactiveAffiliateService;
+import com.vocera.cloud.affiliateservice.service.impl.FilterCountCache;
+import com.vocera.cloud.affiliateservice.service.impl.KeysetCursor;
+import com.vocera.cloud.coremodel.constants.AffiliationStatus;
+import com.vocera.cloud.coremodel.constants.FilterType;
+import com.vocera.cloud.coremodel.constants.OrderableColumn;
+import com.vocera.cloud.coremodel.model.Affiliation;
+import com.vocera.cloud.coremodel.model.Organization;
+import org.springframework.data.domain.Sort;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Mono;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * Implementation for @{@link ReactiveAffiliateService}.
+ * Paging follows AffiliateServiceImpl: one extra row is fetched to find out if there is a next page and the
+ * total of the last page in page mode is known without counting. Estimated totals are served from
+ * @{@link FilterCountCache} like on the servlet path, but as the transitions commit on the servlet application the
+ * counts here are only dropped once they expire. The name index prefilter is not applied, it narrows down the rows
+ * a search reads without changing which ones match.
+ *
+ * @author Rohit Phatak
+ */
+@Service
+public class ReactiveAffiliateServiceImpl implements ReactiveAffiliateService {
+
+    private final ReactiveAffiliateRepository affiliateRepository;
+
+    private final FilterCountCache filterCountCache;
+
+    /**
+     * Constructor.
+     *
+     * @param affiliateRepository
+     * @param filterCountCache
+     */
+    public ReactiveAffiliateServiceImpl(ReactiveAffiliateRepository affiliateRepository,
+                                        FilterCountCache filterCountCache) {
+        this.affiliateRepository = affiliateRepository;
+        this.filterCountCache = filterCountCache;
+    }
+
+    /**
+     * Check if two organizations are affiliated.
+     *
+     * @param affiliationFrom
+     * @param affiliationWith
+     * @return
+     */
+    @Override
+    public Mono<Affiliation> checkAffiliation(Long affiliationFrom, Long affiliationWith) {
+        return affiliateRepository.findActiveByPair(affiliationFrom, affiliationWith)
+                .switchIfEmpty(Mono.fromSupplier(() -> {
+                    Affiliation affiliation = new Affiliation();
+                    affiliation.setStatus(AffiliationStatus.NONE);
+                    affiliation.setAffiliationFrom(new Organization(affiliationFrom));
+                    affiliation.setAffiliationWith(new Organization(affiliationWith));
+                    return affiliation;
+                }));
+    }
+
+    /**
+     * @param page
+     * @param offset
+     * @param totalType
+     * @param query
+     * @param sort
+     * @param order
+     * @param filterType
+     * @param organizationId
+     * @return
+     */
+    @Override
+    public Mono<FilterPageResponse<Affiliation>> filterAffiliation(
+            int page, int offset, TotalType totalType, String query, OrderableColumn sort, Sort.Direction order,
+            FilterType filterType, Long organizationId) {
+        Filter filter = this.filter(query, sort, order, filterType, organizationId, false, null);
+        return affiliateRepository.findSlice(filter, (long) page * offset, offset + 1).collectList()
+                .flatMap(affiliations -> this.page(affiliations, page, offset, totalType, filter, query, filterType,
+                        organizationId));
+    }
+
+    /**
+     * The page and the total are queried concurrently, on separate connections.
+     *
+     * @param offset
+     * @param after
+     * @param totalType
+     * @param query
+     * @param sort
+     * @param order
+     * @param filterType
+     * @param organizationId
+     * @return
+     */
+    @Override
+    public Mono<FilterPageResponse<Affiliation>> filterAffiliation(
+            int offset, String after, TotalType totalType, String query, OrderableColumn sort, Sort.Direction order,
+            FilterType filterType, Long organizationId) {
+        Filter filter = this.filter(query, sort, order, filterType, organizationId, true,
+                KeysetCursor.decode(after));
+        return this.keysetPage(affiliateRepository.findSlice(filter, 0, offset + 1).collectList(), offset,
+                totalType, this.totalCount(totalType, filter, query, filterType, organizationId),
+                affiliation -> KeysetCursor.of(affiliation, sort, organizationId));
+    }
+
+    /**
+     * @param page
+     * @param offset
+     * @param totalType
+     * @param query
+     * @param sort
+     * @param order
+     * @param filterType
+     * @param organizationId
+     * @return
+     */
+    @Override
+    public Mono<FilterPageResponse<OrganizationSummary>> filterAffiliationOrganization(
+            int page, int offset, TotalType totalType, String query, OrderableColumn sort, Sort.Direction order,
+            FilterType filterType, Long organizationId) {
+        Filter filter = this.filter(query, sort, order, filterType, organizationId, false, null);
+        return affiliateRepository.findCounterpartSlice(filter, (long) page * offset, offset + 1).collectList()
+                .flatMap(organizations -> this.page(organizations, page, offset, totalType, filter, query,
+                        filterType, organizationId));
+    }
+
+    /**
+     * The page and the total are queried concurrently, on separate connections.
+     *
+     * @param offset
+     * @param after
+     * @param totalType
+     * @param query
+     * @param sort
+     * @param order
+     * @param filterType
+     * @param organizationId
+     * @return
+     */
+    @Override
+    public Mono<FilterPageResponse<OrganizationSummary>> filterAffiliationOrganization(
+            int offset, String after, TotalType totalType, String query, OrderableColumn sort, Sort.Direction order,
+            FilterType filterType, Long organizationId) {
+        Filter filter = this.filter(query, sort, order, filterType, organizationId, true,
+                KeysetCursor.decode(after));
+        return this.keysetPage(affiliateRepository.findCounterpartSlice(filter, 0, offset + 1).collectList(),
+                offset, totalType, this.totalCount(totalType, filter, query, filterType, organizationId),
+                organization -> KeysetCursor.of(organization, sort));
+    }
+
+    /**
+     * @param organizationId
+     * @return
+     */
+    @Override
+    public Mono<Long> affiliationVersion(Long organizationId) {
+        return affiliateRepository.findVersion(organizationId);
+    }
+
+    private Filter filter(String query, OrderableColumn sort, Sort.Direction order, FilterType filterType,
+                          Long organizationId, boolean keyset, KeysetCursor cursor) {
+        return Filter.of(organizationId, query, FilterStatuses.from(filterType), FilterStatuses.with(filterType),
+                sort, order, keyset, cursor);
+    }
+
+    /**
+     * Page mode response. On the last page the total is known without counting.
+     *
+     * @param rows
+     * @param page
+     * @param offset
+     * @param totalType
+     * @param filter
+     * @param query
+     * @param filterType
+     * @param organizationId
+     * @param <T>
+     * @return
+     */
+    private <T> Mono<FilterPageResponse<T>> page(List<T> rows, int page, int offset, TotalType totalType,
+                                                 Filter filter, String query, FilterType filterType,
+                                                 Long organizationId) {
+        boolean hasNext = rows.size() > offset;
+        List<T> data = hasNext ? new ArrayList<>(rows.subList(0, offset)) : rows;
+        Mono<Long> totalCount = totalType != TotalType.NONE && !hasNext && (page == 0 || data.size() > 0) ?
+                Mono.just((long) page * offset + data.size()) :
+                this.totalCount(totalType, filter, query, filterType, organizationId);
+        return totalCount.map(total -> new FilterPageResponse<>(data, page, offset, total, totalType, hasNext,
+                null));
+    }
+
+    /**
+     * Keyset mode response, the next cursor points at the last row of the page.
+     *
+     * @param slice
+     * @param offset
+     * @param totalType
+     * @param totalCount
+     * @param cursorOf
+     * @param <T>
+     * @return
+     */
+    private <T> Mono<FilterPageResponse<T>> keysetPage(Mono<List<T>> slice, int offset, TotalType totalType,
+                                                       Mono<Long> totalCount, Function<T, KeysetCursor> cursorOf) {
+        return Mono.zip(slice, totalCount, (rows, total) -> {
+            boolean hasNext = rows.size() > offset;
+            List<T> data = hasNext ? new ArrayList<>(rows.subList(0, offset)) : rows;
+            String nextCursor = hasNext ? cursorOf.apply(data.get(offset - 1)).encode() : null;
+            return new FilterPageResponse<>(data, 0, offset, total, totalType, hasNext, nextCursor);
+        });
+    }
+
+    /**
+     * Total number of affiliations matching the filter, -1 if no total was requested.
+     *
+     * @param totalType
+     * @param filter
+     * @param query
+     * @param filterType
+     * @param organizationId
+     * @return
+     */
+    private Mono<Long> totalCount(TotalType totalType, Filter filter, String query, FilterType filterType,
+                                  Long organizationId) {
+        switch (totalType) {
+            case NONE:
+                return Mono.just(-1L);
+            case ESTIMATE:
+                return Mono.justOrEmpty(filterCountCache.getIfPresent(organizationId, filterType, query))
+                        .switchIfEmpty(Mono.defer(() -> affiliateRepository.count(filter)
+                                .doOnNext(count -> filterCountCache.put(organizationId, filterType, query, count))));
+            case EXACT:
+            default:
+                return affiliateRepository.count(filter);
+        }
+    }
+}
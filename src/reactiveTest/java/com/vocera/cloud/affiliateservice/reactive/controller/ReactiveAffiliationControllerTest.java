@@ -0,0 +1,559 @@
+/*
+ * Copyright (c) Vocera Communications, Inc. All Rights Reserved.
+ * This software is the confidential and proprietary information of
+ * Vocera Communications, Inc.
+ */
+
+package com.vocera.cloud.affiliateservice.reactive.controller;
+
+import com.google.gson.Gson;
+import com.google.gson.reflect.TypeToken;
+import com.vocera.cloud.affiliateservice.constant.ErrorCodes;
+import com.vocera.cloud.affiliateservice.constant.FilterStatuses;
+import com.vocera.cloud.affiliateservice.constant.TotalType;
+import com.vocera.cloud.affiliateservice.controller.FilterETag;
+import com.vocera.cloud.affiliateservice.model.FilterPageResponse;
+import com.vocera.cloud.affiliateservice.model.OrganizationSummary;
+import com.vocera.cloud.affiliateservice.service.impl.KeysetCursor;
+import com.vocera.cloud.coremodel.constants.AffiliationStatus;
+import com.vocera.cloud.coremodel.constants.FilterType;
+import com.vocera.cloud.coremodel.constants.HttpHeader;
+import com.vocera.cloud.coremodel.constants.OrderableColumn;
+import com.vocera.cloud.coremodel.model.Affiliation;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.ApplicationContext;
+import org.springframework.data.domain.Sort;
+import org.springframework.http.HttpStatus;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+import org.springframework.test.web.reactive.server.WebTestClient;
+
+import java.lang.reflect.Type;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+/**
+ * Test cases for the reactive affiliation controller, against the test data of the servlet controller tests.
+ * The filter cases of the servlet tests are repeated here, with the status lists of @{@link FilterStatuses} and the
+ * ordering of AffiliateSpecifications checked over every filterType, sort column and order.
+ *
+ * @author Rohit Phatak
+ */
+@SpringBootTest
+@ExtendWith(SpringExtension.class)
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+class ReactiveAffiliationControllerTest {
+
+    private static final String URL = "jdbc:h2:mem:affiliate;DB_CLOSE_DELAY=-1";
+
+    @Autowired
+    private ApplicationContext context;
+
+    private WebTestClient webTestClient;
+
+    private Gson gson = new Gson();
+
+    /**
+     * Load the test data into the in-memory database shared with the R2DBC connection factory and initialize
+     * webTestClient.
+     *
+     * @throws Exception
+     */
+    @BeforeAll
+    private void setup() throws Exception {
+        this.execute("runscript from 'classpath:schema.sql'", "runscript from 'classpath:data.sql'");
+        this.webTestClient = WebTestClient.bindToApplicationContext(context).build();
+    }
+
+    /**
+     * Test case for checking an affiliation, from both sides.
+     */
+    @Test
+    public void checkAffiliation() {
+        System.out.println("Test case for checking an affiliation on the reactive path");
+
+        for (long[] pair : new long[][]{{1L, 2L}, {2L, 1L}}) {
+            webTestClient.get().uri("/affiliate/check/{organizationId}", pair[1])
+                    .header(HttpHeader.ORGANIZATION_ID, String.valueOf(pair[0]))
+                    .exchange()
+                    .expectStatus().isOk()
+                    .expectBody()
+                    .jsonPath("$.id").isEqualTo(1)
+                    .jsonPath("$.status").isEqualTo("AFFILIATED")
+                    .jsonPath("$.affiliationFrom.id").isEqualTo(1)
+                    .jsonPath("$.affiliationFrom.name").isEqualTo("Applied Materials")
+                    .jsonPath("$.affiliationFrom.admin.name").isEqualTo("Lawson Waller")
+                    .jsonPath("$.affiliationWith.id").isEqualTo(2);
+        }
+    }
+
+    /**
+     * Test case for checking organizations which are not affiliated.
+     */
+    @Test
+    public void checkNoAffiliation() {
+        System.out.println("Test case for checking organizations without an affiliation on the reactive path");
+
+        webTestClient.get().uri("/affiliate/check/{organizationId}", 40L)
+                .header(HttpHeader.ORGANIZATION_ID, "1")
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody()
+                .jsonPath("$.status").isEqualTo("NONE")
+                .jsonPath("$.affiliationFrom.id").isEqualTo(1)
+                .jsonPath("$.affiliationWith.id").isEqualTo(40);
+    }
+
+    /**
+     * Test case for paging through affiliations, the last page carries the total without counting.
+     */
+    @Test
+    public void filterAffiliationPages() {
+        System.out.println("Test case for paging through affiliations on the reactive path");
+
+        FilterPageResponse<Affiliation> first = this.filter("/affiliate/filter?page=0&offset=4", 10L);
+        FilterPageResponse<Affiliation> second = this.filter("/affiliate/filter?page=1&offset=4", 10L);
+        FilterPageResponse<Affiliation> all = this.filter("/affiliate/filter?page=0&offset=100", 10L);
+
+        assertEquals(4, first.getData().size());
+        assertEquals(true, first.isHasNext());
+        assertEquals(2, second.getData().size());
+        assertEquals(false, second.isHasNext());
+        assertEquals(6, first.getTotalCount());
+        assertEquals(6, second.getTotalCount());
+        List<Long> paged = new ArrayList<>(ids(first));
+        paged.addAll(ids(second));
+        assertEquals(ids(all), paged);
+    }
+
+    /**
+     * Walk through all affiliations of an organization with keyset pagination, in the order of page mode.
+     */
+    @Test
+    public void keysetAffiliationFilter() {
+        System.out.println("Test case for keyset pagination on the reactive path");
+
+        List<Long> affiliationIds = new ArrayList<>();
+        String after = "";
+        long totalCount;
+        do {
+            FilterPageResponse<Affiliation> page = this.filter("/affiliate/filter?offset=2&after=" + after, 10L);
+            affiliationIds.addAll(ids(page));
+            totalCount = page.getTotalCount();
+            after = page.getNextCursor();
+        } while (after != null);
+
+        assertEquals(totalCount, new HashSet<>(affiliationIds).size());
+        assertEquals(ids(this.filter("/affiliate/filter?page=0&offset=100", 10L)), affiliationIds);
+    }
+
+    /**
+     * Test case for filtering affiliations which are affiliates.
+     */
+    @Test
+    public void filterAffiliates() {
+        System.out.println("Test case for filtering affiliates on the reactive path");
+
+        webTestClient.get().uri("/affiliate/filter?page=0&offset=10&filterType=AFFILIATES")
+                .header(HttpHeader.ORGANIZATION_ID, "10")
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody()
+                .jsonPath("$.data.length()").isEqualTo(1)
+                .jsonPath("$.data[0].id").isEqualTo(6)
+                .jsonPath("$.data[0].status").isEqualTo("AFFILIATED")
+                .jsonPath("$.totalCount").isEqualTo(1);
+    }
+
+    /**
+     * Search through affiliations on the healthSystemName of the counterpart organization.
+     */
+    @Test
+    public void searchAffiliationByHealthSystemName() {
+        System.out.println("Test case for searching affiliations by health system name on the reactive path");
+
+        webTestClient.get().uri("/affiliate/filter?page=0&offset=10&query=Timber Corp")
+                .header(HttpHeader.ORGANIZATION_ID, "1")
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody()
+                .jsonPath("$.data[0].id").isEqualTo(1)
+                .jsonPath("$.totalCount").isEqualTo(1);
+    }
+
+    /**
+     * Filter through the counterpart organizations of the active requests.
+     */
+    @Test
+    public void filterActiveRequestOrganizations() {
+        System.out.println("Test case for filtering organizations of active requests on the reactive path");
+
+        webTestClient.get().uri("/affiliate/organization/filter?page=0&offset=10&filterType=ACTIVE_REQUESTS")
+                .header(HttpHeader.ORGANIZATION_ID, "10")
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody()
+                .jsonPath("$.data[*].id").value(ids -> assertEquals(new HashSet<>(Arrays.asList(11, 13)),
+                new HashSet<>((List<?>) ids)))
+                .jsonPath("$.data[0].affiliationId").doesNotExist()
+                .jsonPath("$.totalCount").isEqualTo(2);
+    }
+
+    /**
+     * Filter without a total count, only hasNext is reported.
+     */
+    @Test
+    public void filterWithoutTotal() {
+        System.out.println("Test case for filtering without total count on the reactive path");
+
+        webTestClient.get().uri("/affiliate/filter?page=0&offset=1&includeTotal=false")
+                .header(HttpHeader.ORGANIZATION_ID, "10")
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody()
+                .jsonPath("$.totalType").isEqualTo("NONE")
+                .jsonPath("$.totalCount").isEqualTo(-1)
+                .jsonPath("$.hasNext").isEqualTo(true);
+    }
+
+    /**
+     * Test case for the affiliations and counterpart organizations of every filterType, against the status lists
+     * of the filterType and the search on the name and health system name of the counterpart.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void filterMatchesStatusLists() throws Exception {
+        System.out.println("Test case for the filter types matching their status lists on the reactive path");
+
+        for (long organizationId : new long[]{1L, 2L, 3L, 10L, 12L}) {
+            for (String query : new String[]{"", "Group", "Corp"}) {
+                for (FilterType filterType : FilterType.values()) {
+                    List<long[]> expected = this.expectedAffiliations(organizationId, query, filterType);
+                    String parameters = "page=0&offset=100&query=" + query + "&filterType=" + filterType;
+                    FilterPageResponse<Affiliation> affiliations = this.filter("/affiliate/filter?" + parameters,
+                            organizationId);
+                    FilterPageResponse<OrganizationSummary> organizations = this.filterOrganizations(
+                            "/affiliate/organization/filter?" + parameters, organizationId);
+
+                    String message = filterType + " of " + organizationId + " for '" + query + "'";
+                    assertEquals(expected.stream().map(row -> row[0]).collect(Collectors.toSet()),
+                            new HashSet<>(ids(affiliations)), message);
+                    assertEquals(expected.stream().map(row -> row[1]).collect(Collectors.toSet()),
+                            organizations.getData().stream().map(OrganizationSummary::getId)
+                                    .collect(Collectors.toSet()), message);
+                    assertEquals(expected.size(), affiliations.getTotalCount(), message);
+                    assertEquals(expected.size(), organizations.getTotalCount(), message);
+                }
+            }
+        }
+    }
+
+    /**
+     * Test case for walking through all affiliations with keyset pagination when counterparts have no name or no
+     * health system name, in the order of page mode for every sort column and order.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void keysetWalkWithMissingSortValues() throws Exception {
+        System.out.println("Test case for keyset pagination over missing sort values on the reactive path");
+
+        List<String> statements = new ArrayList<>();
+        statements.add(this.insertOrganization(1001L, "Organization 1001", "Health System 1001"));
+        for (long id = 1002; id <= 1009; id++) {
+            statements.add(this.insertOrganization(id, id % 2 == 0 ? null : "Organization " + id % 3,
+                    id % 2 == 0 ? "Health System " + id % 3 : null));
+            statements.add("insert into affiliation (id, created_at, updated_at, status, actioned_by, " +
+                    "affiliation_from, affiliation_with, requested_by, active) values (" + (id + 100) +
+                    ", current_timestamp, current_timestamp, 'ACTIVE_REQUEST', null, " +
+                    (id <= 1005 ? "1001, " + id : id + ", 1001") + ", 1001, true)");
+        }
+        this.execute(statements.toArray(new String[0]));
+
+        for (OrderableColumn sort : OrderableColumn.values()) {
+            for (Sort.Direction order : Sort.Direction.values()) {
+                String parameters = "&sort=" + sort + "&order=" + order;
+                List<Affiliation> all = this.filter("/affiliate/filter?page=0&offset=100" + parameters, 1001L)
+                        .getData();
+                Comparator<Affiliation> byValue = Comparator.comparing(
+                        affiliation -> KeysetCursor.of(affiliation, sort, 1001L).getValue());
+                Comparator<Affiliation> ordering = byValue.thenComparing(Affiliation::getId);
+                List<Affiliation> sorted = new ArrayList<>(all);
+                sorted.sort(order == Sort.Direction.ASC ? ordering : ordering.reversed());
+
+                List<Long> walked = new ArrayList<>();
+                List<Long> walkedOrganizations = new ArrayList<>();
+                String after = "";
+                do {
+                    FilterPageResponse<Affiliation> page = this.filter("/affiliate/filter?offset=3&after=" + after +
+                            parameters, 1001L);
+                    walked.addAll(ids(page));
+                    after = page.getNextCursor();
+                } while (after != null && walked.size() <= all.size());
+                after = "";
+                do {
+                    FilterPageResponse<OrganizationSummary> page = this.filterOrganizations(
+                            "/affiliate/organization/filter?offset=3&after=" + after + parameters, 1001L);
+                    page.getData().forEach(organization -> walkedOrganizations.add(organization.getId()));
+                    after = page.getNextCursor();
+                } while (after != null && walkedOrganizations.size() <= all.size());
+
+                assertEquals(8, all.size(), sort + " " + order);
+                assertEquals(sorted.stream().map(Affiliation::getId).collect(Collectors.toList()),
+                        all.stream().map(Affiliation::getId).collect(Collectors.toList()), sort + " " + order);
+                assertEquals(all.stream().map(Affiliation::getId).collect(Collectors.toList()), walked,
+                        sort + " " + order);
+                assertEquals(walked.stream().map(id -> id - 100).collect(Collectors.toList()), walkedOrganizations,
+                        sort + " " + order);
+            }
+        }
+    }
+
+    /**
+     * Test case for conditional filter requests, answered with 304 until the affiliation version of the
+     * organization changes, with the ETag of the servlet path.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void filterNotModified() throws Exception {
+        System.out.println("Test case for conditional filter requests on the reactive path");
+
+        String filterETag = this.eTag("/affiliate/filter?page=0&offset=10", 43L, null);
+        String organizationETag = this.eTag("/affiliate/organization/filter?page=0&offset=10", 43L, null);
+
+        assertEquals(FilterETag.of(0, 43L, "filter", 0, 10, null, TotalType.EXACT, "", OrderableColumn.NAME,
+                Sort.Direction.ASC, FilterType.ALL), filterETag);
+        assertEquals(filterETag, this.eTag("/affiliate/filter?page=0&offset=10", 43L, filterETag));
+        assertEquals(organizationETag, this.eTag("/affiliate/organization/filter?page=0&offset=10", 43L,
+                organizationETag));
+        assertNotEquals(filterETag, organizationETag);
+        assertNotEquals(filterETag, this.eTag("/affiliate/filter?page=0&offset=5", 43L, filterETag));
+
+        this.execute("insert into affiliation_version (organization_id, version) values (43, 1)");
+
+        String changedETag = this.eTag("/affiliate/filter?page=0&offset=10", 43L, filterETag);
+        assertNotEquals(filterETag, changedETag);
+        assertEquals(changedETag, this.eTag("/affiliate/filter?page=0&offset=10", 43L, changedETag));
+    }
+
+    /**
+     * Test case for the estimated total, which matches the exact total and is served from the count cache until it
+     * expires.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void filterWithEstimatedTotal() throws Exception {
+        System.out.println("Test case for filtering with estimated total count on the reactive path");
+
+        FilterPageResponse<Affiliation> exact = this.filter("/affiliate/filter?page=0&offset=1&includeTotal=exact",
+                10L);
+        FilterPageResponse<Affiliation> estimate = this.filter(
+                "/affiliate/filter?page=0&offset=1&includeTotal=estimate", 10L);
+        assertEquals(TotalType.ESTIMATE, estimate.getTotalType());
+        assertEquals(exact.getTotalCount(), estimate.getTotalCount());
+
+        this.execute("insert into affiliation (id, created_at, updated_at, status, actioned_by, affiliation_from, " +
+                "affiliation_with, requested_by, active) values (1200, current_timestamp, current_timestamp, " +
+                "'ACTIVE_REQUEST', null, 10, 40, 10, true)");
+        try {
+            assertEquals(exact.getTotalCount() + 1, this.filter(
+                    "/affiliate/filter?page=0&offset=1&includeTotal=exact", 10L).getTotalCount());
+            assertEquals(exact.getTotalCount(), this.filter(
+                    "/affiliate/filter?page=0&offset=1&includeTotal=estimate", 10L).getTotalCount());
+        } finally {
+            this.execute("delete from affiliation where id = 1200");
+        }
+    }
+
+    /**
+     * Invalid cursor for keyset pagination.
+     */
+    @Test
+    public void keysetInvalidCursor() {
+        System.out.println("Test case for invalid keyset pagination cursor on the reactive path");
+
+        webTestClient.get().uri("/affiliate/filter?offset=2&after=not-a-cursor")
+                .header(HttpHeader.ORGANIZATION_ID, "10")
+                .exchange()
+                .expectStatus().isBadRequest()
+                .expectBody()
+                .jsonPath("$.code").isEqualTo(ErrorCodes.INVALID_CURSOR.getCode());
+    }
+
+    /**
+     * Page and offset outside of their range.
+     */
+    @Test
+    public void invalidPageParameters() {
+        System.out.println("Test case for rejecting invalid page and offset parameters on the reactive path");
+
+        String[] uris = {
+                "/affiliate/filter?page=0&offset=0",
+                "/affiliate/filter?page=-1&offset=2",
+                "/affiliate/organization/filter?page=1073741824&offset=2",
+                "/affiliate/organization/filter?offset=0&after=not-a-cursor"
+        };
+        for (String uri : uris) {
+            webTestClient.get().uri(uri)
+                    .header(HttpHeader.ORGANIZATION_ID, "10")
+                    .exchange()
+                    .expectStatus().isBadRequest()
+                    .expectBody()
+                    .jsonPath("$.code").isEqualTo(ErrorCodes.INVALID_REQUEST.getCode());
+        }
+    }
+
+    /**
+     * Request without the organization header.
+     */
+    @Test
+    public void missingOrganizationHeader() {
+        System.out.println("Test case for a filter request without organization on the reactive path");
+
+        webTestClient.get().uri("/affiliate/filter?page=0&offset=1")
+                .exchange()
+                .expectStatus().isBadRequest();
+    }
+
+    private FilterPageResponse<Affiliation> filter(String uri, Long organizationId) {
+        return this.filter(uri, organizationId, new TypeToken<FilterPageResponse<Affiliation>>() {
+        }.getType());
+    }
+
+    private FilterPageResponse<OrganizationSummary> filterOrganizations(String uri, Long organizationId) {
+        return this.filter(uri, organizationId, new TypeToken<FilterPageResponse<OrganizationSummary>>() {
+        }.getType());
+    }
+
+    private <T> FilterPageResponse<T> filter(String uri, Long organizationId, Type apiResultType) {
+        String body = webTestClient.get().uri(uri)
+                .header(HttpHeader.ORGANIZATION_ID, String.valueOf(organizationId))
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody(String.class)
+                .returnResult()
+                .getResponseBody();
+        FilterPageResponse<T> page = gson.fromJson(body, apiResultType);
+        if (!page.isHasNext()) {
+            assertNull(page.getNextCursor());
+        }
+        return page;
+    }
+
+    /**
+     * Send a filter request, conditional when ifNoneMatch is set.
+     *
+     * @param uri
+     * @param organizationId
+     * @param ifNoneMatch
+     * @return ETag of the response, which is 304 if it matches ifNoneMatch.
+     */
+    private String eTag(String uri, Long organizationId, String ifNoneMatch) {
+        WebTestClient.RequestHeadersSpec<?> request = webTestClient.get().uri(uri)
+                .header(HttpHeader.ORGANIZATION_ID, String.valueOf(organizationId));
+        if (ifNoneMatch != null) {
+            request.header("If-None-Match", ifNoneMatch);
+        }
+        return request.exchange()
+                .expectStatus().value(status -> {
+                    if (status == HttpStatus.NOT_MODIFIED.value()) {
+                        assertNotNull(ifNoneMatch);
+                    } else {
+                        assertEquals(HttpStatus.OK.value(), status.intValue());
+                    }
+                })
+                .returnResult(String.class)
+                .getResponseHeaders().getETag();
+    }
+
+    /**
+     * Active affiliations of the organization matching the filter, by the status lists of the filterType.
+     *
+     * @param organizationId
+     * @param query
+     * @param filterType
+     * @return affiliation id and counterpart organization id of each affiliation.
+     * @throws Exception
+     */
+    private List<long[]> expectedAffiliations(long organizationId, String query, FilterType filterType)
+            throws Exception {
+        List<long[]> affiliations = new ArrayList<>();
+        try (Connection connection = DriverManager.getConnection(URL, "sa", "");
+             Statement statement = connection.createStatement();
+             ResultSet resultSet = statement.executeQuery("select a.id, a.status, a.affiliation_from, " +
+                     "a.affiliation_with, f.name, f.health_system_name, w.name, w.health_system_name " +
+                     "from affiliation a join organization f on f.id = a.affiliation_from " +
+                     "join organization w on w.id = a.affiliation_with where a.active = true and (" +
+                     "a.affiliation_from = " + organizationId + " or a.affiliation_with = " + organizationId + ")")) {
+            while (resultSet.next()) {
+                boolean fromSide = resultSet.getLong(3) == organizationId;
+                String name = resultSet.getString(fromSide ? 7 : 5);
+                String healthSystemName = resultSet.getString(fromSide ? 8 : 6);
+                if (this.includes(filterType, resultSet.getString(2), fromSide) &&
+                        (name != null && name.contains(query) ||
+                                healthSystemName != null && healthSystemName.contains(query))) {
+                    affiliations.add(new long[]{resultSet.getLong(1), resultSet.getLong(fromSide ? 4 : 3)});
+                }
+            }
+        }
+        return affiliations;
+    }
+
+    /**
+     * Whether the filterType includes the status, a status the statuses of the filterType do not know is never
+     * included.
+     *
+     * @param filterType
+     * @param status
+     * @param fromSide
+     * @return
+     */
+    private boolean includes(FilterType filterType, String status, boolean fromSide) {
+        for (AffiliationStatus affiliationStatus : AffiliationStatus.values()) {
+            if (affiliationStatus.name().equals(status)) {
+                return FilterStatuses.includes(filterType, affiliationStatus, fromSide);
+            }
+        }
+        return false;
+    }
+
+    private String insertOrganization(long id, String name, String healthSystemName) {
+        return "insert into organization (id, created_at, updated_at, active, domain, health_system_name, name) " +
+                "values (" + id + ", current_timestamp, current_timestamp, true, 'www.organization" + id + ".com', " +
+                (healthSystemName == null ? "null" : "'" + healthSystemName + "'") + ", " +
+                (name == null ? "null" : "'" + name + "'") + ")";
+    }
+
+    private void execute(String... statements) throws Exception {
+        try (Connection connection = DriverManager.getConnection(URL, "sa", "");
+             Statement statement = connection.createStatement()) {
+            for (String sql : statements) {
+                statement.execute(sql);
+            }
+        }
+    }
+
+    private static List<Long> ids(FilterPageResponse<Affiliation> page) {
+        return page.getData().stream().map(Affiliation::getId).collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,46 @@
+create sequence if not exists public.admin_sequence;
+create sequence if not exists public.organization_sequence;
+create sequence if not exists public.affiliation_sequence;
+
+create table if not exists public.admin (
+    id bigint not null primary key,
+    created_at timestamp,
+    updated_at timestamp,
+    email varchar(255),
+    name varchar(255),
+    phone varchar(255),
+    title varchar(255)
+);
+
+
+create table if not exists public.organization (
+    id bigint not null primary key,
+    created_at timestamp,
+    updated_at timestamp,
+    active boolean not null,
+    domain varchar(255),
+    health_system_name varchar(255),
+    name varchar(255),
+    admin_id bigint references public.admin (id),
+    address_line1 varchar(255),
+    address_line2 varchar(255),
+    city varchar(255),
+    state varchar(255)
+);
+
+create table if not exists public.affiliation (
+    id bigint not null primary key,
+    created_at timestamp,
+    updated_at timestamp,
+    status varchar(255),
+    actioned_by bigint,
+    requested_by bigint,
+    active boolean not null,
+    affiliation_from bigint constraint fk_affiliated_from references public.organization (id),
+    affiliation_with bigint constraint fk_affiliated_with references public.organization (id)
+);
+
+create table if not exists public.affiliation_version (
+    organization_id bigint not null primary key,
+    version bigint not null
+);
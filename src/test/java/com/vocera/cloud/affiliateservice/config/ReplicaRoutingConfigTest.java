@@ -0,0 +1,173 @@
+/*
+ * Copyright (c) Vocera Communications, Inc. All Rights Reserved.
+ * This software is the confidential and proprietary information of
+ * Vocera Communications, Inc.
+ */
+
+package com.vocera.cloud.affiliateservice.config;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.vocera.cloud.coremodel.constants.HttpHeader;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.context.WebApplicationContext;
+
+import javax.sql.DataSource;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * Test cases for routing to a read replica, with two in-memory H2 databases as primary and replica.
+ * The replica is a copy of the primary taken before the tests, so it lags behind every change they make.
+ *
+ * @author Rohit Phatak
+ */
+@SpringBootTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:primary;DB_CLOSE_DELAY=-1",
+        "affiliate.datasource.replicas[0].url=" + ReplicaRoutingConfigTest.REPLICA_URL,
+        "affiliate.datasource.replicas[0].username=sa",
+        "affiliate.datasource.read-your-writes-millis=1000"})
+@ExtendWith(SpringExtension.class)
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+class ReplicaRoutingConfigTest {
+
+    static final String REPLICA_URL = "jdbc:h2:mem:replica;DB_CLOSE_DELAY=-1";
+
+    @Autowired
+    private WebApplicationContext wac;
+
+    @Autowired
+    private DataSource dataSource;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    private MockMvc mockMvc;
+
+    private Gson gson = new Gson();
+
+    /**
+     * Copy the primary to the replica and initialize mockMvc.
+     *
+     * @throws Exception
+     */
+    @BeforeAll
+    private void setup() throws Exception {
+        Path script = Files.createTempFile("affiliate-primary", ".sql");
+        try {
+            new JdbcTemplate(dataSource).execute("script to '" + script + "'");
+            new JdbcTemplate(new DriverManagerDataSource(REPLICA_URL, "sa", ""))
+                    .execute("runscript from '" + script + "'");
+        } finally {
+            Files.delete(script);
+        }
+        this.mockMvc = MockMvcBuilders.webAppContextSetup(this.wac).build();
+    }
+
+    /**
+     * Test case for the database a transaction runs against.
+     */
+    @Test
+    public void routesReadOnlyTransactions() {
+        System.out.println("Test case for routing read-only transactions to the replica");
+
+        assertEquals("REPLICA", this.database(true));
+        assertEquals("PRIMARY", this.database(false));
+        assertEquals("PRIMARY", jdbcTemplate.queryForObject("select database()", String.class));
+
+        ReadReplicaRoutingDataSource.pinToPrimary();
+        try {
+            assertEquals("PRIMARY", this.database(true));
+        } finally {
+            ReadReplicaRoutingDataSource.unpin();
+        }
+        assertEquals("REPLICA", this.database(true));
+    }
+
+    /**
+     * Test case for an organization reading its own change from the primary until the window has passed, the
+     * replica never receives it.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void readsOwnWritesFromPrimary() throws Exception {
+        System.out.println("Test case for reading own writes from the primary");
+
+        assertFalse(this.filterIncludes(40L, 41L));
+        JsonObject request = new JsonObject();
+        JsonObject affiliationFrom = new JsonObject();
+        affiliationFrom.addProperty("id", 40L);
+        JsonObject affiliationWith = new JsonObject();
+        affiliationWith.addProperty("id", 41L);
+        request.add("affiliationFrom", affiliationFrom);
+        request.add("affiliationWith", affiliationWith);
+        request.addProperty("status", "ACTIVE_REQUEST");
+        mockMvc.perform(post("/affiliate")
+                .header(HttpHeader.ORGANIZATION_ID, 40L)
+                .content(request.toString())
+                .contentType("application/json"))
+                .andExpect(status().isOk());
+
+        assertTrue(this.filterIncludes(40L, 41L));
+        assertTrue(this.filterIncludes(41L, 40L));
+
+        Thread.sleep(1500);
+        assertFalse(this.filterIncludes(40L, 41L));
+    }
+
+    private String database(boolean readOnly) {
+        TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+        transactionTemplate.setReadOnly(readOnly);
+        return transactionTemplate.execute(status -> jdbcTemplate.queryForObject("select database()",
+                String.class));
+    }
+
+    /**
+     * Whether the affiliations of the organization include one with the other organization.
+     *
+     * @param organizationId
+     * @param otherOrganizationId
+     * @return
+     * @throws Exception
+     */
+    private boolean filterIncludes(Long organizationId, Long otherOrganizationId) throws Exception {
+        MvcResult response = mockMvc.perform(get("/affiliate/filter?page=0&offset=100")
+                .header(HttpHeader.ORGANIZATION_ID, organizationId))
+                .andExpect(status().isOk())
+                .andReturn();
+        JsonObject page = gson.fromJson(response.getResponse().getContentAsString(), JsonObject.class);
+        for (JsonElement element : page.getAsJsonArray("data")) {
+            JsonObject affiliation = element.getAsJsonObject();
+            if (affiliation.getAsJsonObject("affiliationFrom").get("id").getAsLong() == otherOrganizationId
+                    || affiliation.getAsJsonObject("affiliationWith").get("id").getAsLong() == otherOrganizationId) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
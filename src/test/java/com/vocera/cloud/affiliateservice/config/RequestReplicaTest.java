@@ -0,0 +1,146 @@
+/*
+ * Copyright (c) Vocera Communications, Inc. All Rights Reserved.
+ * This software is the confidential and proprietary information of
+ * Vocera Communications, Inc.
+ */
+
+package com.vocera.cloud.affiliateservice.config;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.vocera.cloud.coremodel.constants.HttpHeader;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.context.WebApplicationContext;
+
+import javax.sql.DataSource;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * Test cases for a request reading from a single replica, with two in-memory H2 replicas which lag by different
+ * amounts: one is copied from the primary before an affiliation is added, the other after it.
+ *
+ * @author Rohit Phatak
+ */
+@SpringBootTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:request-primary;DB_CLOSE_DELAY=-1",
+        "affiliate.datasource.replicas[0].url=" + RequestReplicaTest.LAGGING_URL,
+        "affiliate.datasource.replicas[0].username=sa",
+        "affiliate.datasource.replicas[1].url=" + RequestReplicaTest.CURRENT_URL,
+        "affiliate.datasource.replicas[1].username=sa"})
+@ExtendWith(SpringExtension.class)
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+class RequestReplicaTest {
+
+    static final String LAGGING_URL = "jdbc:h2:mem:request-lagging;DB_CLOSE_DELAY=-1";
+
+    static final String CURRENT_URL = "jdbc:h2:mem:request-current;DB_CLOSE_DELAY=-1";
+
+    @Autowired
+    private WebApplicationContext wac;
+
+    @Autowired
+    private DataSource dataSource;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    private MockMvc mockMvc;
+
+    private Gson gson = new Gson();
+
+    /**
+     * Copy the primary to the lagging replica, add an affiliation of 44 with 45 on the primary, bumping the
+     * affiliation version of 44, and copy the primary to the current replica.
+     *
+     * @throws Exception
+     */
+    @BeforeAll
+    private void setup() throws Exception {
+        this.copyPrimary(LAGGING_URL);
+        jdbcTemplate.update("insert into affiliation (id, created_at, updated_at, status, actioned_by, " +
+                "affiliation_from, affiliation_with, requested_by, active) values (900, current_timestamp, " +
+                "current_timestamp, 'ACTIVE_REQUEST', null, 44, 45, 44, true)");
+        jdbcTemplate.update("insert into affiliation_version (organization_id, version) values (44, 1)");
+        this.copyPrimary(CURRENT_URL);
+        this.mockMvc = MockMvcBuilders.webAppContextSetup(this.wac).build();
+    }
+
+    /**
+     * Test case for the ETag version of filter responses matching their data, whichever replica the request
+     * starts on.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void versionAndPageFromSameReplica() throws Exception {
+        System.out.println("Test case for the ETag version and the filter page read from the same replica");
+
+        Set<Boolean> seen = new HashSet<>();
+        for (int i = 0; i < 4; i++) {
+            MvcResult response = mockMvc.perform(get("/affiliate/filter?page=0&offset=100")
+                    .header(HttpHeader.ORGANIZATION_ID, 44L))
+                    .andExpect(status().isOk())
+                    .andReturn();
+            String eTag = response.getResponse().getHeader("ETag");
+            boolean newVersion = !eTag.startsWith("W/\"0-");
+            assertEquals(newVersion, this.includes(response, 45L), "ETag " + eTag);
+            seen.add(newVersion);
+            if (i == 1) {
+                // Shift the round robin so the requests start on both replicas in either order.
+                this.readOnly();
+            }
+        }
+        assertEquals(2, seen.size());
+    }
+
+    private void copyPrimary(String url) throws Exception {
+        Path script = Files.createTempFile("affiliate-primary", ".sql");
+        try {
+            new JdbcTemplate(dataSource).execute("script to '" + script + "'");
+            new JdbcTemplate(new DriverManagerDataSource(url, "sa", "")).execute("runscript from '" + script + "'");
+        } finally {
+            Files.delete(script);
+        }
+    }
+
+    private void readOnly() {
+        TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+        transactionTemplate.setReadOnly(true);
+        transactionTemplate.execute(status -> jdbcTemplate.queryForObject("select database()", String.class));
+    }
+
+    private boolean includes(MvcResult response, Long otherOrganizationId) throws Exception {
+        JsonObject page = gson.fromJson(response.getResponse().getContentAsString(), JsonObject.class);
+        for (JsonElement element : page.getAsJsonArray("data")) {
+            JsonObject affiliation = element.getAsJsonObject();
+            if (affiliation.getAsJsonObject("affiliationWith").get("id").getAsLong() == otherOrganizationId) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
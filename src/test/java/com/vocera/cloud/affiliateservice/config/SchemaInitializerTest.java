@@ -0,0 +1,90 @@
+/*
+ * Copyright (c) Vocera Communications, Inc. All Rights Reserved.
+ * This software is the confidential and proprietary information of
+ * Vocera Communications, Inc.
+ */
+
+package com.vocera.cloud.affiliateservice.config;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.DataAccessException;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.jdbc.support.MetaDataAccessException;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Test cases for {@link SchemaInitializer} on Postgres, with the statements failing on purpose.
+ *
+ * @author Rohit Phatak
+ */
+class SchemaInitializerTest {
+
+    /**
+     * Test case for startup failing when the active pair index cannot be created.
+     *
+     * @throws MetaDataAccessException
+     */
+    @Test
+    public void activePairIndexFailureFailsStartup() throws MetaDataAccessException {
+        System.out.println("Test case for startup failing when the active pair index cannot be created.");
+
+        FailingJdbcTemplate jdbcTemplate = new FailingJdbcTemplate("ux_affiliation_active_pair");
+        SchemaInitializer schemaInitializer = new SchemaInitializer(jdbcTemplate, this.postgres());
+
+        assertThrows(IllegalStateException.class, schemaInitializer::afterPropertiesSet);
+    }
+
+    /**
+     * Test case for startup continuing when a trigram index cannot be created.
+     *
+     * @throws MetaDataAccessException
+     */
+    @Test
+    public void trigramIndexFailureOnlyWarns() throws MetaDataAccessException {
+        System.out.println("Test case for startup continuing when a trigram index cannot be created.");
+
+        FailingJdbcTemplate jdbcTemplate = new FailingJdbcTemplate("pg_trgm");
+        new SchemaInitializer(jdbcTemplate, this.postgres()).afterPropertiesSet();
+
+        assertTrue(jdbcTemplate.executed.stream().anyMatch(sql -> sql.contains("ux_affiliation_active_pair")));
+        assertTrue(jdbcTemplate.executed.stream().anyMatch(sql -> sql.contains("affiliation_history")));
+    }
+
+    private DatabasePlatform postgres() throws MetaDataAccessException {
+        return new DatabasePlatform(new DriverManagerDataSource("jdbc:h2:mem:schema", "sa", "")) {
+            @Override
+            public boolean isPostgres() {
+                return true;
+            }
+        };
+    }
+
+    /**
+     * Records the statements and fails the ones containing the given text.
+     */
+    private static class FailingJdbcTemplate extends JdbcTemplate {
+
+        private final String failing;
+
+        private final List<String> executed = new ArrayList<>();
+
+        FailingJdbcTemplate(String failing) {
+            this.failing = failing;
+        }
+
+        @Override
+        public void execute(String sql) throws DataAccessException {
+            if (sql.contains(failing)) {
+                throw new DataIntegrityViolationException("Failed on purpose: " + sql);
+            }
+            executed.add(sql);
+        }
+    }
+}
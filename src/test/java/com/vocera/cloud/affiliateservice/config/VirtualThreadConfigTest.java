@@ -0,0 +1,62 @@
+/*
+ * Copyright (c) Vocera Communications, Inc. All Rights Reserved.
+ * This software is the confidential and proprietary information of
+ * Vocera Communications, Inc.
+ */
+
+package com.vocera.cloud.affiliateservice.config;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * Unit test cases for the executor of {@link VirtualThreadConfig}
+ *
+ * @author Rohit Phatak
+ */
+class VirtualThreadConfigTest {
+
+    private static final boolean VIRTUAL_THREADS = Runtime.version().feature() >= 21;
+
+    /**
+     * Test case for running tasks on named virtual threads.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void runsOnVirtualThreads() throws Exception {
+        System.out.println("Test case for running tasks on named virtual threads.");
+        assumeTrue(VIRTUAL_THREADS, "Virtual threads require Java 21");
+
+        ExecutorService executor = VirtualThreadConfig.newVirtualThreadExecutor("test-vt-");
+        try {
+            Thread first = executor.submit(Thread::currentThread).get(10, TimeUnit.SECONDS);
+            Thread second = executor.submit(Thread::currentThread).get(10, TimeUnit.SECONDS);
+
+            assertEquals(true, Thread.class.getMethod("isVirtual").invoke(first));
+            assertEquals("test-vt-0", first.getName());
+            assertEquals("test-vt-1", second.getName());
+        } finally {
+            executor.shutdown();
+        }
+        assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+    }
+
+    /**
+     * Test case for failing fast before Java 21.
+     */
+    @Test
+    public void failsBeforeJava21() {
+        System.out.println("Test case for failing fast before Java 21.");
+        assumeTrue(!VIRTUAL_THREADS, "Running on Java 21 or later");
+
+        assertThrows(IllegalStateException.class, () -> VirtualThreadConfig.newVirtualThreadExecutor("test-vt-"));
+    }
+}
@@ -0,0 +1,209 @@
+/*
+ * Copyright (c) Vocera Communications, Inc. All Rights Reserved.
+ * This software is the confidential and proprietary information of
+ * Vocera Communications, Inc.
+ */
+
+package com.vocera.cloud.affiliateservice.constant;
+
+import com.vocera.cloud.coremodel.constants.AffiliationStatus;
+import com.vocera.cloud.coremodel.constants.FilterType;
+import com.vocera.cloud.coremodel.model.Affiliation;
+import com.vocera.cloud.coremodel.model.Organization;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Property test cases for the transition table of {@link AffiliationTransition} and the inclusion table of
+ * {@link FilterStatuses}, checked against the rules of the service before the table, with organization ids compared
+ * by equals.
+ *
+ * @author Rohit Phatak
+ */
+class AffiliationTransitionTest {
+
+    private static final long SEED = 20190601L;
+
+    private static final int WALKS = 2000;
+
+    private static final int STEPS = 50;
+
+    /**
+     * Organization ids above the Long cache, so a comparison by reference would fail.
+     */
+    private static final long FIRST_ORGANIZATION = 1000L;
+
+    private static final long SECOND_ORGANIZATION = 2000L;
+
+    private static final AffiliationStatus[] STATUSES = AffiliationStatus.values();
+
+    private static final AffiliationTransition[] TRANSITIONS = AffiliationTransition.values();
+
+    private static final List<AffiliationStatus> ELEGIBLE_FOR_REMOVE = Arrays.asList(AffiliationStatus.CANCELLED,
+            AffiliationStatus.REJECTED, AffiliationStatus.REVOKED_FROM, AffiliationStatus.REVOKED_TO,
+            AffiliationStatus.UNREGISTERED_TO, AffiliationStatus.UNREGISTERED_FROM);
+
+    private static final List<AffiliationStatus> AFFILIATION_REQUEST_CHECK_FROM = Arrays.asList(
+            AffiliationStatus.CANCELLED, AffiliationStatus.REVOKED_FROM);
+
+    private static final List<AffiliationStatus> AFFILIATION_REQUEST_CHECK_WITH = Arrays.asList(
+            AffiliationStatus.REJECTED, AffiliationStatus.REVOKED_TO);
+
+    /**
+     * Test case for every transition, side and status, unknown status included, matching the previous rules.
+     */
+    @Test
+    public void tableMatchesPreviousRules() {
+        System.out.println("Test case for every transition, side and status matching the previous rules.");
+
+        List<AffiliationStatus> statuses = new ArrayList<>(Arrays.asList(STATUSES));
+        statuses.add(null);
+        for (AffiliationTransition transition : TRANSITIONS) {
+            for (boolean fromSide : new boolean[]{true, false}) {
+                for (AffiliationStatus status : statuses) {
+                    Affiliation affiliation = affiliation(FIRST_ORGANIZATION, SECOND_ORGANIZATION, status);
+                    Long organizationId = Long.valueOf(fromSide ? FIRST_ORGANIZATION : SECOND_ORGANIZATION);
+                    assertEquals(previousTarget(transition, affiliation, organizationId),
+                            transition.target(status, fromSide),
+                            transition + " by " + (fromSide ? "from" : "with") + " on " + status);
+                    if (status != null) {
+                        assertEquals(transition.getExpectedStatus(fromSide).contains(status),
+                                transition.allows(status, fromSide));
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Test case for random sequences of transitions and requests made by either organization of a pair, starting
+     * without an affiliation, leading to the same statuses and directions as the previous rules. A request on a
+     * pair without an affiliation, or replacing a removed one, is made from the requesting organization, so both
+     * organizations take turns being affiliationFrom.
+     */
+    @Test
+    public void randomWalksMatchPreviousRules() {
+        System.out.println("Test case for random sequences of transitions and requests leading to the same " +
+                "statuses as the previous rules.");
+
+        Random random = new Random(SEED);
+        for (int walk = 0; walk < WALKS; walk++) {
+            Affiliation affiliation = affiliation(FIRST_ORGANIZATION, SECOND_ORGANIZATION, AffiliationStatus.NONE);
+            for (int step = 0; step < STEPS; step++) {
+                AffiliationTransition transition = TRANSITIONS[random.nextInt(TRANSITIONS.length)];
+                Long organizationId = Long.valueOf(random.nextBoolean() ? FIRST_ORGANIZATION : SECOND_ORGANIZATION);
+                Long counterpartId = Long.valueOf(organizationId == FIRST_ORGANIZATION ? SECOND_ORGANIZATION :
+                        FIRST_ORGANIZATION);
+                AffiliationStatus status = affiliation.getStatus();
+                boolean fromSide = organizationId.equals(affiliation.getAffiliationFrom().getId());
+                AffiliationStatus target = status == AffiliationStatus.NONE ? null :
+                        transition.target(status, fromSide);
+                assertEquals(previousTarget(transition, affiliation, organizationId), target,
+                        "walk " + walk + " step " + step + ": " + transition + " by " + organizationId + " on " +
+                                status + " from " + affiliation.getAffiliationFrom().getId());
+                if (transition == AffiliationTransition.REQUEST) {
+                    if (status == AffiliationStatus.NONE || target != null) {
+                        affiliation = affiliation(organizationId, counterpartId, AffiliationStatus.ACTIVE_REQUEST);
+                    }
+                } else if (target == AffiliationStatus.REMOVED) {
+                    affiliation = affiliation(FIRST_ORGANIZATION, SECOND_ORGANIZATION, AffiliationStatus.NONE);
+                } else if (target != null) {
+                    affiliation.setStatus(target);
+                }
+            }
+        }
+    }
+
+    /**
+     * Test case for the inclusion table of every filterType matching its status lists.
+     */
+    @Test
+    public void filterInclusionMatchesStatusLists() {
+        System.out.println("Test case for the inclusion table of every filterType matching its status lists.");
+
+        for (FilterType filterType : FilterType.values()) {
+            for (AffiliationStatus status : STATUSES) {
+                assertEquals(FilterStatuses.from(filterType).contains(status),
+                        FilterStatuses.includes(filterType, status, true));
+                assertEquals(FilterStatuses.with(filterType).contains(status),
+                        FilterStatuses.includes(filterType, status, false));
+            }
+        }
+    }
+
+    /**
+     * Test case for the status lists of the filterTypes being read-only.
+     */
+    @Test
+    public void filterStatusListsAreUnmodifiable() {
+        System.out.println("Test case for the status lists of the filterTypes being read-only.");
+
+        for (FilterType filterType : FilterType.values()) {
+            assertThrows(UnsupportedOperationException.class,
+                    () -> FilterStatuses.from(filterType).set(0, AffiliationStatus.NONE));
+            assertThrows(UnsupportedOperationException.class,
+                    () -> FilterStatuses.with(filterType).set(0, AffiliationStatus.NONE));
+        }
+    }
+
+    /**
+     * Target status of the rules of the service before the table, null when the organization may not make the
+     * transition. A request returns REMOVED when the affiliation it replaces is removed first.
+     */
+    private static AffiliationStatus previousTarget(AffiliationTransition transition, Affiliation affiliation,
+                                                    Long organizationId) {
+        AffiliationStatus status = affiliation.getStatus();
+        switch (transition) {
+            case REQUEST:
+                if ((AFFILIATION_REQUEST_CHECK_WITH.contains(status) &&
+                        organizationId.equals(affiliation.getAffiliationWith().getId())) ||
+                        (AFFILIATION_REQUEST_CHECK_FROM.contains(status) &&
+                                organizationId.equals(affiliation.getAffiliationFrom().getId()))) {
+                    return AffiliationStatus.REMOVED;
+                }
+                return null;
+            case APPROVE:
+                if (AffiliationStatus.ACTIVE_REQUEST.equals(status) &&
+                        affiliation.getAffiliationWith().getId().equals(organizationId)) {
+                    return AffiliationStatus.AFFILIATED;
+                }
+                return null;
+            case REJECT:
+                if (AffiliationStatus.ACTIVE_REQUEST.equals(status) &&
+                        affiliation.getAffiliationWith().getId().equals(organizationId)) {
+                    return AffiliationStatus.REJECTED;
+                }
+                return null;
+            case CANCEL:
+                if (AffiliationStatus.ACTIVE_REQUEST.equals(status) &&
+                        affiliation.getAffiliationFrom().getId().equals(organizationId)) {
+                    return AffiliationStatus.CANCELLED;
+                }
+                return null;
+            case REVOKE:
+                if (AffiliationStatus.AFFILIATED.equals(status)) {
+                    return affiliation.getAffiliationFrom().getId().equals(organizationId) ?
+                            AffiliationStatus.REVOKED_FROM : AffiliationStatus.REVOKED_TO;
+                }
+                return null;
+            case REMOVE:
+            default:
+                return ELEGIBLE_FOR_REMOVE.contains(status) ? AffiliationStatus.REMOVED : null;
+        }
+    }
+
+    private static Affiliation affiliation(long affiliationFrom, long affiliationWith, AffiliationStatus status) {
+        Affiliation affiliation = new Affiliation();
+        affiliation.setAffiliationFrom(new Organization(affiliationFrom));
+        affiliation.setAffiliationWith(new Organization(affiliationWith));
+        affiliation.setStatus(status);
+        return affiliation;
+    }
+}
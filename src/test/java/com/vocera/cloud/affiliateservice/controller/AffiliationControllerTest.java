@@ -7,9 +7,13 @@
 package com.vocera.cloud.affiliateservice.controller;
 
 import com.google.gson.Gson;
+import com.google.gson.JsonArray;
 import com.google.gson.JsonObject;
 import com.google.gson.reflect.TypeToken;
 import com.vocera.cloud.affiliateservice.constant.ErrorCodes;
+import com.vocera.cloud.affiliateservice.constant.TotalType;
+import com.vocera.cloud.affiliateservice.model.FilterPageResponse;
+import com.vocera.cloud.affiliateservice.service.impl.AffiliationOutbox;
 import com.vocera.cloud.coremodel.constants.AffiliationStatus;
 import com.vocera.cloud.coremodel.constants.HttpHeader;
 import com.vocera.cloud.coremodel.model.Affiliation;
@@ -22,9 +26,13 @@ import org.junit.jupiter.api.TestInstance;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.test.context.junit.jupiter.SpringExtension;
 import org.springframework.test.web.servlet.MockMvc;
 import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.request.MockHttpServletRequestBuilder;
 import org.springframework.test.web.servlet.setup.MockMvcBuilders;
 import org.springframework.web.context.WebApplicationContext;
 
@@ -32,13 +40,18 @@ import java.lang.reflect.Type;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.util.Arrays;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.Set;
 import java.util.stream.Collectors;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
 /**
@@ -54,6 +67,9 @@ class AffiliationControllerTest {
     @Autowired
     private WebApplicationContext wac;
 
+    @Autowired
+    private AffiliationOutbox affiliationOutbox;
+
     private MockMvc mockMvc;
 
     private Gson gson = new Gson();
@@ -135,6 +151,466 @@ class AffiliationControllerTest {
         assertEquals(ErrorCodes.INVALID_REQUEST.getCode(), errorResponse.getCode());
     }
 
+    /**
+     * Test case for requesting affiliations in bulk, each item gets its own outcome.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void batchAffiliationRequest() throws Exception {
+        System.out.println("Executing test case for raising affiliation requests in bulk");
+
+        Affiliation missingOrganization = new Affiliation();
+        missingOrganization.setAffiliationWith(new Organization(41L));
+        Affiliation[] affiliationRequests = {
+                this.affiliationRequest(40L, 41L),
+                this.affiliationRequest(40L, 999L),
+                missingOrganization,
+                this.affiliationRequest(41L, 40L),
+                this.affiliationRequest(40L, 1L),
+                this.affiliationRequest(40L, 42L)
+        };
+
+        MvcResult response = mockMvc.perform(post("/affiliate/batch")
+                .header(HttpHeader.ORGANIZATION_ID, 40L)
+                .content(gson.toJson(affiliationRequests))
+                .contentType("application/json"))
+                .andExpect(status().isOk())
+                .andReturn();
+
+        JsonArray results = gson.fromJson(response.getResponse().getContentAsString(), JsonArray.class);
+        assertEquals(affiliationRequests.length, results.size());
+        String[] expectedStatuses = {"CREATED", "INVALID", "INVALID", "EXISTING", "CREATED", "CREATED"};
+        for (int i = 0; i < expectedStatuses.length; i++) {
+            JsonObject result = results.get(i).getAsJsonObject();
+            assertEquals(i, result.get("index").getAsInt());
+            assertEquals(expectedStatuses[i], result.get("status").getAsString());
+        }
+        assertEquals(ErrorCodes.INVALID_AFFILIATION_WITH.getMessage(),
+                results.get(1).getAsJsonObject().getAsJsonArray("errors").get(0).getAsString());
+        assertEquals(ErrorCodes.INVALID_AFFILIATION_FROM.getMessage(),
+                results.get(2).getAsJsonObject().getAsJsonArray("errors").get(0).getAsString());
+        assertEquals(results.get(0).getAsJsonObject().getAsJsonObject("affiliation").get("id").getAsLong(),
+                results.get(3).getAsJsonObject().getAsJsonObject("affiliation").get("id").getAsLong());
+    }
+
+    /**
+     * Test case for a batch beyond the maximum size, rejected without processing any item.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void oversizedBatchRejected() throws Exception {
+        System.out.println("Executing test case for rejecting an oversized batch of affiliation requests");
+
+        Affiliation[] affiliationRequests = new Affiliation[1001];
+        for (int i = 0; i < affiliationRequests.length; i++) {
+            affiliationRequests[i] = this.affiliationRequest(43L, 1000L + i);
+        }
+
+        MvcResult response = mockMvc.perform(post("/affiliate/batch")
+                .header(HttpHeader.ORGANIZATION_ID, 43L)
+                .content(gson.toJson(affiliationRequests))
+                .contentType("application/json"))
+                .andExpect(status().isBadRequest())
+                .andReturn();
+
+        ErrorResponse errorResponse = gson.fromJson(response.getResponse().getContentAsString(), ErrorResponse.class);
+        assertEquals(ErrorCodes.INVALID_REQUEST.getCode(), errorResponse.getCode());
+    }
+
+    /**
+     * Test case for approving the affiliation requests of many organizations at once.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void bulkApproveAffiliations() throws Exception {
+        System.out.println("Executing test case for approving affiliation requests in bulk");
+
+        this.raiseAffiliationRequest(31L, 30L);
+        this.raiseAffiliationRequest(32L, 30L);
+
+        JsonObject bulkRequest = new JsonObject();
+        JsonArray organizationIds = new JsonArray();
+        organizationIds.add(31L);
+        organizationIds.add(33L);
+        organizationIds.add(32L);
+        bulkRequest.add("organizationIds", organizationIds);
+        JsonArray results = this.bulkTransition("/affiliate/approve", 30L, bulkRequest);
+
+        assertEquals(3, results.size());
+        assertEquals(31L, results.get(0).getAsJsonObject().get("organizationId").getAsLong());
+        assertEquals("UPDATED", results.get(0).getAsJsonObject().get("status").getAsString());
+        assertEquals("AFFILIATED", results.get(0).getAsJsonObject().getAsJsonObject("affiliation")
+                .get("status").getAsString());
+        assertEquals("INVALID", results.get(1).getAsJsonObject().get("status").getAsString());
+        assertEquals("UPDATED", results.get(2).getAsJsonObject().get("status").getAsString());
+    }
+
+    /**
+     * Test case for rejecting all the affiliation requests received by an organization.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void bulkRejectByFilterType() throws Exception {
+        System.out.println("Executing test case for rejecting all active affiliation requests");
+
+        this.raiseAffiliationRequest(35L, 34L);
+        this.raiseAffiliationRequest(36L, 34L);
+
+        JsonObject bulkRequest = new JsonObject();
+        bulkRequest.addProperty("filterType", "ACTIVE_REQUESTS");
+        JsonArray results = this.bulkTransition("/affiliate/reject", 34L, bulkRequest);
+
+        assertEquals(2, results.size());
+        for (int i = 0; i < results.size(); i++) {
+            assertEquals("REJECTED", results.get(i).getAsJsonObject().getAsJsonObject("affiliation")
+                    .get("status").getAsString());
+        }
+    }
+
+    /**
+     * A bulk status change needs either organization ids or a filter type.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void invalidBulkTransition() throws Exception {
+        System.out.println("Executing test case for bulk status change without organizations");
+
+        mockMvc.perform(post("/affiliate/revoke")
+                .header(HttpHeader.ORGANIZATION_ID, 1L)
+                .content("{}")
+                .contentType("application/json"))
+                .andExpect(status().is4xxClientError())
+                .andExpect(jsonPath("$.message").hasJsonPath());
+    }
+
+    /**
+     * Test case for checking an affiliation before and after it is approved.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void checkAffiliationAfterApproval() throws Exception {
+        System.out.println("Executing test case for checking an affiliation before and after approval");
+
+        this.raiseAffiliationRequest(37L, 38L);
+        assertEquals("ACTIVE_REQUEST", this.checkAffiliation(38L, 37L).get("status").getAsString());
+        assertEquals("ACTIVE_REQUEST", this.checkAffiliation(37L, 38L).get("status").getAsString());
+
+        this.actionAffiliation("/affiliate/approve/37", 38L, AffiliationStatus.AFFILIATED);
+        assertEquals("AFFILIATED", this.checkAffiliation(37L, 38L).get("status").getAsString());
+        assertEquals("NONE", this.checkAffiliation(37L, 39L).get("status").getAsString());
+
+        mockMvc.perform(get("/affiliate/check-cache/stats"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.hitCount").isNumber())
+                .andExpect(jsonPath("$.missCount").isNumber());
+    }
+
+    /**
+     * Test case for the counts of every filter type in one request.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void filterCounts() throws Exception {
+        System.out.println("Test case for the counts of every filter type");
+
+        MvcResult response = mockMvc.perform(get("/affiliate/counts")
+                .header(HttpHeader.ORGANIZATION_ID, 10L))
+                .andExpect(status().isOk())
+                .andReturn();
+
+        JsonObject counts = gson.fromJson(response.getResponse().getContentAsString(), JsonObject.class);
+        long all = counts.get("ALL").getAsLong();
+        assertTrue(all > 0);
+        assertTrue(counts.get("AFFILIATES").getAsLong() <= all);
+        assertTrue(counts.get("ACTIVE_REQUESTS").getAsLong() <= all);
+        assertTrue(counts.get("UNAFFILIATED").getAsLong() <= all);
+    }
+
+    /**
+     * Test case for conditional filter requests, answered with 304 until an affiliation of the organization changes.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void filterNotModified() throws Exception {
+        System.out.println("Test case for conditional filter requests");
+
+        String filterETag = this.eTag("/affiliate/filter?page=0&offset=10", 43L, null);
+        String organizationETag = this.eTag("/affiliate/organization/filter?page=0&offset=10", 43L, null);
+        String otherETag = this.eTag("/affiliate/filter?page=0&offset=10", 45L, null);
+
+        assertEquals(filterETag, this.eTag("/affiliate/filter?page=0&offset=10", 43L, filterETag));
+        assertEquals(organizationETag, this.eTag("/affiliate/organization/filter?page=0&offset=10", 43L,
+                organizationETag));
+        assertTrue(!filterETag.equals(organizationETag));
+        assertTrue(!filterETag.equals(this.eTag("/affiliate/filter?page=0&offset=5", 43L, filterETag)));
+
+        this.raiseAffiliationRequest(43L, 44L);
+
+        String changedETag = this.eTag("/affiliate/filter?page=0&offset=10", 43L, filterETag);
+        assertTrue(!filterETag.equals(changedETag));
+        assertEquals(changedETag, this.eTag("/affiliate/filter?page=0&offset=10", 43L, changedETag));
+        assertTrue(!organizationETag.equals(this.eTag("/affiliate/organization/filter?page=0&offset=10", 43L,
+                organizationETag)));
+        assertEquals(otherETag, this.eTag("/affiliate/filter?page=0&offset=10", 45L, otherETag));
+    }
+
+    /**
+     * Send a filter request, conditional when ifNoneMatch is set.
+     *
+     * @param url
+     * @param orgHeader
+     * @param ifNoneMatch
+     * @return ETag of the response, a 304 has to carry ifNoneMatch.
+     * @throws Exception
+     */
+    private String eTag(String url, Long orgHeader, String ifNoneMatch) throws Exception {
+        MockHttpServletRequestBuilder request = get(url).header(HttpHeader.ORGANIZATION_ID, orgHeader);
+        if (ifNoneMatch != null) {
+            request.header(HttpHeaders.IF_NONE_MATCH, ifNoneMatch);
+        }
+        MvcResult response = mockMvc.perform(request).andReturn();
+        String eTag = response.getResponse().getHeader(HttpHeaders.ETAG);
+        if (eTag.equals(ifNoneMatch)) {
+            assertEquals(HttpStatus.NOT_MODIFIED.value(), response.getResponse().getStatus());
+            assertEquals(0, response.getResponse().getContentLength());
+        } else {
+            assertEquals(HttpStatus.OK.value(), response.getResponse().getStatus());
+            assertTrue(response.getResponse().getHeader(HttpHeaders.CACHE_CONTROL).contains("no-cache"));
+        }
+        return eTag;
+    }
+
+    /**
+     * Test case for exporting the status transitions of a pair and of an organization, oldest first.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void exportHistory() throws Exception {
+        System.out.println("Test case for exporting the affiliation history as newline delimited json");
+
+        this.raiseAffiliationRequest(46L, 48L);
+        this.actionAffiliation("/affiliate/reject/46", 48L, AffiliationStatus.REJECTED);
+
+        String[] pair = this.history("/affiliate/history?organizationId=46", 48L);
+        assertEquals(2, pair.length);
+        JsonObject requested = gson.fromJson(pair[0], JsonObject.class);
+        assertEquals(46L, requested.get("affiliationFrom").getAsLong());
+        assertEquals(48L, requested.get("affiliationWith").getAsLong());
+        assertEquals("NONE", requested.get("previousStatus").getAsString());
+        assertEquals("ACTIVE_REQUEST", requested.get("status").getAsString());
+        assertEquals(46L, requested.get("actionedBy").getAsLong());
+        JsonObject rejected = gson.fromJson(pair[1], JsonObject.class);
+        assertEquals("ACTIVE_REQUEST", rejected.get("previousStatus").getAsString());
+        assertEquals("REJECTED", rejected.get("status").getAsString());
+        assertEquals(48L, rejected.get("actionedBy").getAsLong());
+        assertEquals(requested.get("affiliationId").getAsLong(), rejected.get("affiliationId").getAsLong());
+
+        String[] organization = this.history("/affiliate/history", 48L);
+        assertTrue(organization.length >= pair.length);
+        for (String line : organization) {
+            JsonObject entry = gson.fromJson(line, JsonObject.class);
+            assertTrue(entry.get("affiliationFrom").getAsLong() == 48L
+                    || entry.get("affiliationWith").getAsLong() == 48L);
+        }
+
+        assertEquals(0, this.history("/affiliate/history?organizationId=46&from=2100-01-01T00:00:00.000Z",
+                48L).length);
+    }
+
+    /**
+     * Export the history as newline delimited json.
+     *
+     * @param url
+     * @param orgHeader
+     * @return the exported lines.
+     * @throws Exception
+     */
+    private String[] history(String url, Long orgHeader) throws Exception {
+        MvcResult started = mockMvc.perform(get(url)
+                .header(HttpHeader.ORGANIZATION_ID, orgHeader))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        MvcResult response = mockMvc.perform(asyncDispatch(started))
+                .andExpect(status().isOk())
+                .andReturn();
+        assertEquals("application/x-ndjson", response.getResponse().getContentType());
+        String content = response.getResponse().getContentAsString();
+        return content.isEmpty() ? new String[0] : content.split("\n");
+    }
+
+    /**
+     * Test case for long-polling the change feed, a waiting poll completes with the next committed change and later
+     * polls continue after its lastSeq.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void pollEvents() throws Exception {
+        System.out.println("Test case for long-polling affiliation events");
+
+        MvcResult waiting = mockMvc.perform(get("/affiliate/events"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        this.raiseAffiliationRequest(46L, 47L);
+        JsonObject raised = this.events(waiting);
+        JsonArray raisedEvents = raised.getAsJsonArray("events");
+        assertEquals(1, raisedEvents.size());
+        JsonObject raisedEvent = raisedEvents.get(0).getAsJsonObject();
+        assertEquals(46L, raisedEvent.get("affiliationFrom").getAsLong());
+        assertEquals(47L, raisedEvent.get("affiliationWith").getAsLong());
+        assertEquals("NONE", raisedEvent.get("previousStatus").getAsString());
+        assertEquals("ACTIVE_REQUEST", raisedEvent.get("status").getAsString());
+        long raisedSeq = raisedEvent.get("seq").getAsLong();
+        assertEquals(raisedSeq, raised.get("lastSeq").getAsLong());
+
+        this.actionAffiliation("/affiliate/approve/46", 47L, AffiliationStatus.AFFILIATED);
+        JsonObject approved = this.events(mockMvc.perform(get("/affiliate/events?since=" + raisedSeq))
+                .andExpect(request().asyncStarted())
+                .andReturn());
+        JsonObject approvedEvent = approved.getAsJsonArray("events").get(0).getAsJsonObject();
+        assertTrue(approvedEvent.get("seq").getAsLong() > raisedSeq);
+        assertEquals("ACTIVE_REQUEST", approvedEvent.get("previousStatus").getAsString());
+        assertEquals("AFFILIATED", approvedEvent.get("status").getAsString());
+        assertEquals(47L, approvedEvent.get("actionedBy").getAsLong());
+
+        JsonObject limited = this.events(mockMvc.perform(get("/affiliate/events?limit=1&since=" + (raisedSeq - 1)))
+                .andExpect(request().asyncStarted())
+                .andReturn());
+        assertEquals(1, limited.getAsJsonArray("events").size());
+        assertEquals(raisedSeq, limited.get("lastSeq").getAsLong());
+    }
+
+    /**
+     * Test case for streaming the change feed as server-sent events.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void streamEvents() throws Exception {
+        System.out.println("Test case for streaming affiliation events");
+
+        MvcResult streaming = mockMvc.perform(get("/affiliate/events")
+                .accept(MediaType.TEXT_EVENT_STREAM))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        this.raiseAffiliationRequest(48L, 49L);
+
+        long deadline = System.currentTimeMillis() + 10000;
+        while (!streaming.getResponse().getContentAsString().endsWith("\n\n")
+                && System.currentTimeMillis() < deadline) {
+            Thread.sleep(20);
+        }
+        String stream = streaming.getResponse().getContentAsString();
+        assertTrue(stream.startsWith("id:"));
+        assertTrue(stream.contains("event:affiliation"));
+        assertTrue(stream.contains("\"affiliationFrom\":48"));
+        assertTrue(stream.contains("\"status\":\"ACTIVE_REQUEST\""));
+    }
+
+    /**
+     * Test case for requesting events which were pruned already.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void prunedEvents() throws Exception {
+        System.out.println("Test case for requesting pruned affiliation events");
+
+        this.raiseAffiliationRequest(50L, 46L);
+        affiliationOutbox.prune(new Date(System.currentTimeMillis() + 60000), 5000);
+
+        mockMvc.perform(get("/affiliate/events?since=0"))
+                .andExpect(status().isGone())
+                .andExpect(jsonPath("$.code").value(ErrorCodes.EVENTS_PRUNED.getCode()));
+    }
+
+    /**
+     * Wait for a long-poll to complete.
+     *
+     * @param started
+     * @return the events response.
+     * @throws Exception
+     */
+    private JsonObject events(MvcResult started) throws Exception {
+        MvcResult response = mockMvc.perform(asyncDispatch(started))
+                .andExpect(status().isOk())
+                .andReturn();
+        return gson.fromJson(response.getResponse().getContentAsString(), JsonObject.class);
+    }
+
+    /**
+     * Test case for the service, session and pool metrics in the Prometheus scrape.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void prometheusMetrics() throws Exception {
+        System.out.println("Test case for the metrics exposed to Prometheus");
+
+        this.filterExpectValues(2L, "/affiliate/filter?", "page=0", "&offset=1", "&sort=NAME",
+                "&filterType=ALL");
+        this.actionAffiliationError("/affiliate/approve/5", 1L, AffiliationStatus.NONE);
+
+        MvcResult response = mockMvc.perform(get("/actuator/prometheus"))
+                .andExpect(status().isOk())
+                .andReturn();
+        String[] lines = response.getResponse().getContentAsString().split("\n");
+        assertTrue(this.anyLine(lines, "affiliate_service_seconds_count{", "method=\"filterAffiliation\"",
+                "filterType=\"ALL\"", "sort=\"NAME\"", "exception=\"none\""));
+        assertTrue(this.anyLine(lines, "affiliate_service_seconds{", "method=\"filterAffiliation\"",
+                "quantile=\"0.95\""));
+        assertTrue(this.anyLine(lines, "affiliate_service_seconds_bucket{", "method=\"filterAffiliation\""));
+        assertTrue(this.anyLine(lines, "affiliate_service_seconds_count{", "method=\"approveAffiliation\"",
+                "exception=\"InvalidAffiliationException\""));
+        assertTrue(this.anyLine(lines, "hibernate_session_statements_count"));
+        assertTrue(this.anyLine(lines, "hibernate_session_statement_time_seconds{", "quantile=\"0.99\""));
+        assertTrue(this.anyLine(lines, "hikaricp_connections_active{"));
+    }
+
+    private boolean anyLine(String[] lines, String... parts) {
+        return Arrays.stream(lines).anyMatch(line -> Arrays.stream(parts).allMatch(line::contains));
+    }
+
+    /**
+     * Test case for exporting affiliations, rows are streamed in the order of the filter endpoint.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void exportAffiliations() throws Exception {
+        System.out.println("Test case for exporting affiliations as newline delimited json");
+
+        MvcResult started = mockMvc.perform(get("/affiliate/export?filterType=ALL")
+                .header(HttpHeader.ORGANIZATION_ID, 10L))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        MvcResult response = mockMvc.perform(asyncDispatch(started))
+                .andExpect(status().isOk())
+                .andReturn();
+        assertEquals("application/x-ndjson", response.getResponse().getContentType());
+        String[] lines = response.getResponse().getContentAsString().split("\n");
+
+        MvcResult filtered = this.filterExpectValues(10L, "/affiliate/filter?", "page=0", "&offset=1000",
+                "&filterType=ALL");
+        Type apiResultType = new TypeToken<PageResponse<Affiliation>>() {
+        }.getType();
+        PageResponse<Affiliation> page = gson.fromJson(filtered.getResponse().getContentAsString(), apiResultType);
+        assertTrue(page.getData().size() > 0);
+        assertEquals(page.getData().size(), lines.length);
+        for (int i = 0; i < lines.length; i++) {
+            assertEquals(page.getData().get(i).getId(), gson.fromJson(lines[i], Affiliation.class).getId());
+        }
+    }
+
     /**
      * Filter through organizations within affiliation.
      *
@@ -159,6 +635,151 @@ class AffiliationControllerTest {
         this.filterExpectValues(2L, "/affiliate/filter?", "page=0", "&offset=1", "&query=");
     }
 
+    /**
+     * Walk through all affiliations of an organization with keyset pagination.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void keysetAffiliationFilter() throws Exception {
+        System.out.println("Test case for keyset pagination on affiliations");
+
+        Type apiResultType = new TypeToken<FilterPageResponse<Affiliation>>() {
+        }.getType();
+        Set<Long> affiliationIds = new HashSet<>();
+        String after = "";
+        long totalCount;
+        do {
+            MvcResult response = mockMvc.perform(get("/affiliate/filter")
+                    .param("offset", "2")
+                    .param("after", after)
+                    .header(HttpHeader.ORGANIZATION_ID, 10L))
+                    .andExpect(status().isOk())
+                    .andReturn();
+            FilterPageResponse<Affiliation> responseObj = gson.fromJson(response.getResponse().getContentAsString(),
+                    apiResultType);
+            for (Affiliation affiliation : responseObj.getData()) {
+                assertTrue(affiliationIds.add(affiliation.getId()));
+            }
+            totalCount = responseObj.getTotalCount();
+            after = responseObj.getNextCursor();
+        } while (after != null);
+
+        assertEquals(totalCount, affiliationIds.size());
+    }
+
+    /**
+     * Search through affiliations on the healthSystemName of the counterpart organization.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void searchAffiliationByHealthSystemName() throws Exception {
+        System.out.println("Test case for searching affiliations by health system name");
+
+        mockMvc.perform(get("/affiliate/filter")
+                .param("page", "0")
+                .param("offset", "10")
+                .param("query", "Timber Corp")
+                .header(HttpHeader.ORGANIZATION_ID, 1L))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.data[0].id").value(1))
+                .andExpect(jsonPath("$.totalCount").value(1));
+    }
+
+    /**
+     * Filter without a total count, only hasNext is reported.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void filterWithoutTotal() throws Exception {
+        System.out.println("Test case for filtering through affiliations without total count");
+
+        mockMvc.perform(get("/affiliate/filter")
+                .param("page", "0")
+                .param("offset", "1")
+                .param("includeTotal", "false")
+                .header(HttpHeader.ORGANIZATION_ID, 10L))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.totalType").value("NONE"))
+                .andExpect(jsonPath("$.totalCount").value(-1))
+                .andExpect(jsonPath("$.hasNext").value(true));
+    }
+
+    /**
+     * Estimated total matches the exact total while nothing has changed.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void filterWithEstimatedTotal() throws Exception {
+        System.out.println("Test case for filtering through affiliations with estimated total count");
+
+        Type apiResultType = new TypeToken<FilterPageResponse<Affiliation>>() {
+        }.getType();
+        MvcResult exact = this.filterExpectValues(12L, "/affiliate/filter?", "page=0", "&offset=1",
+                "&includeTotal=exact");
+        MvcResult estimate = this.filterExpectValues(12L, "/affiliate/filter?", "page=0", "&offset=1",
+                "&includeTotal=estimate");
+
+        FilterPageResponse<Affiliation> exactObj = gson.fromJson(exact.getResponse().getContentAsString(),
+                apiResultType);
+        FilterPageResponse<Affiliation> estimateObj = gson.fromJson(estimate.getResponse().getContentAsString(),
+                apiResultType);
+        assertEquals(TotalType.ESTIMATE, estimateObj.getTotalType());
+        assertEquals(exactObj.getTotalCount(), estimateObj.getTotalCount());
+    }
+
+    /**
+     * Invalid cursor for keyset pagination.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void keysetInvalidCursor() throws Exception {
+        System.out.println("Test case for invalid keyset pagination cursor");
+
+        mockMvc.perform(get("/affiliate/filter")
+                .param("offset", "2")
+                .param("after", "not-a-cursor")
+                .header(HttpHeader.ORGANIZATION_ID, 10L))
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("$.code").value(ErrorCodes.INVALID_CURSOR.getCode()));
+    }
+
+    /**
+     * Page and offset outside of their range, in page and in keyset mode.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void invalidPageParameters() throws Exception {
+        System.out.println("Test case for rejecting invalid page and offset parameters");
+
+        String[][] invalid = {
+                {"/affiliate/filter", "0", "0", null},
+                {"/affiliate/filter", "-1", "2", null},
+                {"/affiliate/filter", "1073741824", "2", null},
+                {"/affiliate/organization/filter", "0", "-1", null},
+                {"/affiliate/organization/filter", "-1", "2", null},
+                {"/affiliate/filter", "0", "0", "not-a-cursor"},
+                {"/affiliate/organization/filter", "0", "0", "not-a-cursor"}
+        };
+        for (String[] parameters : invalid) {
+            MockHttpServletRequestBuilder request = get(parameters[0])
+                    .param("page", parameters[1])
+                    .param("offset", parameters[2])
+                    .header(HttpHeader.ORGANIZATION_ID, 10L);
+            if (parameters[3] != null) {
+                request.param("after", parameters[3]);
+            }
+            mockMvc.perform(request)
+                    .andExpect(status().isBadRequest())
+                    .andExpect(jsonPath("$.code").value(ErrorCodes.INVALID_REQUEST.getCode()));
+        }
+    }
+
     /**
      * Filter through active affiliations.
      *
@@ -337,17 +958,7 @@ class AffiliationControllerTest {
     }
 
     private void raiseAffiliationRequest(Long affiliationFromId, Long affiliationWithId) throws Exception {
-        Affiliation affiliationRequest = new Affiliation();
-
-        Organization affiliationWith = new Organization();
-        affiliationWith.setId(affiliationWithId);
-        affiliationRequest.setAffiliationWith(affiliationWith);
-
-        Organization affiliationFrom = new Organization();
-        affiliationFrom.setId(affiliationFromId);
-        affiliationRequest.setAffiliationFrom(affiliationFrom);
-
-        affiliationRequest.setStatus(AffiliationStatus.ACTIVE_REQUEST);
+        Affiliation affiliationRequest = this.affiliationRequest(affiliationFromId, affiliationWithId);
         MvcResult affiliationRequestMockResponse =
                 mockMvc.perform(post("/affiliate")
                         .header(HttpHeader.ORGANIZATION_ID, affiliationFromId)
@@ -364,6 +975,39 @@ class AffiliationControllerTest {
         System.out.println("Affiliation Request raised successfully.");
     }
 
+    private JsonArray bulkTransition(String url, Long orgHeader, JsonObject bulkRequest) throws Exception {
+        MvcResult response = mockMvc.perform(post(url)
+                .header(HttpHeader.ORGANIZATION_ID, orgHeader)
+                .content(bulkRequest.toString())
+                .contentType("application/json"))
+                .andExpect(status().isOk())
+                .andReturn();
+        return gson.fromJson(response.getResponse().getContentAsString(), JsonArray.class);
+    }
+
+    private JsonObject checkAffiliation(Long orgHeader, Long otherOrganizationId) throws Exception {
+        MvcResult response = mockMvc.perform(get("/affiliate/check/" + otherOrganizationId)
+                .header(HttpHeader.ORGANIZATION_ID, orgHeader))
+                .andExpect(status().isOk())
+                .andReturn();
+        return gson.fromJson(response.getResponse().getContentAsString(), JsonObject.class);
+    }
+
+    private Affiliation affiliationRequest(Long affiliationFromId, Long affiliationWithId) {
+        Affiliation affiliationRequest = new Affiliation();
+
+        Organization affiliationWith = new Organization();
+        affiliationWith.setId(affiliationWithId);
+        affiliationRequest.setAffiliationWith(affiliationWith);
+
+        Organization affiliationFrom = new Organization();
+        affiliationFrom.setId(affiliationFromId);
+        affiliationRequest.setAffiliationFrom(affiliationFrom);
+
+        affiliationRequest.setStatus(AffiliationStatus.ACTIVE_REQUEST);
+        return affiliationRequest;
+    }
+
     private Affiliation actionAffiliation(
             String url, Long orgHeader, AffiliationStatus expectedStatus) throws Exception {
         MvcResult response = mockMvc.perform(post(url)
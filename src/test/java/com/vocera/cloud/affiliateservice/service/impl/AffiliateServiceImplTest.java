@@ -6,22 +6,58 @@
 
 package com.vocera.cloud.affiliateservice.service.impl;
 
+import com.vocera.cloud.affiliateservice.config.DatabasePlatform;
+import com.vocera.cloud.affiliateservice.config.SchemaInitializer;
+import com.vocera.cloud.affiliateservice.constant.AffiliationTransition;
+import com.vocera.cloud.affiliateservice.constant.BatchItemStatus;
+import com.vocera.cloud.affiliateservice.constant.TotalType;
 import com.vocera.cloud.affiliateservice.exception.InvalidAffiliationException;
+import com.vocera.cloud.affiliateservice.model.BulkTransitionRequest;
+import com.vocera.cloud.affiliateservice.model.FilterPageResponse;
+import com.vocera.cloud.affiliateservice.model.OrganizationSummary;
+import com.vocera.cloud.affiliateservice.model.StatusChange;
+import com.vocera.cloud.affiliateservice.model.TransitionResult;
 import com.vocera.cloud.affiliateservice.repository.AffiliateRepository;
 import com.vocera.cloud.affiliateservice.service.AffiliateService;
 import com.vocera.cloud.coremodel.constants.AffiliationStatus;
+import com.vocera.cloud.coremodel.constants.FilterType;
+import com.vocera.cloud.coremodel.constants.OrderableColumn;
 import com.vocera.cloud.coremodel.model.Affiliation;
 import com.vocera.cloud.coremodel.model.Organization;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
 import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
 import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.context.annotation.Bean;
+import org.springframework.data.domain.Sort;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.support.MetaDataAccessException;
 import org.springframework.test.context.junit.jupiter.SpringExtension;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
@@ -41,12 +77,60 @@ class AffiliateServiceImplTest {
     static class AffiliateServiceImplTestConfig {
 
         @Bean
-        public AffiliateService affiliateService() {
-            return new AffiliateServiceImpl(affiliateRepository);
+        public AffiliateService affiliateService() throws MetaDataAccessException {
+            return new AffiliateServiceImpl(affiliateRepository, eventPublisher, filterCountCache(),
+                    new OrganizationNameIndex(jdbcTemplate, false, 1000),
+                    new AffiliationGraphIndex(jdbcTemplate, affiliationOutbox(), affiliationEventFeed(), false),
+                    new AffiliationCheckCache(true, 100, 60), affiliationVersions(), affiliationEventFeed(),
+                    affiliationHistory());
+        }
+
+        @Bean
+        public DatabasePlatform databasePlatform() throws MetaDataAccessException {
+            return new DatabasePlatform(jdbcTemplate.getDataSource());
+        }
+
+        @Bean
+        public SchemaInitializer schemaInitializer() throws MetaDataAccessException {
+            return new SchemaInitializer(jdbcTemplate, databasePlatform());
+        }
+
+        @Bean
+        public AffiliationVersions affiliationVersions() throws MetaDataAccessException {
+            return new AffiliationVersions(jdbcTemplate, databasePlatform());
+        }
+
+        @Bean
+        public AffiliationOutbox affiliationOutbox() {
+            return new AffiliationOutbox(jdbcTemplate, transactionManager);
+        }
+
+        @Bean
+        public AffiliationEventFeed affiliationEventFeed() {
+            return new AffiliationEventFeed(affiliationOutbox(), 168, 16, 60000);
+        }
+
+        @Bean
+        public AffiliationHistory affiliationHistory() throws MetaDataAccessException {
+            return new AffiliationHistory(jdbcTemplate, databasePlatform(), 3, 0);
+        }
+
+        @Bean
+        public FilterCountCache filterCountCache() {
+            return new FilterCountCache(100, 60);
         }
 
         @Autowired
         public AffiliateRepository affiliateRepository;
+
+        @Autowired
+        public ApplicationEventPublisher eventPublisher;
+
+        @Autowired
+        public JdbcTemplate jdbcTemplate;
+
+        @Autowired
+        public PlatformTransactionManager transactionManager;
     }
 
     @Autowired
@@ -58,6 +142,9 @@ class AffiliateServiceImplTest {
     @Autowired
     private TestEntityManager entityManager;
 
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
     /**
      * Test case for successful affiliation request.
      */
@@ -86,6 +173,121 @@ class AffiliateServiceImplTest {
         assertEquals(affiliationResponse.getId(), affiliationResponseDup.getId());
     }
 
+    /**
+     * Test case for concurrent affiliation requests for the same organizations from both sides.
+     *
+     * @throws Exception
+     */
+    @Test
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public void concurrentAffiliationRequests() throws Exception {
+        System.out.println("Test case for concurrent affiliation requests for the same organizations.");
+
+        this.concurrentAffiliationRequests(48l, 49l);
+    }
+
+    /**
+     * Test case for concurrent affiliation requests for organizations with ids which are not cached boxes.
+     *
+     * @throws Exception
+     */
+    @Test
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public void concurrentAffiliationRequestsWithLargeOrganizationIds() throws Exception {
+        System.out.println("Test case for concurrent affiliation requests for organizations with ids above 127.");
+
+        this.insertOrganization(1048l);
+        this.insertOrganization(1049l);
+        try {
+            this.concurrentAffiliationRequests(1048l, 1049l);
+        } finally {
+            jdbcTemplate.update("delete from organization where id in (1048, 1049)");
+        }
+    }
+
+    /**
+     * Requests an affiliation from both sides at once, rejects it and requests again from both sides at once.
+     * Only the rejecting organization may replace the rejected affiliation.
+     */
+    private void concurrentAffiliationRequests(long org1, long org2) throws Exception {
+        int threads = 8;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            Set<Long> affiliationIds = new HashSet<>();
+            for (Affiliation affiliation : this.requestConcurrently(executor, threads, org1, org2)) {
+                affiliationIds.add(affiliation.getId());
+            }
+            assertEquals(1, affiliationIds.size());
+            assertEquals(1, this.countAffiliations(org1, org2, true));
+
+            Affiliation first = affiliateService.checkAffiliation(org1, org2);
+            Long rejecting = first.getAffiliationWith().getId();
+            affiliateService.rejectAffiliation(rejecting, first.getAffiliationFrom().getId());
+            this.requestConcurrently(executor, threads, org1, org2);
+
+            assertEquals(1, this.countAffiliations(org1, org2, true));
+            assertEquals(1, this.countAffiliations(org1, org2, false));
+            assertEquals(rejecting, jdbcTemplate.queryForObject("select affiliation_from from affiliation " +
+                    "where active = true and status = ? and affiliation_from in (?, ?) and affiliation_with in " +
+                    "(?, ?)", Long.class, AffiliationStatus.ACTIVE_REQUEST.name(), org1, org2, org1, org2));
+        } finally {
+            executor.shutdownNow();
+            jdbcTemplate.update("delete from affiliation where affiliation_from in (?, ?) " +
+                    "and affiliation_with in (?, ?)", org1, org2, org1, org2);
+        }
+    }
+
+    private List<Affiliation> requestConcurrently(ExecutorService executor, int threads, long org1, long org2)
+            throws Exception {
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<Affiliation>> responses = new ArrayList<>();
+        for (int i = 0; i < threads; i++) {
+            long from = i % 2 == 0 ? org1 : org2;
+            long with = i % 2 == 0 ? org2 : org1;
+            responses.add(executor.submit(() -> {
+                start.await();
+                return affiliateService.affiliate(
+                        this.createAffiliation(from, with, AffiliationStatus.ACTIVE_REQUEST), from);
+            }));
+        }
+        start.countDown();
+        List<Affiliation> affiliations = new ArrayList<>();
+        for (Future<Affiliation> response : responses) {
+            affiliations.add(response.get(30, TimeUnit.SECONDS));
+        }
+        return affiliations;
+    }
+
+    /**
+     * Test case for requesting again after the request was rejected.
+     */
+    @Test
+    public void affiliationRequestAfterRejection() {
+        System.out.println("Test case for requesting again after the request was rejected.");
+
+        Affiliation first = affiliateService.affiliate(
+                this.createAffiliation(46l, 47l, AffiliationStatus.ACTIVE_REQUEST), 46l);
+        this.affiliateService.rejectAffiliation(47l, 46l);
+        Affiliation unchanged = affiliateService.affiliate(
+                this.createAffiliation(46l, 47l, AffiliationStatus.ACTIVE_REQUEST), 46l);
+        assertEquals(first.getId(), unchanged.getId());
+        assertEquals(AffiliationStatus.REJECTED, unchanged.getStatus());
+
+        Affiliation second = affiliateService.affiliate(
+                this.createAffiliation(47l, 46l, AffiliationStatus.ACTIVE_REQUEST), 47l);
+        assertNotEquals(first.getId(), second.getId());
+        assertEquals(AffiliationStatus.ACTIVE_REQUEST, second.getStatus());
+        assertEquals(1, this.countAffiliations(46l, 47l, true));
+        assertEquals(1, this.countAffiliations(46l, 47l, false));
+    }
+
+    private int countAffiliations(long org1, long org2, boolean active) {
+        return jdbcTemplate.queryForObject("select count(*) from affiliation where active = ? and " +
+                        "((affiliation_from = ? and affiliation_with = ?) or (affiliation_from = ? and " +
+                        "affiliation_with = ?))",
+                Integer.class, active, org1, org2, org2, org1);
+    }
+
     /**
      * Test case for checking if two organizations are affiliated.
      */
@@ -99,6 +301,20 @@ class AffiliateServiceImplTest {
         assertEquals(AffiliationStatus.ACTIVE_REQUEST, affiliation.getStatus());
     }
 
+    /**
+     * Test case for checking that the affiliation is found irrespective of the order of organizations.
+     */
+    @Test
+    public void checkAffiliationReversed() {
+        System.out.println("Test case for checking affiliation with organizations in reverse order.");
+
+        Affiliation affiliationResponse = affiliateService.affiliate(
+                this.createAffiliation(5l, 7l, AffiliationStatus.ACTIVE_REQUEST), 5l);
+        Affiliation affiliation = this.affiliateService.checkAffiliation(7l, 5l);
+        assertEquals(affiliationResponse.getId(), affiliation.getId());
+        assertEquals(AffiliationStatus.ACTIVE_REQUEST, affiliation.getStatus());
+    }
+
     /**
      * Test case for checking if AffiliationStatus is NONE if two organizations are not affiliated.
      */
@@ -136,6 +352,87 @@ class AffiliateServiceImplTest {
         });
     }
 
+    /**
+     * Failure test case for the requesting organization approving its own request
+     */
+    @Test
+    public void approveAffiliationByRequester() {
+        System.out.println("Failure test case for the requesting organization approving its own request");
+
+        affiliateService.affiliate(this.createAffiliation(3l, 2l, AffiliationStatus.ACTIVE_REQUEST), 3l);
+        assertThrows(InvalidAffiliationException.class, () -> {
+            this.affiliateService.approveAffiliation(3l, 2l);
+        });
+        assertEquals(AffiliationStatus.ACTIVE_REQUEST, this.affiliateService.checkAffiliation(2l, 3l).getStatus());
+    }
+
+    /**
+     * Test case for approving an affiliation request without reloading the affiliation.
+     */
+    @Test
+    public void approveAffiliationStatementCount() {
+        System.out.println("Test case for approving an affiliation request without reloading the affiliation.");
+
+        affiliateService.affiliate(this.createAffiliation(3l, 2l, AffiliationStatus.ACTIVE_REQUEST), 3l);
+        Statistics statistics = this.statistics();
+        entityManager.clear();
+        statistics.clear();
+        Affiliation affiliation = this.affiliateService.approveAffiliation(2l, 3l);
+
+        assertEquals(AffiliationStatus.AFFILIATED, affiliation.getStatus());
+        assertNotNull(affiliation.getAffiliationFrom().getName());
+        assertEquals(2, statistics.getPrepareStatementCount());
+    }
+
+    /**
+     * Test case for approving many affiliation requests with one lookup and one batched update.
+     */
+    @Test
+    public void bulkApproveStatementCount() {
+        System.out.println("Test case for approving affiliation requests in bulk.");
+
+        for (long requester = 4; requester <= 6; requester++) {
+            affiliateService.affiliate(this.createAffiliation(requester, 7l, AffiliationStatus.ACTIVE_REQUEST),
+                    requester);
+        }
+        Statistics statistics = this.statistics();
+        entityManager.clear();
+        statistics.clear();
+        BulkTransitionRequest bulkTransitionRequest = new BulkTransitionRequest();
+        bulkTransitionRequest.setOrganizationIds(Arrays.asList(4l, 5l, 6l, 8l));
+        List<TransitionResult> results = this.affiliateService.transitionAll(AffiliationTransition.APPROVE, 7l,
+                bulkTransitionRequest);
+
+        assertEquals(Arrays.asList(BatchItemStatus.UPDATED, BatchItemStatus.UPDATED, BatchItemStatus.UPDATED,
+                BatchItemStatus.INVALID), results.stream().map(TransitionResult::getStatus)
+                .collect(Collectors.toList()));
+        assertEquals(AffiliationStatus.AFFILIATED, results.get(0).getAffiliation().getStatus());
+        assertEquals(2, statistics.getPrepareStatementCount());
+    }
+
+    /**
+     * Test case for cancelling affiliation requests in bulk when organization ids are not cached boxes.
+     */
+    @Test
+    public void bulkCancelWithLargeOrganizationIds() {
+        System.out.println("Test case for cancelling affiliation requests in bulk with ids above 127.");
+
+        for (long id = 1001; id <= 1004; id++) {
+            this.insertOrganization(id);
+        }
+        affiliateService.affiliate(this.createAffiliation(1001l, 1002l, AffiliationStatus.ACTIVE_REQUEST), 1001l);
+        affiliateService.affiliate(this.createAffiliation(1001l, 1003l, AffiliationStatus.ACTIVE_REQUEST), 1001l);
+        BulkTransitionRequest bulkTransitionRequest = new BulkTransitionRequest();
+        bulkTransitionRequest.setOrganizationIds(Arrays.asList(1002l, 1003l, 1004l));
+        List<TransitionResult> results = this.affiliateService.transitionAll(AffiliationTransition.CANCEL, 1001l,
+                bulkTransitionRequest);
+
+        assertEquals(Arrays.asList(BatchItemStatus.UPDATED, BatchItemStatus.UPDATED, BatchItemStatus.INVALID),
+                results.stream().map(TransitionResult::getStatus).collect(Collectors.toList()));
+        assertEquals(AffiliationStatus.CANCELLED, results.get(1).getAffiliation().getStatus());
+        assertEquals(Long.valueOf(1003l), results.get(1).getAffiliation().getAffiliationWith().getId());
+    }
+
     /**
      * Test case for rejecting an affiliation request
      */
@@ -186,6 +483,167 @@ class AffiliateServiceImplTest {
         });
     }
 
+    /**
+     * Test case for transitions made by the requesting organization when organization ids are not cached boxes.
+     */
+    @Test
+    public void transitionsWithLargeOrganizationIds() {
+        System.out.println("Test case for transitions by the requesting organization with ids above 127.");
+
+        for (long id = 1001; id <= 1004; id++) {
+            this.insertOrganization(id);
+        }
+        affiliateService.affiliate(this.createAffiliation(1001l, 1002l, AffiliationStatus.ACTIVE_REQUEST), 1001l);
+        assertEquals(AffiliationStatus.CANCELLED, this.affiliateService.cancelAffiliation(1001l, 1002l).getStatus());
+
+        affiliateService.affiliate(this.createAffiliation(1001l, 1003l, AffiliationStatus.ACTIVE_REQUEST), 1001l);
+        this.affiliateService.approveAffiliation(1003l, 1001l);
+        assertEquals(AffiliationStatus.REVOKED_FROM,
+                this.affiliateService.revokeAffiliation(1001l, 1003l).getStatus());
+
+        affiliateService.affiliate(this.createAffiliation(1004l, 1002l, AffiliationStatus.ACTIVE_REQUEST), 1004l);
+        affiliateService.affiliate(this.createAffiliation(1004l, 1003l, AffiliationStatus.ACTIVE_REQUEST), 1004l);
+        entityManager.clear();
+        List<StatusChange> changes = affiliateRepository.transitionAll(1004l, Arrays.asList(1002l, 1003l),
+                AffiliationTransition.CANCEL);
+        assertEquals(2, changes.size());
+        for (StatusChange change : changes) {
+            assertEquals(AffiliationStatus.CANCELLED, change.getAffiliation().getStatus());
+        }
+    }
+
+    /**
+     * Test case for walking through all affiliations with keyset pagination when counterparts have no name or no
+     * health system name and organization ids are not cached boxes.
+     */
+    @Test
+    public void keysetWalkWithMissingSortValues() {
+        System.out.println("Test case for keyset pagination over missing sort values with ids above 127.");
+
+        this.insertOrganization(1001l);
+        Set<Long> expected = new HashSet<>();
+        for (long id = 1002; id <= 1009; id++) {
+            this.insertOrganization(id, id % 2 == 0 ? null : "Organization " + id % 3,
+                    id % 2 == 0 ? "Health System " + id % 3 : null);
+            Affiliation affiliation = id <= 1005 ?
+                    this.createAffiliation(1001l, id, AffiliationStatus.ACTIVE_REQUEST) :
+                    this.createAffiliation(id, 1001l, AffiliationStatus.ACTIVE_REQUEST);
+            expected.add(affiliateService.affiliate(affiliation, affiliation.getAffiliationFrom().getId()).getId());
+        }
+        entityManager.clear();
+
+        for (OrderableColumn sort : OrderableColumn.values()) {
+            for (Sort.Direction order : Sort.Direction.values()) {
+                List<Long> walked = new ArrayList<>();
+                String after = "";
+                do {
+                    FilterPageResponse<Affiliation> page = this.affiliateService.filterAffiliation(3, after,
+                            TotalType.NONE, "", sort, order, FilterType.ALL, 1001l);
+                    page.getData().forEach(affiliation -> walked.add(affiliation.getId()));
+                    after = page.getNextCursor();
+                } while (after != null && walked.size() <= expected.size());
+
+                assertEquals(expected.size(), walked.size(), sort + " " + order + ": " + walked);
+                assertEquals(expected, new HashSet<>(walked), sort + " " + order);
+            }
+        }
+    }
+
+    /**
+     * Test case for loading a page of affiliations with their organizations in a constant number of statements.
+     */
+    @Test
+    public void filterAffiliationStatementCount() {
+        System.out.println("Test case for loading a page of affiliations in a single statement.");
+
+        Statistics statistics = this.statistics();
+        entityManager.clear();
+        statistics.clear();
+        FilterPageResponse<Affiliation> page = this.affiliateService.filterAffiliation(0, 10, TotalType.NONE, "",
+                OrderableColumn.NAME, Sort.Direction.ASC, FilterType.ALL, 10l);
+        for (Affiliation affiliation : page.getData()) {
+            assertNotNull(affiliation.getAffiliationFrom().getName());
+            assertNotNull(affiliation.getAffiliationWith().getName());
+        }
+
+        assertTrue(page.getData().size() > 1);
+        assertEquals(1, statistics.getPrepareStatementCount());
+    }
+
+    /**
+     * Test case for the filter counts matching the totals of the filter queries, from a single statement.
+     */
+    @Test
+    public void filterCountsMatchFilterTotals() {
+        System.out.println("Test case for the filter counts matching the totals of the filter queries.");
+
+        for (long organizationId : new long[]{1l, 3l, 10l, 11l}) {
+            for (String query : new String[]{"", "Org"}) {
+                Statistics statistics = this.statistics();
+                statistics.clear();
+                Map<FilterType, Long> counts = this.affiliateService.filterCounts(query, organizationId);
+                assertEquals(1, statistics.getPrepareStatementCount());
+
+                for (FilterType filterType : FilterType.values()) {
+                    assertEquals(this.affiliateService.filterAffiliation(0, 1, TotalType.EXACT, query,
+                            OrderableColumn.NAME, Sort.Direction.ASC, filterType, organizationId).getTotalCount(),
+                            counts.get(filterType).longValue(), filterType + " of " + organizationId);
+                }
+            }
+        }
+    }
+
+    /**
+     * Test case for checking an affiliation with its organizations in a single statement.
+     */
+    @Test
+    public void checkAffiliationStatementCount() {
+        System.out.println("Test case for checking an affiliation in a single statement.");
+
+        Statistics statistics = this.statistics();
+        entityManager.clear();
+        statistics.clear();
+        Affiliation affiliation = this.affiliateService.checkAffiliation(12l, 10l);
+        assertNotNull(affiliation.getAffiliationFrom().getName());
+        assertNotNull(affiliation.getAffiliationWith().getName());
+
+        assertEquals(1, statistics.getPrepareStatementCount());
+    }
+
+    /**
+     * Test case for listing the counterpart organizations when the organization is on either side.
+     */
+    @Test
+    public void filterAffiliationOrganizationCounterpart() {
+        System.out.println("Test case for listing the counterpart organizations of an organization.");
+
+        Statistics statistics = this.statistics();
+        entityManager.clear();
+        statistics.clear();
+        FilterPageResponse<OrganizationSummary> page = this.affiliateService.filterAffiliationOrganization(0, 10,
+                TotalType.NONE, "", OrderableColumn.NAME, Sort.Direction.ASC, FilterType.ALL, 2l);
+        Set<Long> organizationIds = page.getData().stream().map(OrganizationSummary::getId)
+                .collect(Collectors.toSet());
+
+        assertEquals(new HashSet<>(Arrays.asList(1l, 3l)), organizationIds);
+        assertEquals(1, statistics.getPrepareStatementCount());
+    }
+
+    private void insertOrganization(long id) {
+        this.insertOrganization(id, "Organization " + id, "Health System " + id);
+    }
+
+    private void insertOrganization(long id, String name, String healthSystemName) {
+        jdbcTemplate.update("insert into organization (id, created_at, updated_at, active, domain, " +
+                "health_system_name, name, admin_id) values (?, current_timestamp, current_timestamp, true, ?, ?, " +
+                "?, 1)", id, "www.organization" + id + ".com", healthSystemName, name);
+    }
+
+    private Statistics statistics() {
+        return entityManager.getEntityManager().getEntityManagerFactory().unwrap(SessionFactory.class)
+                .getStatistics();
+    }
+
     /**
      * Helper method for creating an affiliation.
      *
@@ -0,0 +1,134 @@
+/*
+ * Copyright (c) Vocera Communications, Inc. All Rights Reserved.
+ * This software is the confidential and proprietary information of
+ * Vocera Communications, Inc.
+ */
+
+package com.vocera.cloud.affiliateservice.service.impl;
+
+import com.vocera.cloud.affiliateservice.repository.AffiliateRepository;
+import com.vocera.cloud.coremodel.constants.AffiliationStatus;
+import com.vocera.cloud.coremodel.constants.OrderableColumn;
+import com.vocera.cloud.coremodel.model.Affiliation;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.jpa.domain.Specification;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * SQL shape test cases for {@link AffiliateSpecifications}
+ *
+ * @author Rohit Phatak
+ */
+@DataJpaTest
+@ExtendWith(SpringExtension.class)
+class AffiliateSpecificationsTest {
+
+    private static final Pattern ORGANIZATION_JOIN = Pattern.compile("join organization ",
+            Pattern.CASE_INSENSITIVE);
+
+    private static final List<AffiliationStatus> ALL_STATUS = Arrays.asList(AffiliationStatus.values());
+
+    @Autowired
+    private AffiliateRepository affiliateRepository;
+
+    @Autowired
+    private TestEntityManager entityManager;
+
+    private Specification<Affiliation> specification;
+
+    @BeforeEach
+    public void setUp() {
+        entityManager.clear();
+        RecordingStatementInspector.clear();
+        specification = AffiliateSpecifications.keysetOrder(AffiliateSpecifications.affiliatesSpecification(true,
+                "a", OrderableColumn.NAME, Sort.Direction.ASC, 10l, ALL_STATUS, ALL_STATUS)
+                .and(AffiliateSpecifications.keysetAfter("", 0, OrderableColumn.NAME, 10l, Sort.Direction.ASC)),
+                OrderableColumn.NAME, 10l, Sort.Direction.ASC);
+    }
+
+    /**
+     * Test case for the page query joining each organization once.
+     */
+    @Test
+    public void sliceJoinsEachOrganizationOnce() {
+        System.out.println("Test case for the page query joining each organization once.");
+
+        affiliateRepository.findSlice(specification, 0, 10);
+
+        this.assertOrganizationJoins(2);
+    }
+
+    /**
+     * Test case for the count query joining each organization once.
+     */
+    @Test
+    public void countJoinsEachOrganizationOnce() {
+        System.out.println("Test case for the count query joining each organization once.");
+
+        affiliateRepository.count(specification);
+
+        this.assertOrganizationJoins(2);
+    }
+
+    /**
+     * Test case for the organization projection joining each organization once.
+     */
+    @Test
+    public void counterpartSliceJoinsEachOrganizationOnce() {
+        System.out.println("Test case for the organization projection joining each organization once.");
+
+        affiliateRepository.findCounterpartSlice(specification, 10l, 0, 10);
+
+        this.assertOrganizationJoins(2);
+    }
+
+    /**
+     * Test case for page mode ordering by the sort column as it is, and keyset mode by the value its cursor holds.
+     */
+    @Test
+    public void onlyKeysetOrderCoalescesSortColumn() {
+        System.out.println("Test case for coalescing the sort column only in keyset order.");
+
+        affiliateRepository.findSlice(AffiliateSpecifications.affiliatesSpecification(true, "a",
+                OrderableColumn.NAME, Sort.Direction.ASC, 10l, ALL_STATUS, ALL_STATUS), 0, 10);
+        affiliateRepository.findSlice(specification, 0, 10);
+
+        List<String> statements = RecordingStatementInspector.statements();
+        assertEquals(2, statements.size());
+        assertFalse(this.orderBy(statements.get(0)).contains("coalesce"), statements.get(0));
+        assertTrue(this.orderBy(statements.get(1)).contains("coalesce"), statements.get(1));
+    }
+
+    private String orderBy(String statement) {
+        String lowerCase = statement.toLowerCase();
+        return lowerCase.substring(lowerCase.lastIndexOf("order by"));
+    }
+
+    private void assertOrganizationJoins(int expected) {
+        List<String> statements = RecordingStatementInspector.statements();
+        assertFalse(statements.isEmpty());
+        for (String statement : statements) {
+            Matcher matcher = ORGANIZATION_JOIN.matcher(statement);
+            int joins = 0;
+            while (matcher.find()) {
+                joins++;
+            }
+            assertEquals(expected, joins, statement);
+        }
+    }
+}
@@ -0,0 +1,112 @@
+/*
+ * Copyright (c) Vocera Communications, Inc. All Rights Reserved.
+ * This software is the confidential and proprietary information of
+ * Vocera Communications, Inc.
+ */
+
+package com.vocera.cloud.affiliateservice.service.impl;
+
+import com.vocera.cloud.affiliateservice.event.AffiliationChangedEvent;
+import com.vocera.cloud.affiliateservice.model.CacheStatistics;
+import com.vocera.cloud.coremodel.constants.AffiliationStatus;
+import com.vocera.cloud.coremodel.model.Affiliation;
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+/**
+ * Unit test cases for {@link AffiliationCheckCache}
+ *
+ * @author Rohit Phatak
+ */
+class AffiliationCheckCacheTest {
+
+    private final AffiliationCheckCache cache = new AffiliationCheckCache(true, 100, 60);
+
+    private final AtomicInteger loads = new AtomicInteger();
+
+    /**
+     * Test case for absent affiliations being cached for both orders of the pair.
+     */
+    @Test
+    public void cachesAbsentAffiliation() {
+        System.out.println("Test case for absent affiliations being cached for both orders of the pair.");
+
+        assertFalse(cache.get(1l, 2l, pair -> this.load(Optional.empty())).isPresent());
+        assertFalse(cache.get(2l, 1l, pair -> this.load(Optional.empty())).isPresent());
+
+        assertEquals(1, loads.get());
+        CacheStatistics statistics = cache.statistics();
+        assertEquals(1, statistics.getHitCount());
+        assertEquals(1, statistics.getMissCount());
+        assertEquals(1, statistics.getSize());
+    }
+
+    /**
+     * Test case for a committed change dropping the pair.
+     */
+    @Test
+    public void committedChangeInvalidates() {
+        System.out.println("Test case for a committed change dropping the pair.");
+
+        cache.get(3l, 4l, pair -> this.load(Optional.empty()));
+        cache.onAffiliationChanged(new AffiliationChangedEvent(1l, 4l, 3l, AffiliationStatus.NONE,
+                AffiliationStatus.ACTIVE_REQUEST, true, 4l));
+        Affiliation affiliation = new Affiliation();
+        affiliation.setStatus(AffiliationStatus.ACTIVE_REQUEST);
+
+        assertEquals(AffiliationStatus.ACTIVE_REQUEST,
+                cache.get(3l, 4l, pair -> this.load(Optional.of(affiliation))).get().getStatus());
+        assertEquals(2, loads.get());
+    }
+
+    /**
+     * Test case for a change committed while the pair is loaded not leaving the loaded affiliation cached.
+     */
+    @Test
+    public void changeCommittedDuringLoadIsNotCached() {
+        System.out.println("Test case for a change committed while the pair is loaded not leaving the loaded " +
+                "affiliation cached.");
+
+        cache.get(7l, 8l, pair -> {
+            cache.onAffiliationChanged(new AffiliationChangedEvent(2l, 7l, 8l, AffiliationStatus.NONE,
+                    AffiliationStatus.ACTIVE_REQUEST, true, 7l));
+            return this.load(Optional.empty());
+        });
+        Affiliation affiliation = new Affiliation();
+        affiliation.setStatus(AffiliationStatus.ACTIVE_REQUEST);
+
+        assertEquals(AffiliationStatus.ACTIVE_REQUEST,
+                cache.get(7l, 8l, pair -> this.load(Optional.of(affiliation))).get().getStatus());
+        assertEquals(2, loads.get());
+    }
+
+    /**
+     * Test case for lookups inside a transaction bypassing the cache.
+     */
+    @Test
+    public void transactionBypassesCache() {
+        System.out.println("Test case for lookups inside a transaction bypassing the cache.");
+
+        TransactionSynchronizationManager.setActualTransactionActive(true);
+        try {
+            cache.get(5l, 6l, pair -> this.load(Optional.empty()));
+            cache.get(5l, 6l, pair -> this.load(Optional.empty()));
+        } finally {
+            TransactionSynchronizationManager.setActualTransactionActive(false);
+        }
+
+        assertEquals(2, loads.get());
+        assertEquals(0, cache.statistics().getSize());
+    }
+
+    private Optional<Affiliation> load(Optional<Affiliation> affiliation) {
+        loads.incrementAndGet();
+        return affiliation;
+    }
+}
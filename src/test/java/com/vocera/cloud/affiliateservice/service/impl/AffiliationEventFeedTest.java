@@ -0,0 +1,246 @@
+/*
+ * Copyright (c) Vocera Communications, Inc. All Rights Reserved.
+ * This software is the confidential and proprietary information of
+ * Vocera Communications, Inc.
+ */
+
+package com.vocera.cloud.affiliateservice.service.impl;
+
+import com.vocera.cloud.affiliateservice.event.AffiliationEventSubscriber;
+import com.vocera.cloud.affiliateservice.model.AffiliationEvent;
+import com.vocera.cloud.coremodel.constants.AffiliationStatus;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Test cases for delivering the change feed to subscribers which receive their events at different speeds, over
+ * events held in memory.
+ *
+ * @author Rohit Phatak
+ */
+class AffiliationEventFeedTest {
+
+    private static final int SUBSCRIBER_QUEUE = 2;
+
+    private static final long SEND_TIMEOUT_MILLIS = 200;
+
+    private final List<AffiliationEvent> events = new CopyOnWriteArrayList<>();
+
+    private AffiliationEventFeed feed;
+
+    @BeforeEach
+    public void setUp() {
+        feed = new AffiliationEventFeed(new MemoryOutbox(), 168, SUBSCRIBER_QUEUE, SEND_TIMEOUT_MILLIS);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        feed.destroy();
+    }
+
+    /**
+     * Test case for a subscriber blocked in a send not holding up the others, and receiving every event in order
+     * once it is released, although more batches were waiting for it than its queue holds.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void blockedSubscriberDoesNotHoldUpOthers() throws Exception {
+        System.out.println("Test case for a blocked subscriber not holding up the others and catching up");
+
+        CountDownLatch sending = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        RecordingSubscriber blocked = new RecordingSubscriber() {
+            @Override
+            public boolean deliver(List<AffiliationEvent> delivered) {
+                sending.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return super.deliver(delivered);
+            }
+        };
+        RecordingSubscriber fast = new RecordingSubscriber();
+        feed.subscribe(blocked);
+        feed.subscribe(fast);
+
+        this.append(fast);
+        assertTrue(sending.await(10, TimeUnit.SECONDS));
+        // One batch is being sent, the queue of the blocked subscriber fills up and the next events wait.
+        for (int i = 0; i < SUBSCRIBER_QUEUE + 3; i++) {
+            this.append(fast);
+        }
+        assertEquals(SUBSCRIBER_QUEUE + 4, fast.received.size());
+
+        release.countDown();
+        this.await(() -> blocked.received.size() == events.size());
+        assertEquals(fast.received, blocked.received);
+        assertFalse(blocked.closed);
+    }
+
+    /**
+     * Test case for a subscriber catching up on a backlog of many more batches than its queue holds.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void subscriberCatchesUpOnBacklog() throws Exception {
+        System.out.println("Test case for a subscriber catching up on a long backlog");
+
+        for (int i = 0; i < 5000; i++) {
+            this.add();
+        }
+        RecordingSubscriber subscriber = new RecordingSubscriber();
+        feed.subscribe(subscriber);
+
+        this.await(() -> subscriber.getSince() == events.size());
+        assertEquals(events.size(), subscriber.received.size());
+        assertFalse(subscriber.closed);
+    }
+
+    /**
+     * Test case for a subscriber whose send does not return within the send timeout being closed.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void timedOutSendClosesSubscriber() throws Exception {
+        System.out.println("Test case for closing a subscriber whose send timed out");
+
+        CountDownLatch sending = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        RecordingSubscriber blocked = new RecordingSubscriber() {
+            @Override
+            public boolean deliver(List<AffiliationEvent> delivered) {
+                sending.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return super.deliver(delivered);
+            }
+        };
+        RecordingSubscriber fast = new RecordingSubscriber();
+        feed.subscribe(blocked);
+        feed.subscribe(fast);
+        try {
+            this.append(fast);
+            assertTrue(sending.await(10, TimeUnit.SECONDS));
+            for (int i = 0; i < SUBSCRIBER_QUEUE + 1; i++) {
+                this.append(fast);
+            }
+            assertFalse(blocked.closed);
+
+            Thread.sleep(SEND_TIMEOUT_MILLIS * 2);
+            this.append(fast);
+            this.await(() -> blocked.closed);
+        } finally {
+            release.countDown();
+        }
+    }
+
+    /**
+     * Append an event and wait for the subscriber to receive it.
+     *
+     * @param subscriber
+     * @throws Exception
+     */
+    private void append(RecordingSubscriber subscriber) throws Exception {
+        long seq = this.add();
+        feed.poll();
+        this.await(() -> subscriber.getSince() == seq);
+    }
+
+    private long add() {
+        long seq = events.size() + 1;
+        events.add(new AffiliationEvent(seq, seq, 1, 2, AffiliationStatus.NONE, AffiliationStatus.ACTIVE_REQUEST,
+                true, 1, new Date()));
+        return seq;
+    }
+
+    private void await(BooleanSupplier condition) throws Exception {
+        long deadline = System.currentTimeMillis() + 10000;
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.currentTimeMillis() < deadline, "Timed out");
+            Thread.sleep(10);
+        }
+    }
+
+    /**
+     * Records the seqs of the events delivered to it.
+     */
+    private static class RecordingSubscriber implements AffiliationEventSubscriber {
+
+        private final List<Long> received = new CopyOnWriteArrayList<>();
+
+        private volatile long since;
+
+        private volatile boolean closed;
+
+        @Override
+        public long getSince() {
+            return since;
+        }
+
+        @Override
+        public boolean deliver(List<AffiliationEvent> delivered) {
+            for (AffiliationEvent event : delivered) {
+                received.add(event.getSeq());
+                since = event.getSeq();
+            }
+            return true;
+        }
+
+        @Override
+        public void close() {
+            closed = true;
+        }
+    }
+
+    /**
+     * Outbox over the events of the test.
+     */
+    private class MemoryOutbox extends AffiliationOutbox {
+
+        private MemoryOutbox() {
+            super(null, null);
+        }
+
+        @Override
+        public long latestSeq() {
+            return events.size();
+        }
+
+        @Override
+        public long oldestSeq() {
+            return 1;
+        }
+
+        @Override
+        public List<AffiliationEvent> findAfter(long since, int limit) {
+            List<AffiliationEvent> after = new ArrayList<>();
+            for (AffiliationEvent event : events) {
+                if (event.getSeq() > since && after.size() < limit) {
+                    after.add(event);
+                }
+            }
+            return after;
+        }
+    }
+}
@@ -0,0 +1,209 @@
+/*
+ * Copyright (c) Vocera Communications, Inc. All Rights Reserved.
+ * This software is the confidential and proprietary information of
+ * Vocera Communications, Inc.
+ */
+
+package com.vocera.cloud.affiliateservice.service.impl;
+
+import com.vocera.cloud.affiliateservice.model.AffiliationEvent;
+import com.vocera.cloud.coremodel.constants.AffiliationStatus;
+import com.vocera.cloud.coremodel.model.Affiliation;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Test cases for {@link AffiliationGraphIndex} loaded from the test data, following events held in memory.
+ *
+ * @author Rohit Phatak
+ */
+@DataJpaTest
+@ExtendWith(SpringExtension.class)
+class AffiliationGraphIndexTest {
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private final List<AffiliationEvent> events = new CopyOnWriteArrayList<>();
+
+    private volatile long committedSeq;
+
+    private AffiliationEventFeed feed;
+
+    private AffiliationGraphIndex index;
+
+    @BeforeEach
+    public void setUp() {
+        MemoryOutbox outbox = new MemoryOutbox();
+        feed = new AffiliationEventFeed(outbox, 168, 16, 60000);
+        index = new AffiliationGraphIndex(jdbcTemplate, outbox, feed, true);
+        index.refresh();
+    }
+
+    @AfterEach
+    public void tearDown() {
+        feed.destroy();
+    }
+
+    /**
+     * Test case for the status and direction of a loaded affiliation, in both orders of the pair.
+     */
+    @Test
+    public void findLoadedAffiliation() {
+        System.out.println("Test case for finding a loaded affiliation.");
+
+        Affiliation affiliation = index.find(3l, 1l);
+        assertEquals(AffiliationStatus.REJECTED, affiliation.getStatus());
+        assertEquals(3l, affiliation.getAffiliationFrom().getId());
+        assertEquals(1l, affiliation.getAffiliationWith().getId());
+        assertEquals(AffiliationStatus.REJECTED, index.find(1l, 3l).getStatus());
+        assertTrue(index.memoryBytes() > 0);
+    }
+
+    /**
+     * Test case for pairs without an active affiliation.
+     */
+    @Test
+    public void findNone() {
+        System.out.println("Test case for pairs without an active affiliation.");
+
+        assertEquals(AffiliationStatus.NONE, index.find(1l, 4l).getStatus());
+        // Affiliation 12 between 10 and 11 is inactive, affiliation 5 is the active one.
+        assertEquals(AffiliationStatus.ACTIVE_REQUEST, index.find(11l, 10l).getStatus());
+    }
+
+    /**
+     * Test case for the changes committed by other instances reaching the index through the feed.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void applyChanges() throws Exception {
+        System.out.println("Test case for changes of other instances updating the index.");
+
+        this.commit(5l, 4l, AffiliationStatus.NONE, AffiliationStatus.ACTIVE_REQUEST, true);
+        this.await(() -> index.find(4l, 5l).getStatus() == AffiliationStatus.ACTIVE_REQUEST);
+        assertEquals(5l, index.find(4l, 5l).getAffiliationFrom().getId());
+
+        this.commit(5l, 4l, AffiliationStatus.ACTIVE_REQUEST, AffiliationStatus.AFFILIATED, true);
+        this.await(() -> index.find(5l, 4l).getStatus() == AffiliationStatus.AFFILIATED);
+
+        this.commit(5l, 4l, AffiliationStatus.AFFILIATED, AffiliationStatus.REMOVED, false);
+        this.await(() -> index.find(5l, 4l).getStatus() == AffiliationStatus.NONE);
+    }
+
+    /**
+     * Test case for the index answering nothing until it applied a change committed by this instance.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void behindLocalChange() throws Exception {
+        System.out.println("Test case for the index answering nothing while behind a change of this instance.");
+
+        committedSeq = events.size() + 1;
+        assertNull(index.find(1l, 4l));
+        assertNull(index.find(1l, 2l));
+
+        this.commit(1l, 4l, AffiliationStatus.NONE, AffiliationStatus.ACTIVE_REQUEST, true);
+        this.await(() -> index.find(1l, 4l) != null);
+        assertEquals(AffiliationStatus.ACTIVE_REQUEST, index.find(4l, 1l).getStatus());
+    }
+
+    /**
+     * Test case for a refresh replacing the graph and following the feed from the seq it was loaded at.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void refreshFollowsFeed() throws Exception {
+        System.out.println("Test case for a refreshed index following the feed.");
+
+        this.commit(5l, 4l, AffiliationStatus.NONE, AffiliationStatus.ACTIVE_REQUEST, true);
+        index.refresh();
+        this.commit(6l, 4l, AffiliationStatus.NONE, AffiliationStatus.ACTIVE_REQUEST, true);
+        this.await(() -> index.find(6l, 4l).getStatus() == AffiliationStatus.ACTIVE_REQUEST);
+        // The event before the refresh is not in the table and the new graph follows the feed after it.
+        assertEquals(AffiliationStatus.NONE, index.find(5l, 4l).getStatus());
+    }
+
+    /**
+     * Test case for the index answering nothing while disabled.
+     */
+    @Test
+    public void disabled() {
+        System.out.println("Test case for the index answering nothing while disabled.");
+
+        AffiliationGraphIndex disabled = new AffiliationGraphIndex(jdbcTemplate, new MemoryOutbox(), feed, false);
+        disabled.refresh();
+        assertNull(disabled.find(1l, 2l));
+    }
+
+    private void commit(long affiliationFrom, long affiliationWith, AffiliationStatus previousStatus,
+                        AffiliationStatus status, boolean active) {
+        long seq = events.size() + 1;
+        events.add(new AffiliationEvent(seq, 100, affiliationFrom, affiliationWith, previousStatus, status, active,
+                affiliationWith, new Date()));
+        feed.poll();
+    }
+
+    private void await(BooleanSupplier condition) throws Exception {
+        long deadline = System.currentTimeMillis() + 10000;
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.currentTimeMillis() < deadline, "Timed out");
+            Thread.sleep(10);
+        }
+    }
+
+    /**
+     * Outbox over the events of the test, committedSeq standing for the changes of this instance.
+     */
+    private class MemoryOutbox extends AffiliationOutbox {
+
+        private MemoryOutbox() {
+            super(null, null);
+        }
+
+        @Override
+        public long latestSeq() {
+            return events.size();
+        }
+
+        @Override
+        public long committedSeq() {
+            return committedSeq;
+        }
+
+        @Override
+        public long oldestSeq() {
+            return 1;
+        }
+
+        @Override
+        public List<AffiliationEvent> findAfter(long since, int limit) {
+            List<AffiliationEvent> after = new ArrayList<>();
+            for (AffiliationEvent event : events) {
+                if (event.getSeq() > since && after.size() < limit) {
+                    after.add(event);
+                }
+            }
+            return after;
+        }
+    }
+}
@@ -0,0 +1,61 @@
+/*
+ * Copyright (c) Vocera Communications, Inc. All Rights Reserved.
+ * This software is the confidential and proprietary information of
+ * Vocera Communications, Inc.
+ */
+
+package com.vocera.cloud.affiliateservice.service.impl;
+
+import com.vocera.cloud.affiliateservice.event.AffiliationChangedEvent;
+import com.vocera.cloud.coremodel.constants.AffiliationStatus;
+import com.vocera.cloud.coremodel.constants.FilterType;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+/**
+ * Unit test cases for {@link FilterCountCache}
+ *
+ * @author Rohit Phatak
+ */
+class FilterCountCacheTest {
+
+    private final FilterCountCache cache = new FilterCountCache(100, 60);
+
+    /**
+     * Test case for a committed change dropping the counts of both organizations only.
+     */
+    @Test
+    public void committedChangeInvalidatesBothOrganizations() {
+        System.out.println("Test case for a committed change dropping the counts of both organizations only.");
+
+        cache.put(1l, FilterType.ALL, null, 10);
+        cache.put(2l, FilterType.AFFILIATES, "name", 20);
+        cache.put(3l, FilterType.ALL, null, 30);
+        cache.onAffiliationChanged(new AffiliationChangedEvent(1l, 1l, 2l, AffiliationStatus.NONE,
+                AffiliationStatus.ACTIVE_REQUEST, true, 1l));
+
+        assertNull(cache.getIfPresent(1l, FilterType.ALL, null));
+        assertNull(cache.getIfPresent(2l, FilterType.AFFILIATES, "name"));
+        assertEquals(Long.valueOf(30), cache.getIfPresent(3l, FilterType.ALL, null));
+        assertEquals(11, cache.get(1l, FilterType.ALL, null, () -> 11));
+        assertEquals(11, cache.get(1l, FilterType.ALL, null, () -> 12));
+    }
+
+    /**
+     * Test case for a change committed while a count is computed not leaving that count cached.
+     */
+    @Test
+    public void changeCommittedDuringCountIsNotCached() {
+        System.out.println("Test case for a change committed while a count is computed not leaving it cached.");
+
+        cache.get(4l, FilterType.ALL, null, () -> {
+            cache.onAffiliationChanged(new AffiliationChangedEvent(2l, 5l, 4l, AffiliationStatus.NONE,
+                    AffiliationStatus.ACTIVE_REQUEST, true, 5l));
+            return 40;
+        });
+
+        assertNull(cache.getIfPresent(4l, FilterType.ALL, null));
+    }
+}
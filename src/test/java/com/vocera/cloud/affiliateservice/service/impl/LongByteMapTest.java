@@ -0,0 +1,87 @@
+/*
+ * Copyright (c) Vocera Communications, Inc. All Rights Reserved.
+ * This software is the confidential and proprietary information of
+ * Vocera Communications, Inc.
+ */
+
+package com.vocera.cloud.affiliateservice.service.impl;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Unit test cases for {@link LongByteMap}
+ *
+ * @author Rohit Phatak
+ */
+class LongByteMapTest {
+
+    /**
+     * Test case for put, overwrite and get.
+     */
+    @Test
+    public void putAndGet() {
+        System.out.println("Test case for put, overwrite and get.");
+
+        LongByteMap map = new LongByteMap(1);
+        map.put(7, (byte) 1);
+        map.put(7, (byte) 2);
+        map.put(-3, (byte) 3);
+
+        assertEquals(2, map.get(7, (byte) -1));
+        assertEquals(3, map.get(-3, (byte) -1));
+        assertEquals(-1, map.get(8, (byte) -1));
+        assertEquals(2, map.size());
+        assertThrows(IllegalArgumentException.class, () -> map.put(0, (byte) 1));
+    }
+
+    /**
+     * Test case for random puts and removes against a HashMap, through several resizes.
+     */
+    @Test
+    public void matchesHashMap() {
+        System.out.println("Test case for random puts and removes against a HashMap.");
+
+        LongByteMap map = new LongByteMap(1);
+        Map<Long, Byte> expected = new HashMap<>();
+        Random random = new Random(42);
+        for (int i = 0; i < 20000; i++) {
+            long key = 1 + random.nextInt(2000);
+            if (random.nextInt(3) == 0) {
+                assertEquals(expected.remove(key) != null, map.remove(key));
+            } else {
+                byte value = (byte) random.nextInt(100);
+                expected.put(key, value);
+                map.put(key, value);
+            }
+        }
+        assertEquals(expected.size(), map.size());
+        for (long key = 1; key <= 2000; key++) {
+            assertEquals(expected.getOrDefault(key, (byte) -1).byteValue(), map.get(key, (byte) -1));
+        }
+    }
+
+    /**
+     * Test case for removing absent keys.
+     */
+    @Test
+    public void removeAbsent() {
+        System.out.println("Test case for removing absent keys.");
+
+        LongByteMap map = new LongByteMap(4);
+        map.put(1, (byte) 1);
+
+        assertFalse(map.remove(2));
+        assertFalse(map.remove(0));
+        assertTrue(map.remove(1));
+        assertEquals(0, map.size());
+    }
+}
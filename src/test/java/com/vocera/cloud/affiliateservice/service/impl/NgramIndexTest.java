@@ -0,0 +1,56 @@
+/*
+ * Copyright (c) Vocera Communications, Inc. All Rights Reserved.
+ * This software is the confidential and proprietary information of
+ * Vocera Communications, Inc.
+ */
+
+package com.vocera.cloud.affiliateservice.service.impl;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+/**
+ * Unit test cases for {@link NgramIndex}
+ *
+ * @author Rohit Phatak
+ */
+class NgramIndexTest {
+
+    private final NgramIndex index = NgramIndex.build(new long[]{1, 2, 3, 4},
+            new String[]{"Timber Corporation", "Timbershine", null, "Timberman"});
+
+    /**
+     * Test case for substring matching more than one text.
+     */
+    @Test
+    public void substringCandidates() {
+        System.out.println("Test case for substring matching more than one text.");
+
+        assertArrayEquals(new long[]{1, 2, 4}, index.candidates("imber"));
+        assertArrayEquals(new long[]{2}, index.candidates("shine"));
+    }
+
+    /**
+     * Test case for substring which is in none of the texts.
+     */
+    @Test
+    public void noCandidates() {
+        System.out.println("Test case for substring which is in none of the texts.");
+
+        assertArrayEquals(new long[0], index.candidates("Oak"));
+        assertArrayEquals(new long[0], index.candidates("timber"));
+    }
+
+    /**
+     * Test case for queries too short for the index.
+     */
+    @Test
+    public void shortQuery() {
+        System.out.println("Test case for queries too short for the index.");
+
+        assertNull(index.candidates("Ti"));
+        assertNull(index.candidates(""));
+    }
+}
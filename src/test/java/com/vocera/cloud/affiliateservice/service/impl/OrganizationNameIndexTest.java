@@ -0,0 +1,91 @@
+/*
+ * Copyright (c) Vocera Communications, Inc. All Rights Reserved.
+ * This software is the confidential and proprietary information of
+ * Vocera Communications, Inc.
+ */
+
+package com.vocera.cloud.affiliateservice.service.impl;
+
+import com.vocera.cloud.affiliateservice.constant.TotalType;
+import com.vocera.cloud.affiliateservice.service.AffiliateService;
+import com.vocera.cloud.coremodel.constants.FilterType;
+import com.vocera.cloud.coremodel.constants.OrderableColumn;
+import com.vocera.cloud.coremodel.model.Affiliation;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.domain.Sort;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Test cases for searching through the filter with the {@link OrganizationNameIndex} prefilter enabled, on the test
+ * data where organization 1 is affiliated with organization 2, WEC Energy Group.
+ *
+ * @author Rohit Phatak
+ */
+@SpringBootTest
+@ExtendWith(SpringExtension.class)
+class OrganizationNameIndexTest {
+
+    @Autowired
+    private AffiliateService affiliateService;
+
+    @Autowired
+    private OrganizationNameIndex organizationNameIndex;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @BeforeEach
+    public void setUp() {
+        organizationNameIndex.refresh();
+    }
+
+    /**
+     * Test case for finding an organization by the name it was renamed to after the index was built.
+     */
+    @Test
+    public void renameThenSearch() {
+        System.out.println("Test case for searching an organization renamed after the index was built.");
+
+        assertTrue(this.findsOrganization2("WEC Energy"));
+        jdbcTemplate.update("update organization set name = 'Quokka Logistics', updated_at = current_timestamp " +
+                "where id = 2");
+        try {
+            organizationNameIndex.refreshChanges();
+            assertTrue(this.findsOrganization2("Quokka"));
+            assertFalse(this.findsOrganization2("WEC Energy"));
+        } finally {
+            jdbcTemplate.update("update organization set name = 'WEC Energy Group' where id = 2");
+        }
+    }
+
+    /**
+     * Test case for a query with LIKE wildcards, which the index cannot serve.
+     */
+    @Test
+    public void searchWithWildcards() {
+        System.out.println("Test case for searching with LIKE wildcards.");
+
+        assertTrue(this.findsOrganization2("W_C Energy"));
+        assertTrue(this.findsOrganization2("WEC%Group"));
+    }
+
+    private boolean findsOrganization2(String query) {
+        for (Affiliation affiliation : affiliateService.filterAffiliation(0, 100, TotalType.NONE, query,
+                OrderableColumn.NAME, Sort.Direction.ASC, FilterType.ALL, 1L).getData()) {
+            long counterpart = affiliation.getAffiliationFrom().getId() == 1L ?
+                    affiliation.getAffiliationWith().getId() : affiliation.getAffiliationFrom().getId();
+            if (counterpart == 2L) {
+                return true;
+            }
+        }
+        return false;
+    }
+}